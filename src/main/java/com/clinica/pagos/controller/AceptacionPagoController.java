@@ -0,0 +1,30 @@
+package com.clinica.pagos.controller;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.clinica.pagos.domain.dto.AceptacionPagoDTO;
+import com.clinica.pagos.domain.service.AceptacionPagosService;
+
+/**
+ * Resultado de las altas aceptadas en modo diferido (POST /pagos con {@code pagos.diario.habilitado=true}).
+ */
+@RestController
+@RequestMapping("/pagos/aceptados")
+@ConditionalOnProperty(name = "pagos.diario.habilitado", havingValue = "true")
+public class AceptacionPagoController {
+
+    @Autowired
+    private AceptacionPagosService svc;
+
+    // PENDIENTE_VALIDACION, CREADO (con pagoId) o RECHAZADO (con error); 404 si el recibo ya no está en memoria
+    @GetMapping("/{recibo}")
+    public ResponseEntity<AceptacionPagoDTO> consultar(@PathVariable long recibo) {
+        return svc.consultar(recibo).map(ResponseEntity::ok).orElse(ResponseEntity.notFound().build());
+    }
+}
@@ -0,0 +1,108 @@
+package com.clinica.pagos.controller;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.clinica.pagos.domain.dto.EventoPagoDTO;
+import com.clinica.pagos.infrastructure.eventos.SuscriptorEventosPago;
+
+/**
+ * Conexión SSE de {@code GET /pagos/events} con su propia cola acotada. El difusor solo encola (no se bloquea
+ * nunca con un cliente lento) y los envíos salen en un hilo aparte, uno a la vez por conexión. Si la cola se
+ * llena, la conexión se cierra: el cliente reconecta con {@code Last-Event-ID} y sigue desde el registro.
+ */
+final class ConexionSse implements SuscriptorEventosPago {
+
+    private final SseEmitter emitter;
+    private final Executor enviador;
+    private final int maxPendientes;
+
+    // Protegidos por this
+    private final Queue<EventoPagoDTO> pendientes = new ArrayDeque<>();
+    private long cursor;
+    private boolean enviando;
+    private boolean cerrada;
+
+    ConexionSse(SseEmitter emitter, Executor enviador, int maxPendientes, long desde) {
+        this.emitter = emitter;
+        this.enviador = enviador;
+        this.maxPendientes = maxPendientes;
+        this.cursor = desde;
+    }
+
+    // Último seq encolado: lo ya encolado no se vuelve a leer del registro
+    @Override
+    public synchronized long cursor() {
+        return cursor;
+    }
+
+    @Override
+    public boolean entregar(List<EventoPagoDTO> nuevos) {
+        boolean desbordada = false;
+        boolean lanzar = false;
+        synchronized (this) {
+            if (cerrada) {
+                return false;
+            }
+            if (pendientes.size() + nuevos.size() > maxPendientes) {
+                cerrada = true;
+                pendientes.clear();
+                desbordada = true;
+            } else {
+                pendientes.addAll(nuevos);
+                cursor = nuevos.get(nuevos.size() - 1).getSeq();
+                lanzar = !enviando;
+                enviando = true;
+            }
+        }
+        if (desbordada) {
+            // Cliente demasiado lento: se cierra limpio para que reconecte
+            emitter.complete();
+            return false;
+        }
+        if (lanzar) {
+            enviador.execute(this::enviar);
+        }
+        return true;
+    }
+
+    // La conexión terminó (completada, caducada o con error): se descarta lo pendiente
+    synchronized void cerrar() {
+        cerrada = true;
+        pendientes.clear();
+    }
+
+    private void enviar() {
+        while (true) {
+            EventoPagoDTO evento;
+            synchronized (this) {
+                evento = cerrada ? null : pendientes.poll();
+                if (evento == null) {
+                    enviando = false;
+                    return;
+                }
+            }
+            try {
+                emitter.send(SseEmitter.event()
+                        .id(String.valueOf(evento.getSeq()))
+                        .name(evento.getTipo())
+                        .data(evento, MediaType.APPLICATION_JSON));
+            } catch (IOException | IllegalStateException e) {
+                // Cliente desconectado o emisor ya completado
+                synchronized (this) {
+                    cerrada = true;
+                    pendientes.clear();
+                    enviando = false;
+                }
+                emitter.completeWithError(e);
+                return;
+            }
+        }
+    }
+}
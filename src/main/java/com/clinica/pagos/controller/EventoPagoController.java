@@ -0,0 +1,113 @@
+package com.clinica.pagos.controller;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.clinica.pagos.domain.dto.EventoPagoDTO;
+import com.clinica.pagos.domain.repository.IEventosPago;
+import com.clinica.pagos.infrastructure.eventos.DifusorEventosPago;
+import com.clinica.pagos.infrastructure.eventos.SuscriptorEventosPago;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Registro de eventos de pagos (altas, cambios, transiciones de estado y bajas).
+ * <ul>
+ *   <li>{@code GET /pagos/events?after=seq}: long-poll. Responde en cuanto hay eventos posteriores a
+ *       {@code after}, o con una lista vacía tras {@code timeout}.</li>
+ *   <li>{@code GET /pagos/events} con {@code Accept: text/event-stream}: SSE. Cada evento lleva su seq como id,
+ *       así que al reconectar con {@code Last-Event-ID} se continúa donde se dejó. Sin ninguno de los dos,
+ *       solo llegan eventos nuevos. Cada conexión envía desde su propio hilo virtual con una cola de como mucho
+ *       {@code pagos.eventos.sse-max-pendientes} eventos; un cliente que no da abasto se desconecta.</li>
+ * </ul>
+ * Los eventos se conservan {@code pagos.eventos.retencion}; un cursor más antiguo continúa desde el primero
+ * que queda.
+ */
+@RestController
+@RequestMapping("/pagos/events")
+public class EventoPagoController {
+
+    @Autowired
+    private IEventosPago eventos;
+
+    @Autowired
+    private DifusorEventosPago difusor;
+
+    @Value("${pagos.eventos.sse-timeout:30m}")
+    private Duration sseTimeout;
+
+    @Value("${pagos.eventos.sse-max-pendientes:1000}")
+    private int sseMaxPendientes;
+
+    // Un hilo virtual por conexión con envíos pendientes: un cliente lento solo bloquea el suyo
+    private final ExecutorService enviosSse =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("eventos-sse-", 0).factory());
+
+    @PreDestroy
+    public void detener() {
+        enviosSse.shutdownNow();
+    }
+
+    @GetMapping
+    public DeferredResult<List<EventoPagoDTO>> longPoll(
+            @RequestParam long after,
+            @RequestParam(defaultValue = "100") int limit,
+            @RequestParam(defaultValue = "30s") Duration timeout) {
+        int limite = Math.max(1, Math.min(limit, PagoController.LIMIT_MAXIMO));
+        DeferredResult<List<EventoPagoDTO>> resultado = new DeferredResult<>(timeout.toMillis(), List.of());
+
+        List<EventoPagoDTO> disponibles = eventos.leer(after, limite);
+        if (!disponibles.isEmpty()) {
+            resultado.setResult(disponibles);
+            return resultado;
+        }
+
+        SuscriptorEventosPago espera = new SuscriptorEventosPago() {
+            @Override
+            public long cursor() {
+                return after;
+            }
+
+            @Override
+            public boolean entregar(List<EventoPagoDTO> nuevos) {
+                resultado.setResult(nuevos.size() > limite ? List.copyOf(nuevos.subList(0, limite)) : nuevos);
+                return false;
+            }
+        };
+        resultado.onCompletion(() -> difusor.cancelar(espera));
+        difusor.suscribir(espera);
+        return resultado;
+    }
+
+    @GetMapping(produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter sse(
+            @RequestParam(required = false) Long after,
+            @RequestHeader(value = "Last-Event-ID", required = false) Long ultimoRecibido) {
+        long desde = ultimoRecibido != null ? ultimoRecibido : after != null ? after : eventos.ultimaSecuencia();
+        SseEmitter emitter = new SseEmitter(sseTimeout.toMillis());
+
+        ConexionSse conexion = new ConexionSse(emitter, enviosSse, sseMaxPendientes, desde);
+        Runnable terminar = () -> {
+            conexion.cerrar();
+            difusor.cancelar(conexion);
+        };
+        emitter.onCompletion(terminar);
+        emitter.onTimeout(terminar);
+        emitter.onError(e -> terminar.run());
+        difusor.suscribir(conexion);
+        return emitter;
+    }
+}
@@ -0,0 +1,53 @@
+package com.clinica.pagos.controller;
+
+import java.net.URI;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.clinica.pagos.domain.dto.ExportacionDTO;
+import com.clinica.pagos.domain.service.ExportacionPagosService;
+import com.clinica.pagos.domain.service.SolicitudInvalidaException;
+
+/**
+ * Exportaciones completas de pagos para auditoría. Se ejecutan en segundo plano:
+ * POST devuelve 202 con el id y el progreso se consulta con GET /pagos/exportaciones/{id}.
+ */
+@RestController
+@RequestMapping("/pagos/exportaciones")
+public class ExportacionPagoController {
+
+    @Autowired
+    private ExportacionPagosService svc;
+
+    // POST /pagos/exportaciones?formatos=csv,pcol
+    @PostMapping
+    public ResponseEntity<ExportacionDTO> iniciar(@RequestParam(defaultValue = ExportacionPagosService.CSV) List<String> formatos) {
+        ExportacionDTO exportacion = svc.iniciar(formatos);
+        return ResponseEntity.accepted().location(URI.create("/pagos/exportaciones/" + exportacion.getId())).body(exportacion);
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<ExportacionDTO> consultar(@PathVariable String id) {
+        return svc.consultar(id).map(ResponseEntity::ok).orElse(ResponseEntity.notFound().build());
+    }
+
+    // Repite los tramos pendientes o fallidos (también los de una exportación interrumpida por un reinicio)
+    @PostMapping("/{id}/reanudar")
+    public ResponseEntity<ExportacionDTO> reanudar(@PathVariable String id) {
+        return svc.reanudar(id).map(exportacion -> ResponseEntity.accepted().body(exportacion)).orElse(ResponseEntity.notFound().build());
+    }
+
+    @ExceptionHandler(SolicitudInvalidaException.class)
+    public ResponseEntity<String> handleSolicitudInvalida(SolicitudInvalidaException e) {
+        return ResponseEntity.badRequest().body(e.getMessage());
+    }
+}
@@ -0,0 +1,72 @@
+package com.clinica.pagos.controller;
+
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.clinica.pagos.domain.dto.PagoDTO;
+import com.clinica.pagos.domain.dto.ResumenPagoDTO;
+import com.clinica.pagos.domain.repository.IResumenPagos;
+import com.clinica.pagos.domain.service.SolicitudInvalidaException;
+import com.clinica.pagos.infrastructure.indice.IndiceNoDisponibleException;
+import com.clinica.pagos.infrastructure.indice.IndicePagos;
+
+/**
+ * Consultas del panel de caja servidas por el índice en memoria ({@link IndicePagos}), sin ir a la base de datos.
+ * Los pagos no llevan nombres de paciente ni médico y pueden ir unos milisegundos por detrás de {@code /pagos}.
+ */
+@RestController
+@RequestMapping("/pagos/indice")
+@ConditionalOnProperty(name = "pagos.indice.habilitado", havingValue = "true")
+public class IndicePagoController {
+
+    @Autowired
+    private IndicePagos indice;
+
+    @GetMapping("/cita/{citaId}")
+    public List<PagoDTO> getByCitaId(@PathVariable long citaId) {
+        return indice.getByCitaId(citaId);
+    }
+
+    @GetMapping("/estado/{estado}")
+    public List<PagoDTO> getByEstado(
+            @PathVariable String estado,
+            @RequestParam(required = false) Long after,
+            @RequestParam(defaultValue = "100") int limit) {
+        return indice.getByEstado(estado, after, Math.max(1, Math.min(limit, PagoController.LIMIT_MAXIMO)));
+    }
+
+    // GET /pagos/indice/resumen?por=estado|metodo
+    @GetMapping("/resumen")
+    public List<ResumenPagoDTO> resumir(@RequestParam(defaultValue = IResumenPagos.POR_ESTADO) String por) {
+        return indice.resumir(por);
+    }
+
+    @PostMapping("/recargar")
+    public Map<String, Integer> recargar() {
+        return Map.of("pagos", indice.recargar());
+    }
+
+    // Estado o agrupación desconocidos
+    @ExceptionHandler(SolicitudInvalidaException.class)
+    public ResponseEntity<String> handleSolicitudInvalida(SolicitudInvalidaException e) {
+        return ResponseEntity.badRequest().body(e.getMessage());
+    }
+
+    // Cargándose o desincronizado: las mismas consultas siguen disponibles en /pagos
+    @ExceptionHandler(IndiceNoDisponibleException.class)
+    public ResponseEntity<String> handleNoDisponible(IndiceNoDisponibleException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(e.getMessage());
+    }
+}
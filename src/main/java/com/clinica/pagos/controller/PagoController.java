@@ -1,32 +1,114 @@
 package com.clinica.pagos.controller;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
 import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import com.clinica.pagos.domain.dto.AceptacionPagoDTO;
+import com.clinica.pagos.domain.dto.ActualizacionPagoDTO;
+import com.clinica.pagos.domain.dto.CambioEstadoDTO;
 import com.clinica.pagos.domain.dto.PagoDTO;
+import com.clinica.pagos.domain.dto.ResultadoLoteDTO;
+import com.clinica.pagos.domain.service.AceptacionPagosService;
+import com.clinica.pagos.domain.service.ClaveIdempotenciaReutilizadaException;
+import com.clinica.pagos.domain.service.DiarioAltasLlenoException;
+import com.clinica.pagos.domain.service.DiarioNoDisponibleException;
+import com.clinica.pagos.domain.service.IdempotenciaPagos;
 import com.clinica.pagos.domain.service.PagoService;
+import com.clinica.pagos.domain.service.SolicitudInvalidaException;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import jakarta.servlet.http.HttpServletRequest;
 
 @RestController
 @RequestMapping("/pagos")
 public class PagoController {
 
+    // Cabecera con el cursor para pedir la siguiente página (?after=...); ausente en la última página
+    static final String NEXT_CURSOR = "X-Next-Cursor";
+    static final int LIMIT_DEFECTO = 100;
+    static final int LIMIT_MAXIMO = 1000;
+    // Secuencia de valores CBOR concatenados (RFC 8742): equivalente binario del NDJSON para exportaciones
+    static final String APPLICATION_CBOR_SEQ = "application/cbor-seq";
+
     @Autowired
     private PagoService svc;
 
+    @Autowired
+    private IdempotenciaPagos idempotencia;
+
+    // Solo con pagos.diario.habilitado=true: las altas se aceptan en el diario local y se validan después
+    @Autowired(required = false)
+    private AceptacionPagosService aceptacion;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MappingJackson2CborHttpMessageConverter cborConverter;
+
+    // Pagos por transacción en las cargas masivas
+    @Value("${pagos.batch.bloque:1000}")
+    private int bloqueLote;
+
+    // Siempre una página (100 por defecto); la tabla completa solo se obtiene con las exportaciones NDJSON/CBOR
     @GetMapping
-    public List<PagoDTO> getAll() {
-        return svc.obtenerTodo();
+    public ResponseEntity<List<PagoDTO>> getAll(
+            @RequestParam(required = false) Long after,
+            @RequestParam(required = false) Integer limit) {
+        int limite = limite(limit);
+        return pagina(svc.obtenerPagina(after, limite), limite);
+    }
+
+    // ?fields=id,monto,estado: solo esos campos, leídos con una proyección en lugar de la entidad completa
+    @GetMapping(params = "fields")
+    public ResponseEntity<List<Map<String, Object>>> getAllCampos(
+            @RequestParam List<String> fields,
+            @RequestParam(required = false) Long after,
+            @RequestParam(defaultValue = "100") int limit) {
+        int limite = limite(limit);
+        return pagina(svc.obtenerPagina(after, limite, fields), fields, limite);
+    }
+
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamAll() {
+        return ndjson(svc::transmitirTodo);
+    }
+
+    @GetMapping(produces = APPLICATION_CBOR_SEQ)
+    public ResponseEntity<StreamingResponseBody> streamAllCbor() {
+        return cborSeq(svc::transmitirTodo);
     }
 
     @GetMapping("/{id}")
@@ -37,8 +119,48 @@ public class PagoController {
     }
 
     @PostMapping
-    public ResponseEntity<PagoDTO> create(@RequestBody PagoDTO dto) {
-        return ResponseEntity.ok(svc.guardar(dto));
+    public ResponseEntity<PagoDTO> create(
+            @RequestHeader(value = "Idempotency-Key", required = false) String clave,
+            @RequestBody PagoDTO dto) {
+        if (aceptacion != null) {
+            // 202 con el pago en PENDIENTE_VALIDACION; el resultado se consulta en la URL de Location
+            AceptacionPagoDTO aceptada = aceptacion.aceptar(clave, dto);
+            PagoDTO pendiente = dto.copia();
+            pendiente.setEstado(aceptada.getEstado());
+            return ResponseEntity.accepted().location(URI.create("/pagos/aceptados/" + aceptada.getRecibo())).body(pendiente);
+        }
+        // Con clave, los reintentos del cliente devuelven el pago ya creado en lugar de duplicarlo
+        PagoDTO creado = idempotencia.clave(clave, dto)
+                .map(c -> idempotencia.guardar(c, dto))
+                .orElseGet(() -> svc.guardar(dto));
+        return ResponseEntity.ok(creado);
+    }
+
+    @PostMapping(value = "/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public List<ResultadoLoteDTO> createBatch(@RequestBody List<PagoDTO> dtos) {
+        List<ResultadoLoteDTO> resultados = new ArrayList<>(dtos.size());
+        for (int desde = 0; desde < dtos.size(); desde += bloqueLote) {
+            resultados.addAll(svc.guardarLote(dtos.subList(desde, Math.min(desde + bloqueLote, dtos.size())), desde));
+        }
+        return resultados;
+    }
+
+    // Un PagoDTO por línea; se procesa por bloques a medida que se lee el cuerpo
+    @PostMapping(value = "/batch", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public List<ResultadoLoteDTO> createBatchNdjson(HttpServletRequest request) throws IOException {
+        List<ResultadoLoteDTO> resultados = new ArrayList<>();
+        List<PagoDTO> bloque = new ArrayList<>(bloqueLote);
+        try (MappingIterator<PagoDTO> pagos = objectMapper.readerFor(PagoDTO.class).readValues(request.getInputStream())) {
+            while (pagos.hasNextValue()) {
+                bloque.add(pagos.nextValue());
+                if (bloque.size() >= bloqueLote) {
+                    resultados.addAll(svc.guardarLote(bloque, resultados.size()));
+                    bloque.clear();
+                }
+            }
+        }
+        resultados.addAll(svc.guardarLote(bloque, resultados.size()));
+        return resultados;
     }
 
     @PutMapping("/{id}")
@@ -48,6 +170,16 @@ public class PagoController {
         return ResponseEntity.ok(svc.actualizar(id, dto));
     }
 
+    // Transición condicional: 409 con el pago actual si su estado ya no es el esperado
+    @PatchMapping("/{id}/estado")
+    public ResponseEntity<ActualizacionPagoDTO> cambiarEstado(
+            @PathVariable Long id,
+            @RequestBody CambioEstadoDTO cambio) {
+        return svc.cambiarEstado(id, cambio.getEsperado(), cambio.getNuevo())
+                .map(r -> r.isAplicado() ? ResponseEntity.ok(r) : ResponseEntity.status(HttpStatus.CONFLICT).body(r))
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
     @DeleteMapping("/{id}")
     public ResponseEntity<Void> delete(@PathVariable Long id) {
         if (svc.eliminar(id)) {
@@ -58,12 +190,173 @@ public class PagoController {
     }
     
     @GetMapping("/cita/{citaId}")
-    public List<PagoDTO> getByCita(@PathVariable Long citaId) {
-        return svc.obtenerPorCita(citaId);
+    public ResponseEntity<List<PagoDTO>> getByCita(
+            @PathVariable Long citaId,
+            @RequestParam(required = false) Long after,
+            @RequestParam(required = false) Integer limit) {
+        int limite = limite(limit);
+        return pagina(svc.obtenerPaginaPorCita(citaId, after, limite), limite);
+    }
+
+    @GetMapping(value = "/cita/{citaId}", params = "fields")
+    public ResponseEntity<List<Map<String, Object>>> getByCitaCampos(
+            @PathVariable Long citaId,
+            @RequestParam List<String> fields,
+            @RequestParam(required = false) Long after,
+            @RequestParam(defaultValue = "100") int limit) {
+        int limite = limite(limit);
+        return pagina(svc.obtenerPaginaPorCita(citaId, after, limite, fields), fields, limite);
+    }
+
+    @GetMapping(value = "/cita/{citaId}", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamByCita(@PathVariable Long citaId) {
+        return ndjson(destino -> svc.transmitirPorCita(citaId, destino));
+    }
+
+    @GetMapping(value = "/cita/{citaId}", produces = APPLICATION_CBOR_SEQ)
+    public ResponseEntity<StreamingResponseBody> streamByCitaCbor(@PathVariable Long citaId) {
+        return cborSeq(destino -> svc.transmitirPorCita(citaId, destino));
     }
     
     @GetMapping("/estado/{estado}")
-    public List<PagoDTO> getByEstado(@PathVariable String estado) {
-        return svc.obtenerPorEstado(estado);
+    public ResponseEntity<List<PagoDTO>> getByEstado(
+            @PathVariable String estado,
+            @RequestParam(required = false) Long after,
+            @RequestParam(required = false) Integer limit) {
+        int limite = limite(limit);
+        return pagina(svc.obtenerPaginaPorEstado(estado, after, limite), limite);
+    }
+
+    @GetMapping(value = "/estado/{estado}", params = "fields")
+    public ResponseEntity<List<Map<String, Object>>> getByEstadoCampos(
+            @PathVariable String estado,
+            @RequestParam List<String> fields,
+            @RequestParam(required = false) Long after,
+            @RequestParam(defaultValue = "100") int limit) {
+        int limite = limite(limit);
+        return pagina(svc.obtenerPaginaPorEstado(estado, after, limite, fields), fields, limite);
+    }
+
+    @GetMapping(value = "/estado/{estado}", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamByEstado(@PathVariable String estado) {
+        return ndjson(destino -> svc.transmitirPorEstado(estado, destino));
+    }
+
+    @GetMapping(value = "/estado/{estado}", produces = APPLICATION_CBOR_SEQ)
+    public ResponseEntity<StreamingResponseBody> streamByEstadoCbor(@PathVariable String estado) {
+        return cborSeq(destino -> svc.transmitirPorEstado(estado, destino));
+    }
+
+    // Estado o método de pago desconocidos al guardar/actualizar, campo o clave de idempotencia no válidos.
+    // Otros IllegalArgumentException son fallos del servicio, no del cliente, y siguen siendo un 500
+    @ExceptionHandler(SolicitudInvalidaException.class)
+    public ResponseEntity<String> handleSolicitudInvalida(SolicitudInvalidaException e) {
+        return ResponseEntity.badRequest().body(e.getMessage());
+    }
+
+    // El pago cambió desde que el cliente lo leyó (versión distinta o actualización concurrente)
+    @ExceptionHandler(OptimisticLockingFailureException.class)
+    public ResponseEntity<String> handleConflicto(OptimisticLockingFailureException e) {
+        return ResponseEntity.status(HttpStatus.CONFLICT).body("El pago fue modificado por otra operación; vuelva a leerlo e inténtelo de nuevo");
+    }
+
+    // Misma Idempotency-Key con un cuerpo distinto al de la petición original
+    @ExceptionHandler(ClaveIdempotenciaReutilizadaException.class)
+    public ResponseEntity<String> handleClaveReutilizada(ClaveIdempotenciaReutilizadaException e) {
+        return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY).body(e.getMessage());
+    }
+
+    // Demasiadas altas diferidas sin validar
+    @ExceptionHandler(DiarioAltasLlenoException.class)
+    public ResponseEntity<String> handleDiarioLleno(DiarioAltasLlenoException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header("Retry-After", "5").body(e.getMessage());
+    }
+
+    // El diario de altas diferidas no pudo dejar el pago en disco
+    @ExceptionHandler(DiarioNoDisponibleException.class)
+    public ResponseEntity<String> handleDiarioNoDisponible(DiarioNoDisponibleException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header("Retry-After", "5").body(e.getMessage());
+    }
+
+    private static int limite(Integer limit) {
+        if (limit == null) {
+            return LIMIT_DEFECTO;
+        }
+        return Math.max(1, Math.min(limit, LIMIT_MAXIMO));
+    }
+
+    private static ResponseEntity<List<PagoDTO>> pagina(List<PagoDTO> pagos, int limite) {
+        ResponseEntity.BodyBuilder respuesta = ResponseEntity.ok();
+        if (pagos.size() == limite) {
+            respuesta.header(NEXT_CURSOR, String.valueOf(pagos.get(pagos.size() - 1).getId()));
+        }
+        return respuesta.body(pagos);
+    }
+
+    // Mismo cursor que pagina(); cada pago se reduce a un mapa con los campos pedidos, en ese orden
+    private static ResponseEntity<List<Map<String, Object>>> pagina(List<PagoDTO> pagos, List<String> campos, int limite) {
+        ResponseEntity.BodyBuilder respuesta = ResponseEntity.ok();
+        if (pagos.size() == limite) {
+            respuesta.header(NEXT_CURSOR, String.valueOf(pagos.get(pagos.size() - 1).getId()));
+        }
+        List<Map<String, Object>> filas = new ArrayList<>(pagos.size());
+        for (PagoDTO pago : pagos) {
+            Map<String, Object> fila = new LinkedHashMap<>();
+            for (String campo : campos) {
+                fila.put(campo, valor(pago, campo));
+            }
+            filas.add(fila);
+        }
+        return respuesta.body(filas);
+    }
+
+    private static Object valor(PagoDTO pago, String campo) {
+        return switch (campo) {
+            case "id" -> pago.getId();
+            case "citaId" -> pago.getCitaId();
+            case "monto" -> pago.getMonto();
+            case "metodoPago" -> pago.getMetodoPago();
+            case "fechaPago" -> pago.getFechaPago();
+            case "estado" -> pago.getEstado();
+            case "referencia" -> pago.getReferencia();
+            case "version" -> pago.getVersion();
+            case "nombrePaciente" -> pago.getNombrePaciente();
+            case "nombreMedico" -> pago.getNombreMedico();
+            default -> throw new SolicitudInvalidaException("Campo de pago desconocido: " + campo);
+        };
+    }
+
+    /**
+     * Escribe un pago por línea (NDJSON) a medida que se leen, sin acumular el resultado en memoria.
+     */
+    private ResponseEntity<StreamingResponseBody> ndjson(Consumer<Consumer<PagoDTO>> fuente) {
+        return transmitir(objectMapper, fuente, MediaType.APPLICATION_NDJSON, true);
+    }
+
+    /**
+     * Igual que {@link #ndjson} pero en CBOR: un valor tras otro, sin separador.
+     */
+    private ResponseEntity<StreamingResponseBody> cborSeq(Consumer<Consumer<PagoDTO>> fuente) {
+        return transmitir(cborConverter.getObjectMapper(), fuente, MediaType.parseMediaType(APPLICATION_CBOR_SEQ), false);
+    }
+
+    private static ResponseEntity<StreamingResponseBody> transmitir(ObjectMapper mapper, Consumer<Consumer<PagoDTO>> fuente,
+            MediaType tipo, boolean saltoDeLinea) {
+        ObjectWriter writer = mapper.writer()
+                .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        StreamingResponseBody cuerpo = out -> fuente.accept(pago -> {
+            try {
+                writer.writeValue(out, pago);
+                if (saltoDeLinea) {
+                    out.write('\n');
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        return ResponseEntity.ok()
+                .contentType(tipo)
+                .body(cuerpo);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,117 @@
+package com.clinica.pagos.controller;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.clinica.pagos.domain.dto.PagoDTO;
+import com.clinica.pagos.domain.service.PagoReactivoService;
+import com.clinica.pagos.domain.service.SolicitudInvalidaException;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * API no bloqueante, en paralelo a {@link PagoController}. Ningún hilo del servidor queda esperando
+ * a MySQL ni al servicio de citas: la petición se libera y se completa cuando llega el resultado.
+ * Los listados en NDJSON se emiten según los pide el cliente (backpressure); en JSON se limitan con {@code limit},
+ * y la última página se lee solo hasta ese límite.
+ * <p>
+ * La aplicación arranca sobre el contenedor de servlets (spring-boot-starter-web va por delante de webflux), así
+ * que estos métodos se sirven con Spring MVC y peticiones asíncronas de Servlet: se libera el hilo mientras se
+ * espera a MySQL o a citas, pero la escritura de la respuesta sigue siendo E/S bloqueante del contenedor y un
+ * cliente lento ocupa un hilo mientras se le escribe. Para una pila no bloqueante de extremo a extremo haría
+ * falta arrancar con WebFlux (spring.main.web-application-type=reactive) y sin los controladores MVC.
+ */
+@RestController
+@RequestMapping("/v2/pagos")
+public class PagoReactivoController {
+
+    @Autowired
+    private PagoReactivoService svc;
+
+    @GetMapping
+    public Flux<PagoDTO> getAll(
+            @RequestParam(required = false) Long after,
+            @RequestParam(defaultValue = "100") int limit) {
+        return svc.listar(after, limite(limit));
+    }
+
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<PagoDTO> streamAll(@RequestParam(required = false) Long after) {
+        return svc.listar(after);
+    }
+
+    @GetMapping("/{id}")
+    public Mono<ResponseEntity<PagoDTO>> getById(@PathVariable Long id) {
+        return svc.obtenerPorId(id)
+                .map(ResponseEntity::ok)
+                .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
+
+    @PostMapping
+    public Mono<PagoDTO> create(@RequestBody PagoDTO dto) {
+        return svc.guardar(dto);
+    }
+
+    @PutMapping("/{id}")
+    public Mono<ResponseEntity<PagoDTO>> update(@PathVariable Long id, @RequestBody PagoDTO dto) {
+        return svc.actualizar(id, dto)
+                .map(ResponseEntity::ok)
+                .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
+
+    @DeleteMapping("/{id}")
+    public Mono<ResponseEntity<Void>> delete(@PathVariable Long id) {
+        return svc.eliminar(id)
+                .map(eliminado -> eliminado
+                        ? ResponseEntity.noContent().<Void>build()
+                        : ResponseEntity.notFound().<Void>build());
+    }
+
+    @GetMapping("/cita/{citaId}")
+    public Flux<PagoDTO> getByCita(
+            @PathVariable Long citaId,
+            @RequestParam(required = false) Long after,
+            @RequestParam(defaultValue = "100") int limit) {
+        return svc.listarPorCita(citaId, after, limite(limit));
+    }
+
+    @GetMapping(value = "/cita/{citaId}", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<PagoDTO> streamByCita(@PathVariable Long citaId, @RequestParam(required = false) Long after) {
+        return svc.listarPorCita(citaId, after);
+    }
+
+    @GetMapping("/estado/{estado}")
+    public Flux<PagoDTO> getByEstado(
+            @PathVariable String estado,
+            @RequestParam(required = false) Long after,
+            @RequestParam(defaultValue = "100") int limit) {
+        return svc.listarPorEstado(estado, after, limite(limit));
+    }
+
+    @GetMapping(value = "/estado/{estado}", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<PagoDTO> streamByEstado(@PathVariable String estado, @RequestParam(required = false) Long after) {
+        return svc.listarPorEstado(estado, after);
+    }
+
+    // Cita inexistente, estado o método de pago desconocidos
+    @ExceptionHandler(SolicitudInvalidaException.class)
+    public ResponseEntity<String> handleSolicitudInvalida(SolicitudInvalidaException e) {
+        return ResponseEntity.badRequest().body(e.getMessage());
+    }
+
+    private static long limite(int limit) {
+        return Math.max(1, Math.min(limit, PagoController.LIMIT_MAXIMO));
+    }
+}
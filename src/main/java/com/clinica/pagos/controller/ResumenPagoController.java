@@ -0,0 +1,48 @@
+package com.clinica.pagos.controller;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.clinica.pagos.domain.dto.ResumenPagoDTO;
+import com.clinica.pagos.domain.repository.IResumenPagos;
+import com.clinica.pagos.domain.service.ResumenPagoService;
+import com.clinica.pagos.domain.service.SolicitudInvalidaException;
+
+@RestController
+@RequestMapping("/pagos/resumen")
+public class ResumenPagoController {
+
+    @Autowired
+    private ResumenPagoService svc;
+
+    // GET /pagos/resumen?por=estado|metodo|dia|mes&desde=2025-01-01&hasta=2025-12-31
+    @GetMapping
+    public List<ResumenPagoDTO> resumir(
+            @RequestParam(defaultValue = IResumenPagos.POR_ESTADO) String por,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate desde,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate hasta) {
+        return svc.resumir(por, desde, hasta);
+    }
+
+    // Recalcula los agregados a partir de la tabla de pagos (backfill)
+    @PostMapping("/reconstruir")
+    public Map<String, Integer> reconstruir() {
+        return Map.of("filas", svc.reconstruir());
+    }
+
+    @ExceptionHandler(SolicitudInvalidaException.class)
+    public ResponseEntity<String> handleSolicitudInvalida(SolicitudInvalidaException e) {
+        return ResponseEntity.badRequest().body(e.getMessage());
+    }
+}
@@ -0,0 +1,47 @@
+package com.clinica.pagos.domain.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * Estado de un alta aceptada en modo diferido (GET /pagos/aceptados/{recibo}).
+ */
+public class AceptacionPagoDTO {
+
+    public static final String PENDIENTE_VALIDACION = "PENDIENTE_VALIDACION";
+    public static final String CREADO = "CREADO";
+    public static final String RECHAZADO = "RECHAZADO";
+
+    private long recibo; // número del registro en el diario local
+    private String estado; // PENDIENTE_VALIDACION, CREADO, RECHAZADO
+    private Long pagoId;
+    private String referencia;
+    private String error;
+    private LocalDateTime aceptadoEn;
+
+    public AceptacionPagoDTO() {}
+
+    public AceptacionPagoDTO(long recibo, String estado, String referencia, LocalDateTime aceptadoEn) {
+        this.recibo = recibo;
+        this.estado = estado;
+        this.referencia = referencia;
+        this.aceptadoEn = aceptadoEn;
+    }
+
+    public long getRecibo() { return recibo; }
+    public void setRecibo(long recibo) { this.recibo = recibo; }
+
+    public String getEstado() { return estado; }
+    public void setEstado(String estado) { this.estado = estado; }
+
+    public Long getPagoId() { return pagoId; }
+    public void setPagoId(Long pagoId) { this.pagoId = pagoId; }
+
+    public String getReferencia() { return referencia; }
+    public void setReferencia(String referencia) { this.referencia = referencia; }
+
+    public String getError() { return error; }
+    public void setError(String error) { this.error = error; }
+
+    public LocalDateTime getAceptadoEn() { return aceptadoEn; }
+    public void setAceptadoEn(LocalDateTime aceptadoEn) { this.aceptadoEn = aceptadoEn; }
+}
@@ -0,0 +1,38 @@
+package com.clinica.pagos.domain.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+/**
+ * Resultado de una actualización o transición de estado: el pago tal como quedó y el estado
+ * que tenía justo antes, leído en la misma operación.
+ */
+public class ActualizacionPagoDTO {
+    private PagoDTO pago;
+    // Copia del pago antes del cambio, para mantener los agregados; no se devuelve al cliente
+    @JsonIgnore
+    private PagoDTO pagoAnterior;
+    private String estadoAnterior;
+    // false si la transición condicional no se aplicó porque el estado actual no era el esperado
+    private boolean aplicado;
+
+    public ActualizacionPagoDTO() {}
+
+    public ActualizacionPagoDTO(PagoDTO pago, PagoDTO pagoAnterior, String estadoAnterior, boolean aplicado) {
+        this.pago = pago;
+        this.pagoAnterior = pagoAnterior;
+        this.estadoAnterior = estadoAnterior;
+        this.aplicado = aplicado;
+    }
+
+    public PagoDTO getPago() { return pago; }
+    public void setPago(PagoDTO pago) { this.pago = pago; }
+
+    public PagoDTO getPagoAnterior() { return pagoAnterior; }
+    public void setPagoAnterior(PagoDTO pagoAnterior) { this.pagoAnterior = pagoAnterior; }
+
+    public String getEstadoAnterior() { return estadoAnterior; }
+    public void setEstadoAnterior(String estadoAnterior) { this.estadoAnterior = estadoAnterior; }
+
+    public boolean isAplicado() { return aplicado; }
+    public void setAplicado(boolean aplicado) { this.aplicado = aplicado; }
+}
@@ -0,0 +1,34 @@
+package com.clinica.pagos.domain.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * Registro del diario de altas diferidas: el pago tal como llegó y los datos para registrarlo de forma idempotente.
+ */
+public class AltaDiarioDTO {
+    private String clave; // Idempotency-Key del cliente; null si no la envió
+    private String huella;
+    private LocalDateTime aceptadoEn;
+    private PagoDTO pago;
+
+    public AltaDiarioDTO() {}
+
+    public AltaDiarioDTO(String clave, String huella, LocalDateTime aceptadoEn, PagoDTO pago) {
+        this.clave = clave;
+        this.huella = huella;
+        this.aceptadoEn = aceptadoEn;
+        this.pago = pago;
+    }
+
+    public String getClave() { return clave; }
+    public void setClave(String clave) { this.clave = clave; }
+
+    public String getHuella() { return huella; }
+    public void setHuella(String huella) { this.huella = huella; }
+
+    public LocalDateTime getAceptadoEn() { return aceptadoEn; }
+    public void setAceptadoEn(LocalDateTime aceptadoEn) { this.aceptadoEn = aceptadoEn; }
+
+    public PagoDTO getPago() { return pago; }
+    public void setPago(PagoDTO pago) { this.pago = pago; }
+}
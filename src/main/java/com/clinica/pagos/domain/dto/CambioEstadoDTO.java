@@ -0,0 +1,13 @@
+package com.clinica.pagos.domain.dto;
+
+// Cuerpo de PATCH /pagos/{id}/estado: pasa a "nuevo" solo si el estado actual es "esperado"
+public class CambioEstadoDTO {
+    private String esperado;
+    private String nuevo;
+
+    public String getEsperado() { return esperado; }
+    public void setEsperado(String esperado) { this.esperado = esperado; }
+
+    public String getNuevo() { return nuevo; }
+    public void setNuevo(String nuevo) { this.nuevo = nuevo; }
+}
@@ -0,0 +1,61 @@
+package com.clinica.pagos.domain.dto;
+
+import java.time.LocalDateTime;
+
+import com.fasterxml.jackson.annotation.JsonRawValue;
+
+/**
+ * Evento del registro de cambios de pagos (GET /pagos/events).
+ * {@code seq} es estrictamente creciente: un consumidor que guarda el último seq procesado
+ * puede reanudar desde ahí sin perder ni repetir eventos.
+ */
+public class EventoPagoDTO {
+
+    public static final String CREADO = "CREADO";
+    public static final String ACTUALIZADO = "ACTUALIZADO";
+    public static final String ESTADO_CAMBIADO = "ESTADO_CAMBIADO";
+    public static final String ELIMINADO = "ELIMINADO";
+
+    private long seq;
+    private String tipo;
+    private Long pagoId;
+    private String estadoAnterior;
+    private String estado;
+    // PagoDTO serializado tal como quedó (o como estaba, si se eliminó); se entrega sin volver a parsearlo
+    @JsonRawValue
+    private String pago;
+    private LocalDateTime creadoEn;
+
+    public EventoPagoDTO() {}
+
+    public EventoPagoDTO(long seq, String tipo, Long pagoId, String estadoAnterior, String estado, String pago, LocalDateTime creadoEn) {
+        this.seq = seq;
+        this.tipo = tipo;
+        this.pagoId = pagoId;
+        this.estadoAnterior = estadoAnterior;
+        this.estado = estado;
+        this.pago = pago;
+        this.creadoEn = creadoEn;
+    }
+
+    public long getSeq() { return seq; }
+    public void setSeq(long seq) { this.seq = seq; }
+
+    public String getTipo() { return tipo; }
+    public void setTipo(String tipo) { this.tipo = tipo; }
+
+    public Long getPagoId() { return pagoId; }
+    public void setPagoId(Long pagoId) { this.pagoId = pagoId; }
+
+    public String getEstadoAnterior() { return estadoAnterior; }
+    public void setEstadoAnterior(String estadoAnterior) { this.estadoAnterior = estadoAnterior; }
+
+    public String getEstado() { return estado; }
+    public void setEstado(String estado) { this.estado = estado; }
+
+    public String getPago() { return pago; }
+    public void setPago(String pago) { this.pago = pago; }
+
+    public LocalDateTime getCreadoEn() { return creadoEn; }
+    public void setCreadoEn(LocalDateTime creadoEn) { this.creadoEn = creadoEn; }
+}
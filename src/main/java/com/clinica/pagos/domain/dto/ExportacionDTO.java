@@ -0,0 +1,51 @@
+package com.clinica.pagos.domain.dto;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Progreso de una exportación de pagos (POST /pagos/exportaciones).
+ */
+public class ExportacionDTO {
+    private String id;
+    private String estado; // EN_CURSO, COMPLETADA, FALLIDA
+    private List<String> formatos;
+    private int tramos;
+    private int tramosTerminados;
+    private long filas;
+    private LocalDateTime inicio;
+    private LocalDateTime fin;
+    private String error;
+    // Rutas de los archivos finales; vacía hasta que la exportación se completa
+    private List<String> archivos;
+
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+
+    public String getEstado() { return estado; }
+    public void setEstado(String estado) { this.estado = estado; }
+
+    public List<String> getFormatos() { return formatos; }
+    public void setFormatos(List<String> formatos) { this.formatos = formatos; }
+
+    public int getTramos() { return tramos; }
+    public void setTramos(int tramos) { this.tramos = tramos; }
+
+    public int getTramosTerminados() { return tramosTerminados; }
+    public void setTramosTerminados(int tramosTerminados) { this.tramosTerminados = tramosTerminados; }
+
+    public long getFilas() { return filas; }
+    public void setFilas(long filas) { this.filas = filas; }
+
+    public LocalDateTime getInicio() { return inicio; }
+    public void setInicio(LocalDateTime inicio) { this.inicio = inicio; }
+
+    public LocalDateTime getFin() { return fin; }
+    public void setFin(LocalDateTime fin) { this.fin = fin; }
+
+    public String getError() { return error; }
+    public void setError(String error) { this.error = error; }
+
+    public List<String> getArchivos() { return archivos; }
+    public void setArchivos(List<String> archivos) { this.archivos = archivos; }
+}
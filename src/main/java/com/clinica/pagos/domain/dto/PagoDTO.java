@@ -11,11 +11,28 @@ public class PagoDTO {
     private LocalDateTime fechaPago;
     private String estado; // PENDIENTE, COMPLETADO, ANULADO
     private String referencia;
+    private Long version; // Bloqueo optimista: si se envía al actualizar, debe coincidir con la actual
     
     // Datos adicionales (no se almacenan en la entidad Pago)
     private String nombrePaciente;
     private String nombreMedico;
     
+    // Copia superficial (todos los campos son inmutables); la usan las cachés para no compartir instancias
+    public PagoDTO copia() {
+        PagoDTO copia = new PagoDTO();
+        copia.id = id;
+        copia.citaId = citaId;
+        copia.monto = monto;
+        copia.metodoPago = metodoPago;
+        copia.fechaPago = fechaPago;
+        copia.estado = estado;
+        copia.referencia = referencia;
+        copia.version = version;
+        copia.nombrePaciente = nombrePaciente;
+        copia.nombreMedico = nombreMedico;
+        return copia;
+    }
+    
     public Long getId() { return id; }
     public void setId(Long id) { this.id = id; }
     
@@ -37,6 +54,9 @@ public class PagoDTO {
     public String getReferencia() { return referencia; }
     public void setReferencia(String referencia) { this.referencia = referencia; }
     
+    public Long getVersion() { return version; }
+    public void setVersion(Long version) { this.version = version; }
+    
     public String getNombrePaciente() { return nombrePaciente; }
     public void setNombrePaciente(String nombrePaciente) { this.nombrePaciente = nombrePaciente; }
     
@@ -0,0 +1,22 @@
+package com.clinica.pagos.domain.dto;
+
+/**
+ * Respuesta guardada para una Idempotency-Key: el pago creado y la huella (SHA-256) de la petición original.
+ */
+public class RespuestaIdempotenteDTO {
+    private String huella;
+    private PagoDTO pago;
+
+    public RespuestaIdempotenteDTO() {}
+
+    public RespuestaIdempotenteDTO(String huella, PagoDTO pago) {
+        this.huella = huella;
+        this.pago = pago;
+    }
+
+    public String getHuella() { return huella; }
+    public void setHuella(String huella) { this.huella = huella; }
+
+    public PagoDTO getPago() { return pago; }
+    public void setPago(PagoDTO pago) { this.pago = pago; }
+}
@@ -0,0 +1,51 @@
+package com.clinica.pagos.domain.dto;
+
+/**
+ * Resultado de un elemento de una carga masiva de pagos (POST /pagos/batch).
+ */
+public class ResultadoLoteDTO {
+
+    public static final String CREADO = "CREADO";
+    public static final String RECHAZADO = "RECHAZADO";
+
+    private int indice; // posición del pago en la petición, empezando en 0
+    private String resultado; // CREADO, RECHAZADO
+    private Long id;
+    private String referencia;
+    private String error;
+
+    public ResultadoLoteDTO() {}
+
+    public static ResultadoLoteDTO creado(int indice, PagoDTO pago) {
+        ResultadoLoteDTO r = new ResultadoLoteDTO();
+        r.indice = indice;
+        r.resultado = CREADO;
+        r.id = pago.getId();
+        r.referencia = pago.getReferencia();
+        return r;
+    }
+
+    public static ResultadoLoteDTO rechazado(int indice, PagoDTO pago, String error) {
+        ResultadoLoteDTO r = new ResultadoLoteDTO();
+        r.indice = indice;
+        r.resultado = RECHAZADO;
+        r.referencia = pago != null ? pago.getReferencia() : null;
+        r.error = error;
+        return r;
+    }
+
+    public int getIndice() { return indice; }
+    public void setIndice(int indice) { this.indice = indice; }
+
+    public String getResultado() { return resultado; }
+    public void setResultado(String resultado) { this.resultado = resultado; }
+
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public String getReferencia() { return referencia; }
+    public void setReferencia(String referencia) { this.referencia = referencia; }
+
+    public String getError() { return error; }
+    public void setError(String error) { this.error = error; }
+}
@@ -0,0 +1,30 @@
+package com.clinica.pagos.domain.dto;
+
+import java.math.BigDecimal;
+
+/**
+ * Una fila del informe de pagos: cantidad y suma de montos para un valor de la agrupación pedida
+ * (un estado, un método de pago, un día "2025-05-01" o un mes "2025-05").
+ */
+public class ResumenPagoDTO {
+    private String clave;
+    private long cantidad;
+    private BigDecimal total;
+
+    public ResumenPagoDTO() {}
+
+    public ResumenPagoDTO(String clave, long cantidad, BigDecimal total) {
+        this.clave = clave;
+        this.cantidad = cantidad;
+        this.total = total;
+    }
+
+    public String getClave() { return clave; }
+    public void setClave(String clave) { this.clave = clave; }
+
+    public long getCantidad() { return cantidad; }
+    public void setCantidad(long cantidad) { this.cantidad = cantidad; }
+
+    public BigDecimal getTotal() { return total; }
+    public void setTotal(BigDecimal total) { this.total = total; }
+}
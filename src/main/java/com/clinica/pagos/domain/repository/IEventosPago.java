@@ -0,0 +1,28 @@
+package com.clinica.pagos.domain.repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import com.clinica.pagos.domain.dto.EventoPagoDTO;
+import com.clinica.pagos.domain.dto.PagoDTO;
+
+/**
+ * Registro de eventos de pagos, solo de inserción.
+ * Las escrituras deben hacerse al final de la transacción que modifica {@code pagos}:
+ * reservan la secuencia y la retienen hasta el commit.
+ */
+public interface IEventosPago {
+
+    void registrar(String tipo, String estadoAnterior, PagoDTO pago);
+
+    // Un evento por pago, con secuencias consecutivas
+    void registrarTodos(String tipo, List<PagoDTO> pagos);
+
+    // Eventos con seq mayor que despuesDe, en orden
+    List<EventoPagoDTO> leer(long despuesDe, int limite);
+
+    long ultimaSecuencia();
+
+    // Borra los eventos más antiguos, creados antes de antesDe; devuelve cuántos
+    int purgar(LocalDateTime antesDe);
+}
@@ -0,0 +1,18 @@
+package com.clinica.pagos.domain.repository;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+import com.clinica.pagos.domain.dto.PagoDTO;
+import com.clinica.pagos.domain.dto.RespuestaIdempotenteDTO;
+
+public interface IIdempotencia {
+
+    Optional<RespuestaIdempotenteDTO> buscar(String clave);
+
+    // Dentro de la transacción que crea el pago; DuplicateKeyException si la clave ya existe
+    void registrar(String clave, String huella, PagoDTO respuesta);
+
+    // Elimina las claves creadas antes de la fecha indicada; devuelve cuántas
+    int purgar(LocalDateTime antesDe);
+}
@@ -1,18 +1,51 @@
 package com.clinica.pagos.domain.repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
 
+import com.clinica.pagos.domain.dto.ActualizacionPagoDTO;
 import com.clinica.pagos.domain.dto.PagoDTO;
 
 public interface IPago {
-    List<PagoDTO> getAll();
     Optional<PagoDTO> getById(Long id);
+    // Varios pagos con una sola consulta (IN); los que no existen no aparecen y el orden no está garantizado
+    List<PagoDTO> getByIds(Collection<Long> ids);
     PagoDTO save(PagoDTO dto);
-    PagoDTO update(Long id, PagoDTO dto);
-    boolean delete(Long id);
+    // Inserción masiva con batching JDBC; devuelve los pagos con su ID, en el mismo orden
+    List<PagoDTO> saveAll(List<PagoDTO> dtos);
+    // Actualiza en sitio con una sola lectura; devuelve también el estado anterior. null si el pago no existe
+    ActualizacionPagoDTO update(Long id, PagoDTO dto);
+    // Varias actualizaciones con una sola lectura y un solo flush (UPDATE por lotes JDBC); un resultado por
+    // elemento, en el mismo orden, null si ese pago no existe. Los IDs no pueden repetirse
+    List<ActualizacionPagoDTO> updateAll(List<Long> ids, List<PagoDTO> dtos);
+    // UPDATE ... SET estado = nuevo WHERE id = ? AND estado = esperado; true si se aplicó
+    boolean cambiarEstado(Long id, String esperado, String nuevo);
+    // Devuelve el pago eliminado, o vacío si no existía
+    Optional<PagoDTO> delete(Long id);
     
     // Métodos avanzados
     List<PagoDTO> getByCitaId(Long citaId);
-    List<PagoDTO> getByEstado(String estado);
+
+    // Paginación por cursor: pagos con id mayor que afterId (null = desde el principio), ordenados por id
+    List<PagoDTO> getPage(Long afterId, int limit);
+    List<PagoDTO> getPageByCitaId(Long citaId, Long afterId, int limit);
+    List<PagoDTO> getPageByEstado(String estado, Long afterId, int limit);
+
+    // Las mismas páginas cargando solo las columnas indicadas (nombres de campo de PagoDTO persistidos);
+    // el resto de campos queda a null
+    List<PagoDTO> getPage(Long afterId, int limit, Set<String> campos);
+    List<PagoDTO> getPageByCitaId(Long citaId, Long afterId, int limit, Set<String> campos);
+    List<PagoDTO> getPageByEstado(String estado, Long afterId, int limit, Set<String> campos);
+
+    // Recorrido en streaming, fila a fila, sin materializar el resultado completo
+    void streamAll(Consumer<PagoDTO> consumer);
+    // Pagos con afterId < id <= hastaId, en orden de id (tramos de una exportación)
+    void streamRango(Long afterId, Long hastaId, Consumer<PagoDTO> consumer);
+
+    // Menor y mayor ID existentes; vacío si no hay pagos
+    Optional<Long> getMinId();
+    Optional<Long> getMaxId();
 }
\ No newline at end of file
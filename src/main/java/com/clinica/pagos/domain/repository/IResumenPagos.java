@@ -0,0 +1,35 @@
+package com.clinica.pagos.domain.repository;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import com.clinica.pagos.domain.dto.PagoDTO;
+import com.clinica.pagos.domain.dto.ResumenPagoDTO;
+
+/**
+ * Agregados de pagos por día, estado y método de pago.
+ * Las escrituras deben hacerse dentro de la misma transacción que modifica {@code pagos}.
+ */
+public interface IResumenPagos {
+
+    String POR_ESTADO = "estado";
+    String POR_METODO = "metodo";
+    String POR_DIA = "dia";
+    String POR_MES = "mes";
+
+    // Resta "anterior" y suma "actual" (cualquiera de los dos puede ser null: alta o baja)
+    void aplicar(PagoDTO anterior, PagoDTO actual);
+
+    // Suma una tanda de pagos nuevos con un único batch de upserts
+    void agregar(List<PagoDTO> nuevos);
+
+    // Varios cambios a la vez (anteriores.get(i) pasa a actuales.get(i); null en altas y bajas) con un único
+    // batch de upserts: todas las filas de la transacción se bloquean en orden de clave
+    void aplicarTodos(List<PagoDTO> anteriores, List<PagoDTO> actuales);
+
+    // desde/hasta (inclusive) pueden ser null para no acotar por fecha
+    List<ResumenPagoDTO> resumir(String agrupacion, LocalDate desde, LocalDate hasta);
+
+    // Recalcula la tabla completa desde pagos; devuelve las filas de agregado generadas
+    int reconstruir();
+}
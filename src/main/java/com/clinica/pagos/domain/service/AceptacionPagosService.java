@@ -0,0 +1,367 @@
+package com.clinica.pagos.domain.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.NonTransientDataAccessException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.CannotCreateTransactionException;
+
+import com.clinica.pagos.domain.dto.AceptacionPagoDTO;
+import com.clinica.pagos.domain.dto.AltaDiarioDTO;
+import com.clinica.pagos.domain.dto.PagoDTO;
+import com.clinica.pagos.domain.dto.RespuestaIdempotenteDTO;
+import com.clinica.pagos.domain.dto.ResultadoLoteDTO;
+import com.clinica.pagos.domain.repository.IIdempotencia;
+import com.clinica.pagos.infrastructure.diario.DiarioPagos;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Altas diferidas de pagos (aceptar y validar después), para que POST /pagos no dependa de la latencia del
+ * servicio de citas:
+ * <ul>
+ *   <li>{@link #aceptar} comprueba los campos, escribe el pago en el diario local ({@link DiarioPagos}) y vuelve
+ *       en cuanto el registro está en disco, con el alta en {@code PENDIENTE_VALIDACION}.</li>
+ *   <li>{@link #procesar} lee el diario en orden, valida las citas en lote y guarda los pagos con
+ *       {@link PagoService#guardarLote}. Si el servicio de citas no responde, el lote se detiene en ese pago y se
+ *       reintenta en la siguiente pasada; los pagos inválidos quedan rechazados. Si la base de datos rechaza el
+ *       lote, se guarda alta por alta: la que falla por sus datos queda rechazada y la que falla por otra causa se
+ *       reintenta hasta {@code pagos.diario.max-intentos} veces antes de rechazarla.</li>
+ *   <li>Cada alta registra una clave de idempotencia (la Idempotency-Key del cliente o una derivada del registro)
+ *       en la misma transacción que el pago. Al reprocesar el diario tras una caída, o si el cliente repite la
+ *       clave, el pago ya creado se reconoce por ella y no se duplica.</li>
+ * </ul>
+ * El resultado de cada alta se consulta por su número de recibo mientras siga en memoria
+ * ({@code pagos.diario.resultados-max}); después, por la clave de idempotencia o la referencia del pago.
+ */
+@Service
+@ConditionalOnProperty(name = "pagos.diario.habilitado", havingValue = "true")
+public class AceptacionPagosService {
+
+    private static final Logger log = LoggerFactory.getLogger(AceptacionPagosService.class);
+
+    @Autowired
+    private PagoService pagoService;
+
+    @Autowired
+    private IdempotenciaPagos idempotenciaPagos;
+
+    @Autowired
+    private IIdempotencia idempotencia;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MeterRegistry registry;
+
+    // Por encima de este número de altas sin validar se responde 503 en lugar de seguir acumulando
+    @Value("${pagos.diario.max-pendientes:100000}")
+    private long maxPendientes;
+
+    // Altas por transacción al procesar el diario
+    @Value("${pagos.diario.lote:500}")
+    private int lote;
+
+    // Espera máxima de POST /pagos a que su registro esté en disco
+    @Value("${pagos.diario.espera-maxima-ms:5000}")
+    private long esperaMaximaMillis;
+
+    // Intentos de un alta que falla en la base de datos por causas no transitorias sin ser un error de sus datos
+    @Value("${pagos.diario.max-intentos:5}")
+    private int maxIntentos;
+
+    private final DiarioPagos diario;
+    private final Cache<Long, AceptacionPagoDTO> resultados;
+    // Registros que pueden estar ya guardados (escritos antes de arrancar o ya intentados): se buscan por su clave
+    private long revisarHasta;
+    // Intentos fallidos por recibo; solo lo usa el hilo de procesar()
+    private final Map<Long, Integer> intentos = new HashMap<>();
+
+    public AceptacionPagosService(@Value("${pagos.diario.directorio:diario-pagos}") Path directorio,
+                                  @Value("${pagos.diario.bytes-segmento:67108864}") int bytesSegmento,
+                                  @Value("${pagos.diario.agrupar-us:200}") long agruparMicros,
+                                  @Value("${pagos.diario.resultados-max:100000}") long resultadosMax) {
+        try {
+            this.diario = new DiarioPagos(directorio, bytesSegmento, agruparMicros);
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo abrir el diario de pagos en " + directorio, e);
+        }
+        this.revisarHasta = diario.getUltimo();
+        this.resultados = Caffeine.newBuilder()
+                .maximumSize(resultadosMax)
+                .build();
+    }
+
+    @Autowired(required = false)
+    public void registrarMetricas(MeterRegistry registry) {
+        Gauge.builder("pagos.diario.pendientes", diario, DiarioPagos::getPendientes)
+                .description("Altas aceptadas pendientes de validar")
+                .register(registry);
+    }
+
+    @PreDestroy
+    public void cerrar() throws IOException {
+        diario.close();
+    }
+
+    /**
+     * Acepta un alta sin consultar el servicio de citas.
+     * @param cabecera Idempotency-Key de la petición (puede ser null).
+     * @throws SolicitudInvalidaException si el pago no es válido independientemente de su cita.
+     * @throws DiarioAltasLlenoException si hay demasiadas altas pendientes.
+     * @throws DiarioNoDisponibleException si el pago no llegó a quedar en disco.
+     */
+    public AceptacionPagoDTO aceptar(String cabecera, PagoDTO dto) {
+        String error = PagoService.validarCampos(dto);
+        if (error != null) {
+            throw new SolicitudInvalidaException(error);
+        }
+        long pendientes = diario.getPendientes();
+        if (pendientes >= maxPendientes) {
+            registry.counter("pagos.diario.rechazos").increment();
+            throw new DiarioAltasLlenoException(pendientes);
+        }
+        String clave = idempotenciaPagos.clave(cabecera, dto).orElse(null);
+        if (clave != null) {
+            idempotenciaPagos.validarLongitud(clave);
+        }
+        // Huella del cuerpo tal como llegó, igual que en el alta síncrona; la fecha es la de aceptación
+        String huella = idempotenciaPagos.huella(dto);
+        if (dto.getFechaPago() == null) {
+            dto.setFechaPago(LocalDateTime.now());
+        }
+        AltaDiarioDTO alta = new AltaDiarioDTO(clave, huella, LocalDateTime.now(), dto);
+
+        long inicio = System.nanoTime();
+        long recibo;
+        try {
+            recibo = diario.anadir(objectMapper.writeValueAsBytes(alta));
+            if (!diario.esperarDurable(recibo, esperaMaximaMillis)) {
+                throw new DiarioNoDisponibleException("El pago no se pudo guardar a tiempo; inténtelo de nuevo más tarde", null);
+            }
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("No se pudo serializar el pago", e);
+        } catch (IllegalStateException | UncheckedIOException e) {
+            log.error("El diario de pagos no pudo guardar un alta: {}", e.getMessage());
+            throw new DiarioNoDisponibleException("El diario de pagos no está disponible; inténtelo de nuevo más tarde", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DiarioNoDisponibleException("Interrumpido mientras se guardaba el pago en el diario", e);
+        }
+        registry.timer("pagos.diario.aceptacion").record(System.nanoTime() - inicio, TimeUnit.NANOSECONDS);
+        return new AceptacionPagoDTO(recibo, AceptacionPagoDTO.PENDIENTE_VALIDACION, dto.getReferencia(), alta.getAceptadoEn());
+    }
+
+    public Optional<AceptacionPagoDTO> consultar(long recibo) {
+        AceptacionPagoDTO resultado = resultados.getIfPresent(recibo);
+        if (resultado != null) {
+            return Optional.of(resultado);
+        }
+        if (recibo > diario.getProcesado() && recibo <= diario.getUltimo()) {
+            return Optional.of(new AceptacionPagoDTO(recibo, AceptacionPagoDTO.PENDIENTE_VALIDACION, null, null));
+        }
+        return Optional.empty();
+    }
+
+    @Scheduled(fixedDelayString = "${pagos.diario.intervalo-ms:200}")
+    public void procesar() {
+        List<DiarioPagos.Entrada> entradas;
+        while (!(entradas = diario.leerPendientes(lote)).isEmpty()) {
+            if (!procesarLote(entradas)) {
+                return;
+            }
+        }
+    }
+
+    // Devuelve false si el lote no se completó y hay que esperar a la siguiente pasada
+    private boolean procesarLote(List<DiarioPagos.Entrada> entradas) {
+        int n = entradas.size();
+        AceptacionPagoDTO[] resueltas = new AceptacionPagoDTO[n];
+        String[] claves = new String[n];
+        String[] huellas = new String[n];
+        List<PagoDTO> pendientes = new ArrayList<>(n);
+        List<Integer> posiciones = new ArrayList<>(n);
+        Set<String> clavesLote = new HashSet<>();
+        int hasta = n;
+
+        for (int i = 0; i < n; i++) {
+            DiarioPagos.Entrada entrada = entradas.get(i);
+            AltaDiarioDTO alta;
+            try {
+                alta = objectMapper.readValue(entrada.getDatos(), AltaDiarioDTO.class);
+            } catch (IOException e) {
+                log.error("Registro {} del diario de pagos ilegible: {}", entrada.getSeq(), e.getMessage());
+                resueltas[i] = resultado(entrada.getSeq(), null, null, "Registro del diario ilegible");
+                continue;
+            }
+            PagoDTO pago = alta.getPago();
+            claves[i] = alta.getClave() != null ? alta.getClave()
+                    : "diario:" + entrada.getSeq() + ":" + alta.getAceptadoEn().toInstant(ZoneOffset.UTC).toEpochMilli();
+            huellas[i] = alta.getHuella();
+            // La misma clave dos veces en un lote: la segunda espera a que la primera esté confirmada
+            if (!clavesLote.add(claves[i])) {
+                hasta = i;
+                break;
+            }
+            if (alta.getClave() != null || entrada.getSeq() <= revisarHasta) {
+                Optional<RespuestaIdempotenteDTO> previa = idempotencia.buscar(claves[i]);
+                if (previa.isPresent()) {
+                    resueltas[i] = previa.get().getHuella().equals(huellas[i])
+                            ? resultado(entrada.getSeq(), alta, previa.get().getPago().getId(), null)
+                            : resultado(entrada.getSeq(), alta, null, new ClaveIdempotenciaReutilizadaException(claves[i]).getMessage());
+                    continue;
+                }
+            }
+            pendientes.add(pago);
+            posiciones.add(i);
+            resueltas[i] = resultado(entrada.getSeq(), alta, null, null);
+        }
+
+        if (!pendientes.isEmpty()) {
+            revisarHasta = Math.max(revisarHasta, entradas.get(posiciones.get(posiciones.size() - 1)).getSeq());
+            List<ResultadoLoteDTO> guardados = null;
+            try {
+                guardados = pagoService.guardarLote(pendientes, 0, (j, pago) -> {
+                    int i = posiciones.get(j);
+                    idempotencia.registrar(claves[i], huellas[i], pago);
+                });
+            } catch (RuntimeException e) {
+                if (esTransitorio(e)) {
+                    // Base de datos caída: se repite el lote entero
+                    log.warn("No se pudo guardar el lote del diario de pagos; se reintentará: {}", e.getMessage());
+                    registry.counter("pagos.diario.procesados", "resultado", "reintento").increment(pendientes.size());
+                    return false;
+                }
+                log.warn("La base de datos rechazó el lote del diario de pagos; se guarda alta por alta: {}", e.getMessage());
+            }
+            for (int j = 0; j < pendientes.size(); j++) {
+                int i = posiciones.get(j);
+                if (i >= hasta) {
+                    break;
+                }
+                ResultadoLoteDTO guardado;
+                if (guardados != null) {
+                    guardado = guardados.get(j);
+                } else {
+                    guardado = guardarUna(entradas.get(i).getSeq(), pendientes.get(j), claves[i], huellas[i]);
+                    if (guardado == null) {
+                        hasta = i;
+                        break;
+                    }
+                }
+                if (ResultadoLoteDTO.CREADO.equals(guardado.getResultado())) {
+                    resueltas[i].setEstado(AceptacionPagoDTO.CREADO);
+                    resueltas[i].setPagoId(guardado.getId());
+                } else if (PagoService.ERROR_CITAS_NO_DISPONIBLES.equals(guardado.getError())) {
+                    // Las altas posteriores ya guardadas se reconocerán por su clave al reintentar
+                    hasta = Math.min(hasta, i);
+                } else {
+                    resueltas[i].setEstado(AceptacionPagoDTO.RECHAZADO);
+                    resueltas[i].setError(guardado.getError());
+                }
+            }
+        }
+
+        if (hasta > 0) {
+            for (int i = 0; i < hasta; i++) {
+                resultados.put(resueltas[i].getRecibo(), resueltas[i]);
+                registry.counter("pagos.diario.procesados", "resultado", resueltas[i].getEstado().toLowerCase()).increment();
+            }
+            diario.confirmarProcesado(entradas.get(hasta - 1));
+        }
+        if (hasta < n) {
+            registry.counter("pagos.diario.procesados", "resultado", "reintento").increment(n - hasta);
+        }
+        return hasta == n;
+    }
+
+    // Guarda un alta sola tras fallar su lote; null si hay que reintentarla en la siguiente pasada
+    private ResultadoLoteDTO guardarUna(long seq, PagoDTO pago, String clave, String huella) {
+        try {
+            ResultadoLoteDTO guardado = pagoService.guardarLote(List.of(pago), 0,
+                    (j, insertado) -> idempotencia.registrar(clave, huella, insertado)).get(0);
+            intentos.remove(seq);
+            return guardado;
+        } catch (DuplicateKeyException e) {
+            // La clave la registró otra petición a la vez: el alta es esa
+            Optional<RespuestaIdempotenteDTO> previa = idempotencia.buscar(clave);
+            if (previa.isEmpty()) {
+                return reintentarOrechazar(seq, pago, e);
+            }
+            intentos.remove(seq);
+            return previa.get().getHuella().equals(huella)
+                    ? ResultadoLoteDTO.creado(0, previa.get().getPago())
+                    : ResultadoLoteDTO.rechazado(0, pago, new ClaveIdempotenciaReutilizadaException(clave).getMessage());
+        } catch (RuntimeException e) {
+            if (esTransitorio(e)) {
+                log.warn("No se pudo guardar el alta {} del diario de pagos; se reintentará: {}", seq, e.getMessage());
+                return null;
+            }
+            if (e instanceof NonTransientDataAccessException rechazo) {
+                // Datos que la base de datos no admite: reintentar daría el mismo error
+                intentos.remove(seq);
+                log.error("Alta {} del diario de pagos rechazada por la base de datos: {}", seq, e.getMessage());
+                return ResultadoLoteDTO.rechazado(0, pago, "Rechazado por la base de datos: " + rechazo.getMostSpecificCause().getMessage());
+            }
+            return reintentarOrechazar(seq, pago, e);
+        }
+    }
+
+    private ResultadoLoteDTO reintentarOrechazar(long seq, PagoDTO pago, RuntimeException e) {
+        int intento = intentos.merge(seq, 1, Integer::sum);
+        if (intento < maxIntentos) {
+            log.warn("Intento {} de {} fallido para el alta {} del diario de pagos: {}", intento, maxIntentos, seq, e.getMessage());
+            return null;
+        }
+        intentos.remove(seq);
+        log.error("Alta {} del diario de pagos rechazada tras {} intentos", seq, intento, e);
+        return ResultadoLoteDTO.rechazado(0, pago, "No se pudo guardar tras " + intento + " intentos: " + e.getMessage());
+    }
+
+    // Fallos que no dependen del alta (conexión perdida, tiempo agotado, bloqueo): se reintentan sin límite
+    private static boolean esTransitorio(RuntimeException e) {
+        return e instanceof TransientDataAccessException
+                || e instanceof RecoverableDataAccessException
+                || e instanceof DataAccessResourceFailureException
+                || e instanceof CannotCreateTransactionException;
+    }
+
+    private static AceptacionPagoDTO resultado(long recibo, AltaDiarioDTO alta, Long pagoId, String error) {
+        String estado = error != null ? AceptacionPagoDTO.RECHAZADO
+                : pagoId != null ? AceptacionPagoDTO.CREADO : AceptacionPagoDTO.PENDIENTE_VALIDACION;
+        AceptacionPagoDTO resultado = new AceptacionPagoDTO(recibo, estado,
+                alta != null ? alta.getPago().getReferencia() : null, alta != null ? alta.getAceptadoEn() : null);
+        resultado.setPagoId(pagoId);
+        resultado.setError(error);
+        return resultado;
+    }
+}
@@ -0,0 +1,11 @@
+package com.clinica.pagos.domain.service;
+
+/**
+ * Se repitió una Idempotency-Key con un cuerpo distinto al de la petición original.
+ */
+public class ClaveIdempotenciaReutilizadaException extends RuntimeException {
+
+    public ClaveIdempotenciaReutilizadaException(String clave) {
+        super("La clave de idempotencia '" + clave + "' ya se usó con una petición distinta");
+    }
+}
@@ -0,0 +1,11 @@
+package com.clinica.pagos.domain.service;
+
+/**
+ * El diario de altas diferidas tiene demasiados pagos sin validar; el cliente debe reintentar más tarde.
+ */
+public class DiarioAltasLlenoException extends RuntimeException {
+
+    public DiarioAltasLlenoException(long pendientes) {
+        super("Hay " + pendientes + " pagos pendientes de validar; inténtelo de nuevo más tarde");
+    }
+}
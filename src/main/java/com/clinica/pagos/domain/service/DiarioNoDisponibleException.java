@@ -0,0 +1,12 @@
+package com.clinica.pagos.domain.service;
+
+/**
+ * El diario de altas diferidas no pudo garantizar que el pago quedara en disco (fallo de fsync, cierre o espera
+ * excesiva); el cliente debe reintentar más tarde, con la misma Idempotency-Key para no duplicar el alta.
+ */
+public class DiarioNoDisponibleException extends RuntimeException {
+
+    public DiarioNoDisponibleException(String mensaje, Throwable causa) {
+        super(mensaje, causa);
+    }
+}
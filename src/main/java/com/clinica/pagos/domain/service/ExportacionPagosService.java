@@ -0,0 +1,336 @@
+package com.clinica.pagos.domain.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.clinica.pagos.domain.dto.ExportacionDTO;
+import com.clinica.pagos.domain.repository.IPago;
+import com.clinica.pagos.infrastructure.exportacion.CheckpointExportacion;
+import com.clinica.pagos.infrastructure.exportacion.EscritorColumnar;
+import com.clinica.pagos.infrastructure.exportacion.EscritorCsv;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Exportación completa de pagos a archivos (auditoría), en segundo plano:
+ * <ul>
+ *   <li>El rango de IDs se fija al empezar y se divide en tramos de {@code pagos.exportacion.tramo} IDs, que se
+ *       leen en paralelo ({@code pagos.exportacion.paralelismo} hilos, una conexión cada uno) con lecturas en
+ *       streaming por rango de id y se enriquecen con consultas de citas en lote.</li>
+ *   <li>Cada tramo escribe sus propias partes (CSV y/o columnar {@code .pcol}) con FileChannel y buffers directos;
+ *       al terminar todos se unen en {@code pagos.csv} / {@code pagos.pcol} con transferTo.</li>
+ *   <li>Los tramos terminados quedan en el checkpoint; {@link #reanudar} (también tras reiniciar el servicio)
+ *       repite solo los pendientes o fallidos.</li>
+ * </ul>
+ * Cada tramo lee los pagos tal como están cuando le toca: no es una foto consistente de toda la tabla.
+ */
+@Service
+public class ExportacionPagosService {
+
+    private static final Logger log = LoggerFactory.getLogger(ExportacionPagosService.class);
+
+    public static final String CSV = "csv";
+    public static final String COLUMNAR = "pcol";
+    private static final Set<String> FORMATOS = Set.of(CSV, COLUMNAR);
+    private static final DateTimeFormatter FORMATO_ID = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    @Autowired
+    private PagoService pagoService;
+
+    @Autowired
+    private IPago repo;
+
+    @Autowired
+    private MeterRegistry registry;
+
+    @Value("${pagos.exportacion.directorio:exportaciones}")
+    private Path directorio;
+
+    // IDs por tramo: cada tramo es una lectura y un grupo del archivo columnar
+    @Value("${pagos.exportacion.tramo:100000}")
+    private long tramo;
+
+    @Value("${pagos.exportacion.buffer-bytes:4194304}")
+    private int bufferBytes;
+
+    // Pocos hilos a propósito: cada uno ocupa una conexión del pool mientras lee su tramo
+    private final ExecutorService trabajadores;
+    private final Map<String, Ejecucion> enCurso = new ConcurrentHashMap<>();
+
+    private static final class Ejecucion {
+        final CheckpointExportacion checkpoint;
+        final AtomicLong filas;
+        final AtomicInteger pendientes = new AtomicInteger();
+        final AtomicInteger fallidos = new AtomicInteger();
+        volatile String error;
+
+        Ejecucion(CheckpointExportacion checkpoint) {
+            this.checkpoint = checkpoint;
+            this.filas = new AtomicLong(checkpoint.getFilas());
+        }
+    }
+
+    public ExportacionPagosService(@Value("${pagos.exportacion.paralelismo:2}") int paralelismo) {
+        this.trabajadores = Executors.newFixedThreadPool(paralelismo,
+                Thread.ofPlatform().name("exportacion-", 0).daemon(true).factory());
+    }
+
+    @PreDestroy
+    public void detener() {
+        // Los tramos interrumpidos no llegan al checkpoint: se repiten al reanudar
+        trabajadores.shutdownNow();
+    }
+
+    public ExportacionDTO iniciar(List<String> formatos) {
+        Set<String> seleccion = new LinkedHashSet<>();
+        for (String formato : formatos) {
+            if (!FORMATOS.contains(formato)) {
+                throw new SolicitudInvalidaException("Formato de exportación desconocido: " + formato + ". Admitidos: " + FORMATOS);
+            }
+            seleccion.add(formato);
+        }
+        if (seleccion.isEmpty()) {
+            throw new SolicitudInvalidaException("Indique al menos un formato: " + FORMATOS);
+        }
+        String id = LocalDateTime.now().format(FORMATO_ID) + "-" + Integer.toHexString(ThreadLocalRandom.current().nextInt(0x1000, 0x10000));
+        long desde = repo.getMinId().map(minimo -> minimo - 1).orElse(0L);
+        long hasta = repo.getMaxId().orElse(0L);
+        Path destino = directorio.resolve(id);
+        try {
+            Files.createDirectories(destino);
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo crear el directorio de la exportación " + destino, e);
+        }
+        Ejecucion ejecucion = new Ejecucion(CheckpointExportacion.crear(destino, id, seleccion, desde, hasta, tramo));
+        log.info("Exportación {} iniciada: pagos {} a {} en {} tramos, formatos {}.",
+                id, desde + 1, hasta, ejecucion.checkpoint.getTramos(), seleccion);
+        lanzar(ejecucion);
+        return progreso(ejecucion.checkpoint, ejecucion);
+    }
+
+    public Optional<ExportacionDTO> consultar(String id) {
+        Ejecucion ejecucion = enCurso.get(id);
+        if (ejecucion != null) {
+            return Optional.of(progreso(ejecucion.checkpoint, ejecucion));
+        }
+        return cargar(id).map(checkpoint -> progreso(checkpoint, null));
+    }
+
+    /** Continúa una exportación interrumpida o fallida; si ya está en curso o completada no hace nada. */
+    public Optional<ExportacionDTO> reanudar(String id) {
+        Ejecucion actual = enCurso.get(id);
+        if (actual != null) {
+            return Optional.of(progreso(actual.checkpoint, actual));
+        }
+        Optional<CheckpointExportacion> checkpoint = cargar(id);
+        if (checkpoint.isEmpty() || CheckpointExportacion.COMPLETADA.equals(checkpoint.get().getEstado())) {
+            return checkpoint.map(c -> progreso(c, null));
+        }
+        Ejecucion ejecucion = new Ejecucion(checkpoint.get());
+        if (enCurso.putIfAbsent(id, ejecucion) != null) {
+            return consultar(id);
+        }
+        ejecucion.checkpoint.reanudar();
+        log.info("Exportación {} reanudada: {} de {} tramos ya terminados.",
+                id, ejecucion.checkpoint.getTramosTerminados(), ejecucion.checkpoint.getTramos());
+        lanzar(ejecucion);
+        return Optional.of(progreso(ejecucion.checkpoint, ejecucion));
+    }
+
+    private void lanzar(Ejecucion ejecucion) {
+        CheckpointExportacion checkpoint = ejecucion.checkpoint;
+        enCurso.put(checkpoint.getId(), ejecucion);
+        List<Integer> pendientes = new ArrayList<>();
+        for (int n = 0; n < checkpoint.getTramos(); n++) {
+            if (!checkpoint.isTramoTerminado(n)) {
+                pendientes.add(n);
+            }
+        }
+        if (pendientes.isEmpty()) {
+            trabajadores.execute(() -> finalizar(ejecucion));
+            return;
+        }
+        ejecucion.pendientes.set(pendientes.size());
+        for (int n : pendientes) {
+            trabajadores.execute(() -> {
+                try {
+                    exportarTramo(ejecucion, n);
+                } finally {
+                    if (ejecucion.pendientes.decrementAndGet() == 0) {
+                        finalizar(ejecucion);
+                    }
+                }
+            });
+        }
+    }
+
+    private void exportarTramo(Ejecucion ejecucion, int n) {
+        CheckpointExportacion checkpoint = ejecucion.checkpoint;
+        Set<String> formatos = checkpoint.getFormatos();
+        long afterId = checkpoint.getDesde() + n * checkpoint.getTramo();
+        long hastaId = Math.min(afterId + checkpoint.getTramo(), checkpoint.getHasta());
+        Timer.Sample muestra = Timer.start(registry);
+        String outcome = "error";
+        long[] filas = new long[1];
+        try {
+            EscritorColumnar columnar = null;
+            try (EscritorCsv csv = formatos.contains(CSV) ? new EscritorCsv(parte(checkpoint, n, CSV), bufferBytes) : null;
+                 EscritorColumnar pcol = formatos.contains(COLUMNAR) ? new EscritorColumnar(parte(checkpoint, n, COLUMNAR), bufferBytes) : null) {
+                columnar = pcol;
+                pagoService.transmitirRango(afterId, hastaId, pago -> {
+                    try {
+                        if (csv != null) {
+                            csv.escribir(pago);
+                        }
+                        if (pcol != null) {
+                            pcol.escribir(pago);
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    filas[0]++;
+                    ejecucion.filas.incrementAndGet();
+                });
+            }
+            checkpoint.terminarTramo(n, filas[0], columnar != null ? columnar.getGrupo() : null);
+            registry.counter("pagos.exportacion.filas").increment(filas[0]);
+            outcome = "success";
+        } catch (IOException | RuntimeException e) {
+            // Las filas de un tramo fallido se vuelven a contar al repetirlo
+            ejecucion.filas.addAndGet(-filas[0]);
+            ejecucion.fallidos.incrementAndGet();
+            ejecucion.error = "Tramo " + n + " (" + (afterId + 1) + " a " + hastaId + "): " + e.getMessage();
+            log.warn("Exportación {}: falló el {}", checkpoint.getId(), ejecucion.error, e);
+        } finally {
+            muestra.stop(registry.timer("pagos.exportacion.tramo", "outcome", outcome));
+        }
+    }
+
+    private void finalizar(Ejecucion ejecucion) {
+        CheckpointExportacion checkpoint = ejecucion.checkpoint;
+        try {
+            if (ejecucion.fallidos.get() > 0) {
+                checkpoint.fallar(ejecucion.fallidos.get() + " tramos fallidos, se repiten al reanudar. Último: " + ejecucion.error);
+                log.warn("Exportación {} incompleta: {} tramos fallidos.", checkpoint.getId(), ejecucion.fallidos.get());
+                return;
+            }
+            int tramos = checkpoint.getTramos();
+            if (checkpoint.getFormatos().contains(CSV)) {
+                unirCsv(archivo(checkpoint, CSV), partes(checkpoint, CSV, tramos));
+            }
+            if (checkpoint.getFormatos().contains(COLUMNAR)) {
+                EscritorColumnar.fusionar(archivo(checkpoint, COLUMNAR), partes(checkpoint, COLUMNAR, tramos), checkpoint.getGrupos());
+            }
+            for (String formato : checkpoint.getFormatos()) {
+                for (Path parte : partes(checkpoint, formato, tramos)) {
+                    Files.deleteIfExists(parte);
+                }
+            }
+            checkpoint.completar();
+            log.info("Exportación {} completada: {} pagos en {}.", checkpoint.getId(), checkpoint.getFilas(), checkpoint.getDirectorio());
+        } catch (IOException | RuntimeException e) {
+            log.error("Exportación {}: no se pudieron unir las partes: {}", checkpoint.getId(), e.getMessage(), e);
+            checkpoint.fallar("Error al unir las partes: " + e.getMessage());
+        } finally {
+            enCurso.remove(checkpoint.getId());
+        }
+    }
+
+    private static void unirCsv(Path destino, List<Path> partes) throws IOException {
+        try (FileChannel salida = FileChannel.open(destino, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer cabecera = ByteBuffer.wrap(EscritorCsv.CABECERA.getBytes(StandardCharsets.UTF_8));
+            while (cabecera.hasRemaining()) {
+                salida.write(cabecera);
+            }
+            for (Path parte : partes) {
+                try (FileChannel entrada = FileChannel.open(parte, StandardOpenOption.READ)) {
+                    long copiados = 0;
+                    long tamano = entrada.size();
+                    while (copiados < tamano) {
+                        copiados += entrada.transferTo(copiados, tamano - copiados, salida);
+                    }
+                }
+            }
+            salida.force(false);
+        }
+    }
+
+    private Optional<CheckpointExportacion> cargar(String id) {
+        // El id forma parte de una ruta: no se admite nada que pueda salir del directorio de exportaciones
+        if (!id.matches("[0-9A-Za-z-]+")) {
+            return Optional.empty();
+        }
+        Path carpeta = directorio.resolve(id);
+        if (!Files.exists(carpeta.resolve(CheckpointExportacion.ARCHIVO))) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(CheckpointExportacion.cargar(carpeta));
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo leer el checkpoint de la exportación " + id, e);
+        }
+    }
+
+    private static ExportacionDTO progreso(CheckpointExportacion checkpoint, Ejecucion ejecucion) {
+        ExportacionDTO dto = new ExportacionDTO();
+        dto.setId(checkpoint.getId());
+        dto.setEstado(checkpoint.getEstado());
+        dto.setFormatos(List.copyOf(checkpoint.getFormatos()));
+        dto.setTramos(checkpoint.getTramos());
+        dto.setTramosTerminados(checkpoint.getTramosTerminados());
+        dto.setFilas(ejecucion != null ? ejecucion.filas.get() : checkpoint.getFilas());
+        dto.setInicio(checkpoint.getInicio());
+        dto.setFin(checkpoint.getFin());
+        dto.setError(checkpoint.getError());
+        List<String> archivos = new ArrayList<>();
+        if (CheckpointExportacion.COMPLETADA.equals(checkpoint.getEstado())) {
+            checkpoint.getFormatos().forEach(formato -> archivos.add(archivo(checkpoint, formato).toAbsolutePath().toString()));
+        }
+        dto.setArchivos(archivos);
+        return dto;
+    }
+
+    private static Path archivo(CheckpointExportacion checkpoint, String formato) {
+        return checkpoint.getDirectorio().resolve("pagos." + formato);
+    }
+
+    private static Path parte(CheckpointExportacion checkpoint, int n, String formato) {
+        return checkpoint.getDirectorio().resolve(String.format("parte-%06d.%s", n, formato));
+    }
+
+    private static List<Path> partes(CheckpointExportacion checkpoint, String formato, int tramos) {
+        List<Path> partes = new ArrayList<>(tramos);
+        for (int n = 0; n < tramos; n++) {
+            partes.add(parte(checkpoint, n, formato));
+        }
+        return partes;
+    }
+}
@@ -0,0 +1,184 @@
+package com.clinica.pagos.domain.service;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.clinica.pagos.domain.dto.PagoDTO;
+import com.clinica.pagos.domain.dto.RespuestaIdempotenteDTO;
+import com.clinica.pagos.domain.repository.IIdempotencia;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Alta idempotente de pagos (POST /pagos con cabecera Idempotency-Key).
+ * <ul>
+ *   <li>La primera petición con una clave crea el pago y guarda la respuesta en la misma transacción.</li>
+ *   <li>Las repeticiones devuelven la respuesta guardada sin consultar citas ni el repositorio de pagos
+ *       (caché en memoria y, si no está, tabla {@code pagos_idempotencia}).</li>
+ *   <li>Peticiones simultáneas con la misma clave en esta instancia esperan a la primera;
+ *       entre instancias decide la clave primaria de la tabla.</li>
+ *   <li>Repetir la clave con un cuerpo distinto lanza {@link ClaveIdempotenciaReutilizadaException}.</li>
+ * </ul>
+ */
+@Service
+public class IdempotenciaPagos {
+
+    private static final Logger log = LoggerFactory.getLogger(IdempotenciaPagos.class);
+    private static final int LONGITUD_MAXIMA = 255;
+
+    @Autowired
+    private PagoService pagoService;
+
+    @Autowired
+    private IIdempotencia idempotencia;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MeterRegistry registry;
+
+    // Sin cabecera, usar la referencia del pago como clave (solo si los clientes la generan única por intento)
+    @Value("${pagos.idempotencia.usar-referencia:false}")
+    private boolean usarReferencia;
+
+    private final Duration ttl;
+    private final Cache<String, RespuestaIdempotenteDTO> respuestas;
+    private final ConcurrentHashMap<String, CompletableFuture<RespuestaIdempotenteDTO>> enCurso = new ConcurrentHashMap<>();
+
+    public IdempotenciaPagos(@Value("${pagos.idempotencia.max-size:10000}") long maxSize,
+                             @Value("${pagos.idempotencia.ttl:24h}") Duration ttl) {
+        this.ttl = ttl;
+        this.respuestas = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .build();
+    }
+
+    /**
+     * Clave de idempotencia de la petición: la cabecera o, si está habilitado, la referencia del pago.
+     * @return la clave, o vacío si el alta no es idempotente.
+     */
+    public Optional<String> clave(String cabecera, PagoDTO dto) {
+        if (cabecera != null && !cabecera.isBlank()) {
+            return Optional.of(cabecera.trim());
+        }
+        if (usarReferencia && dto.getReferencia() != null && !dto.getReferencia().isBlank()) {
+            return Optional.of("referencia:" + dto.getReferencia());
+        }
+        return Optional.empty();
+    }
+
+    public PagoDTO guardar(String clave, PagoDTO dto) {
+        validarLongitud(clave);
+        // Huella del cuerpo tal como llegó, antes de que el alta complete fecha y estado por defecto
+        String huella = huella(dto);
+
+        RespuestaIdempotenteDTO respuesta = respuestas.getIfPresent(clave);
+        String resultado = "repetido";
+        if (respuesta == null) {
+            CompletableFuture<RespuestaIdempotenteDTO> propia = new CompletableFuture<>();
+            CompletableFuture<RespuestaIdempotenteDTO> previa = enCurso.putIfAbsent(clave, propia);
+            if (previa != null) {
+                respuesta = esperar(previa);
+                resultado = "coalescido";
+            } else {
+                try {
+                    Optional<RespuestaIdempotenteDTO> guardada = idempotencia.buscar(clave);
+                    if (guardada.isPresent()) {
+                        respuesta = guardada.get();
+                    } else {
+                        respuesta = crear(clave, huella, dto);
+                        resultado = respuesta.getHuella().equals(huella) ? "nuevo" : resultado;
+                    }
+                    respuestas.put(clave, respuesta);
+                    propia.complete(respuesta);
+                } catch (RuntimeException e) {
+                    propia.completeExceptionally(e);
+                    throw e;
+                } finally {
+                    enCurso.remove(clave, propia);
+                }
+            }
+        }
+
+        if (!respuesta.getHuella().equals(huella)) {
+            registry.counter("pagos.idempotencia", "resultado", "conflicto").increment();
+            throw new ClaveIdempotenciaReutilizadaException(clave);
+        }
+        registry.counter("pagos.idempotencia", "resultado", resultado).increment();
+        return respuesta.getPago().copia();
+    }
+
+    void validarLongitud(String clave) {
+        if (clave.length() > LONGITUD_MAXIMA) {
+            throw new SolicitudInvalidaException("La clave de idempotencia no puede superar " + LONGITUD_MAXIMA + " caracteres");
+        }
+    }
+
+    private RespuestaIdempotenteDTO crear(String clave, String huella, PagoDTO dto) {
+        try {
+            PagoDTO[] creado = new PagoDTO[1];
+            pagoService.guardar(dto, pago -> {
+                idempotencia.registrar(clave, huella, pago);
+                creado[0] = pago;
+            });
+            return new RespuestaIdempotenteDTO(huella, creado[0]);
+        } catch (DuplicateKeyException e) {
+            // Otra instancia registró la misma clave a la vez; su transacción ya está confirmada
+            log.info("Clave de idempotencia {} registrada por otra petición concurrente.", clave);
+            return idempotencia.buscar(clave).orElseThrow(() -> e);
+        }
+    }
+
+    private static RespuestaIdempotenteDTO esperar(CompletableFuture<RespuestaIdempotenteDTO> previa) {
+        try {
+            return previa.join();
+        } catch (CompletionException e) {
+            // La petición original falló: se propaga el mismo error, no se reintenta por ella
+            if (e.getCause() instanceof RuntimeException causa) {
+                throw causa;
+            }
+            throw e;
+        }
+    }
+
+    // SHA-256 del cuerpo serializado; también la usa el diario de altas diferidas al registrar sus claves
+    String huella(PagoDTO dto) {
+        try {
+            byte[] cuerpo = objectMapper.writeValueAsBytes(dto);
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(cuerpo));
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("No se pudo serializar el pago", e);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${pagos.idempotencia.purga-ms:3600000}")
+    public void purgar() {
+        int borradas = idempotencia.purgar(LocalDateTime.now().minus(ttl));
+        if (borradas > 0) {
+            log.info("Claves de idempotencia caducadas eliminadas: {}", borradas);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.clinica.pagos.domain.service;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.clinica.pagos.domain.dto.PagoDTO;
+import com.clinica.pagos.infrastructure.client.dto.CitaDTO;
+import com.clinica.pagos.infrastructure.client.dto.NotificacionDTO;
+import com.clinica.pagos.infrastructure.config.PlantillasNotificacionProperties;
+import com.clinica.pagos.infrastructure.config.PlantillasNotificacionProperties.Plantilla;
+
+/**
+ * Construye la notificación (asunto, mensaje y destinatario) que corresponde a un cambio de estado de un pago.
+ * Las plantillas por tipo y canal se compilan al crear el bean (ver {@link PlantillasNotificacionProperties})
+ * y cada mensaje se renderiza en un StringBuilder reutilizado por hilo: por notificación solo se crean
+ * los String finales y el propio NotificacionDTO.
+ */
+@Component
+public class NotificacionPagoBuilder {
+
+    private static final Logger log = LoggerFactory.getLogger(NotificacionPagoBuilder.class);
+
+    public static final String CANAL_EMAIL = "EMAIL";
+    private static final String PREFIJO_REFERENCIA = "PagoService:";
+    // Un buffer que creció más que esto (un mensaje anómalo) no se conserva en el hilo
+    private static final int BUFFER_MAXIMO = 8 * 1024;
+    private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(512));
+
+    private static final Map<String, Plantilla> POR_DEFECTO = Map.of(
+            "COMPLETADO", new Plantilla("PAGO_COMPLETADO",
+                    "Confirmación de Pago Completado para su Cita",
+                    "Estimado(a) {paciente},\n\nSu pago de {monto} USD para la cita con el Dr. {medico} ha sido completado exitosamente.\n\nReferencia de pago: {referencia}"),
+            "ANULADO", new Plantilla("PAGO_ANULADO",
+                    "Notificación de Pago Anulado",
+                    "Estimado(a) {paciente},\n\nSu pago de {monto} USD para la cita con el Dr. {medico} ha sido ANULADO.\n\nReferencia de pago: {referencia}"));
+
+    private record Mensaje(String evento, PlantillaNotificacion asunto, PlantillaNotificacion cuerpo) {}
+
+    // tipo -> canal -> plantillas compiladas
+    private final Map<String, Map<String, Mensaje>> mensajes = new HashMap<>();
+    private final String canalPorDefecto;
+
+    // Solo con las plantillas por defecto (benchmarks)
+    public NotificacionPagoBuilder() {
+        this(new PlantillasNotificacionProperties(), CANAL_EMAIL);
+    }
+
+    @Autowired
+    public NotificacionPagoBuilder(PlantillasNotificacionProperties configuracion,
+                                   @Value("${notificaciones.canal:EMAIL}") String canalPorDefecto) {
+        this.canalPorDefecto = canalPorDefecto.toUpperCase(Locale.ROOT);
+        Map<String, Map<String, Plantilla>> definiciones = new HashMap<>();
+        POR_DEFECTO.forEach((tipo, plantilla) -> definiciones.computeIfAbsent(tipo, t -> new HashMap<>()).put(this.canalPorDefecto, plantilla));
+        configuracion.getPlantillas().forEach((tipo, porCanal) -> porCanal.forEach((canal, plantilla) -> {
+            Map<String, Plantilla> delTipo = definiciones.computeIfAbsent(tipo.toUpperCase(Locale.ROOT), t -> new HashMap<>());
+            delTipo.put(canal.toUpperCase(Locale.ROOT), completar(plantilla, delTipo.get(canal.toUpperCase(Locale.ROOT)), delTipo.get(this.canalPorDefecto)));
+        }));
+        definiciones.forEach((tipo, porCanal) -> porCanal.forEach((canal, plantilla) -> compilar(tipo, canal, plantilla)));
+    }
+
+    /**
+     * @param pago El PagoDTO que disparó la notificación.
+     * @param tipoNotificacion El tipo de notificación (e.g., "COMPLETADO", "ANULADO").
+     * @param cita La CitaDTO asociada al pago (puede ser null si no se pudo obtener).
+     * @return la notificación por el canal por defecto, o null si el tipo no está soportado.
+     */
+    public NotificacionDTO construir(PagoDTO pago, String tipoNotificacion, CitaDTO cita) {
+        return construir(pago, tipoNotificacion, cita, canalPorDefecto);
+    }
+
+    /** @return la notificación, o null si no hay plantilla para ese tipo y canal. */
+    public NotificacionDTO construir(PagoDTO pago, String tipoNotificacion, CitaDTO cita, String canal) {
+        Map<String, Mensaje> porCanal = mensajes.get(tipoNotificacion);
+        Mensaje mensaje = porCanal != null ? porCanal.get(canal) : null;
+        if (mensaje == null) {
+            return null;
+        }
+
+        NotificacionDTO notificacion = new NotificacionDTO(
+            cita != null ? cita.getPacienteId() : null, // ID del paciente
+            mensaje.evento(),
+            renderizar(mensaje.asunto(), pago, cita),
+            renderizar(mensaje.cuerpo(), pago, cita),
+            canal,
+            referenciaServicio(pago)
+        );
+
+        // Intentar obtener el email del paciente de la cita si está disponible
+        if (cita != null && cita.getEmailPaciente() != null && !cita.getEmailPaciente().isEmpty()) {
+            notificacion.setEmailDestinatario(cita.getEmailPaciente());
+        } else {
+            // Si no se tiene el email del paciente, usa el valor por defecto que manejará NotificacionesService
+            // o considera lanzar una excepción si el email es obligatorio.
+            log.warn("No se pudo obtener el email del paciente para la cita ID {}. Se enviará a 'nodisponible@example.com'.", pago.getCitaId());
+            notificacion.setEmailDestinatario("nodisponible@example.com"); // NotificacionesService ya maneja esto
+        }
+        return notificacion;
+    }
+
+    private void compilar(String tipo, String canal, Plantilla plantilla) {
+        if (plantilla.getMensaje() == null) {
+            throw new IllegalStateException("La plantilla de notificación " + tipo + "/" + canal + " no tiene mensaje");
+        }
+        try {
+            mensajes.computeIfAbsent(tipo, t -> new HashMap<>()).put(canal, new Mensaje(
+                    plantilla.getEvento() != null ? plantilla.getEvento() : "PAGO_" + tipo,
+                    PlantillaNotificacion.compilar(plantilla.getAsunto() != null ? plantilla.getAsunto() : ""),
+                    PlantillaNotificacion.compilar(plantilla.getMensaje())));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalStateException("Plantilla de notificación " + tipo + "/" + canal + " no válida: " + e.getMessage(), e);
+        }
+        log.debug("Plantilla de notificación {}/{} compilada.", tipo, canal);
+    }
+
+    // Los campos sin configurar se toman de la plantilla existente del mismo canal o, si no hay, del canal por defecto
+    private static Plantilla completar(Plantilla configurada, Plantilla mismoCanal, Plantilla canalPorDefecto) {
+        Plantilla base = mismoCanal != null ? mismoCanal : canalPorDefecto != null ? canalPorDefecto : new Plantilla();
+        return new Plantilla(
+                configurada.getEvento() != null ? configurada.getEvento() : base.getEvento(),
+                configurada.getAsunto() != null ? configurada.getAsunto() : base.getAsunto(),
+                configurada.getMensaje() != null ? configurada.getMensaje() : base.getMensaje());
+    }
+
+    private static String renderizar(PlantillaNotificacion plantilla, PagoDTO pago, CitaDTO cita) {
+        String constante = plantilla.constante();
+        if (constante != null) {
+            return constante;
+        }
+        StringBuilder buffer = buffer(plantilla.longitudEstimada());
+        plantilla.renderizar(buffer, pago, cita);
+        return buffer.toString();
+    }
+
+    private static String referenciaServicio(PagoDTO pago) {
+        StringBuilder buffer = buffer(PREFIJO_REFERENCIA.length() + 20);
+        buffer.append(PREFIJO_REFERENCIA);
+        if (pago.getId() != null) {
+            buffer.append(pago.getId().longValue());
+        } else {
+            buffer.append((String) null);
+        }
+        return buffer.toString();
+    }
+
+    private static StringBuilder buffer(int longitudEstimada) {
+        // Un hilo virtual vive lo que una petición: guardarle un buffer no ahorraría nada
+        if (Thread.currentThread().isVirtual()) {
+            return new StringBuilder(longitudEstimada);
+        }
+        StringBuilder buffer = BUFFER.get();
+        if (buffer.capacity() > BUFFER_MAXIMO) {
+            buffer = new StringBuilder(512);
+            BUFFER.set(buffer);
+        }
+        buffer.setLength(0);
+        return buffer;
+    }
+}
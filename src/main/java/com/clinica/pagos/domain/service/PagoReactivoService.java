@@ -0,0 +1,144 @@
+package com.clinica.pagos.domain.service;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.function.BiFunction;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.clinica.pagos.domain.dto.PagoDTO;
+import com.clinica.pagos.domain.repository.IPago;
+import com.clinica.pagos.infrastructure.client.CitaWebClient;
+import com.clinica.pagos.infrastructure.client.dto.CitaDTO;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+/**
+ * Versión no bloqueante de {@link PagoService} para /v2/pagos.
+ * Las llamadas al servicio de citas van por {@link CitaWebClient}; JPA sigue siendo bloqueante y se
+ * ejecuta en {@code jpaScheduler}, acotado al pool de conexiones. Las escrituras reutilizan la lógica
+ * transaccional de {@link PagoService} (agregados, eventos y outbox de notificaciones): la notificación
+ * se registra en el outbox dentro de la transacción y no hay ninguna llamada HTTP bloqueante en la petición.
+ */
+@Service
+public class PagoReactivoService {
+
+    @Autowired
+    private IPago repo;
+
+    @Autowired
+    private PagoService pagoService;
+
+    @Autowired
+    private CitaWebClient citaWebClient;
+
+    @Autowired
+    @Qualifier("jpaScheduler")
+    private Scheduler jpaScheduler;
+
+    // Tamaño de página con el que se leen y enriquecen los listados en streaming
+    @Value("${pagos.streaming.lote:500}")
+    private int loteStreaming;
+
+    public Mono<PagoDTO> obtenerPorId(Long id) {
+        return bloqueante(() -> repo.getById(id).orElse(null))
+                .flatMap(pago -> enriquecer(List.of(pago)).thenReturn(pago));
+    }
+
+    /**
+     * Listado completo por páginas de keyset. Cada página se lee y enriquece cuando el suscriptor la pide,
+     * así que un cliente lento no provoca lecturas anticipadas ni acumulación en memoria.
+     */
+    public Flux<PagoDTO> listar(Long afterId) {
+        return listar(afterId, Long.MAX_VALUE);
+    }
+
+    /** Como {@link #listar(Long)}, pero sin leer más de {@code limite} pagos: la última página se pide a la medida. */
+    public Flux<PagoDTO> listar(Long afterId, long limite) {
+        return paginar(afterId, limite, (cursor, tamano) -> repo.getPage(cursor, tamano));
+    }
+
+    public Flux<PagoDTO> listarPorCita(Long citaId, Long afterId) {
+        return listarPorCita(citaId, afterId, Long.MAX_VALUE);
+    }
+
+    public Flux<PagoDTO> listarPorCita(Long citaId, Long afterId, long limite) {
+        return paginar(afterId, limite, (cursor, tamano) -> repo.getPageByCitaId(citaId, cursor, tamano));
+    }
+
+    public Flux<PagoDTO> listarPorEstado(String estado, Long afterId) {
+        return listarPorEstado(estado, afterId, Long.MAX_VALUE);
+    }
+
+    public Flux<PagoDTO> listarPorEstado(String estado, Long afterId, long limite) {
+        return paginar(afterId, limite, (cursor, tamano) -> repo.getPageByEstado(estado, cursor, tamano));
+    }
+
+    public Mono<PagoDTO> guardar(PagoDTO dto) {
+        if (dto.getCitaId() == null) {
+            return Mono.error(new SolicitudInvalidaException("citaId es obligatorio"));
+        }
+        return citaWebClient.buscar(dto.getCitaId())
+                .onErrorMap(e -> new RuntimeException("Error al comunicarse con el servicio de citas: " + e.getMessage(), e))
+                .flatMap(cita -> cita.isPresent()
+                        ? bloqueante(() -> pagoService.guardar(dto, cita.get()))
+                        : Mono.error(new SolicitudInvalidaException("La cita no existe")));
+    }
+
+    public Mono<PagoDTO> actualizar(Long id, PagoDTO dto) {
+        Mono<CitaConsultada> cita = dto.getCitaId() == null
+                ? Mono.just(new CitaConsultada(null, false))
+                : citaWebClient.buscar(dto.getCitaId())
+                        .map(c -> new CitaConsultada(c.orElse(null), false))
+                        .onErrorResume(e -> Mono.just(new CitaConsultada(null, true)));
+        return cita.flatMap(c -> bloqueante(() -> pagoService.actualizar(id, dto, c.cita(), c.fallida())));
+    }
+
+    public Mono<Boolean> eliminar(Long id) {
+        return bloqueante(() -> pagoService.eliminar(id));
+    }
+
+    private Flux<PagoDTO> paginar(Long afterId, long limite, BiFunction<Long, Integer, List<PagoDTO>> pagina) {
+        return leer(afterId, limite, pagina)
+                .expand(anterior -> anterior.pagos().size() < anterior.tamano() || anterior.restantes() == 0
+                        ? Mono.empty()
+                        : leer(anterior.pagos().get(anterior.pagos().size() - 1).getId(), anterior.restantes(), pagina))
+                // prefetch 1: como mucho una página leída por delante de lo que consume el cliente
+                .concatMap(tramo -> enriquecer(tramo.pagos()).thenReturn(tramo.pagos()), 1)
+                .flatMapIterable(pagos -> pagos, 1);
+    }
+
+    // Una página de pagos.streaming.lote, o lo que falte hasta el límite si es menos
+    private Mono<Tramo> leer(Long cursor, long restantes, BiFunction<Long, Integer, List<PagoDTO>> pagina) {
+        int tamano = (int) Math.min(loteStreaming, restantes);
+        return bloqueante(() -> new Tramo(pagina.apply(cursor, tamano), tamano, restantes - tamano));
+    }
+
+    private Mono<Void> enriquecer(List<PagoDTO> pagos) {
+        Set<Long> citaIds = pagos.stream()
+                .map(PagoDTO::getCitaId)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+        return citaWebClient.cargar(citaIds)
+                .doOnNext(lote -> PagoService.aplicarLote(pagos, lote))
+                .then();
+    }
+
+    // fromCallable con resultado null termina vacío, que es como se representa "no encontrado"
+    private <T> Mono<T> bloqueante(Callable<T> llamada) {
+        return Mono.fromCallable(llamada).subscribeOn(jpaScheduler);
+    }
+
+    private record CitaConsultada(CitaDTO cita, boolean fallida) {}
+
+    private record Tramo(List<PagoDTO> pagos, int tamano, long restantes) {}
+}
@@ -1,37 +1,145 @@
 package com.clinica.pagos.domain.service;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import com.clinica.pagos.domain.dto.ActualizacionPagoDTO;
+import com.clinica.pagos.domain.dto.EventoPagoDTO;
 import com.clinica.pagos.domain.dto.PagoDTO;
+import com.clinica.pagos.domain.dto.ResultadoLoteDTO;
+import com.clinica.pagos.domain.repository.IEventosPago;
 import com.clinica.pagos.domain.repository.IPago;
-import com.clinica.pagos.infrastructure.client.CitaClient;
-import com.clinica.pagos.infrastructure.client.NotificacionesFeignClient;
+import com.clinica.pagos.domain.repository.IResumenPagos;
+import com.clinica.pagos.infrastructure.client.CitaBatchLoader;
+import com.clinica.pagos.infrastructure.client.CitaCache;
+import com.clinica.pagos.infrastructure.client.CitasLote;
+import com.clinica.pagos.infrastructure.client.CitasNoDisponiblesException;
 import com.clinica.pagos.infrastructure.client.dto.CitaDTO;
 import com.clinica.pagos.infrastructure.client.dto.NotificacionDTO;
+import com.clinica.pagos.infrastructure.entity.EstadoPago;
+import com.clinica.pagos.infrastructure.entity.MetodoPago;
+import com.clinica.pagos.infrastructure.outbox.OutboxNotificaciones;
+import com.clinica.pagos.infrastructure.repositories.CombinadorEscrituras;
 
 import feign.FeignException;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 
 @Service
 public class PagoService {
 
+    private static final Logger log = LoggerFactory.getLogger(PagoService.class);
+
+    // Campos que admite ?fields= en los listados, en el orden de PagoDTO
+    public static final List<String> CAMPOS = List.of("id", "citaId", "monto", "metodoPago", "fechaPago", "estado",
+            "referencia", "version", "nombrePaciente", "nombreMedico");
+    // Campos que no están en la tabla y salen del servicio de citas
+    private static final Set<String> CAMPOS_CITA = Set.of("nombrePaciente", "nombreMedico");
+    // Rechazo de una carga masiva por fallo del servicio de citas (no del pago): se puede reintentar
+    public static final String ERROR_CITAS_NO_DISPONIBLES = "Error al comunicarse con el servicio de citas";
+
+    // Límites de las columnas de pagos: monto DECIMAL(38,2) y referencia VARCHAR(255)
+    private static final int MONTO_DIGITOS_ENTEROS = 36;
+    private static final int REFERENCIA_LONGITUD_MAXIMA = 255;
+
     @Autowired
     private IPago repo;
 
     @Autowired
-    private CitaClient citaClient;
+    private CitaCache citaCache;
 
     @Autowired
-    private NotificacionesFeignClient notificacionesFeignClient;
+    private CitaBatchLoader citaBatchLoader;
 
-    public List<PagoDTO> obtenerTodo() {
-        List<PagoDTO> pagos = repo.getAll();
-        pagos.forEach(this::enriquecerPago);
-        return pagos;
+    @Autowired
+    private NotificacionPagoBuilder notificacionPagoBuilder;
+
+    @Autowired
+    private OutboxNotificaciones outboxNotificaciones;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    // Agregados para informes; se actualizan en la misma transacción que cada escritura
+    @Autowired
+    private IResumenPagos resumenPagos;
+
+    // Registro de eventos para consumidores (GET /pagos/events). Siempre lo último de cada transacción:
+    // reserva la secuencia y la retiene hasta el commit
+    @Autowired
+    private IEventosPago eventosPago;
+
+    // Cantidad de pagos que se acumulan antes de enriquecerlos en lote durante un streaming
+    @Value("${pagos.streaming.lote:500}")
+    private int loteStreaming;
+
+    @Autowired
+    private MeterRegistry registry;
+
+    // Altas y actualizaciones concurrentes agrupadas en transacciones compartidas (ver CombinadorEscrituras)
+    @Value("${pagos.combinador.habilitado:false}")
+    private boolean combinarEscrituras;
+
+    @Value("${pagos.combinador.hilos:4}")
+    private int hilosCombinador;
+
+    @Value("${pagos.combinador.max-lote:64}")
+    private int maxLoteCombinador;
+
+    @Value("${pagos.combinador.ventana:2ms}")
+    private Duration ventanaCombinador;
+
+    private CombinadorEscrituras<Escritura, PagoDTO> combinador;
+
+    // Escritura individual pendiente de combinar con otras
+    private sealed interface Escritura permits Alta, Modificacion {}
+
+    private record Alta(PagoDTO dto, CitaDTO cita, Consumer<PagoDTO> enTransaccion) implements Escritura {}
+
+    private record Modificacion(Long id, PagoDTO dto, CitaDTO cita) implements Escritura {}
+
+    @PostConstruct
+    public void iniciarCombinador() {
+        if (combinarEscrituras) {
+            combinador = new CombinadorEscrituras<>("pagos", new CombinadorEscrituras.Procesador<>() {
+                @Override
+                public List<PagoDTO> procesarLote(List<Escritura> lote) {
+                    return escribirLote(lote);
+                }
+
+                @Override
+                public PagoDTO procesar(Escritura escritura) {
+                    return escribir(escritura);
+                }
+            }, hilosCombinador, maxLoteCombinador, ventanaCombinador, registry);
+        }
+    }
+
+    @PreDestroy
+    public void detenerCombinador() {
+        if (combinador != null) {
+            combinador.close();
+        }
     }
 
     public Optional<PagoDTO> obtenerPorId(Long id) {
@@ -41,20 +149,42 @@ public class PagoService {
     }
 
     public PagoDTO guardar(PagoDTO dto) {
-        CitaDTO cita = null;
+        return guardar(dto, buscarCitaParaAlta(dto), null);
+    }
+
+    /**
+     * Guarda un pago cuya cita ya se ha comprobado (la API reactiva la resuelve sin bloquear).
+     * @param cita la cita del pago, no nula.
+     */
+    public PagoDTO guardar(PagoDTO dto, CitaDTO cita) {
+        return guardar(dto, cita, null);
+    }
+
+    /**
+     * Guarda un pago y, en la misma transacción, entrega a {@code enTransaccion} la respuesta ya enriquecida
+     * (la usa la idempotencia de POST /pagos para registrar la clave de forma atómica con el pago).
+     */
+    public PagoDTO guardar(PagoDTO dto, Consumer<PagoDTO> enTransaccion) {
+        return guardar(dto, buscarCitaParaAlta(dto), enTransaccion);
+    }
+
+    private CitaDTO buscarCitaParaAlta(PagoDTO dto) {
+        CitaDTO cita;
         try {
-            cita = citaClient.getCitaById(dto.getCitaId());
+            cita = citaCache.buscar(dto.getCitaId()).orElse(null);
             if (cita == null) {
-                throw new RuntimeException("La cita con ID " + dto.getCitaId() + " no fue encontrada (respuesta nula).");
+                log.warn("Cita con ID {} no existe.", dto.getCitaId());
+                throw new RuntimeException("La cita no existe");
             }
-        } catch (FeignException.NotFound e) {
-            System.err.println("Error: Cita con ID " + dto.getCitaId() + " no existe.");
-            throw new RuntimeException("La cita no existe", e);
-        } catch (FeignException e) {
-            System.err.println("Error al comunicarse con el servicio de citas (ID: " + dto.getCitaId() + "): " + e.getMessage());
+        } catch (FeignException | CitasNoDisponiblesException e) {
+            log.error("Error al comunicarse con el servicio de citas (ID: {}): {}", dto.getCitaId(), e.getMessage());
             throw new RuntimeException("Error al comunicarse con el servicio de citas: " + e.getMessage(), e);
         }
+        return cita;
+    }
 
+    private PagoDTO guardar(PagoDTO dto, CitaDTO cita, Consumer<PagoDTO> enTransaccion) {
+        validarCodigos(dto);
         if (dto.getFechaPago() == null) {
             dto.setFechaPago(LocalDateTime.now());
         }
@@ -63,68 +193,517 @@ public class PagoService {
             dto.setEstado("PENDIENTE"); // Establece un estado inicial por defecto si no viene
         }
 
-        // No hay estado previo al guardar, así que solo usamos el estado actual
-        PagoDTO pagoGuardado = repo.save(dto);
-        enriquecerPago(pagoGuardado);
+        PagoDTO pagoGuardado = combinar() ? combinador.ejecutar(new Alta(dto, cita, enTransaccion)) : insertar(dto, cita, enTransaccion);
+        aplicarCita(pagoGuardado, cita);
+
+        return pagoGuardado;
+    }
+
+    private PagoDTO insertar(PagoDTO dto, CitaDTO cita, Consumer<PagoDTO> enTransaccion) {
+        // El pago y su notificación (outbox) se confirman en la misma transacción
+        return transactionTemplate.execute(status -> {
+            PagoDTO guardado = repo.save(dto);
+            resumenPagos.aplicar(null, guardado);
+            // No hay estado previo al guardar, así que solo usamos el estado actual
+            if ("COMPLETADO".equals(guardado.getEstado())) {
+                enviarNotificacionPago(guardado, "COMPLETADO", cita);
+            }
+            entregarEnTransaccion(guardado, cita, enTransaccion);
+            eventosPago.registrar(EventoPagoDTO.CREADO, null, guardado);
+            return guardado;
+        });
+    }
 
-        // Intenta enviar notificación si el estado es COMPLETADO después de guardar
-        if ("COMPLETADO".equals(pagoGuardado.getEstado())) {
-            enviarNotificacionPago(pagoGuardado, "COMPLETADO", cita);
+    private void entregarEnTransaccion(PagoDTO guardado, CitaDTO cita, Consumer<PagoDTO> enTransaccion) {
+        if (enTransaccion != null) {
+            PagoDTO respuesta = guardado.copia();
+            aplicarCita(respuesta, cita);
+            enTransaccion.accept(respuesta);
         }
+    }
 
-        return pagoGuardado;
+    /**
+     * Carga masiva de pagos. Valida las citas en lote, inserta los válidos con batching JDBC en una
+     * sola transacción y devuelve un resultado por elemento (en el mismo orden que la entrada).
+     * @param indiceInicial posición del primer pago dentro de la petición completa (para el NDJSON por bloques).
+     */
+    public List<ResultadoLoteDTO> guardarLote(List<PagoDTO> dtos, int indiceInicial) {
+        return guardarLote(dtos, indiceInicial, null);
+    }
+
+    /**
+     * Como {@link #guardarLote(List, int)}, y en la misma transacción entrega a {@code enTransaccion} cada pago
+     * insertado junto con su posición en {@code dtos} (el diario de altas registra así sus claves de idempotencia).
+     */
+    public List<ResultadoLoteDTO> guardarLote(List<PagoDTO> dtos, int indiceInicial, BiConsumer<Integer, PagoDTO> enTransaccion) {
+        ResultadoLoteDTO[] resultados = new ResultadoLoteDTO[dtos.size()];
+
+        Set<Long> citaIds = dtos.stream()
+                .filter(Objects::nonNull)
+                .map(PagoDTO::getCitaId)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+        CitasLote lote = citaBatchLoader.cargar(citaIds);
+
+        List<PagoDTO> validos = new ArrayList<>(dtos.size());
+        List<Integer> posiciones = new ArrayList<>(dtos.size());
+        for (int i = 0; i < dtos.size(); i++) {
+            PagoDTO dto = dtos.get(i);
+            String error = validarParaLote(dto, lote);
+            if (error != null) {
+                resultados[i] = ResultadoLoteDTO.rechazado(indiceInicial + i, dto, error);
+                continue;
+            }
+            if (dto.getFechaPago() == null) {
+                dto.setFechaPago(LocalDateTime.now());
+            }
+            if (dto.getEstado() == null) {
+                dto.setEstado("PENDIENTE");
+            }
+            validos.add(dto);
+            posiciones.add(i);
+        }
+
+        List<PagoDTO> guardados = transactionTemplate.execute(status -> {
+            List<PagoDTO> insertados = repo.saveAll(validos);
+            resumenPagos.agregar(insertados);
+            for (PagoDTO guardado : insertados) {
+                if ("COMPLETADO".equals(guardado.getEstado())) {
+                    enviarNotificacionPago(guardado, "COMPLETADO", lote.getCita(guardado.getCitaId()));
+                }
+            }
+            if (enTransaccion != null) {
+                for (int j = 0; j < insertados.size(); j++) {
+                    enTransaccion.accept(posiciones.get(j), insertados.get(j));
+                }
+            }
+            eventosPago.registrarTodos(EventoPagoDTO.CREADO, insertados);
+            return insertados;
+        });
+
+        for (int j = 0; j < guardados.size(); j++) {
+            int i = posiciones.get(j);
+            resultados[i] = ResultadoLoteDTO.creado(indiceInicial + i, guardados.get(j));
+        }
+        return List.of(resultados);
+    }
+
+    private static String validarParaLote(PagoDTO dto, CitasLote lote) {
+        String error = validarCampos(dto);
+        if (error != null) {
+            return error;
+        }
+        if (lote.esFallida(dto.getCitaId())) {
+            return ERROR_CITAS_NO_DISPONIBLES;
+        }
+        if (lote.getCita(dto.getCitaId()) == null) {
+            return "La cita no existe";
+        }
+        return null;
+    }
+
+    // Comprobaciones de un alta que no necesitan el servicio de citas; null si el pago es válido
+    static String validarCampos(PagoDTO dto) {
+        if (dto == null) {
+            return "Pago vacío";
+        }
+        if (dto.getCitaId() == null) {
+            return "citaId es obligatorio";
+        }
+        if (dto.getMonto() == null) {
+            return "monto es obligatorio";
+        }
+        if (dto.getMonto().precision() - dto.getMonto().scale() > MONTO_DIGITOS_ENTEROS) {
+            return "monto admite como máximo " + MONTO_DIGITOS_ENTEROS + " dígitos enteros";
+        }
+        if (dto.getReferencia() != null && dto.getReferencia().length() > REFERENCIA_LONGITUD_MAXIMA) {
+            return "referencia admite como máximo " + REFERENCIA_LONGITUD_MAXIMA + " caracteres";
+        }
+        return codigoDesconocido(dto);
+    }
+
+    // Estado y método se guardan como enums: un nombre que no existe no debe llegar al mapper
+    private static String codigoDesconocido(PagoDTO dto) {
+        if (dto.getEstado() != null && Arrays.stream(EstadoPago.values()).noneMatch(e -> e.name().equals(dto.getEstado()))) {
+            return "Estado de pago desconocido: " + dto.getEstado();
+        }
+        if (dto.getMetodoPago() != null && Arrays.stream(MetodoPago.values()).noneMatch(m -> m.name().equals(dto.getMetodoPago()))) {
+            return "Método de pago desconocido: " + dto.getMetodoPago();
+        }
+        return null;
+    }
+
+    private static void validarCodigos(PagoDTO dto) {
+        String error = codigoDesconocido(dto);
+        if (error != null) {
+            throw new SolicitudInvalidaException(error);
+        }
     }
 
     public PagoDTO actualizar(Long id, PagoDTO dto) {
-        // 1. Obtener el estado actual del pago antes de la actualización
-        Optional<PagoDTO> pagoPrevioOpt = repo.getById(id);
-        String estadoPrevio = pagoPrevioOpt.map(PagoDTO::getEstado).orElse(null);
+        // 1. Obtener la cita fuera de la transacción para no retener una conexión durante la llamada HTTP
+        CitaDTO cita = null;
+        boolean citaFallida = false;
+        if (dto.getCitaId() != null) {
+            try {
+                cita = citaCache.buscar(dto.getCitaId()).orElse(null);
+            } catch (FeignException | CitasNoDisponiblesException e) {
+                log.warn("No se pudo obtener la cita para el pago {} al actualizar. Notificación podría ser incompleta. Error: {}", id, e.getMessage());
+                citaFallida = true;
+            }
+        }
+        return actualizar(id, dto, cita, citaFallida);
+    }
 
-        PagoDTO pagoActualizado = repo.update(id, dto);
+    /**
+     * Actualiza un pago con la cita ya resuelta (la API reactiva la obtiene sin bloquear).
+     * @param citaFallida true si no se pudo consultar la cita: el pago se devuelve con el marcador de error.
+     */
+    public PagoDTO actualizar(Long id, PagoDTO dto, CitaDTO cita, boolean citaFallida) {
+        validarCodigos(dto);
+        PagoDTO pagoActualizado = combinar() ? combinador.ejecutar(new Modificacion(id, dto, cita)) : modificar(id, dto, cita);
 
         if (pagoActualizado != null) {
-            enriquecerPago(pagoActualizado);
+            if (pagoActualizado.getCitaId() == null) {
+                enriquecerPago(pagoActualizado);
+            } else if (citaFallida) {
+                pagoActualizado.setNombrePaciente("Error de comunicación");
+                pagoActualizado.setNombreMedico("Error de comunicación");
+            } else {
+                aplicarCita(pagoActualizado, cita);
+            }
+        }
+        return pagoActualizado;
+    }
+
+    private PagoDTO modificar(Long id, PagoDTO dto, CitaDTO cita) {
+        return transactionTemplate.execute(status -> {
+            // 2. Una sola lectura: la actualización en sitio devuelve también el estado previo.
+            //    Si otro proceso modificó el pago entre tanto, @Version hace fallar este UPDATE y no se notifica dos veces
+            ActualizacionPagoDTO actualizacion = repo.update(id, dto);
+            if (actualizacion == null) {
+                return null;
+            }
+
+            // 3. Notificar según el CAMBIO de estado (se registra en el outbox, misma transacción)
+            aplicarActualizacion(actualizacion, cita);
+            registrarActualizacion(actualizacion);
+            return actualizacion.getPago();
+        });
+    }
 
-            // 2. Obtener la información de la cita para la notificación
-            CitaDTO cita = null;
+    private void aplicarActualizacion(ActualizacionPagoDTO actualizacion, CitaDTO cita) {
+        resumenPagos.aplicar(actualizacion.getPagoAnterior(), actualizacion.getPago());
+        notificarCambioEstado(actualizacion.getPago(), actualizacion.getEstadoAnterior(), cita);
+    }
+
+    private void registrarActualizacion(ActualizacionPagoDTO actualizacion) {
+        boolean cambioEstado = !actualizacion.getPago().getEstado().equalsIgnoreCase(actualizacion.getEstadoAnterior());
+        eventosPago.registrar(cambioEstado ? EventoPagoDTO.ESTADO_CAMBIADO : EventoPagoDTO.ACTUALIZADO,
+                actualizacion.getEstadoAnterior(), actualizacion.getPago());
+    }
+
+    // Todo el lote en una sola llamada: con varios hilos del combinador, dos lotes que tocan las mismas filas
+    // de pagos_resumen_diario las bloquean en el mismo orden y no se interbloquean
+    private void agregarAlResumen(List<PagoDTO> insertados, List<ActualizacionPagoDTO> actualizaciones) {
+        List<PagoDTO> anteriores = new ArrayList<>(insertados.size() + actualizaciones.size());
+        List<PagoDTO> actuales = new ArrayList<>(insertados.size() + actualizaciones.size());
+        for (PagoDTO insertado : insertados) {
+            anteriores.add(null);
+            actuales.add(insertado);
+        }
+        for (ActualizacionPagoDTO actualizacion : actualizaciones) {
+            if (actualizacion != null) {
+                anteriores.add(actualizacion.getPagoAnterior());
+                actuales.add(actualizacion.getPago());
+            }
+        }
+        if (!actuales.isEmpty()) {
+            resumenPagos.aplicarTodos(anteriores, actuales);
+        }
+    }
+
+    // Dentro de una transacción ajena las escrituras no se combinan: deben confirmarse con ella
+    private boolean combinar() {
+        return combinador != null && !TransactionSynchronizationManager.isActualTransactionActive();
+    }
+
+    private PagoDTO escribir(Escritura escritura) {
+        return switch (escritura) {
+            case Alta alta -> insertar(alta.dto(), alta.cita(), alta.enTransaccion());
+            case Modificacion modificacion -> modificar(modificacion.id(), modificacion.dto(), modificacion.cita());
+        };
+    }
+
+    /**
+     * Altas y actualizaciones de varias peticiones en una sola transacción: un INSERT por lotes
+     * ({@code saveAll}), una lectura y un flush para las actualizaciones ({@code updateAll}) y los eventos al final.
+     * Devuelve un resultado por escritura, en orden (null si el pago a actualizar no existe).
+     */
+    private List<PagoDTO> escribirLote(List<Escritura> escrituras) {
+        List<Alta> altas = new ArrayList<>();
+        List<Modificacion> modificaciones = new ArrayList<>();
+        for (Escritura escritura : escrituras) {
+            switch (escritura) {
+                case Alta alta -> altas.add(alta);
+                case Modificacion modificacion -> modificaciones.add(modificacion);
+            }
+        }
+
+        // El fallo se traduce dentro de la transacción: si llega LoteRevertidoException, la transacción se deshizo
+        // y el combinador puede repetir cada escritura sin riesgo de duplicarla
+        return transactionTemplate.execute(status -> {
             try {
-                cita = citaClient.getCitaById(pagoActualizado.getCitaId());
-            } catch (FeignException e) {
-                System.err.println("ADVERTENCIA: No se pudo obtener la cita para el pago " + id + " al actualizar. Notificación podría ser incompleta. Error: " + e.getMessage());
-                // Podrías lanzar una excepción o manejarlo de otra forma si la cita es crítica
-            }
-
-            // 3. Lógica para enviar notificaciones basada en el CAMBIO de estado
-            if (!pagoActualizado.getEstado().equalsIgnoreCase(estadoPrevio)) { // Solo si el estado ha cambiado
-                if ("COMPLETADO".equals(pagoActualizado.getEstado())) {
-                    enviarNotificacionPago(pagoActualizado, "COMPLETADO", cita);
-                } else if ("ANULADO".equals(pagoActualizado.getEstado())) {
-                    enviarNotificacionPago(pagoActualizado, "ANULADO", cita);
+                List<PagoDTO> insertados = altas.isEmpty() ? List.of() : repo.saveAll(altas.stream().map(Alta::dto).toList());
+                List<ActualizacionPagoDTO> actualizaciones = modificaciones.isEmpty() ? List.of() : repo.updateAll(
+                        modificaciones.stream().map(Modificacion::id).toList(),
+                        modificaciones.stream().map(Modificacion::dto).toList());
+                agregarAlResumen(insertados, actualizaciones);
+
+                for (int i = 0; i < insertados.size(); i++) {
+                    PagoDTO guardado = insertados.get(i);
+                    Alta alta = altas.get(i);
+                    if ("COMPLETADO".equals(guardado.getEstado())) {
+                        enviarNotificacionPago(guardado, "COMPLETADO", alta.cita());
+                    }
+                    entregarEnTransaccion(guardado, alta.cita(), alta.enTransaccion());
                 }
-                // Podrías añadir más condiciones aquí para otros cambios de estado
-            } else {
-                System.out.println("DEBUG: El estado del pago ID " + id + " no cambió (" + estadoPrevio + " -> " + pagoActualizado.getEstado() + "), no se envía notificación.");
+
+                for (int i = 0; i < actualizaciones.size(); i++) {
+                    ActualizacionPagoDTO actualizacion = actualizaciones.get(i);
+                    if (actualizacion != null) {
+                        notificarCambioEstado(actualizacion.getPago(), actualizacion.getEstadoAnterior(), modificaciones.get(i).cita());
+                    }
+                }
+
+                if (!insertados.isEmpty()) {
+                    eventosPago.registrarTodos(EventoPagoDTO.CREADO, insertados);
+                }
+                actualizaciones.stream().filter(Objects::nonNull).forEach(this::registrarActualizacion);
+
+                List<PagoDTO> resultados = new ArrayList<>(escrituras.size());
+                int alta = 0;
+                int modificacion = 0;
+                for (Escritura escritura : escrituras) {
+                    if (escritura instanceof Alta) {
+                        resultados.add(insertados.get(alta++));
+                    } else {
+                        ActualizacionPagoDTO actualizacion = actualizaciones.get(modificacion++);
+                        resultados.add(actualizacion != null ? actualizacion.getPago() : null);
+                    }
+                }
+                return resultados;
+            } catch (RuntimeException e) {
+                throw new CombinadorEscrituras.LoteRevertidoException(e);
+            }
+        });
+    }
+
+    /**
+     * Transición condicional de estado: el pago pasa a {@code nuevo} solo si su estado actual es {@code esperado},
+     * con un único UPDATE atómico. Si se aplica, la notificación correspondiente se registra en la misma transacción.
+     * @return vacío si el pago no existe; con {@code aplicado=false} y el pago actual si el estado no era el esperado.
+     */
+    public Optional<ActualizacionPagoDTO> cambiarEstado(Long id, String esperado, String nuevo) {
+        for (String estado : new String[] { esperado, nuevo }) {
+            if (EstadoPago.buscar(estado).isEmpty()) {
+                throw new SolicitudInvalidaException("Estado de pago desconocido: " + estado);
             }
         }
-        return pagoActualizado;
+        // La cita se resuelve antes de abrir la transacción, igual que en actualizar()
+        Optional<PagoDTO> actual = repo.getById(id);
+        if (actual.isEmpty()) {
+            return Optional.empty();
+        }
+        CitaDTO cita = null;
+        if (actual.get().getCitaId() != null) {
+            try {
+                cita = citaCache.buscar(actual.get().getCitaId()).orElse(null);
+            } catch (FeignException | CitasNoDisponiblesException e) {
+                log.warn("No se pudo obtener la cita para el pago {} al cambiar su estado. Notificación podría ser incompleta. Error: {}", id, e.getMessage());
+            }
+        }
+        final CitaDTO citaNotificacion = cita;
+        String estadoAnterior = EstadoPago.buscar(esperado).map(Enum::name).orElse(esperado);
+
+        ActualizacionPagoDTO resultado = transactionTemplate.execute(status -> {
+            boolean aplicado = repo.cambiarEstado(id, esperado, nuevo);
+            Optional<PagoDTO> pago = repo.getById(id);
+            if (pago.isEmpty()) {
+                return null;
+            }
+            if (!aplicado) {
+                return new ActualizacionPagoDTO(pago.get(), null, pago.get().getEstado(), false);
+            }
+            // El UPDATE condicional solo tocó el estado: el pago anterior es el actual con el estado esperado
+            PagoDTO anterior = conEstado(pago.get(), estadoAnterior);
+            resumenPagos.aplicar(anterior, pago.get());
+            notificarCambioEstado(pago.get(), estadoAnterior, citaNotificacion);
+            eventosPago.registrar(EventoPagoDTO.ESTADO_CAMBIADO, estadoAnterior, pago.get());
+            return new ActualizacionPagoDTO(pago.get(), anterior, estadoAnterior, true);
+        });
+        if (resultado != null) {
+            enriquecerPago(resultado.getPago());
+        }
+        return Optional.ofNullable(resultado);
     }
 
     public boolean eliminar(Long id) {
-        return repo.delete(id);
+        Boolean eliminado = transactionTemplate.execute(status -> repo.delete(id)
+                .map(pago -> {
+                    resumenPagos.aplicar(pago, null);
+                    eventosPago.registrar(EventoPagoDTO.ELIMINADO, pago.getEstado(), pago);
+                    return true;
+                })
+                .orElse(false));
+        return Boolean.TRUE.equals(eliminado);
     }
 
-    public List<PagoDTO> obtenerPorCita(Long citaId) {
-        List<PagoDTO> pagos = repo.getByCitaId(citaId);
-        pagos.forEach(this::enriquecerPago);
+    public List<PagoDTO> obtenerPagina(Long afterId, int limit) {
+        List<PagoDTO> pagos = repo.getPage(afterId, limit);
+        enriquecerPagos(pagos);
         return pagos;
     }
 
-    public List<PagoDTO> obtenerPorEstado(String estado) {
-        List<PagoDTO> pagos = repo.getByEstado(estado);
-        pagos.forEach(this::enriquecerPago);
+    public List<PagoDTO> obtenerPaginaPorCita(Long citaId, Long afterId, int limit) {
+        List<PagoDTO> pagos = repo.getPageByCitaId(citaId, afterId, limit);
+        enriquecerPagos(pagos);
+        return pagos;
+    }
+
+    public List<PagoDTO> obtenerPaginaPorEstado(String estado, Long afterId, int limit) {
+        List<PagoDTO> pagos = repo.getPageByEstado(estado, afterId, limit);
+        enriquecerPagos(pagos);
+        return pagos;
+    }
+
+    // Proyecciones (?fields=): solo se leen las columnas pedidas y solo se consulta citas si se piden los nombres
+    public List<PagoDTO> obtenerPagina(Long afterId, int limit, List<String> campos) {
+        return proyectar(campos, columnas -> repo.getPage(afterId, limit, columnas));
+    }
+
+    public List<PagoDTO> obtenerPaginaPorCita(Long citaId, Long afterId, int limit, List<String> campos) {
+        return proyectar(campos, columnas -> repo.getPageByCitaId(citaId, afterId, limit, columnas));
+    }
+
+    public List<PagoDTO> obtenerPaginaPorEstado(String estado, Long afterId, int limit, List<String> campos) {
+        return proyectar(campos, columnas -> repo.getPageByEstado(estado, afterId, limit, columnas));
+    }
+
+    private List<PagoDTO> proyectar(List<String> campos, Function<Set<String>, List<PagoDTO>> consulta) {
+        Set<String> columnas = new LinkedHashSet<>();
+        columnas.add("id"); // siempre: es el cursor de la página siguiente
+        boolean enriquecer = false;
+        for (String campo : campos) {
+            if (!CAMPOS.contains(campo)) {
+                throw new SolicitudInvalidaException("Campo de pago desconocido: " + campo + ". Admitidos: " + CAMPOS);
+            }
+            if (CAMPOS_CITA.contains(campo)) {
+                enriquecer = true;
+                columnas.add("citaId");
+            } else {
+                columnas.add(campo);
+            }
+        }
+        List<PagoDTO> pagos = consulta.apply(columnas);
+        if (enriquecer) {
+            enriquecerPagos(pagos);
+        }
         return pagos;
     }
 
+    /*
+     * Las exportaciones HTTP leen por páginas de {@code pagos.streaming.lote} con el mismo cursor que las consultas
+     * paginadas, cada una en su propia transacción corta: escribir a un cliente lento no retiene una conexión del
+     * pool ni una transacción abierta durante toda la respuesta.
+     */
+    public void transmitirTodo(Consumer<PagoDTO> destino) {
+        paginar(cursor -> repo.getPage(cursor, loteStreaming), destino);
+    }
+
+    public void transmitirPorCita(Long citaId, Consumer<PagoDTO> destino) {
+        paginar(cursor -> repo.getPageByCitaId(citaId, cursor, loteStreaming), destino);
+    }
+
+    public void transmitirPorEstado(String estado, Consumer<PagoDTO> destino) {
+        paginar(cursor -> repo.getPageByEstado(estado, cursor, loteStreaming), destino);
+    }
+
+    private void paginar(Function<Long, List<PagoDTO>> pagina, Consumer<PagoDTO> destino) {
+        Long cursor = null;
+        List<PagoDTO> pagos;
+        do {
+            pagos = pagina.apply(cursor);
+            if (pagos.isEmpty()) {
+                return;
+            }
+            cursor = pagos.get(pagos.size() - 1).getId();
+            enriquecerPagos(pagos);
+            pagos.forEach(destino);
+        } while (pagos.size() >= loteStreaming);
+    }
+
+    // Pagos con afterId < id <= hastaId, enriquecidos (un tramo de una exportación)
+    public void transmitirRango(Long afterId, Long hastaId, Consumer<PagoDTO> destino) {
+        transmitir(consumidor -> repo.streamRango(afterId, hastaId, consumidor), destino);
+    }
+
+    /**
+     * Recorre una fuente en streaming enriqueciendo los pagos en bloques de {@code pagos.streaming.lote},
+     * de modo que la memoria usada no depende del tamaño total del resultado.
+     */
+    private void transmitir(Consumer<Consumer<PagoDTO>> fuente, Consumer<PagoDTO> destino) {
+        List<PagoDTO> bloque = new ArrayList<>(loteStreaming);
+        fuente.accept(pago -> {
+            bloque.add(pago);
+            if (bloque.size() >= loteStreaming) {
+                volcar(bloque, destino);
+            }
+        });
+        volcar(bloque, destino);
+    }
+
+    private void volcar(List<PagoDTO> bloque, Consumer<PagoDTO> destino) {
+        enriquecerPagos(bloque);
+        bloque.forEach(destino);
+        bloque.clear();
+    }
+
+    /**
+     * Enriquece un listado de pagos consultando cada cita distinta una sola vez, en lote.
+     */
+    private void enriquecerPagos(List<PagoDTO> pagos) {
+        if (pagos.isEmpty()) {
+            return;
+        }
+        Set<Long> citaIds = pagos.stream()
+                .map(PagoDTO::getCitaId)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+        aplicarLote(pagos, citaBatchLoader.cargar(citaIds));
+    }
+
+    // Rellena paciente y médico de cada pago a partir de un lote de citas ya resuelto (también lo usa la API reactiva)
+    static void aplicarLote(List<PagoDTO> pagos, CitasLote lote) {
+        for (PagoDTO pago : pagos) {
+            Long citaId = pago.getCitaId();
+            CitaDTO cita = citaId != null ? lote.getCita(citaId) : null;
+            if (citaId == null) {
+                pago.setNombrePaciente("N/A");
+                pago.setNombreMedico("N/A");
+            } else if (cita != null) {
+                pago.setNombrePaciente(cita.getNombrePaciente());
+                pago.setNombreMedico(cita.getNombreMedico());
+            } else if (lote.esFallida(citaId)) {
+                pago.setNombrePaciente("Error de comunicación");
+                pago.setNombreMedico("Error de comunicación");
+            } else {
+                pago.setNombrePaciente("Paciente no encontrado");
+                pago.setNombreMedico("Médico no encontrado");
+            }
+        }
+    }
+
     private void enriquecerPago(PagoDTO pago) {
         if (pago.getCitaId() == null) {
             pago.setNombrePaciente("N/A");
@@ -132,80 +711,60 @@ public class PagoService {
             return;
         }
         try {
-            CitaDTO cita = citaClient.getCitaById(pago.getCitaId());
-            if (cita != null) {
-                pago.setNombrePaciente(cita.getNombrePaciente());
-                pago.setNombreMedico(cita.getNombreMedico());
-            } else {
-                pago.setNombrePaciente("Paciente no encontrado (ID: " + pago.getCitaId() + ")");
-                pago.setNombreMedico("Médico no encontrado (ID: " + pago.getCitaId() + ")");
-            }
-        } catch (FeignException.NotFound e) {
-            System.err.println("Advertencia: Cita con ID " + pago.getCitaId() + " no encontrada al enriquecer pago.");
-            pago.setNombrePaciente("Paciente no encontrado");
-            pago.setNombreMedico("Médico no encontrado");
-        } catch (FeignException e) {
-            System.err.println("Error de comunicación con Citas al enriquecer pago " + pago.getId() + " para cita " + pago.getCitaId() + ": " + e.getMessage());
+            aplicarCita(pago, citaCache.buscar(pago.getCitaId()).orElse(null));
+        } catch (FeignException | CitasNoDisponiblesException e) {
+            log.warn("Error de comunicación con Citas al enriquecer pago {} para cita {}: {}", pago.getId(), pago.getCitaId(), e.getMessage());
             pago.setNombrePaciente("Error de comunicación");
             pago.setNombreMedico("Error de comunicación");
         }
     }
 
+    private void aplicarCita(PagoDTO pago, CitaDTO cita) {
+        if (cita != null) {
+            pago.setNombrePaciente(cita.getNombrePaciente());
+            pago.setNombreMedico(cita.getNombreMedico());
+        } else {
+            log.warn("Cita con ID {} no encontrada al enriquecer pago.", pago.getCitaId());
+            pago.setNombrePaciente("Paciente no encontrado");
+            pago.setNombreMedico("Médico no encontrado");
+        }
+    }
+
+    private static PagoDTO conEstado(PagoDTO pago, String estado) {
+        PagoDTO copia = pago.copia();
+        copia.setEstado(estado);
+        return copia;
+    }
+
+    // Registra la notificación de COMPLETADO/ANULADO cuando el estado realmente cambió
+    private void notificarCambioEstado(PagoDTO pago, String estadoPrevio, CitaDTO cita) {
+        if (!pago.getEstado().equalsIgnoreCase(estadoPrevio)) { // Solo si el estado ha cambiado
+            if ("COMPLETADO".equals(pago.getEstado())) {
+                enviarNotificacionPago(pago, "COMPLETADO", cita);
+            } else if ("ANULADO".equals(pago.getEstado())) {
+                enviarNotificacionPago(pago, "ANULADO", cita);
+            }
+            // Podrías añadir más condiciones aquí para otros cambios de estado
+        } else {
+            log.debug("El estado del pago ID {} no cambió ({} -> {}), no se envía notificación.", pago.getId(), estadoPrevio, pago.getEstado());
+        }
+    }
+
     /**
-     * Método auxiliar para enviar notificaciones de pago.
+     * Método auxiliar para notificar un pago.
+     * La notificación no se envía aquí: se registra en el outbox dentro de la transacción en curso
+     * y la entrega el OutboxDispatcher en segundo plano, con reintentos.
      * @param pago El PagoDTO que disparó la notificación.
      * @param tipoNotificacion El tipo de notificación (e.g., "COMPLETADO", "ANULADO").
      * @param cita La CitaDTO asociada al pago (puede ser null si no se pudo obtener).
      */
     private void enviarNotificacionPago(PagoDTO pago, String tipoNotificacion, CitaDTO cita) {
-        System.out.println("DEBUG: El pago está " + tipoNotificacion + ", intentando enviar notificación.");
-        try {
-            String asunto = "";
-            String mensaje = "";
-            String eventType = "";
-
-            if ("COMPLETADO".equals(tipoNotificacion)) {
-                asunto = "Confirmación de Pago Completado para su Cita";
-                mensaje = String.format("Estimado(a) %s,\n\nSu pago de %.2f USD para la cita con el Dr. %s ha sido completado exitosamente.\n\nReferencia de pago: %s",
-                                         cita != null ? cita.getNombrePaciente() : "Paciente", pago.getMonto(), cita != null ? cita.getNombreMedico() : "Médico", pago.getReferencia());
-                eventType = "PAGO_COMPLETADO";
-            } else if ("ANULADO".equals(tipoNotificacion)) {
-                asunto = "Notificación de Pago Anulado";
-                mensaje = String.format("Estimado(a) %s,\n\nSu pago de %.2f USD para la cita con el Dr. %s ha sido ANULADO.\n\nReferencia de pago: %s",
-                                         cita != null ? cita.getNombrePaciente() : "Paciente", pago.getMonto(), cita != null ? cita.getNombreMedico() : "Médico", pago.getReferencia());
-                eventType = "PAGO_ANULADO";
-            } else {
-                System.out.println("ADVERTENCIA: Tipo de notificación no soportado: " + tipoNotificacion);
-                return;
-            }
-
-            NotificacionDTO notificacion = new NotificacionDTO(
-                cita != null ? cita.getPacienteId() : null, // ID del paciente
-                eventType,
-                asunto,
-                mensaje,
-                "EMAIL",
-                "PagoService:" + pago.getId()
-            );
-
-            // Intentar obtener el email del paciente de la cita si está disponible
-            if (cita != null && cita.getEmailPaciente() != null && !cita.getEmailPaciente().isEmpty()) {
-                notificacion.setEmailDestinatario(cita.getEmailPaciente());
-            } else {
-                // Si no se tiene el email del paciente, usa el valor por defecto que manejará NotificacionesService
-                // o considera lanzar una excepción si el email es obligatorio.
-                System.err.println("ADVERTENCIA: No se pudo obtener el email del paciente para la cita ID " + pago.getCitaId() + ". Se enviará a 'nodisponible@example.com'.");
-                notificacion.setEmailDestinatario("nodisponible@example.com"); // NotificacionesService ya maneja esto
-            }
-
-            notificacionesFeignClient.enviarNotificacion(notificacion);
-            System.out.println("DEBUG: Notificación de pago enviada exitosamente a NotificacionesService para pago ID: " + pago.getId() + " (tipo: " + tipoNotificacion + ").");
-        } catch (FeignException e) {
-            System.err.println("ERROR Feign al enviar notificación de pago " + tipoNotificacion + " para ID " + pago.getId() + ": " + e.status() + " - " + e.getMessage());
-            e.printStackTrace();
-        } catch (Exception e) {
-            System.err.println("ERROR GENERAL al intentar enviar notificación de pago " + tipoNotificacion + " para ID " + pago.getId() + ": " + e.getMessage());
-            e.printStackTrace();
+        NotificacionDTO notificacion = notificacionPagoBuilder.construir(pago, tipoNotificacion, cita);
+        if (notificacion == null) {
+            log.warn("Tipo de notificación no soportado: {}", tipoNotificacion);
+            return;
         }
+        outboxNotificaciones.registrar(notificacion);
+        log.debug("Notificación de pago {} registrada en el outbox para pago ID: {}.", tipoNotificacion, pago.getId());
     }
-}
\ No newline at end of file
+}
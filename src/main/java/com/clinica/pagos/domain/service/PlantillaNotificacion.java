@@ -0,0 +1,160 @@
+package com.clinica.pagos.domain.service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.clinica.pagos.domain.dto.PagoDTO;
+import com.clinica.pagos.infrastructure.client.dto.CitaDTO;
+
+/**
+ * Plantilla de texto de una notificación, compilada una sola vez: el texto se parte en tramos literales y
+ * variables {@code {nombre}}, y renderizar es recorrer los tramos añadiendo a un StringBuilder, sin
+ * String.format ni concatenaciones intermedias. Una llave doble ({{ o }}) escribe una llave literal.
+ * <p>
+ * Variables: {@code paciente}, {@code medico}, {@code especialidad}, {@code monto}, {@code referencia},
+ * {@code metodo}, {@code pagoId}, {@code citaId}. Sin cita, paciente y médico salen como "Paciente" y "Médico".
+ */
+final class PlantillaNotificacion {
+
+    private enum Variable { PACIENTE, MEDICO, ESPECIALIDAD, MONTO, REFERENCIA, METODO, PAGO_ID, CITA_ID }
+
+    // Por debajo de este valor un monto con 2 decimales pasa por double sin perder el céntimo (ver anadirMonto)
+    private static final BigDecimal MONTO_EXACTO_EN_DOUBLE = new BigDecimal("10000000000000");
+    private static final BigDecimal MONTO_EXACTO_EN_DOUBLE_NEGATIVO = MONTO_EXACTO_EN_DOUBLE.negate();
+
+    // Cada tramo es un String literal o una Variable
+    private final Object[] tramos;
+    private final int longitudLiterales;
+
+    private PlantillaNotificacion(Object[] tramos) {
+        this.tramos = tramos;
+        int longitud = 0;
+        for (Object tramo : tramos) {
+            if (tramo instanceof String literal) {
+                longitud += literal.length();
+            }
+        }
+        this.longitudLiterales = longitud;
+    }
+
+    /** @throws IllegalArgumentException si la plantilla usa una variable desconocida o tiene llaves sin cerrar. */
+    static PlantillaNotificacion compilar(String texto) {
+        List<Object> tramos = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        int i = 0;
+        while (i < texto.length()) {
+            char c = texto.charAt(i);
+            if ((c == '{' || c == '}') && i + 1 < texto.length() && texto.charAt(i + 1) == c) {
+                literal.append(c);
+                i += 2;
+            } else if (c == '{') {
+                int cierre = texto.indexOf('}', i);
+                if (cierre < 0) {
+                    throw new IllegalArgumentException("Llave sin cerrar en la plantilla: " + texto);
+                }
+                if (!literal.isEmpty()) {
+                    tramos.add(literal.toString());
+                    literal.setLength(0);
+                }
+                tramos.add(variable(texto.substring(i + 1, cierre)));
+                i = cierre + 1;
+            } else {
+                literal.append(c);
+                i++;
+            }
+        }
+        if (!literal.isEmpty()) {
+            tramos.add(literal.toString());
+        }
+        return new PlantillaNotificacion(tramos.toArray());
+    }
+
+    // El texto fijo si la plantilla no tiene variables (se devuelve tal cual, sin renderizar); si no, null
+    String constante() {
+        if (tramos.length == 0) {
+            return "";
+        }
+        return tramos.length == 1 && tramos[0] instanceof String literal ? literal : null;
+    }
+
+    // Longitud aproximada del resultado, para dimensionar el buffer
+    int longitudEstimada() {
+        return longitudLiterales + 16 * tramos.length;
+    }
+
+    void renderizar(StringBuilder destino, PagoDTO pago, CitaDTO cita) {
+        for (Object tramo : tramos) {
+            if (tramo instanceof String literal) {
+                destino.append(literal);
+                continue;
+            }
+            switch ((Variable) tramo) {
+                case PACIENTE -> destino.append(cita != null ? cita.getNombrePaciente() : "Paciente");
+                case MEDICO -> destino.append(cita != null ? cita.getNombreMedico() : "Médico");
+                case ESPECIALIDAD -> destino.append(cita != null ? cita.getEspecialidadMedico() : "");
+                case MONTO -> anadirMonto(destino, pago.getMonto());
+                case REFERENCIA -> destino.append(pago.getReferencia());
+                case METODO -> destino.append(pago.getMetodoPago());
+                case PAGO_ID -> anadirNumero(destino, pago.getId());
+                case CITA_ID -> anadirNumero(destino, pago.getCitaId());
+            }
+        }
+    }
+
+    /**
+     * Monto con dos decimales (redondeo HALF_UP, como {@code %.2f}) y punto decimal.
+     * Los montos de la tabla ya tienen escala 2; para ellos no se crea ningún objeto: el valor en céntimos
+     * se recupera de {@code doubleValue()} (correctamente redondeado y sin reservas para BigDecimal compactos),
+     * que para |céntimos| < 10^15 está a menos de medio céntimo del valor exacto.
+     */
+    static void anadirMonto(StringBuilder destino, BigDecimal monto) {
+        if (monto == null) {
+            destino.append((String) null);
+            return;
+        }
+        BigDecimal dosDecimales = monto.scale() == 2 ? monto : monto.setScale(2, RoundingMode.HALF_UP);
+        if (dosDecimales.signum() == 0 && monto.signum() < 0) {
+            // Como %.2f, un negativo que redondea a cero conserva el signo: -0.004 es "-0.00"
+            destino.append('-');
+        }
+        if (dosDecimales.compareTo(MONTO_EXACTO_EN_DOUBLE) >= 0 || dosDecimales.compareTo(MONTO_EXACTO_EN_DOUBLE_NEGATIVO) <= 0) {
+            destino.append(dosDecimales.toPlainString());
+            return;
+        }
+        long centimos = Math.round(dosDecimales.doubleValue() * 100);
+        if (centimos < 0) {
+            destino.append('-');
+            centimos = -centimos;
+        }
+        destino.append(centimos / 100).append('.');
+        long resto = centimos % 100;
+        if (resto < 10) {
+            destino.append('0');
+        }
+        destino.append(resto);
+    }
+
+    private static void anadirNumero(StringBuilder destino, Long numero) {
+        if (numero == null) {
+            destino.append((String) null);
+        } else {
+            destino.append(numero.longValue());
+        }
+    }
+
+    private static Variable variable(String nombre) {
+        return switch (nombre) {
+            case "paciente" -> Variable.PACIENTE;
+            case "medico" -> Variable.MEDICO;
+            case "especialidad" -> Variable.ESPECIALIDAD;
+            case "monto" -> Variable.MONTO;
+            case "referencia" -> Variable.REFERENCIA;
+            case "metodo" -> Variable.METODO;
+            case "pagoId" -> Variable.PAGO_ID;
+            case "citaId" -> Variable.CITA_ID;
+            default -> throw new IllegalArgumentException("Variable de plantilla desconocida: {" + nombre + "}");
+        };
+    }
+}
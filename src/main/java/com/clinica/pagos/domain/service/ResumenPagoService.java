@@ -0,0 +1,56 @@
+package com.clinica.pagos.domain.service;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import com.clinica.pagos.domain.dto.ResumenPagoDTO;
+import com.clinica.pagos.domain.repository.IResumenPagos;
+
+/**
+ * Informes de totales y cantidades de pagos a partir de los agregados que mantiene {@link PagoService}.
+ */
+@Service
+public class ResumenPagoService {
+
+    private static final Logger log = LoggerFactory.getLogger(ResumenPagoService.class);
+
+    @Autowired
+    private IResumenPagos resumenPagos;
+
+    // Backfill al arrancar: java -jar pagos.jar --pagos.resumen.reconstruir-al-arrancar=true
+    @Value("${pagos.resumen.reconstruir-al-arrancar:false}")
+    private boolean reconstruirAlArrancar;
+
+    public List<ResumenPagoDTO> resumir(String agrupacion, LocalDate desde, LocalDate hasta) {
+        if (desde != null && hasta != null && desde.isAfter(hasta)) {
+            throw new SolicitudInvalidaException("'desde' no puede ser posterior a 'hasta'");
+        }
+        return resumenPagos.resumir(agrupacion, desde, hasta);
+    }
+
+    /**
+     * Recalcula los agregados desde la tabla de pagos. Bloquea las escrituras de pagos mientras dura,
+     * así que está pensado para backfill o para corregir una desviación, no para uso rutinario.
+     */
+    public int reconstruir() {
+        long inicio = System.nanoTime();
+        int filas = resumenPagos.reconstruir();
+        log.info("Agregados de pagos reconstruidos: {} filas en {} ms", filas, (System.nanoTime() - inicio) / 1_000_000);
+        return filas;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void reconstruirSiSePide() {
+        if (reconstruirAlArrancar) {
+            reconstruir();
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.clinica.pagos.domain.service;
+
+/**
+ * Un dato de la petición no es válido (estado o método de pago desconocido, campo inexistente, dato obligatorio
+ * ausente...); el cliente debe corregirlo antes de reintentar.
+ */
+public class SolicitudInvalidaException extends IllegalArgumentException {
+
+    public SolicitudInvalidaException(String mensaje) {
+        super(mensaje);
+    }
+}
@@ -0,0 +1,220 @@
+package com.clinica.pagos.infrastructure.client;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.clinica.pagos.infrastructure.client.dto.CitaDTO;
+
+import feign.FeignException;
+
+/**
+ * Carga citas en lote para enriquecer listados de pagos.
+ * Primero resuelve lo que ya está en {@link CitaCache}; el resto de IDs distintos se agrupa
+ * en bloques de {@code citas.batch.size} que se consultan en paralelo con {@link CitaClient#getCitasByIds}.
+ * Si el servicio de citas no expone el endpoint de lote (404/405) se desactiva durante un tiempo
+ * y se recurre a consultas individuales en paralelo.
+ * <p>
+ * Cada llamada está acotada por el read-timeout de Feign y la carga completa por
+ * {@code citas.enriquecimiento.plazo-ms}: lo que no haya respondido a tiempo se marca como fallido
+ * (marcador "Error de comunicación") sin afectar al resto de citas del listado.
+ */
+@Component
+public class CitaBatchLoader {
+
+    private static final Logger log = LoggerFactory.getLogger(CitaBatchLoader.class);
+
+    @Autowired
+    private CitaClient citaClient;
+
+    @Autowired
+    private CitaCache citaCache;
+
+    @Autowired
+    @Qualifier("citasExecutor")
+    private ExecutorService citasExecutor;
+
+    @Value("${citas.batch.size:200}")
+    private int batchSize;
+
+    // Máximo de consultas individuales simultáneas al servicio de citas, sea cual sea el ejecutor
+    private final Semaphore permisos;
+
+    @Value("${citas.batch.reintento-ms:300000}")
+    private long reintentoBatchMs;
+
+    // Plazo total para resolver las citas de un listado, incluidas las consultas individuales de respaldo
+    @Value("${citas.enriquecimiento.plazo-ms:3000}")
+    private long plazoMs;
+
+    // Momento (epoch ms) hasta el cual no se vuelve a intentar el endpoint de lote
+    private volatile long batchDeshabilitadoHasta = 0L;
+
+    public CitaBatchLoader(@Value("${citas.lookup.parallelism:8}") int paralelismo) {
+        this.permisos = new Semaphore(paralelismo);
+    }
+
+    public CitasLote cargar(Collection<Long> citaIds) {
+        Set<Long> ids = new LinkedHashSet<>(citaIds);
+        ids.remove(null);
+
+        long limite = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(plazoMs);
+        Map<Long, Optional<CitaDTO>> resueltas = citaCache.buscarTodas(ids, faltantes -> consultarServicio(faltantes, limite));
+
+        CitasLote lote = new CitasLote();
+        for (Long id : ids) {
+            Optional<CitaDTO> cita = resueltas.get(id);
+            if (cita == null) {
+                lote.agregarFallida(id);
+            } else if (cita.isPresent()) {
+                lote.agregarEncontrada(id, cita.get());
+            } else {
+                lote.agregarNoEncontrada(id);
+            }
+        }
+        return lote;
+    }
+
+    /**
+     * Consulta al servicio de citas los IDs que no estaban en caché.
+     * Solo devuelve respuestas definitivas; los IDs con error de comunicación o sin respuesta
+     * antes de {@code limite} (System.nanoTime) quedan fuera.
+     */
+    private Map<Long, Optional<CitaDTO>> consultarServicio(Set<? extends Long> faltantes, long limite) {
+        List<Long> ids = new ArrayList<>(faltantes);
+        Map<Long, Optional<CitaDTO>> resultado = new HashMap<>();
+
+        // Los bloques se piden a la vez; los que fallen se resuelven después con consultas individuales.
+        // Las individuales se lanzan desde este hilo y no desde las tareas de bloque para no agotar el ejecutor.
+        Map<List<Long>, CompletableFuture<Map<Long, Optional<CitaDTO>>>> bloques = new LinkedHashMap<>();
+        for (int desde = 0; desde < ids.size(); desde += batchSize) {
+            List<Long> bloque = ids.subList(desde, Math.min(desde + batchSize, ids.size()));
+            bloques.put(bloque, CompletableFuture.supplyAsync(() -> cargarBloque(bloque), citasExecutor));
+        }
+
+        List<Long> individuales = new ArrayList<>();
+        bloques.forEach((bloque, consulta) -> {
+            try {
+                Map<Long, Optional<CitaDTO>> respuesta = esperar(consulta, limite);
+                if (respuesta != null) {
+                    resultado.putAll(respuesta);
+                } else {
+                    individuales.addAll(bloque);
+                }
+            } catch (TimeoutException e) {
+                consulta.cancel(true);
+                log.warn("Plazo agotado esperando un lote de {} citas.", bloque.size());
+            } catch (ExecutionException e) {
+                // Circuito abierto: no tiene sentido insistir con consultas individuales
+                log.warn("Error de comunicación con Citas al consultar un lote de {} citas: {}", bloque.size(), e.getCause().getMessage());
+            }
+        });
+
+        if (!individuales.isEmpty()) {
+            cargarIndividualmente(individuales, resultado, limite);
+        }
+        return resultado;
+    }
+
+    /**
+     * Intenta resolver un bloque con una sola llamada al endpoint de lote.
+     * @return las citas del bloque, o null si el bloque debe resolverse con consultas individuales.
+     * @throws CitasNoDisponiblesException si el circuito hacia el servicio de citas está abierto.
+     */
+    private Map<Long, Optional<CitaDTO>> cargarBloque(List<Long> bloque) {
+        if (System.currentTimeMillis() < batchDeshabilitadoHasta) {
+            return null;
+        }
+        try {
+            List<CitaDTO> citas = citaClient.getCitasByIds(bloque);
+            Set<Long> pedidas = new HashSet<>(bloque);
+            Map<Long, Optional<CitaDTO>> resultado = new HashMap<>();
+            if (citas != null) {
+                for (CitaDTO cita : citas) {
+                    // Se ignoran citas que no se pidieron (p. ej. si el servicio ignora el parámetro ids)
+                    if (cita != null && pedidas.contains(cita.getId())) {
+                        resultado.put(cita.getId(), Optional.of(cita));
+                    }
+                }
+            }
+            for (Long id : bloque) {
+                resultado.putIfAbsent(id, Optional.empty());
+            }
+            return resultado;
+        } catch (FeignException.NotFound | FeignException.MethodNotAllowed e) {
+            log.warn("El servicio de citas no soporta consultas en lote ({}). Se usarán consultas individuales.", e.status());
+            batchDeshabilitadoHasta = System.currentTimeMillis() + reintentoBatchMs;
+            return null;
+        } catch (FeignException e) {
+            log.warn("Error al consultar un lote de {} citas: {}. Se reintenta individualmente.", bloque.size(), e.getMessage());
+            return null;
+        }
+    }
+
+    private void cargarIndividualmente(List<Long> ids, Map<Long, Optional<CitaDTO>> resultado, long limite) {
+        Map<Long, CompletableFuture<CitaDTO>> consultas = new LinkedHashMap<>();
+        for (Long id : ids) {
+            consultas.put(id, CompletableFuture.supplyAsync(() -> consultarConPermiso(id, limite), citasExecutor));
+        }
+        consultas.forEach((id, consulta) -> {
+            try {
+                resultado.put(id, Optional.ofNullable(esperar(consulta, limite)));
+            } catch (TimeoutException e) {
+                consulta.cancel(true);
+                log.warn("Plazo agotado esperando la cita {}.", id);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof FeignException.NotFound) {
+                    resultado.put(id, Optional.empty());
+                } else {
+                    log.warn("Error de comunicación con Citas al consultar la cita {}: {}", id, e.getCause().getMessage());
+                }
+            }
+        });
+    }
+
+    private CitaDTO consultarConPermiso(Long id, long limite) {
+        try {
+            // Si ni siquiera se consigue turno antes del plazo, la consulta ya no serviría de nada
+            if (!permisos.tryAcquire(Math.max(0, limite - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                throw new CitasNoDisponiblesException("Sin turno para consultar la cita " + id + " dentro del plazo", null);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CitasNoDisponiblesException("Consulta de la cita " + id + " interrumpida", e);
+        }
+        try {
+            return citaClient.getCitaById(id);
+        } finally {
+            permisos.release();
+        }
+    }
+
+    private static <T> T esperar(CompletableFuture<T> consulta, long limite) throws TimeoutException, ExecutionException {
+        try {
+            return consulta.get(Math.max(0, limite - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TimeoutException("Espera interrumpida");
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.clinica.pagos.infrastructure.client;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.clinica.pagos.infrastructure.client.dto.CitaDTO;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import feign.FeignException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/**
+ * Caché en proceso de citas delante de {@link CitaClient}.
+ * <ul>
+ *   <li>Tamaño acotado con desalojo W-TinyLFU (Caffeine).</li>
+ *   <li>TTL por entrada: {@code citas.cache.ttl} para citas encontradas y
+ *       {@code citas.cache.ttl-negativo} para citas inexistentes (404 o respuesta nula).</li>
+ *   <li>Carga "single-flight": fallos concurrentes sobre el mismo ID comparten una sola llamada. La llamada
+ *       se hace fuera de {@code Cache.get(key, loader)}, que la ejecutaría con el monitor del bin del mapa
+ *       tomado y fijaría el hilo virtual a su portador durante toda la espera del servicio de citas.</li>
+ *   <li>Los errores de comunicación no se cachean; se propagan como {@link FeignException}
+ *       o {@link CitasNoDisponiblesException} (circuito abierto).</li>
+ * </ul>
+ */
+@Component
+public class CitaCache {
+
+    private final CitaClient citaClient;
+    private final Cache<Long, Optional<CitaDTO>> cache;
+    // Cargas en curso por ID; quien llega con la carga ya lanzada espera su resultado
+    private final Map<Long, CompletableFuture<Optional<CitaDTO>>> enCurso = new ConcurrentHashMap<>();
+
+    @Autowired
+    public CitaCache(CitaClient citaClient,
+                     @Value("${citas.cache.max-size:10000}") long maxSize,
+                     @Value("${citas.cache.ttl:5m}") Duration ttl,
+                     @Value("${citas.cache.ttl-negativo:30s}") Duration ttlNegativo) {
+        this.citaClient = citaClient;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new ExpiracionCita(ttl, ttlNegativo))
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Busca una cita por ID.
+     * @return la cita, o vacío si el servicio de citas indica que no existe.
+     * @throws FeignException si no se pudo comunicar con el servicio de citas.
+     * @throws CitasNoDisponiblesException si el circuito hacia el servicio de citas está abierto.
+     */
+    public Optional<CitaDTO> buscar(Long citaId) {
+        Optional<CitaDTO> cita = cache.getIfPresent(citaId);
+        if (cita != null) {
+            return cita;
+        }
+        CompletableFuture<Optional<CitaDTO>> carga = new CompletableFuture<>();
+        CompletableFuture<Optional<CitaDTO>> otra = enCurso.putIfAbsent(citaId, carga);
+        if (otra != null) {
+            return esperar(otra);
+        }
+        try {
+            // La carga anterior pudo terminar entre la primera lectura y el putIfAbsent
+            cita = cache.getIfPresent(citaId);
+            if (cita == null) {
+                cita = consultar(citaId);
+                cache.put(citaId, cita);
+            }
+            carga.complete(cita);
+            return cita;
+        } catch (RuntimeException e) {
+            carga.completeExceptionally(e);
+            throw e;
+        } finally {
+            enCurso.remove(citaId, carga);
+        }
+    }
+
+    /**
+     * Resuelve varias citas a la vez. Las que no están en caché se piden a {@code cargador},
+     * que debe devolver únicamente respuestas definitivas (encontrada o inexistente);
+     * los IDs que falten en el resultado se consideran fallidos y no se cachean.
+     */
+    public Map<Long, Optional<CitaDTO>> buscarTodas(Set<Long> citaIds,
+            Function<Set<? extends Long>, Map<Long, Optional<CitaDTO>>> cargador) {
+        return cache.getAll(citaIds, cargador);
+    }
+
+    /** Publica aciertos, fallos, desalojos y tamaño como métricas {@code cache.*} con la etiqueta cache=citas. */
+    @Autowired(required = false)
+    public void registrarMetricas(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, cache, "citas");
+    }
+
+    /** Entradas ya presentes para esos IDs, sin consultar el servicio (los ausentes no aparecen en el mapa). */
+    public Map<Long, Optional<CitaDTO>> enCache(Collection<Long> citaIds) {
+        return cache.getAllPresent(citaIds);
+    }
+
+    /** Guarda respuestas definitivas obtenidas por otra vía (el cliente reactivo). */
+    public void guardar(Map<Long, Optional<CitaDTO>> citas) {
+        cache.putAll(citas);
+    }
+
+    public void invalidar(Long citaId) {
+        cache.invalidate(citaId);
+    }
+
+    /** Contadores de aciertos, fallos y desalojos desde el arranque. */
+    public CacheStats estadisticas() {
+        return cache.stats();
+    }
+
+    public long tamanio() {
+        return cache.estimatedSize();
+    }
+
+    private static Optional<CitaDTO> esperar(CompletableFuture<Optional<CitaDTO>> carga) {
+        try {
+            return carga.join();
+        } catch (CompletionException e) {
+            // Cada llamador ve la misma excepción que quien hizo la llamada
+            if (e.getCause() instanceof RuntimeException causa) {
+                throw causa;
+            }
+            throw e;
+        }
+    }
+
+    private Optional<CitaDTO> consultar(Long citaId) {
+        try {
+            return Optional.ofNullable(citaClient.getCitaById(citaId));
+        } catch (FeignException.NotFound e) {
+            return Optional.empty();
+        }
+    }
+
+    private static final class ExpiracionCita implements Expiry<Long, Optional<CitaDTO>> {
+
+        private final long ttlNanos;
+        private final long ttlNegativoNanos;
+
+        ExpiracionCita(Duration ttl, Duration ttlNegativo) {
+            this.ttlNanos = ttl.toNanos();
+            this.ttlNegativoNanos = ttlNegativo.toNanos();
+        }
+
+        @Override
+        public long expireAfterCreate(Long citaId, Optional<CitaDTO> cita, long currentTime) {
+            return cita.isPresent() ? ttlNanos : ttlNegativoNanos;
+        }
+
+        @Override
+        public long expireAfterUpdate(Long citaId, Optional<CitaDTO> cita, long currentTime, long currentDuration) {
+            return expireAfterCreate(citaId, cita, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(Long citaId, Optional<CitaDTO> cita, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -1,14 +1,22 @@
 package com.clinica.pagos.infrastructure.client;
 
+import java.util.List;
+
 import org.springframework.cloud.openfeign.FeignClient;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
 
 import com.clinica.pagos.infrastructure.client.dto.CitaDTO;
 
-@FeignClient(name = "citas-service", url ="http://localhost:8097")
+// No es el bean primario: el resto de la aplicación recibe CitaClientResiliente, que envuelve a este cliente
+@FeignClient(name = "citas-service", url = "${citas.service.url}", primary = false, qualifiers = "citaFeignClient")
 public interface CitaClient {
-    
+
     @GetMapping("/citas/{id}")
     CitaDTO getCitaById(@PathVariable("id") Long id);
-}
\ No newline at end of file
+
+    // Consulta en lote: GET /citas?ids=1&ids=2... Las citas inexistentes simplemente no vienen en la respuesta
+    @GetMapping("/citas")
+    List<CitaDTO> getCitasByIds(@RequestParam("ids") List<Long> ids);
+}
@@ -0,0 +1,78 @@
+package com.clinica.pagos.infrastructure.client;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import com.clinica.pagos.infrastructure.client.dto.CitaDTO;
+
+import feign.FeignException;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+
+/**
+ * {@link CitaClient} protegido por un circuit breaker (compartido con {@link CitaWebClient}).
+ * Cuando la tasa de errores (o de llamadas lentas) supera el umbral, las llamadas se rechazan
+ * al instante con {@link CitasNoDisponiblesException} durante {@code citas.circuit-breaker.espera-abierto},
+ * y el enriquecimiento cae directamente al marcador "Error de comunicación".
+ * Las respuestas 404/405 no cuentan como fallo: son respuestas válidas del servicio.
+ */
+@Component
+@Primary
+public class CitaClientResiliente implements CitaClient {
+
+    private final CitaClient delegado;
+    private final CircuitBreaker circuitBreaker;
+
+    public CitaClientResiliente(
+            @Qualifier("citaFeignClient") CitaClient delegado,
+            @Value("${citas.circuit-breaker.umbral-fallos:50}") float umbralFallos,
+            @Value("${citas.circuit-breaker.umbral-lentas:80}") float umbralLentas,
+            @Value("${citas.circuit-breaker.llamada-lenta:1s}") Duration llamadaLenta,
+            @Value("${citas.circuit-breaker.ventana:50}") int ventana,
+            @Value("${citas.circuit-breaker.minimo-llamadas:20}") int minimoLlamadas,
+            @Value("${citas.circuit-breaker.espera-abierto:10s}") Duration esperaAbierto) {
+        this.delegado = delegado;
+        this.circuitBreaker = CircuitBreaker.of("citas", CircuitBreakerConfig.custom()
+                .failureRateThreshold(umbralFallos)
+                .slowCallRateThreshold(umbralLentas)
+                .slowCallDurationThreshold(llamadaLenta)
+                .slidingWindowType(CircuitBreakerConfig.SlidingWindowType.COUNT_BASED)
+                .slidingWindowSize(ventana)
+                .minimumNumberOfCalls(minimoLlamadas)
+                .waitDurationInOpenState(esperaAbierto)
+                .permittedNumberOfCallsInHalfOpenState(5)
+                .ignoreExceptions(FeignException.NotFound.class, FeignException.MethodNotAllowed.class,
+                        WebClientResponseException.NotFound.class, WebClientResponseException.MethodNotAllowed.class)
+                .build());
+    }
+
+    @Override
+    public CitaDTO getCitaById(Long id) {
+        return proteger(() -> delegado.getCitaById(id));
+    }
+
+    @Override
+    public List<CitaDTO> getCitasByIds(List<Long> ids) {
+        return proteger(() -> delegado.getCitasByIds(ids));
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    private <T> T proteger(Supplier<T> llamada) {
+        try {
+            return circuitBreaker.executeSupplier(llamada);
+        } catch (CallNotPermittedException e) {
+            throw new CitasNoDisponiblesException("Circuito abierto hacia el servicio de citas", e);
+        }
+    }
+}
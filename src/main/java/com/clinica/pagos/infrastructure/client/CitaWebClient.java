@@ -0,0 +1,206 @@
+package com.clinica.pagos.infrastructure.client;
+
+import java.time.Duration;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import com.clinica.pagos.infrastructure.client.dto.CitaDTO;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.netty.channel.ChannelOption;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+/**
+ * Cliente no bloqueante del servicio de citas para la API reactiva (/v2/pagos).
+ * Comparte con la API clásica la caché ({@link CitaCache}) y el circuit breaker ({@link CitaClientResiliente}),
+ * y sigue las mismas reglas que {@link CitaBatchLoader}: lotes de {@code citas.batch.size}, respaldo con
+ * consultas individuales y un plazo total tras el cual lo pendiente se marca como fallido.
+ */
+@Component
+public class CitaWebClient {
+
+    private static final Logger log = LoggerFactory.getLogger(CitaWebClient.class);
+
+    private static final ParameterizedTypeReference<List<CitaDTO>> LISTA_CITAS = new ParameterizedTypeReference<>() {};
+
+    private final WebClient webClient;
+    private final CircuitBreaker circuitBreaker;
+
+    @Autowired
+    private CitaCache citaCache;
+
+    @Value("${citas.batch.size:200}")
+    private int batchSize;
+
+    @Value("${citas.lookup.parallelism:8}")
+    private int paralelismo;
+
+    @Value("${citas.batch.reintento-ms:300000}")
+    private long reintentoBatchMs;
+
+    @Value("${citas.enriquecimiento.plazo-ms:3000}")
+    private long plazoMs;
+
+    // Momento (epoch ms) hasta el cual no se vuelve a intentar el endpoint de lote
+    private volatile long batchDeshabilitadoHasta = 0L;
+
+    public CitaWebClient(WebClient.Builder builder,
+                         CitaClientResiliente citaClientResiliente,
+                         @Value("${citas.service.url}") String url,
+                         @Value("${citas.webclient.max-conexiones:500}") int maxConexiones,
+                         @Value("${spring.cloud.openfeign.client.config.citas-service.connect-timeout:500}") int connectTimeoutMs,
+                         @Value("${spring.cloud.openfeign.client.config.citas-service.read-timeout:2000}") long readTimeoutMs) {
+        HttpClient http = HttpClient.create(ConnectionProvider.builder("citas").maxConnections(maxConexiones).build())
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeoutMs)
+                .responseTimeout(Duration.ofMillis(readTimeoutMs));
+        this.webClient = builder.baseUrl(url).clientConnector(new ReactorClientHttpConnector(http)).build();
+        this.circuitBreaker = citaClientResiliente.getCircuitBreaker();
+    }
+
+    /**
+     * Busca una cita, primero en caché.
+     * @return la cita, o vacío si no existe; error si no se pudo consultar (no se cachea).
+     */
+    public Mono<Optional<CitaDTO>> buscar(Long citaId) {
+        Optional<CitaDTO> enCache = citaCache.enCache(List.of(citaId)).get(citaId);
+        if (enCache != null) {
+            return Mono.just(enCache);
+        }
+        return consultar(citaId).doOnNext(cita -> citaCache.guardar(Map.of(citaId, cita)));
+    }
+
+    /**
+     * Resuelve las citas de un listado. Nunca falla: lo que no responde a tiempo queda como fallido.
+     */
+    public Mono<CitasLote> cargar(Collection<Long> citaIds) {
+        Set<Long> ids = new LinkedHashSet<>(citaIds);
+        ids.remove(null);
+        Map<Long, Optional<CitaDTO>> enCache = citaCache.enCache(ids);
+
+        List<Long> faltantes = new ArrayList<>();
+        for (Long id : ids) {
+            if (!enCache.containsKey(id)) {
+                faltantes.add(id);
+            }
+        }
+        List<List<Long>> bloques = new ArrayList<>();
+        for (int desde = 0; desde < faltantes.size(); desde += batchSize) {
+            bloques.add(faltantes.subList(desde, Math.min(desde + batchSize, faltantes.size())));
+        }
+
+        return Flux.fromIterable(bloques)
+                .flatMap(this::resolverBloque)
+                // Al vencer el plazo se completa con lo recibido hasta entonces
+                .take(Duration.ofMillis(plazoMs))
+                .collectMap(Map.Entry::getKey, Map.Entry::getValue, HashMap::new)
+                .map(consultadas -> {
+                    citaCache.guardar(consultadas);
+                    CitasLote lote = new CitasLote();
+                    for (Long id : ids) {
+                        Optional<CitaDTO> cita = enCache.containsKey(id) ? enCache.get(id) : consultadas.get(id);
+                        if (cita == null) {
+                            lote.agregarFallida(id);
+                        } else if (cita.isPresent()) {
+                            lote.agregarEncontrada(id, cita.get());
+                        } else {
+                            lote.agregarNoEncontrada(id);
+                        }
+                    }
+                    return lote;
+                });
+    }
+
+    private Flux<Map.Entry<Long, Optional<CitaDTO>>> resolverBloque(List<Long> bloque) {
+        if (System.currentTimeMillis() < batchDeshabilitadoHasta) {
+            return resolverIndividualmente(bloque);
+        }
+        Mono<List<CitaDTO>> consulta = webClient.get()
+                .uri(uri -> uri.path("/citas").queryParam("ids", bloque.toArray()).build())
+                .retrieve()
+                .bodyToMono(LISTA_CITAS)
+                .defaultIfEmpty(List.of());
+        return protegida(consulta)
+                .flatMapMany(citas -> {
+                    Map<Long, CitaDTO> porId = new HashMap<>();
+                    for (CitaDTO cita : citas) {
+                        if (cita != null) {
+                            porId.put(cita.getId(), cita);
+                        }
+                    }
+                    List<Map.Entry<Long, Optional<CitaDTO>>> resultado = new ArrayList<>(bloque.size());
+                    for (Long id : bloque) {
+                        resultado.add(new AbstractMap.SimpleImmutableEntry<>(id, Optional.ofNullable(porId.get(id))));
+                    }
+                    return Flux.fromIterable(resultado);
+                })
+                .onErrorResume(e -> {
+                    if (e instanceof CitasNoDisponiblesException) {
+                        // Circuito abierto: no tiene sentido insistir con consultas individuales
+                        return Flux.empty();
+                    }
+                    if (e instanceof WebClientResponseException.NotFound || e instanceof WebClientResponseException.MethodNotAllowed) {
+                        log.warn("El servicio de citas no soporta consultas en lote ({}). Se usarán consultas individuales.", e.getMessage());
+                        batchDeshabilitadoHasta = System.currentTimeMillis() + reintentoBatchMs;
+                    } else {
+                        log.warn("Error al consultar un lote de {} citas: {}. Se reintenta individualmente.", bloque.size(), e.getMessage());
+                    }
+                    return resolverIndividualmente(bloque);
+                });
+    }
+
+    private Flux<Map.Entry<Long, Optional<CitaDTO>>> resolverIndividualmente(List<Long> bloque) {
+        return Flux.fromIterable(bloque)
+                .flatMap(id -> consultar(id)
+                        .<Map.Entry<Long, Optional<CitaDTO>>>map(cita -> new AbstractMap.SimpleImmutableEntry<>(id, cita))
+                        .onErrorResume(e -> {
+                            log.warn("Error de comunicación con Citas al consultar la cita {}: {}", id, e.getMessage());
+                            return Mono.empty();
+                        }), paralelismo);
+    }
+
+    private Mono<Optional<CitaDTO>> consultar(Long citaId) {
+        Mono<Optional<CitaDTO>> consulta = webClient.get()
+                .uri("/citas/{id}", citaId)
+                .retrieve()
+                .bodyToMono(CitaDTO.class)
+                .map(Optional::of)
+                .defaultIfEmpty(Optional.empty());
+        return protegida(consulta)
+                .onErrorResume(WebClientResponseException.NotFound.class, e -> Mono.just(Optional.empty()));
+    }
+
+    // Equivalente reactivo de CitaClientResiliente: mismo circuito, mismas reglas
+    private <T> Mono<T> protegida(Mono<T> llamada) {
+        return Mono.defer(() -> {
+            if (!circuitBreaker.tryAcquirePermission()) {
+                return Mono.error(new CitasNoDisponiblesException("Circuito abierto hacia el servicio de citas", null));
+            }
+            long inicio = System.nanoTime();
+            return llamada
+                    .doOnSuccess(v -> circuitBreaker.onSuccess(System.nanoTime() - inicio, TimeUnit.NANOSECONDS))
+                    .doOnError(e -> circuitBreaker.onError(System.nanoTime() - inicio, TimeUnit.NANOSECONDS, e))
+                    .doOnCancel(circuitBreaker::releasePermission);
+        });
+    }
+}
@@ -0,0 +1,32 @@
+package com.clinica.pagos.infrastructure.client;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.clinica.pagos.infrastructure.client.dto.CitaDTO;
+
+/**
+ * Resultado de una carga de citas en lote.
+ * Distingue las citas encontradas, las que el servicio de citas reporta como inexistentes
+ * y las que no se pudieron consultar por un error de comunicación.
+ */
+public class CitasLote {
+
+    private final Map<Long, CitaDTO> encontradas = new HashMap<>();
+    private final Set<Long> noEncontradas = new HashSet<>();
+    private final Set<Long> fallidas = new HashSet<>();
+
+    void agregarEncontrada(Long citaId, CitaDTO cita) { encontradas.put(citaId, cita); }
+    void agregarNoEncontrada(Long citaId) { noEncontradas.add(citaId); }
+    void agregarFallida(Long citaId) { fallidas.add(citaId); }
+
+    public CitaDTO getCita(Long citaId) { return encontradas.get(citaId); }
+    public boolean esNoEncontrada(Long citaId) { return noEncontradas.contains(citaId); }
+    public boolean esFallida(Long citaId) { return fallidas.contains(citaId); }
+
+    public Map<Long, CitaDTO> getEncontradas() { return encontradas; }
+    public Set<Long> getNoEncontradas() { return noEncontradas; }
+    public Set<Long> getFallidas() { return fallidas; }
+}
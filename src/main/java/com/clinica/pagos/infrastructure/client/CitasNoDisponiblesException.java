@@ -0,0 +1,12 @@
+package com.clinica.pagos.infrastructure.client;
+
+/**
+ * El servicio de citas no está disponible: circuito abierto o plazo de la consulta agotado.
+ * Se trata igual que un error de comunicación (FeignException) y nunca se cachea.
+ */
+public class CitasNoDisponiblesException extends RuntimeException {
+
+    public CitasNoDisponiblesException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
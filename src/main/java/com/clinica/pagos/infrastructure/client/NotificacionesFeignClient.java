@@ -1,19 +1,31 @@
 // src/main/java/com/clinica/pagos/infrastructure/client/NotificacionesFeignClient.java
 package com.clinica.pagos.infrastructure.client;
 
+import java.util.List;
+
 import org.springframework.cloud.openfeign.FeignClient;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 
+import com.clinica.pagos.infrastructure.client.dto.EnvioNotificacionDTO;
 import com.clinica.pagos.infrastructure.client.dto.NotificacionDTO; // Asegúrate de que la ruta sea correcta
 
 // Definimos el FeignClient para el microservicio de Notificaciones
 // 'name' es un nombre lógico para el cliente
-// 'url' es la URL base del microservicio de Notificaciones. ¡Aquí ponemos el puerto 8091!
-@FeignClient(name = "notificaciones-service", url = "http://localhost:8090")
+// 'url' es la URL base del microservicio de Notificaciones (propiedad notificaciones.service.url)
+@FeignClient(name = "notificaciones-service", url = "${notificaciones.service.url}")
 public interface NotificacionesFeignClient {
 
     // Este método se mapea al endpoint POST /notificaciones/enviar del microservicio de Notificaciones
     @PostMapping("/notificaciones/enviar")
     void enviarNotificacion(@RequestBody NotificacionDTO dto);
-}
\ No newline at end of file
+
+    // Mismo endpoint con clave de idempotencia: los reintentos del outbox no duplican la notificación
+    @PostMapping("/notificaciones/enviar")
+    void enviarNotificacion(@RequestHeader("Idempotency-Key") String idempotencyKey, @RequestBody NotificacionDTO dto);
+
+    // Envío en lote, cada elemento con su clave de idempotencia. 2xx = aceptadas todas
+    @PostMapping("/notificaciones/enviar-lote")
+    void enviarNotificaciones(@RequestBody List<EnvioNotificacionDTO> envios);
+}
@@ -0,0 +1,24 @@
+package com.clinica.pagos.infrastructure.client.dto;
+
+/**
+ * Elemento del envío en lote al servicio de notificaciones: la notificación y su clave de idempotencia
+ * (la misma que llevaría la cabecera Idempotency-Key en un envío individual).
+ */
+public class EnvioNotificacionDTO {
+
+    private String claveIdempotencia;
+    private NotificacionDTO notificacion;
+
+    public EnvioNotificacionDTO() {}
+
+    public EnvioNotificacionDTO(String claveIdempotencia, NotificacionDTO notificacion) {
+        this.claveIdempotencia = claveIdempotencia;
+        this.notificacion = notificacion;
+    }
+
+    public String getClaveIdempotencia() { return claveIdempotencia; }
+    public void setClaveIdempotencia(String claveIdempotencia) { this.claveIdempotencia = claveIdempotencia; }
+
+    public NotificacionDTO getNotificacion() { return notificacion; }
+    public void setNotificacion(NotificacionDTO notificacion) { this.notificacion = notificacion; }
+}
@@ -1,9 +1,22 @@
 package com.clinica.pagos.infrastructure.config;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
 import org.springframework.web.client.RestTemplate;
 
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
 @Configuration
 public class AppConfig {
 
@@ -11,4 +24,35 @@ public class AppConfig {
     public RestTemplate restTemplate() {
         return new RestTemplate();
     }
+
+    // Respuestas binarias por negociación de contenido (Accept: application/cbor o application/x-jackson-smile).
+    // Se construyen con el builder de Spring Boot para que fechas y módulos coincidan con el JSON.
+    @Bean
+    public MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        return new MappingJackson2CborHttpMessageConverter(builder.factory(new CBORFactory()).build());
+    }
+
+    @Bean
+    public MappingJackson2SmileHttpMessageConverter smileHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        return new MappingJackson2SmileHttpMessageConverter(builder.factory(new SmileFactory()).build());
+    }
+
+    // Ejecutor de las consultas individuales al servicio de citas (fallback del lote).
+    // Con hilos virtuales se crea uno por consulta; CitaBatchLoader limita igualmente el paralelismo.
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService citasExecutor(
+            @Value("${citas.lookup.parallelism:8}") int paralelismo,
+            @Value("${spring.threads.virtual.enabled:false}") boolean hilosVirtuales) {
+        if (hilosVirtuales) {
+            return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("citas-", 0).factory());
+        }
+        return Executors.newFixedThreadPool(paralelismo, Thread.ofPlatform().name("citas-", 0).daemon(true).factory());
+    }
+
+    // Hilos en los que /v2/pagos ejecuta las llamadas JPA bloqueantes. Tantos como conexiones del pool:
+    // más hilos solo esperarían conexión. Las tareas que no caben esperan en cola sin ocupar hilo.
+    @Bean(destroyMethod = "dispose")
+    public Scheduler jpaScheduler(@Value("${spring.datasource.hikari.maximum-pool-size:10}") int conexiones) {
+        return Schedulers.newBoundedElastic(conexiones, 100_000, "jpa");
+    }
 }
@@ -0,0 +1,102 @@
+package com.clinica.pagos.infrastructure.config;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import feign.FeignException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Temporizadores por método para las dependencias de {@code PagoService} y los endpoints:
+ * <ul>
+ *   <li>{@code pagos.citas.cliente}: llamadas al servicio de citas (incluye las rechazadas por el circuit breaker).</li>
+ *   <li>{@code pagos.notificaciones.cliente}: envíos al servicio de notificaciones.</li>
+ *   <li>{@code pagos.repositorio}: métodos de {@code IPago} en {@code PagoImp}.</li>
+ *   <li>{@code pagos.endpoint}: métodos de {@code PagoController}. En las respuestas NDJSON solo se mide
+ *       hasta devolver el cuerpo; el volcado completo queda en {@code http.server.requests}.</li>
+ * </ul>
+ * Todos llevan las etiquetas {@code metodo}, {@code outcome} (ok / not-found / error) y {@code excepcion}.
+ * Cada temporizador expone además su contador ({@code _count}) en /actuator/prometheus.
+ */
+@Aspect
+@Component
+public class MetricasAspect {
+
+    static final String OK = "ok";
+    static final String NOT_FOUND = "not-found";
+    static final String ERROR = "error";
+
+    @Autowired
+    private MeterRegistry registry;
+
+    @Around("execution(* com.clinica.pagos.infrastructure.client.CitaClientResiliente.getCita*(..))")
+    public Object medirCitas(ProceedingJoinPoint pjp) throws Throwable {
+        return medir("pagos.citas.cliente", pjp);
+    }
+
+    @Around("execution(* com.clinica.pagos.infrastructure.client.NotificacionesFeignClient.*(..))")
+    public Object medirNotificaciones(ProceedingJoinPoint pjp) throws Throwable {
+        return medir("pagos.notificaciones.cliente", pjp);
+    }
+
+    @Around("execution(public * com.clinica.pagos.infrastructure.repositories.PagoImp.*(..))")
+    public Object medirRepositorio(ProceedingJoinPoint pjp) throws Throwable {
+        return medir("pagos.repositorio", pjp);
+    }
+
+    @Around("execution(public * com.clinica.pagos.controller.PagoController.*(..))")
+    public Object medirEndpoint(ProceedingJoinPoint pjp) throws Throwable {
+        return medir("pagos.endpoint", pjp);
+    }
+
+    private Object medir(String nombre, ProceedingJoinPoint pjp) throws Throwable {
+        String metodo = pjp.getSignature().getName();
+        long inicio = System.nanoTime();
+        String outcome = ERROR;
+        String excepcion = "none";
+        try {
+            Object resultado = pjp.proceed();
+            boolean sinRetorno = ((MethodSignature) pjp.getSignature()).getReturnType() == void.class;
+            outcome = sinRetorno ? OK : clasificar(resultado);
+            return resultado;
+        } catch (Throwable t) {
+            outcome = t instanceof FeignException.NotFound ? NOT_FOUND : ERROR;
+            excepcion = t.getClass().getSimpleName();
+            throw t;
+        } finally {
+            Timer.builder(nombre)
+                    .tag("metodo", metodo)
+                    .tag("outcome", outcome)
+                    .tag("excepcion", excepcion)
+                    .register(registry)
+                    .record(System.nanoTime() - inicio, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    static String clasificar(Object resultado) {
+        // update() devuelve null cuando el pago no existe y cambiarEstado() false si ninguna fila coincide
+        if (resultado == null || Boolean.FALSE.equals(resultado)) {
+            return NOT_FOUND;
+        }
+        if (resultado instanceof Optional<?> opcional) {
+            return opcional.isPresent() ? OK : NOT_FOUND;
+        }
+        if (resultado instanceof ResponseEntity<?> respuesta) {
+            int status = respuesta.getStatusCode().value();
+            if (status == 404) {
+                return NOT_FOUND;
+            }
+            return status >= 400 ? ERROR : OK;
+        }
+        return OK;
+    }
+}
@@ -0,0 +1,51 @@
+package com.clinica.pagos.infrastructure.config;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Plantillas de notificación configuradas por tipo y canal, que sustituyen a las de NotificacionPagoBuilder:
+ * <pre>
+ * notificaciones.plantillas.COMPLETADO.EMAIL.asunto=Pago recibido
+ * notificaciones.plantillas.COMPLETADO.EMAIL.mensaje=Hola {paciente}, recibimos {monto} USD (ref. {referencia}).
+ * notificaciones.plantillas.COMPLETADO.SMS.mensaje=Pago de {monto} USD completado. Ref {referencia}
+ * </pre>
+ * Un campo que no se configura se toma de la plantilla del mismo tipo y canal, o si no existe, de la del canal por defecto.
+ */
+@Component
+@ConfigurationProperties(prefix = "notificaciones")
+public class PlantillasNotificacionProperties {
+
+    // tipo (COMPLETADO, ANULADO...) -> canal (EMAIL, SMS...) -> plantilla
+    private Map<String, Map<String, Plantilla>> plantillas = new HashMap<>();
+
+    public Map<String, Map<String, Plantilla>> getPlantillas() { return plantillas; }
+    public void setPlantillas(Map<String, Map<String, Plantilla>> plantillas) { this.plantillas = plantillas; }
+
+    public static class Plantilla {
+        // Tipo de evento que recibe el servicio de notificaciones (PAGO_COMPLETADO, ...)
+        private String evento;
+        private String asunto;
+        private String mensaje;
+
+        public Plantilla() {}
+
+        public Plantilla(String evento, String asunto, String mensaje) {
+            this.evento = evento;
+            this.asunto = asunto;
+            this.mensaje = mensaje;
+        }
+
+        public String getEvento() { return evento; }
+        public void setEvento(String evento) { this.evento = evento; }
+
+        public String getAsunto() { return asunto; }
+        public void setAsunto(String asunto) { this.asunto = asunto; }
+
+        public String getMensaje() { return mensaje; }
+        public void setMensaje(String mensaje) { this.mensaje = mensaje; }
+    }
+}
@@ -0,0 +1,34 @@
+package com.clinica.pagos.infrastructure.crud;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.stereotype.Repository;
+
+import com.clinica.pagos.infrastructure.entity.NotificacionPendiente;
+
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+
+@Repository
+public interface NotificacionPendienteRepository extends JpaRepository<NotificacionPendiente, Long> {
+
+    // SELECT ... FOR UPDATE SKIP LOCKED (lock.timeout = -2): varias instancias pueden drenar la cola sin pisarse
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    List<NotificacionPendiente> findByEstadoAndProximoIntentoLessThanEqualOrderByIdAsc(
+            String estado, LocalDateTime ahora, Limit limit);
+
+    // Resto de un grupo ya formado, con el mismo bloqueo que el lote
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    List<NotificacionPendiente> findByGrupoAndEstado(Long grupo, String estado);
+
+    long countByEstado(String estado);
+
+    long countByGrupoAndEstado(Long grupo, String estado);
+}
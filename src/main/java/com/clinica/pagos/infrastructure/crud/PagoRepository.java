@@ -1,14 +1,62 @@
 package com.clinica.pagos.infrastructure.crud;
 
 import java.util.List;
+import java.util.stream.Stream;
 
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
+import com.clinica.pagos.infrastructure.entity.EstadoPago;
 import com.clinica.pagos.infrastructure.entity.Pago;
 
+import jakarta.persistence.QueryHint;
+
 @Repository
 public interface PagoRepository extends JpaRepository<Pago, Long> {
+
+    // Integer.MIN_VALUE: MySQL Connector/J entrega las filas de una en una en lugar de cargar todo el resultado
+    String STREAM_FETCH_SIZE = "-2147483648";
+
+    // Consultas por estado en la caché de consultas (perfil prod). Hibernate la invalida en cada escritura
+    // sobre pagos hecha con JPA; las inserciones JDBC de PagoBatchWriter la invalidan a mano
+    String CACHEABLE = "org.hibernate.cacheable";
+    String REGION_CACHE = "org.hibernate.cacheRegion";
+
     List<Pago> findByCitaId(Long citaId);
-    List<Pago> findByEstado(String estado);
-}
\ No newline at end of file
+
+    // Paginación por cursor (keyset sobre id)
+    List<Pago> findByIdGreaterThanOrderByIdAsc(Long id, Limit limit);
+    @QueryHints({ @QueryHint(name = CACHEABLE, value = "true"), @QueryHint(name = REGION_CACHE, value = Pago.REGION_CONSULTAS_POR_ESTADO) })
+    List<Pago> findByEstadoAndIdGreaterThanOrderByIdAsc(EstadoPago estado, Long id, Limit limit);
+    List<Pago> findByCitaIdAndIdGreaterThanOrderByIdAsc(Long citaId, Long id, Limit limit);
+
+    // Transición condicional atómica: solo cambia el estado si sigue siendo el esperado. Devuelve las filas afectadas
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update Pago p set p.estado = :nuevo, p.version = p.version + 1 where p.id = :id and p.estado = :esperado")
+    int cambiarEstado(Long id, EstadoPago esperado, EstadoPago nuevo);
+
+    // Lectura en streaming; requiere una transacción abierta mientras se consume el Stream
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = STREAM_FETCH_SIZE))
+    @Query("select p from Pago p order by p.id")
+    Stream<Pago> streamAll();
+
+    // Tramo (afterId, hastaId] de una exportación; no pasa por la caché de segundo nivel para no desplazar
+    // de ella los pagos que usa el tráfico normal
+    @QueryHints({
+        @QueryHint(name = "org.hibernate.fetchSize", value = STREAM_FETCH_SIZE),
+        @QueryHint(name = "jakarta.persistence.cache.retrieveMode", value = "BYPASS"),
+        @QueryHint(name = "jakarta.persistence.cache.storeMode", value = "BYPASS")
+    })
+    @Query("select p from Pago p where p.id > :afterId and p.id <= :hastaId order by p.id")
+    Stream<Pago> streamRango(Long afterId, Long hastaId);
+
+    @Query("select min(p.id) from Pago p")
+    Long findMinId();
+
+    @Query("select max(p.id) from Pago p")
+    Long findMaxId();
+}
@@ -0,0 +1,520 @@
+package com.clinica.pagos.infrastructure.diario;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Diario local de escritura anticipada: registros binarios con número de secuencia, en segmentos de tamaño fijo
+ * mapeados en memoria ({@code diario-<primer seq>.log}).
+ * <ul>
+ *   <li>{@link #anadir} copia el registro al mapa y vuelve enseguida; {@link #esperarDurable} espera a que esté
+ *       en disco. Un único hilo hace el fsync de todo lo escrito desde el anterior (commit en grupo), así que
+ *       muchas escrituras concurrentes comparten cada fsync.</li>
+ *   <li>Solo se leen registros ya durables. El consumidor confirma lo procesado con {@link #confirmarProcesado};
+ *       el cursor se guarda en {@code procesado} y los segmentos ya procesados se borran.</li>
+ *   <li>Al abrir se validan los segmentos (longitud, CRC32C y secuencia consecutiva): una escritura a medias por
+ *       una caída marca el final del diario y se sobrescribe con la siguiente.</li>
+ *   <li>Si un fsync falla, el diario deja de aceptar registros: {@link #anadir} y {@link #esperarDurable} lanzan
+ *       {@link IllegalStateException} y lo ya durable se sigue pudiendo leer y confirmar.</li>
+ *   <li>El sincronizador prepara de antemano el siguiente segmento ({@code diario-reserva.log}); al rotar solo se
+ *       renombra, sin crear archivos ni hacer fsync con el monitor tomado.</li>
+ * </ul>
+ * Formato de un segmento: long magia, long primer seq; registros {@code int longitud, int crc, long seq, datos};
+ * longitud 0 marca el final.
+ */
+public final class DiarioPagos implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(DiarioPagos.class);
+
+    private static final long MAGIA = 0x5041474F44494152L; // "PAGODIAR"
+    private static final int CABECERA_SEGMENTO = 16;
+    private static final int CABECERA_REGISTRO = 16;
+    private static final String CURSOR = "procesado";
+    private static final String RESERVA = "diario-reserva.log";
+
+    /** Un registro leído del diario. */
+    public static final class Entrada {
+        private final long seq;
+        private final byte[] datos;
+        private final Segmento segmento;
+        private final int fin;
+
+        private Entrada(long seq, byte[] datos, Segmento segmento, int fin) {
+            this.seq = seq;
+            this.datos = datos;
+            this.segmento = segmento;
+            this.fin = fin;
+        }
+
+        public long getSeq() { return seq; }
+        public byte[] getDatos() { return datos; }
+    }
+
+    private static final class Segmento {
+        final long primerSeq;
+        final Path ruta;
+        final FileChannel canal;
+        final MappedByteBuffer mapa;
+        int posicion;
+
+        Segmento(long primerSeq, Path ruta, FileChannel canal, MappedByteBuffer mapa) {
+            this.primerSeq = primerSeq;
+            this.ruta = ruta;
+            this.canal = canal;
+            this.mapa = mapa;
+        }
+    }
+
+    private final Path directorio;
+    private final int bytesSegmento;
+    private final long agruparNanos;
+    private final FileChannel cursor;
+    private final List<Segmento> segmentos = new ArrayList<>();
+    private final Thread sincronizador;
+
+    // Parte de un segmento ya rotado que el sincronizador aún no ha forzado
+    private record Tramo(Segmento segmento, int desde, int hasta) {
+    }
+
+    // Protegidos por this
+    private long escrito;
+    private long durable;
+    private long procesado;
+    private int forzadoHasta;
+    private Segmento segmentoLectura;
+    private int posicionLectura;
+    private boolean abierto = true;
+    private final List<Tramo> porForzar = new ArrayList<>();
+    private boolean directorioPendiente;
+    private Segmento reserva;
+    // Fallo del fsync: ya no se garantiza la durabilidad de nada nuevo
+    private Throwable fallo;
+    // El sincronizador terminó: nada más llegará a ser durable
+    private boolean terminado;
+
+    /**
+     * Abre (o crea) el diario de {@code directorio} y recupera los registros válidos.
+     * @param agruparMicros espera antes de cada fsync para juntar más escrituras en él (0 = ninguna).
+     */
+    public DiarioPagos(Path directorio, int bytesSegmento, long agruparMicros) throws IOException {
+        this.directorio = Files.createDirectories(directorio);
+        this.bytesSegmento = bytesSegmento;
+        this.agruparNanos = agruparMicros * 1_000;
+        this.cursor = FileChannel.open(directorio.resolve(CURSOR), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.procesado = leerCursor();
+        recuperar();
+        this.sincronizador = Thread.ofPlatform().name("diario-pagos-sync").daemon(true).start(this::sincronizar);
+    }
+
+    /**
+     * Copia un registro al diario. No es durable hasta que {@link #esperarDurable} vuelve.
+     * @throws IllegalStateException si el diario está cerrado o falló un fsync.
+     */
+    public synchronized long anadir(byte[] datos) {
+        if (!abierto) {
+            throw new IllegalStateException("El diario de pagos está cerrado");
+        }
+        if (fallo != null) {
+            throw new IllegalStateException("El diario de pagos no está disponible tras un fallo de fsync", fallo);
+        }
+        if (datos.length == 0 || datos.length > bytesSegmento - CABECERA_SEGMENTO - CABECERA_REGISTRO) {
+            throw new IllegalArgumentException("Registro de " + datos.length + " bytes no admitido por el diario");
+        }
+        Segmento actual = actual();
+        if (actual.posicion + CABECERA_REGISTRO + datos.length > bytesSegmento) {
+            actual = rotar(actual);
+        }
+        long seq = escrito + 1;
+        CRC32C crc = new CRC32C();
+        crc.update(datos);
+        int p = actual.posicion;
+        actual.mapa.putInt(p + 4, (int) crc.getValue());
+        actual.mapa.putLong(p + 8, seq);
+        actual.mapa.put(p + CABECERA_REGISTRO, datos);
+        int fin = p + CABECERA_REGISTRO + datos.length;
+        if (fin + Integer.BYTES <= bytesSegmento) {
+            actual.mapa.putInt(fin, 0);
+        }
+        // La longitud se escribe la última: un registro a medias se lee como final del diario
+        actual.mapa.putInt(p, datos.length);
+        actual.posicion = fin;
+        escrito = seq;
+        notifyAll();
+        return seq;
+    }
+
+    /**
+     * Espera a que el registro {@code seq} (y todos los anteriores) esté en disco.
+     * @return false si no lo estaba al cabo de {@code maximoMillis}.
+     * @throws IllegalStateException si falló un fsync o el diario se cerró sin llegar a sincronizarlo.
+     */
+    public synchronized boolean esperarDurable(long seq, long maximoMillis) throws InterruptedException {
+        long limite = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maximoMillis);
+        while (durable < seq) {
+            if (fallo != null) {
+                throw new IllegalStateException("No se pudo sincronizar el registro " + seq + " del diario de pagos", fallo);
+            }
+            if (terminado) {
+                throw new IllegalStateException("El diario de pagos se cerró antes de sincronizar el registro " + seq);
+            }
+            long resto = limite - System.nanoTime();
+            if (resto <= 0) {
+                return false;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, resto);
+        }
+        return true;
+    }
+
+    /** Hasta {@code maximo} registros durables posteriores al último confirmado, en orden. */
+    public synchronized List<Entrada> leerPendientes(int maximo) {
+        List<Entrada> entradas = new ArrayList<>(Math.min(maximo, 1024));
+        Segmento segmento = segmentoLectura;
+        int p = posicionLectura;
+        long seq = procesado + 1;
+        while (entradas.size() < maximo && seq <= durable) {
+            if (p >= segmento.posicion) {
+                int siguiente = segmentos.indexOf(segmento) + 1;
+                if (siguiente >= segmentos.size()) {
+                    break;
+                }
+                segmento = segmentos.get(siguiente);
+                p = CABECERA_SEGMENTO;
+                continue;
+            }
+            int longitud = segmento.mapa.getInt(p);
+            byte[] datos = new byte[longitud];
+            segmento.mapa.get(p + CABECERA_REGISTRO, datos);
+            p += CABECERA_REGISTRO + longitud;
+            entradas.add(new Entrada(seq++, datos, segmento, p));
+        }
+        return entradas;
+    }
+
+    /** Marca como procesados {@code ultima} y todos los anteriores; borra los segmentos que ya no hacen falta. */
+    public synchronized void confirmarProcesado(Entrada ultima) {
+        procesado = ultima.seq;
+        segmentoLectura = ultima.segmento;
+        posicionLectura = ultima.fin;
+        try {
+            cursor.write(ByteBuffer.allocate(Long.BYTES).putLong(0, procesado), 0);
+            cursor.force(false);
+        } catch (IOException e) {
+            // Sin cursor al día se reprocesan registros al reiniciar; el consumidor debe tolerarlo
+            log.warn("No se pudo guardar el cursor del diario de pagos: {}", e.getMessage());
+        }
+        while (segmentos.get(0) != segmentoLectura) {
+            cerrar(segmentos.remove(0), true);
+        }
+    }
+
+    public synchronized long getPendientes() {
+        return escrito - procesado;
+    }
+
+    /** Último registro escrito (durable o no). */
+    public synchronized long getUltimo() {
+        return escrito;
+    }
+
+    /** Último registro confirmado con {@link #confirmarProcesado}. */
+    public synchronized long getProcesado() {
+        return procesado;
+    }
+
+    /** Deja de aceptar registros, espera a que lo ya escrito sea durable y libera los segmentos. */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (!abierto) {
+                return;
+            }
+            // El sincronizador fuerza lo pendiente antes de terminar; quien espera lo recibe como durable
+            abierto = false;
+            notifyAll();
+        }
+        try {
+            sincronizador.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            segmentos.forEach(segmento -> cerrar(segmento, false));
+            if (reserva != null) {
+                cerrar(reserva, true);
+                reserva = null;
+            }
+            cursor.close();
+        }
+    }
+
+    // Hilo de commit en grupo: fuerza a disco todo lo escrito y despierta a quienes esperan
+    private void sincronizar() {
+        try {
+            prepararReserva();
+            while (true) {
+                synchronized (this) {
+                    while (abierto && escrito == durable) {
+                        wait();
+                    }
+                    if (!abierto && escrito == durable) {
+                        return;
+                    }
+                }
+                if (agruparNanos > 0) {
+                    LockSupport.parkNanos(agruparNanos);
+                }
+                List<Tramo> tramos;
+                boolean directorioSucio;
+                Segmento segmento;
+                int desde;
+                int hasta;
+                long objetivo;
+                synchronized (this) {
+                    tramos = List.copyOf(porForzar);
+                    porForzar.clear();
+                    directorioSucio = directorioPendiente;
+                    directorioPendiente = false;
+                    segmento = actual();
+                    desde = forzadoHasta;
+                    hasta = segmento.posicion;
+                    objetivo = escrito;
+                }
+                // Fuera del monitor: mientras duran los fsync se siguen aceptando escrituras. Primero el resto de
+                // los segmentos rotados y el directorio (sus renombrados), después el actual
+                for (Tramo tramo : tramos) {
+                    tramo.segmento().mapa.force(tramo.desde(), tramo.hasta() - tramo.desde());
+                }
+                if (directorioSucio) {
+                    sincronizarDirectorio();
+                }
+                segmento.mapa.force(desde, hasta - desde);
+                synchronized (this) {
+                    if (segmento == actual()) {
+                        forzadoHasta = Math.max(forzadoHasta, hasta);
+                    }
+                    durable = Math.max(durable, objetivo);
+                    notifyAll();
+                }
+                prepararReserva();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException | Error e) {
+            // MappedByteBuffer.force informa de un error de E/S con UncheckedIOException
+            log.error("Falló el fsync del diario de pagos; deja de aceptar altas", e);
+            synchronized (this) {
+                fallo = e;
+            }
+        } finally {
+            synchronized (this) {
+                terminado = true;
+                notifyAll();
+            }
+        }
+    }
+
+    // Crea el siguiente segmento fuera del monitor para que rotar() no toque el sistema de archivos más que al renombrar
+    private void prepararReserva() {
+        synchronized (this) {
+            if (reserva != null || !abierto) {
+                return;
+            }
+        }
+        Segmento nueva;
+        try {
+            nueva = abrirSegmento(directorio.resolve(RESERVA), -1);
+            nueva.mapa.force(0, CABECERA_SEGMENTO + Integer.BYTES);
+        } catch (UncheckedIOException e) {
+            // rotar() creará el segmento por su cuenta
+            log.warn("No se pudo preparar el siguiente segmento del diario de pagos: {}", e.getMessage());
+            return;
+        }
+        synchronized (this) {
+            if (abierto) {
+                reserva = nueva;
+                return;
+            }
+        }
+        cerrar(nueva, true);
+    }
+
+    private Segmento actual() {
+        return segmentos.get(segmentos.size() - 1);
+    }
+
+    // Se llama con el monitor tomado. Los fsync (resto del segmento lleno, cabecera del nuevo y directorio) quedan
+    // para el sincronizador, que no da por durable nada del segmento nuevo hasta haberlos hecho
+    private Segmento rotar(Segmento lleno) {
+        long primerSeq = escrito + 1;
+        Path ruta = directorio.resolve(String.format("diario-%016d.log", primerSeq));
+        Segmento nuevo;
+        if (reserva != null) {
+            try {
+                Files.move(reserva.ruta, ruta, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                throw new UncheckedIOException("No se pudo renombrar el segmento de reserva del diario a " + ruta, e);
+            }
+            reserva.mapa.putLong(8, primerSeq);
+            nuevo = new Segmento(primerSeq, ruta, reserva.canal, reserva.mapa);
+            nuevo.posicion = reserva.posicion;
+            reserva = null;
+        } else {
+            // El sincronizador aún no tiene preparada la reserva (rotaciones muy seguidas)
+            nuevo = abrirSegmento(ruta, primerSeq);
+        }
+        porForzar.add(new Tramo(lleno, forzadoHasta, lleno.posicion));
+        directorioPendiente = true;
+        segmentos.add(nuevo);
+        // Desde 0: el primer fsync del segmento incluye su cabecera
+        forzadoHasta = 0;
+        return nuevo;
+    }
+
+    // Con el fsync del segmento y del directorio a cargo de quien llama
+    private Segmento abrirSegmento(Path ruta, long primerSeq) {
+        try {
+            FileChannel canal = FileChannel.open(ruta, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            MappedByteBuffer mapa = canal.map(FileChannel.MapMode.READ_WRITE, 0, bytesSegmento);
+            mapa.putLong(0, MAGIA).putLong(8, primerSeq).putInt(CABECERA_SEGMENTO, 0);
+            Segmento segmento = new Segmento(primerSeq, ruta, canal, mapa);
+            segmento.posicion = CABECERA_SEGMENTO;
+            return segmento;
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo crear el segmento del diario " + ruta, e);
+        }
+    }
+
+    private Segmento crearSegmento(long primerSeq) {
+        Segmento segmento = abrirSegmento(directorio.resolve(String.format("diario-%016d.log", primerSeq)), primerSeq);
+        segmento.mapa.force(0, CABECERA_SEGMENTO + Integer.BYTES);
+        sincronizarDirectorio();
+        return segmento;
+    }
+
+    private void recuperar() throws IOException {
+        // Una reserva que no llegó a usarse no contiene registros
+        Files.deleteIfExists(directorio.resolve(RESERVA));
+        List<Path> rutas;
+        try (Stream<Path> archivos = Files.list(directorio)) {
+            rutas = archivos.filter(ruta -> ruta.getFileName().toString().matches("diario-\\d{16}\\.log")).sorted().toList();
+        }
+        long esperado = -1;
+        boolean descartar = false;
+        for (Path ruta : rutas) {
+            FileChannel canal = FileChannel.open(ruta, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            MappedByteBuffer mapa = canal.map(FileChannel.MapMode.READ_WRITE, 0, canal.size());
+            long primerSeq = mapa.capacity() >= CABECERA_SEGMENTO && mapa.getLong(0) == MAGIA ? mapa.getLong(8) : -1;
+            if (descartar || primerSeq < 0 || (esperado >= 0 && primerSeq != esperado)) {
+                log.warn("Segmento del diario de pagos {} descartado (cabecera no válida o fuera de secuencia).", ruta);
+                canal.close();
+                Files.move(ruta, ruta.resolveSibling(ruta.getFileName() + ".descartado"));
+                descartar = true;
+                continue;
+            }
+            Segmento segmento = new Segmento(primerSeq, ruta, canal, mapa);
+            esperado = escanear(segmento);
+            segmentos.add(segmento);
+            // Un segmento que no termina limpio es el último válido
+            descartar = segmento.posicion + CABECERA_REGISTRO < mapa.capacity() && mapa.getInt(segmento.posicion) != 0;
+        }
+        if (segmentos.isEmpty()) {
+            segmentos.add(crearSegmento(procesado + 1));
+            esperado = procesado + 1;
+        }
+        escrito = esperado - 1;
+        durable = escrito;
+        forzadoHasta = actual().posicion;
+        if (procesado > escrito) {
+            log.warn("El cursor del diario de pagos ({}) va por delante del último registro ({}); se ajusta.", procesado, escrito);
+            procesado = escrito;
+        }
+        posicionarLectura();
+        log.info("Diario de pagos abierto en {}: {} registros pendientes de procesar.", directorio, escrito - procesado);
+    }
+
+    // Recorre los registros válidos del segmento; deja su posición tras el último y devuelve el seq siguiente
+    private static long escanear(Segmento segmento) {
+        MappedByteBuffer mapa = segmento.mapa;
+        int p = CABECERA_SEGMENTO;
+        long seq = segmento.primerSeq;
+        CRC32C crc = new CRC32C();
+        while (p + CABECERA_REGISTRO <= mapa.capacity()) {
+            int longitud = mapa.getInt(p);
+            if (longitud <= 0 || p + CABECERA_REGISTRO + longitud > mapa.capacity() || mapa.getLong(p + 8) != seq) {
+                break;
+            }
+            crc.reset();
+            crc.update(mapa.slice(p + CABECERA_REGISTRO, longitud));
+            if ((int) crc.getValue() != mapa.getInt(p + 4)) {
+                break;
+            }
+            p += CABECERA_REGISTRO + longitud;
+            seq++;
+        }
+        segmento.posicion = p;
+        return seq;
+    }
+
+    private void posicionarLectura() {
+        for (Segmento segmento : segmentos) {
+            segmentoLectura = segmento;
+            posicionLectura = CABECERA_SEGMENTO;
+            long seq = segmento.primerSeq;
+            while (seq <= procesado && posicionLectura < segmento.posicion) {
+                posicionLectura += CABECERA_REGISTRO + segmento.mapa.getInt(posicionLectura);
+                seq++;
+            }
+            if (seq > procesado) {
+                return;
+            }
+        }
+    }
+
+    private long leerCursor() throws IOException {
+        if (cursor.size() < Long.BYTES) {
+            return 0;
+        }
+        ByteBuffer valor = ByteBuffer.allocate(Long.BYTES);
+        while (valor.hasRemaining() && cursor.read(valor, valor.position()) >= 0) {
+            // lee los 8 bytes
+        }
+        return valor.getLong(0);
+    }
+
+    private void sincronizarDirectorio() {
+        try (FileChannel carpeta = FileChannel.open(directorio, StandardOpenOption.READ)) {
+            carpeta.force(true);
+        } catch (IOException e) {
+            // No todos los sistemas permiten abrir un directorio; el segmento ya está forzado
+        }
+    }
+
+    private static void cerrar(Segmento segmento, boolean borrar) {
+        try {
+            segmento.canal.close();
+            if (borrar) {
+                Files.deleteIfExists(segmento.ruta);
+            }
+        } catch (IOException e) {
+            log.warn("No se pudo cerrar el segmento del diario {}: {}", segmento.ruta, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.clinica.pagos.infrastructure.entity;
+
+import java.util.Optional;
+
+/**
+ * Estados de un pago. En la tabla {@code pagos} se guardan como un código de un carácter.
+ */
+public enum EstadoPago {
+    PENDIENTE('P'),
+    COMPLETADO('C'),
+    ANULADO('A');
+
+    private final char codigo;
+
+    EstadoPago(char codigo) {
+        this.codigo = codigo;
+    }
+
+    public char getCodigo() { return codigo; }
+
+    public static EstadoPago desdeCodigo(char codigo) {
+        for (EstadoPago estado : values()) {
+            if (estado.codigo == codigo) {
+                return estado;
+            }
+        }
+        throw new IllegalArgumentException("Código de estado de pago desconocido: " + codigo);
+    }
+
+    /** Busca un estado por nombre sin distinguir mayúsculas; vacío si no existe. */
+    public static Optional<EstadoPago> buscar(String nombre) {
+        for (EstadoPago estado : values()) {
+            if (estado.name().equalsIgnoreCase(nombre)) {
+                return Optional.of(estado);
+            }
+        }
+        return Optional.empty();
+    }
+}
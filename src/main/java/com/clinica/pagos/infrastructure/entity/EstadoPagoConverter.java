@@ -0,0 +1,18 @@
+package com.clinica.pagos.infrastructure.entity;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+@Converter
+public class EstadoPagoConverter implements AttributeConverter<EstadoPago, String> {
+
+    @Override
+    public String convertToDatabaseColumn(EstadoPago estado) {
+        return estado != null ? String.valueOf(estado.getCodigo()) : null;
+    }
+
+    @Override
+    public EstadoPago convertToEntityAttribute(String codigo) {
+        return codigo != null && !codigo.isEmpty() ? EstadoPago.desdeCodigo(codigo.charAt(0)) : null;
+    }
+}
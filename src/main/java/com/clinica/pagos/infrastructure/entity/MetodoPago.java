@@ -0,0 +1,39 @@
+package com.clinica.pagos.infrastructure.entity;
+
+import java.util.Optional;
+
+/**
+ * Métodos de pago. En la tabla {@code pagos} se guardan como un código de un carácter.
+ */
+public enum MetodoPago {
+    EFECTIVO('E'),
+    TARJETA('T'),
+    TRANSFERENCIA('R');
+
+    private final char codigo;
+
+    MetodoPago(char codigo) {
+        this.codigo = codigo;
+    }
+
+    public char getCodigo() { return codigo; }
+
+    public static MetodoPago desdeCodigo(char codigo) {
+        for (MetodoPago metodo : values()) {
+            if (metodo.codigo == codigo) {
+                return metodo;
+            }
+        }
+        throw new IllegalArgumentException("Código de método de pago desconocido: " + codigo);
+    }
+
+    /** Busca un método por nombre sin distinguir mayúsculas; vacío si no existe. */
+    public static Optional<MetodoPago> buscar(String nombre) {
+        for (MetodoPago metodo : values()) {
+            if (metodo.name().equalsIgnoreCase(nombre)) {
+                return Optional.of(metodo);
+            }
+        }
+        return Optional.empty();
+    }
+}
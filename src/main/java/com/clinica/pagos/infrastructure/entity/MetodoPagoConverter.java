@@ -0,0 +1,18 @@
+package com.clinica.pagos.infrastructure.entity;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+@Converter
+public class MetodoPagoConverter implements AttributeConverter<MetodoPago, String> {
+
+    @Override
+    public String convertToDatabaseColumn(MetodoPago metodo) {
+        return metodo != null ? String.valueOf(metodo.getCodigo()) : null;
+    }
+
+    @Override
+    public MetodoPago convertToEntityAttribute(String codigo) {
+        return codigo != null && !codigo.isEmpty() ? MetodoPago.desdeCodigo(codigo.charAt(0)) : null;
+    }
+}
@@ -0,0 +1,95 @@
+package com.clinica.pagos.infrastructure.entity;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+
+/**
+ * Notificación pendiente de envío (outbox transaccional).
+ * Se inserta en la misma transacción que el Pago que la origina y la envía después
+ * el OutboxDispatcher, de modo que no se pierde ninguna aunque el proceso se caiga.
+ */
+@Entity
+@Table(name = "notificaciones_pendientes", indexes = {
+    @Index(name = "idx_notif_pendientes_estado_proximo", columnList = "estado, proximo_intento"),
+    @Index(name = "idx_notif_pendientes_grupo", columnList = "grupo")
+})
+public class NotificacionPendiente {
+
+    public static final String PENDIENTE = "PENDIENTE";
+    public static final String ENVIADA = "ENVIADA";
+    public static final String FALLIDA = "FALLIDA";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    private String referenciaServicio;
+    private String tipo;
+    @Column(columnDefinition = "TEXT")
+    private String payload; // NotificacionDTO serializada en JSON
+    private String estado; // PENDIENTE, ENVIADA, FALLIDA
+    private int intentos;
+    private LocalDateTime proximoIntento;
+    private LocalDateTime creadaEn;
+    private LocalDateTime enviadaEn;
+    private String ultimoError;
+    private Long grupo; // id de la primera fila del grupo con el que se envía; null si se envía sola
+
+    public NotificacionPendiente() {}
+
+    public NotificacionPendiente(String referenciaServicio, String tipo, String payload) {
+        this.referenciaServicio = referenciaServicio;
+        this.tipo = tipo;
+        this.payload = payload;
+        this.estado = PENDIENTE;
+        this.creadaEn = LocalDateTime.now();
+        this.proximoIntento = this.creadaEn;
+    }
+
+    /**
+     * Clave de idempotencia que recibe el servicio de notificaciones: los reintentos de una
+     * misma fila reutilizan la clave, por lo que un envío repetido no duplica la notificación.
+     */
+    public String getClaveIdempotencia() {
+        return referenciaServicio + ":" + tipo + ":" + id;
+    }
+
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public String getReferenciaServicio() { return referenciaServicio; }
+    public void setReferenciaServicio(String referenciaServicio) { this.referenciaServicio = referenciaServicio; }
+
+    public String getTipo() { return tipo; }
+    public void setTipo(String tipo) { this.tipo = tipo; }
+
+    public String getPayload() { return payload; }
+    public void setPayload(String payload) { this.payload = payload; }
+
+    public String getEstado() { return estado; }
+    public void setEstado(String estado) { this.estado = estado; }
+
+    public int getIntentos() { return intentos; }
+    public void setIntentos(int intentos) { this.intentos = intentos; }
+
+    public LocalDateTime getProximoIntento() { return proximoIntento; }
+    public void setProximoIntento(LocalDateTime proximoIntento) { this.proximoIntento = proximoIntento; }
+
+    public LocalDateTime getCreadaEn() { return creadaEn; }
+    public void setCreadaEn(LocalDateTime creadaEn) { this.creadaEn = creadaEn; }
+
+    public LocalDateTime getEnviadaEn() { return enviadaEn; }
+    public void setEnviadaEn(LocalDateTime enviadaEn) { this.enviadaEn = enviadaEn; }
+
+    public String getUltimoError() { return ultimoError; }
+    public void setUltimoError(String ultimoError) { this.ultimoError = ultimoError; }
+
+    public Long getGrupo() { return grupo; }
+    public void setGrupo(Long grupo) { this.grupo = grupo; }
+}
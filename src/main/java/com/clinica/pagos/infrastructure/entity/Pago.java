@@ -3,29 +3,56 @@ package com.clinica.pagos.infrastructure.entity;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
+import jakarta.persistence.Cacheable;
+import jakarta.persistence.Column;
+import jakarta.persistence.Convert;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.Table;
+import jakarta.persistence.Version;
 
+// Región "pagos" de la caché de segundo nivel; solo se usa si está habilitada (perfil prod). Es local a cada
+// instancia y no ve las escrituras de las demás: NONSTRICT_READ_WRITE con expiración corta (application.conf),
+// y PagoImp lee sin caché antes de modificar o borrar para comprobar la versión real
 @Entity
-@Table(name = "pagos")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.NONSTRICT_READ_WRITE, region = Pago.REGION_CACHE)
+@Table(name = "pagos", indexes = {
+    @Index(name = "idx_pagos_cita_id", columnList = "cita_id"),
+    @Index(name = "idx_pagos_estado_fecha", columnList = "estado, fecha_pago"),
+    @Index(name = "idx_pagos_estado_id", columnList = "estado, id"),
+    @Index(name = "idx_pagos_referencia", columnList = "referencia")
+})
 public class Pago {
+
+    public static final String REGION_CACHE = "pagos";
+    public static final String REGION_CONSULTAS_POR_ESTADO = "pagos-por-estado";
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
     private Long citaId;
     private BigDecimal monto;
-    private String metodoPago; // EFECTIVO, TARJETA, TRANSFERENCIA
+    @Convert(converter = MetodoPagoConverter.class)
+    @Column(columnDefinition = "char(1)")
+    private MetodoPago metodoPago;
     private LocalDateTime fechaPago;
-    private String estado; // PENDIENTE, COMPLETADO, ANULADO
+    @Convert(converter = EstadoPagoConverter.class)
+    @Column(columnDefinition = "char(1)")
+    private EstadoPago estado;
     private String referencia;
+    @Version
+    private Long version;
     
     public Pago() {}
     
-    public Pago(Long citaId, BigDecimal monto, String metodoPago, 
-                LocalDateTime fechaPago, String estado, String referencia) {
+    public Pago(Long citaId, BigDecimal monto, MetodoPago metodoPago, 
+                LocalDateTime fechaPago, EstadoPago estado, String referencia) {
         this.citaId = citaId;
         this.monto = monto;
         this.metodoPago = metodoPago;
@@ -43,15 +70,18 @@ public class Pago {
     public BigDecimal getMonto() { return monto; }
     public void setMonto(BigDecimal monto) { this.monto = monto; }
     
-    public String getMetodoPago() { return metodoPago; }
-    public void setMetodoPago(String metodoPago) { this.metodoPago = metodoPago; }
+    public MetodoPago getMetodoPago() { return metodoPago; }
+    public void setMetodoPago(MetodoPago metodoPago) { this.metodoPago = metodoPago; }
     
     public LocalDateTime getFechaPago() { return fechaPago; }
     public void setFechaPago(LocalDateTime fechaPago) { this.fechaPago = fechaPago; }
     
-    public String getEstado() { return estado; }
-    public void setEstado(String estado) { this.estado = estado; }
+    public EstadoPago getEstado() { return estado; }
+    public void setEstado(EstadoPago estado) { this.estado = estado; }
     
     public String getReferencia() { return referencia; }
     public void setReferencia(String referencia) { this.referencia = referencia; }
-}
\ No newline at end of file
+    
+    public Long getVersion() { return version; }
+    public void setVersion(Long version) { this.version = version; }
+}
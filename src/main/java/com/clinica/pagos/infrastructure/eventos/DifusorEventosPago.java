@@ -0,0 +1,130 @@
+package com.clinica.pagos.infrastructure.eventos;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import com.clinica.pagos.domain.dto.EventoPagoDTO;
+import com.clinica.pagos.domain.repository.IEventosPago;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Reparte los eventos del registro a los suscriptores SSE y long-poll.
+ * Se despierta cuando se confirma una transacción que añadió eventos y, además, cada
+ * {@code pagos.eventos.sondeo-ms} para recoger los escritos por otras instancias.
+ * Un único hilo despacha y los suscriptores con el mismo cursor comparten la misma lectura,
+ * así que N consumidores al día cuestan una consulta por ronda, no N. Por eso {@link SuscriptorEventosPago#entregar}
+ * no debe bloquearse: las conexiones SSE solo encolan y envían desde su propio hilo.
+ * <p>
+ * El registro se purga pasados {@code pagos.eventos.retencion}: un consumidor con un cursor más antiguo pierde
+ * esos eventos y debe recargar su estado (el índice en memoria lo hace al arrancar).
+ */
+@Component
+public class DifusorEventosPago {
+
+    private static final Logger log = LoggerFactory.getLogger(DifusorEventosPago.class);
+
+    @Autowired
+    private IEventosPago eventos;
+
+    // Máximo de eventos por entrega
+    @Value("${pagos.eventos.lote:100}")
+    private int lote;
+
+    @Value("${pagos.eventos.retencion:7d}")
+    private Duration retencion;
+
+    private final Set<SuscriptorEventosPago> suscriptores = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean programado = new AtomicBoolean();
+    private final ExecutorService despachador =
+            Executors.newSingleThreadExecutor(Thread.ofPlatform().name("eventos-pago").daemon(true).factory());
+
+    public void suscribir(SuscriptorEventosPago suscriptor) {
+        suscriptores.add(suscriptor);
+        // Puede haber eventos confirmados entre la última lectura del suscriptor y este registro
+        programar();
+    }
+
+    public void cancelar(SuscriptorEventosPago suscriptor) {
+        suscriptores.remove(suscriptor);
+    }
+
+    public int getSuscriptores() {
+        return suscriptores.size();
+    }
+
+    @TransactionalEventListener
+    public void alConfirmar(EventosPagoRegistrados registrados) {
+        if (!suscriptores.isEmpty()) {
+            programar();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${pagos.eventos.sondeo-ms:1000}")
+    public void sondear() {
+        if (!suscriptores.isEmpty()) {
+            programar();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${pagos.eventos.purga-ms:3600000}")
+    public void purgar() {
+        int borrados = eventos.purgar(LocalDateTime.now().minus(retencion));
+        if (borrados > 0) {
+            log.info("Eventos de pagos anteriores a la retención eliminados: {}", borrados);
+        }
+    }
+
+    @PreDestroy
+    public void detener() {
+        despachador.shutdownNow();
+    }
+
+    private void programar() {
+        // Varias señales seguidas se funden en una sola ronda
+        if (programado.compareAndSet(false, true)) {
+            despachador.execute(() -> {
+                programado.set(false);
+                try {
+                    despachar();
+                } catch (RuntimeException e) {
+                    log.warn("Error al repartir eventos de pagos: {}", e.getMessage());
+                }
+            });
+        }
+    }
+
+    private void despachar() {
+        Map<Long, List<EventoPagoDTO>> porCursor = new HashMap<>();
+        boolean quedanPendientes = false;
+        for (SuscriptorEventosPago suscriptor : suscriptores) {
+            List<EventoPagoDTO> nuevos = porCursor.computeIfAbsent(suscriptor.cursor(), cursor -> eventos.leer(cursor, lote));
+            if (nuevos.isEmpty()) {
+                continue;
+            }
+            if (!suscriptor.entregar(nuevos)) {
+                suscriptores.remove(suscriptor);
+            }
+            quedanPendientes |= nuevos.size() == lote;
+        }
+        if (quedanPendientes) {
+            programar();
+        }
+    }
+}
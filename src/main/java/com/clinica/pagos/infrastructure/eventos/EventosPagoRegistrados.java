@@ -0,0 +1,16 @@
+package com.clinica.pagos.infrastructure.eventos;
+
+/**
+ * Evento de aplicación que publica el registro de eventos al añadir entradas.
+ * Se escucha tras el commit para avisar a los suscriptores de que hay eventos nuevos.
+ */
+public class EventosPagoRegistrados {
+
+    private final long ultimaSecuencia;
+
+    public EventosPagoRegistrados(long ultimaSecuencia) {
+        this.ultimaSecuencia = ultimaSecuencia;
+    }
+
+    public long getUltimaSecuencia() { return ultimaSecuencia; }
+}
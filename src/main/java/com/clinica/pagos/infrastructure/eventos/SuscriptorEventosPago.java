@@ -0,0 +1,20 @@
+package com.clinica.pagos.infrastructure.eventos;
+
+import java.util.List;
+
+import com.clinica.pagos.domain.dto.EventoPagoDTO;
+
+/**
+ * Consumidor registrado en {@link DifusorEventosPago}: una conexión SSE, una petición long-poll o el índice en memoria.
+ */
+public interface SuscriptorEventosPago {
+
+    // Último seq entregado; se le envían los eventos posteriores
+    long cursor();
+
+    /**
+     * Entrega eventos nuevos, en orden.
+     * @return false si el suscriptor ya no quiere más (long-poll respondido, conexión cerrada).
+     */
+    boolean entregar(List<EventoPagoDTO> eventos);
+}
@@ -0,0 +1,163 @@
+package com.clinica.pagos.infrastructure.exportacion;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+import com.clinica.pagos.infrastructure.exportacion.EscritorColumnar.GrupoColumnar;
+
+/**
+ * Estado persistente de una exportación ({@code checkpoint.properties} en su directorio): parámetros, estado
+ * y tramos terminados con sus filas y, si hay salida columnar, los tamaños del grupo. Se reescribe entero
+ * (archivo temporal + renombrado atómico) cada vez que termina un tramo, así que tras una caída o un reinicio
+ * la exportación se reanuda repitiendo solo los tramos que no llegaron a registrarse.
+ */
+public final class CheckpointExportacion {
+
+    public static final String ARCHIVO = "checkpoint.properties";
+
+    public static final String EN_CURSO = "EN_CURSO";
+    public static final String COMPLETADA = "COMPLETADA";
+    public static final String FALLIDA = "FALLIDA";
+
+    private final Path directorio;
+    private final Properties propiedades;
+
+    private CheckpointExportacion(Path directorio, Properties propiedades) {
+        this.directorio = directorio;
+        this.propiedades = propiedades;
+    }
+
+    /** Checkpoint de una exportación nueva de los pagos con {@code desde < id <= hasta}, en tramos de {@code tramo} IDs. */
+    public static CheckpointExportacion crear(Path directorio, String id, Set<String> formatos, long desde, long hasta, long tramo) {
+        Properties propiedades = new Properties();
+        propiedades.setProperty("id", id);
+        propiedades.setProperty("formatos", String.join(",", formatos));
+        propiedades.setProperty("desde", Long.toString(desde));
+        propiedades.setProperty("hasta", Long.toString(hasta));
+        propiedades.setProperty("tramo", Long.toString(tramo));
+        propiedades.setProperty("estado", EN_CURSO);
+        propiedades.setProperty("inicio", LocalDateTime.now().toString());
+        CheckpointExportacion checkpoint = new CheckpointExportacion(directorio, propiedades);
+        checkpoint.guardar();
+        return checkpoint;
+    }
+
+    public static CheckpointExportacion cargar(Path directorio) throws IOException {
+        Properties propiedades = new Properties();
+        try (Reader lector = Files.newBufferedReader(directorio.resolve(ARCHIVO), StandardCharsets.UTF_8)) {
+            propiedades.load(lector);
+        }
+        return new CheckpointExportacion(directorio, propiedades);
+    }
+
+    public Path getDirectorio() { return directorio; }
+
+    public synchronized String getId() { return propiedades.getProperty("id"); }
+
+    public synchronized Set<String> getFormatos() {
+        return new LinkedHashSet<>(Arrays.asList(propiedades.getProperty("formatos").split(",")));
+    }
+
+    public synchronized long getDesde() { return Long.parseLong(propiedades.getProperty("desde")); }
+    public synchronized long getHasta() { return Long.parseLong(propiedades.getProperty("hasta")); }
+    public synchronized long getTramo() { return Long.parseLong(propiedades.getProperty("tramo")); }
+
+    public synchronized int getTramos() {
+        return (int) Math.ceilDiv(getHasta() - getDesde(), getTramo());
+    }
+
+    public synchronized String getEstado() { return propiedades.getProperty("estado"); }
+    public synchronized String getError() { return propiedades.getProperty("error"); }
+
+    public synchronized LocalDateTime getInicio() { return LocalDateTime.parse(propiedades.getProperty("inicio")); }
+
+    public synchronized LocalDateTime getFin() {
+        String fin = propiedades.getProperty("fin");
+        return fin != null ? LocalDateTime.parse(fin) : null;
+    }
+
+    public synchronized boolean isTramoTerminado(int tramo) {
+        return propiedades.containsKey("tramo." + tramo + ".filas");
+    }
+
+    public synchronized int getTramosTerminados() {
+        int terminados = 0;
+        for (int tramo = 0; tramo < getTramos(); tramo++) {
+            if (isTramoTerminado(tramo)) {
+                terminados++;
+            }
+        }
+        return terminados;
+    }
+
+    public synchronized long getFilas() {
+        long filas = 0;
+        for (int tramo = 0; tramo < getTramos(); tramo++) {
+            String valor = propiedades.getProperty("tramo." + tramo + ".filas");
+            filas += valor != null ? Long.parseLong(valor) : 0;
+        }
+        return filas;
+    }
+
+    /** Grupos columnares de todos los tramos, en orden; solo tiene sentido con todos terminados. */
+    public synchronized List<GrupoColumnar> getGrupos() {
+        GrupoColumnar[] grupos = new GrupoColumnar[getTramos()];
+        for (int tramo = 0; tramo < grupos.length; tramo++) {
+            grupos[tramo] = GrupoColumnar.decodificar(propiedades.getProperty("tramo." + tramo + ".pcol"));
+        }
+        return List.of(grupos);
+    }
+
+    /** Registra un tramo terminado (sus archivos ya están en disco) y guarda el checkpoint. */
+    public synchronized void terminarTramo(int tramo, long filas, GrupoColumnar grupo) {
+        propiedades.setProperty("tramo." + tramo + ".filas", Long.toString(filas));
+        if (grupo != null) {
+            propiedades.setProperty("tramo." + tramo + ".pcol", grupo.codificar());
+        }
+        guardar();
+    }
+
+    public synchronized void reanudar() {
+        propiedades.setProperty("estado", EN_CURSO);
+        propiedades.remove("error");
+        propiedades.remove("fin");
+        guardar();
+    }
+
+    public synchronized void completar() {
+        propiedades.setProperty("estado", COMPLETADA);
+        propiedades.setProperty("fin", LocalDateTime.now().toString());
+        guardar();
+    }
+
+    public synchronized void fallar(String error) {
+        propiedades.setProperty("estado", FALLIDA);
+        propiedades.setProperty("error", error);
+        propiedades.setProperty("fin", LocalDateTime.now().toString());
+        guardar();
+    }
+
+    private void guardar() {
+        Path temporal = directorio.resolve(ARCHIVO + ".tmp");
+        try {
+            try (Writer escritor = Files.newBufferedWriter(temporal, StandardCharsets.UTF_8)) {
+                propiedades.store(escritor, "Exportación de pagos " + propiedades.getProperty("id"));
+            }
+            Files.move(temporal, directorio.resolve(ARCHIVO), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo guardar el checkpoint de la exportación en " + directorio, e);
+        }
+    }
+}
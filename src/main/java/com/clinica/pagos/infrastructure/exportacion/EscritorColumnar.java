@@ -0,0 +1,269 @@
+package com.clinica.pagos.infrastructure.exportacion;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.Deflater;
+
+import com.clinica.pagos.domain.dto.PagoDTO;
+import com.clinica.pagos.infrastructure.entity.EstadoPago;
+import com.clinica.pagos.infrastructure.entity.MetodoPago;
+
+/**
+ * Formato columnar comprimido de las exportaciones ({@code .pcol}), al estilo de Parquet: el archivo se divide
+ * en grupos de filas (uno por tramo exportado) y, dentro de cada grupo, cada columna va en un bloque Deflate propio.
+ * <pre>
+ * "PCOL" 0x01
+ * grupo*: bloque comprimido de cada columna, en el orden de COLUMNAS
+ * pie:    int columnas, nombre (short longitud + UTF-8) de cada una
+ *         byte estados, nombre de cada uno; byte métodos, nombre de cada uno   (diccionarios)
+ *         int grupos; por grupo: long posición, int filas, por columna int comprimido, int original
+ * int longitud del pie, "PCOL"
+ * </pre>
+ * Codificación de las columnas (varint = LEB128 sin signo; 0 es nulo donde se indica "+1"):
+ * <ul>
+ *   <li>id: varint de la diferencia con el id anterior del grupo (ascendentes).</li>
+ *   <li>citaId, version: varint(valor + 1).</li>
+ *   <li>monto: varint(zigzag(céntimos) + 1).</li>
+ *   <li>fechaPago: microsegundos UTC, varint(zigzag(diferencia con la fecha anterior no nula) + 1).</li>
+ *   <li>estado, metodoPago: un byte, posición en el diccionario del pie + 1.</li>
+ *   <li>referencia, nombrePaciente, nombreMedico: varint(longitud UTF-8 + 1) y los bytes.</li>
+ * </ul>
+ * Cada instancia escribe un único grupo en su propio archivo; {@link #fusionar} une los grupos y añade el pie.
+ * Para leerlo: {@link LectorColumnar}.
+ */
+public final class EscritorColumnar implements Closeable {
+
+    public static final List<String> COLUMNAS = List.of(
+            "id", "citaId", "monto", "metodoPago", "fechaPago", "estado", "referencia", "version", "nombrePaciente", "nombreMedico");
+
+    static final byte[] MAGIA = { 'P', 'C', 'O', 'L' };
+    static final byte VERSION_FORMATO = 1;
+
+    private static final int ID = 0, CITA = 1, MONTO = 2, METODO = 3, FECHA = 4, ESTADO = 5, REFERENCIA = 6,
+            VERSION = 7, PACIENTE = 8, MEDICO = 9;
+
+    /** Tamaños de un grupo escrito; se guardan en el checkpoint para poder fusionar sin releer las partes. */
+    public record GrupoColumnar(int filas, int[] comprimidos, int[] originales) {
+
+        public String codificar() {
+            StringBuilder texto = new StringBuilder().append(filas);
+            for (int i = 0; i < comprimidos.length; i++) {
+                texto.append(i == 0 ? ';' : ',').append(comprimidos[i]).append(':').append(originales[i]);
+            }
+            return texto.toString();
+        }
+
+        public static GrupoColumnar decodificar(String texto) {
+            String[] partes = texto.split(";");
+            int filas = Integer.parseInt(partes[0]);
+            String[] columnas = partes.length > 1 ? partes[1].split(",") : new String[0];
+            int[] comprimidos = new int[columnas.length];
+            int[] originales = new int[columnas.length];
+            for (int i = 0; i < columnas.length; i++) {
+                int separador = columnas[i].indexOf(':');
+                comprimidos[i] = Integer.parseInt(columnas[i].substring(0, separador));
+                originales[i] = Integer.parseInt(columnas[i].substring(separador + 1));
+            }
+            return new GrupoColumnar(filas, comprimidos, originales);
+        }
+    }
+
+    private final FileChannel canal;
+    private final ByteBuffer buffer;
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private final Columna[] columnas = new Columna[COLUMNAS.size()];
+    private long idAnterior;
+    private long fechaAnterior;
+    private int filas;
+    private GrupoColumnar grupo;
+
+    public EscritorColumnar(Path ruta, int bytesBuffer) throws IOException {
+        this.canal = FileChannel.open(ruta, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        this.buffer = ByteBuffer.allocateDirect(bytesBuffer);
+        for (int i = 0; i < columnas.length; i++) {
+            columnas[i] = new Columna();
+        }
+    }
+
+    public void escribir(PagoDTO pago) {
+        columnas[ID].varint(pago.getId() - idAnterior);
+        idAnterior = pago.getId();
+        columnas[CITA].varint(pago.getCitaId() != null ? pago.getCitaId() + 1 : 0);
+        columnas[MONTO].varint(pago.getMonto() != null
+                ? zigzag(pago.getMonto().setScale(2, RoundingMode.UNNECESSARY).unscaledValue().longValueExact()) + 1
+                : 0);
+        columnas[METODO].octeto(pago.getMetodoPago() != null
+                ? MetodoPago.buscar(pago.getMetodoPago()).map(m -> m.ordinal() + 1).orElse(0)
+                : 0);
+        if (pago.getFechaPago() != null) {
+            long micros = pago.getFechaPago().toEpochSecond(ZoneOffset.UTC) * 1_000_000L + pago.getFechaPago().getNano() / 1_000;
+            columnas[FECHA].varint(zigzag(micros - fechaAnterior) + 1);
+            fechaAnterior = micros;
+        } else {
+            columnas[FECHA].varint(0);
+        }
+        columnas[ESTADO].octeto(pago.getEstado() != null
+                ? EstadoPago.buscar(pago.getEstado()).map(e -> e.ordinal() + 1).orElse(0)
+                : 0);
+        columnas[REFERENCIA].texto(pago.getReferencia());
+        columnas[VERSION].varint(pago.getVersion() != null ? pago.getVersion() + 1 : 0);
+        columnas[PACIENTE].texto(pago.getNombrePaciente());
+        columnas[MEDICO].texto(pago.getNombreMedico());
+        filas++;
+    }
+
+    /** Comprime y escribe las columnas, fuerza el archivo a disco y lo cierra. */
+    @Override
+    public void close() throws IOException {
+        try (canal) {
+            int[] comprimidos = new int[columnas.length];
+            int[] originales = new int[columnas.length];
+            for (int i = 0; i < columnas.length; i++) {
+                originales[i] = columnas[i].longitud;
+                comprimidos[i] = comprimir(columnas[i]);
+            }
+            vaciar();
+            canal.force(false);
+            grupo = new GrupoColumnar(filas, comprimidos, originales);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /** Tamaños del grupo escrito; disponible tras {@link #close()}. */
+    public GrupoColumnar getGrupo() {
+        return grupo;
+    }
+
+    /**
+     * Une los grupos (archivos escritos por esta clase, en orden) en {@code destino} y añade el pie.
+     * Las partes se copian con {@link FileChannel#transferTo}, sin pasar por el heap.
+     */
+    public static void fusionar(Path destino, List<Path> partes, List<GrupoColumnar> grupos) throws IOException {
+        try (FileChannel salida = FileChannel.open(destino, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            escribirTodo(salida, ByteBuffer.allocate(MAGIA.length + 1).put(MAGIA).put(VERSION_FORMATO).flip());
+            long[] posiciones = new long[partes.size()];
+            for (int i = 0; i < partes.size(); i++) {
+                posiciones[i] = salida.position();
+                try (FileChannel parte = FileChannel.open(partes.get(i), StandardOpenOption.READ)) {
+                    long copiados = 0;
+                    long tamano = parte.size();
+                    while (copiados < tamano) {
+                        copiados += parte.transferTo(copiados, tamano - copiados, salida);
+                    }
+                }
+            }
+            escribirTodo(salida, pie(posiciones, grupos));
+            salida.force(false);
+        }
+    }
+
+    private static ByteBuffer pie(long[] posiciones, List<GrupoColumnar> grupos) {
+        int columnas = COLUMNAS.size();
+        ByteBuffer pie = ByteBuffer.allocate(64 * 1024 + grupos.size() * (12 + 8 * columnas));
+        pie.putInt(columnas);
+        COLUMNAS.forEach(nombre -> nombre(pie, nombre));
+        pie.put((byte) EstadoPago.values().length);
+        for (EstadoPago estado : EstadoPago.values()) {
+            nombre(pie, estado.name());
+        }
+        pie.put((byte) MetodoPago.values().length);
+        for (MetodoPago metodo : MetodoPago.values()) {
+            nombre(pie, metodo.name());
+        }
+        pie.putInt(grupos.size());
+        for (int i = 0; i < grupos.size(); i++) {
+            GrupoColumnar grupo = grupos.get(i);
+            pie.putLong(posiciones[i]).putInt(grupo.filas());
+            for (int c = 0; c < columnas; c++) {
+                pie.putInt(grupo.comprimidos()[c]).putInt(grupo.originales()[c]);
+            }
+        }
+        int longitud = pie.position();
+        pie.putInt(longitud).put(MAGIA);
+        return pie.flip();
+    }
+
+    private static void nombre(ByteBuffer destino, String nombre) {
+        byte[] bytes = nombre.getBytes(StandardCharsets.UTF_8);
+        destino.putShort((short) bytes.length).put(bytes);
+    }
+
+    private int comprimir(Columna columna) throws IOException {
+        deflater.reset();
+        deflater.setInput(columna.datos, 0, columna.longitud);
+        deflater.finish();
+        int escritos = 0;
+        while (!deflater.finished()) {
+            int antes = buffer.position();
+            deflater.deflate(buffer);
+            escritos += buffer.position() - antes;
+            if (!buffer.hasRemaining()) {
+                vaciar();
+            }
+        }
+        return escritos;
+    }
+
+    private void vaciar() throws IOException {
+        escribirTodo(canal, buffer.flip());
+        buffer.clear();
+    }
+
+    private static void escribirTodo(FileChannel canal, ByteBuffer datos) throws IOException {
+        while (datos.hasRemaining()) {
+            canal.write(datos);
+        }
+    }
+
+    private static long zigzag(long valor) {
+        return (valor << 1) ^ (valor >> 63);
+    }
+
+    // Bytes de una columna del grupo en curso, antes de comprimir
+    private static final class Columna {
+        private byte[] datos = new byte[4096];
+        private int longitud;
+
+        void octeto(int valor) {
+            asegurar(1);
+            datos[longitud++] = (byte) valor;
+        }
+
+        void varint(long valor) {
+            asegurar(10);
+            while ((valor & ~0x7FL) != 0) {
+                datos[longitud++] = (byte) ((valor & 0x7F) | 0x80);
+                valor >>>= 7;
+            }
+            datos[longitud++] = (byte) valor;
+        }
+
+        void texto(String valor) {
+            if (valor == null) {
+                varint(0);
+                return;
+            }
+            byte[] bytes = valor.getBytes(StandardCharsets.UTF_8);
+            varint(bytes.length + 1L);
+            asegurar(bytes.length);
+            System.arraycopy(bytes, 0, datos, longitud, bytes.length);
+            longitud += bytes.length;
+        }
+
+        private void asegurar(int bytes) {
+            if (longitud + bytes > datos.length) {
+                datos = Arrays.copyOf(datos, Math.max(datos.length << 1, longitud + bytes));
+            }
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.clinica.pagos.infrastructure.exportacion;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.format.DateTimeFormatter;
+
+import com.clinica.pagos.domain.dto.PagoDTO;
+
+/**
+ * Escribe pagos en CSV (RFC 4180, UTF-8) a través de un {@link FileChannel} con un buffer directo grande:
+ * cada fila se compone en un StringBuilder reutilizado y se codifica directamente en el buffer, que se
+ * vuelca al canal solo cuando se llena.
+ */
+public final class EscritorCsv implements Closeable {
+
+    public static final String CABECERA =
+            "id,citaId,monto,metodoPago,fechaPago,estado,referencia,version,nombrePaciente,nombreMedico\n";
+
+    private final FileChannel canal;
+    private final ByteBuffer buffer;
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+    private final StringBuilder linea = new StringBuilder(256);
+    private long filas;
+
+    public EscritorCsv(Path ruta, int bytesBuffer) throws IOException {
+        this.canal = FileChannel.open(ruta, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        this.buffer = ByteBuffer.allocateDirect(bytesBuffer);
+    }
+
+    public void escribir(PagoDTO pago) throws IOException {
+        linea.setLength(0);
+        numero(pago.getId()).append(',');
+        numero(pago.getCitaId()).append(',');
+        if (pago.getMonto() != null) {
+            linea.append(pago.getMonto().toPlainString());
+        }
+        linea.append(',');
+        texto(pago.getMetodoPago()).append(',');
+        if (pago.getFechaPago() != null) {
+            DateTimeFormatter.ISO_LOCAL_DATE_TIME.formatTo(pago.getFechaPago(), linea);
+        }
+        linea.append(',');
+        texto(pago.getEstado()).append(',');
+        texto(pago.getReferencia()).append(',');
+        numero(pago.getVersion()).append(',');
+        texto(pago.getNombrePaciente()).append(',');
+        texto(pago.getNombreMedico()).append('\n');
+        codificar(linea);
+        filas++;
+    }
+
+    public long getFilas() {
+        return filas;
+    }
+
+    /** Vuelca lo pendiente y fuerza los datos a disco antes de cerrar: un tramo cerrado sobrevive a una caída. */
+    @Override
+    public void close() throws IOException {
+        try (canal) {
+            vaciar();
+            canal.force(false);
+        }
+    }
+
+    private StringBuilder numero(Long valor) {
+        if (valor != null) {
+            linea.append(valor.longValue());
+        }
+        return linea;
+    }
+
+    // Entre comillas solo si contiene separador, comillas o saltos de línea; las comillas se duplican
+    private StringBuilder texto(String valor) {
+        if (valor == null) {
+            return linea;
+        }
+        boolean comillas = false;
+        for (int i = 0; i < valor.length() && !comillas; i++) {
+            char c = valor.charAt(i);
+            comillas = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!comillas) {
+            return linea.append(valor);
+        }
+        linea.append('"');
+        for (int i = 0; i < valor.length(); i++) {
+            char c = valor.charAt(i);
+            if (c == '"') {
+                linea.append('"');
+            }
+            linea.append(c);
+        }
+        return linea.append('"');
+    }
+
+    private void codificar(CharSequence texto) throws IOException {
+        CharBuffer caracteres = CharBuffer.wrap(texto);
+        encoder.reset();
+        while (true) {
+            CoderResult resultado = encoder.encode(caracteres, buffer, true);
+            if (resultado.isOverflow()) {
+                vaciar();
+            } else if (resultado.isError()) {
+                resultado.throwException();
+            } else {
+                break;
+            }
+        }
+        while (encoder.flush(buffer).isOverflow()) {
+            vaciar();
+        }
+    }
+
+    private void vaciar() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            canal.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,170 @@
+package com.clinica.pagos.infrastructure.exportacion;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import com.clinica.pagos.domain.dto.PagoDTO;
+
+/**
+ * Lee un archivo {@code .pcol} escrito por {@link EscritorColumnar}, grupo a grupo: en memoria solo están
+ * las columnas descomprimidas del grupo en curso.
+ */
+public final class LectorColumnar {
+
+    private LectorColumnar() {}
+
+    public static void leer(Path archivo, Consumer<PagoDTO> destino) throws IOException {
+        try (FileChannel canal = FileChannel.open(archivo, StandardOpenOption.READ)) {
+            ByteBuffer cola = leer(canal, canal.size() - Integer.BYTES - EscritorColumnar.MAGIA.length, Integer.BYTES + EscritorColumnar.MAGIA.length);
+            int longitudPie = cola.getInt();
+            comprobarMagia(cola);
+            ByteBuffer pie = leer(canal, canal.size() - cola.capacity() - longitudPie, longitudPie);
+
+            int columnas = pie.getInt();
+            if (columnas != EscritorColumnar.COLUMNAS.size()) {
+                throw new IOException("Número de columnas inesperado en " + archivo + ": " + columnas);
+            }
+            for (int i = 0; i < columnas; i++) {
+                nombre(pie);
+            }
+            String[] estados = diccionario(pie);
+            String[] metodos = diccionario(pie);
+
+            int grupos = pie.getInt();
+            Inflater inflater = new Inflater();
+            try {
+                for (int g = 0; g < grupos; g++) {
+                    long posicion = pie.getLong();
+                    int filas = pie.getInt();
+                    byte[][] datos = new byte[columnas][];
+                    long desplazamiento = posicion;
+                    for (int c = 0; c < columnas; c++) {
+                        int comprimido = pie.getInt();
+                        int original = pie.getInt();
+                        datos[c] = descomprimir(inflater, leer(canal, desplazamiento, comprimido), original);
+                        desplazamiento += comprimido;
+                    }
+                    decodificar(datos, filas, estados, metodos, destino);
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Bloque comprimido corrupto en " + archivo, e);
+            } finally {
+                inflater.end();
+            }
+        }
+    }
+
+    private static void decodificar(byte[][] datos, int filas, String[] estados, String[] metodos, Consumer<PagoDTO> destino) {
+        ByteBuffer[] columnas = new ByteBuffer[datos.length];
+        for (int c = 0; c < datos.length; c++) {
+            columnas[c] = ByteBuffer.wrap(datos[c]);
+        }
+        long id = 0;
+        long fecha = 0;
+        for (int f = 0; f < filas; f++) {
+            PagoDTO pago = new PagoDTO();
+            id += varint(columnas[0]);
+            pago.setId(id);
+            long citaId = varint(columnas[1]);
+            pago.setCitaId(citaId != 0 ? citaId - 1 : null);
+            long monto = varint(columnas[2]);
+            pago.setMonto(monto != 0 ? BigDecimal.valueOf(deszigzag(monto - 1), 2) : null);
+            int metodo = columnas[3].get();
+            pago.setMetodoPago(metodo != 0 ? metodos[metodo - 1] : null);
+            long diferencia = varint(columnas[4]);
+            if (diferencia != 0) {
+                fecha += deszigzag(diferencia - 1);
+                pago.setFechaPago(LocalDateTime.ofEpochSecond(Math.floorDiv(fecha, 1_000_000L),
+                        (int) Math.floorMod(fecha, 1_000_000L) * 1_000, ZoneOffset.UTC));
+            }
+            int estado = columnas[5].get();
+            pago.setEstado(estado != 0 ? estados[estado - 1] : null);
+            pago.setReferencia(texto(columnas[6]));
+            long version = varint(columnas[7]);
+            pago.setVersion(version != 0 ? version - 1 : null);
+            pago.setNombrePaciente(texto(columnas[8]));
+            pago.setNombreMedico(texto(columnas[9]));
+            destino.accept(pago);
+        }
+    }
+
+    private static byte[] descomprimir(Inflater inflater, ByteBuffer comprimido, int original) throws DataFormatException {
+        inflater.reset();
+        inflater.setInput(comprimido);
+        byte[] datos = new byte[original];
+        int leidos = 0;
+        while (leidos < original && !inflater.finished()) {
+            leidos += inflater.inflate(datos, leidos, original - leidos);
+        }
+        return leidos == original ? datos : Arrays.copyOf(datos, leidos);
+    }
+
+    private static ByteBuffer leer(FileChannel canal, long posicion, int bytes) throws IOException {
+        ByteBuffer destino = ByteBuffer.allocate(bytes);
+        while (destino.hasRemaining()) {
+            if (canal.read(destino, posicion + destino.position()) < 0) {
+                throw new IOException("Archivo columnar truncado");
+            }
+        }
+        return destino.flip();
+    }
+
+    private static void comprobarMagia(ByteBuffer datos) throws IOException {
+        byte[] magia = new byte[EscritorColumnar.MAGIA.length];
+        datos.get(magia);
+        if (!Arrays.equals(magia, EscritorColumnar.MAGIA)) {
+            throw new IOException("No es un archivo columnar de pagos");
+        }
+    }
+
+    private static String[] diccionario(ByteBuffer pie) {
+        String[] valores = new String[pie.get()];
+        for (int i = 0; i < valores.length; i++) {
+            valores[i] = nombre(pie);
+        }
+        return valores;
+    }
+
+    private static String nombre(ByteBuffer pie) {
+        byte[] bytes = new byte[pie.getShort()];
+        pie.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static String texto(ByteBuffer columna) {
+        long longitud = varint(columna);
+        if (longitud == 0) {
+            return null;
+        }
+        byte[] bytes = new byte[(int) longitud - 1];
+        columna.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static long varint(ByteBuffer columna) {
+        long valor = 0;
+        int desplazamiento = 0;
+        byte b;
+        do {
+            b = columna.get();
+            valor |= (long) (b & 0x7F) << desplazamiento;
+            desplazamiento += 7;
+        } while ((b & 0x80) != 0);
+        return valor;
+    }
+
+    private static long deszigzag(long valor) {
+        return (valor >>> 1) ^ -(valor & 1);
+    }
+}
@@ -0,0 +1,408 @@
+package com.clinica.pagos.infrastructure.indice;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.BitSet;
+
+import com.clinica.pagos.infrastructure.entity.EstadoPago;
+import com.clinica.pagos.infrastructure.entity.MetodoPago;
+
+/**
+ * Copia columnar de la tabla {@code pagos} fuera del heap: una columna por campo en un {@link ByteBuffer}
+ * directo, indexada por posición (slot). Estado y método van codificados en un byte (ordinal + 1, 0 = nulo),
+ * el monto en céntimos y la fecha en microsegundos UTC, así que leer un pago no crea objetos.
+ * <ul>
+ *   <li>{@code id → slot} y {@code citaId → primer slot de la cita} viven en {@link MapaLongInt};
+ *       los pagos de una misma cita se encadenan con la columna {@code siguiente}.</li>
+ *   <li>Los slots liberados se reutilizan; las referencias se guardan en UTF-8 en un área aparte que se
+ *       compacta cuando más de la mitad son restos de valores sustituidos.</li>
+ *   <li>Mantiene cantidad y suma de montos por estado y por método, y por cada estado un mapa de bits indexado
+ *       por ID: las páginas por estado se recorren en orden de ID desde el cursor sin ordenar ni recorrer slots.
+ *       Ocupa un bit por ID hasta el mayor (los IDs deben ser menores que {@code Integer.MAX_VALUE}).</li>
+ * </ul>
+ * No es seguro entre hilos; lo protege {@link IndicePagos}.
+ */
+final class ColumnasPagos {
+
+    static final long NULO = Long.MIN_VALUE;
+    static final int SIN_SLOT = -1;
+    static final byte SIN_VALOR = 0;
+    // Estado de un slot libre
+    static final byte LIBRE = -1;
+
+    private static final EstadoPago[] ESTADOS = EstadoPago.values();
+    private static final MetodoPago[] METODOS = MetodoPago.values();
+
+    private int capacidad;
+    // Slots usados alguna vez: los recorridos llegan hasta aquí
+    private int alto;
+    private int tamano;
+    private int[] libres = new int[16];
+    private int numLibres;
+
+    private ByteBuffer ids;
+    private ByteBuffer citas;
+    private ByteBuffer montos;
+    private ByteBuffer fechas;
+    private ByteBuffer versiones;
+    private ByteBuffer siguientes;
+    private ByteBuffer refInicio;
+    private ByteBuffer refLongitud;
+    private ByteBuffer estados;
+    private ByteBuffer metodos;
+
+    private ByteBuffer referencias;
+    private int refUsado;
+    private int refRestos;
+
+    private final MapaLongInt porId;
+    private final MapaLongInt porCita;
+
+    private final long[] cantidadPorEstado = new long[ESTADOS.length + 1];
+    private final long[] centimosPorEstado = new long[ESTADOS.length + 1];
+    private final long[] cantidadPorMetodo = new long[METODOS.length + 1];
+    private final long[] centimosPorMetodo = new long[METODOS.length + 1];
+    private final BitSet[] idsPorEstado = new BitSet[ESTADOS.length + 1];
+
+    ColumnasPagos(int capacidadInicial) {
+        capacidad = Math.max(16, capacidadInicial);
+        ids = reservar(capacidad * Long.BYTES);
+        citas = reservar(capacidad * Long.BYTES);
+        montos = reservar(capacidad * Long.BYTES);
+        fechas = reservar(capacidad * Long.BYTES);
+        versiones = reservar(capacidad * Long.BYTES);
+        siguientes = reservar(capacidad * Integer.BYTES);
+        refInicio = reservar(capacidad * Integer.BYTES);
+        refLongitud = reservar(capacidad * Integer.BYTES);
+        estados = reservar(capacidad);
+        metodos = reservar(capacidad);
+        referencias = reservar(capacidad * 16);
+        porId = new MapaLongInt(capacidad);
+        porCita = new MapaLongInt(capacidad);
+        for (int i = 0; i < idsPorEstado.length; i++) {
+            idsPorEstado[i] = new BitSet();
+        }
+    }
+
+    static byte codigo(EstadoPago estado) {
+        return estado == null ? SIN_VALOR : (byte) (estado.ordinal() + 1);
+    }
+
+    static byte codigo(MetodoPago metodo) {
+        return metodo == null ? SIN_VALOR : (byte) (metodo.ordinal() + 1);
+    }
+
+    static EstadoPago estadoDe(byte codigo) {
+        return codigo <= SIN_VALOR ? null : ESTADOS[codigo - 1];
+    }
+
+    static MetodoPago metodoDe(byte codigo) {
+        return codigo <= SIN_VALOR ? null : METODOS[codigo - 1];
+    }
+
+    /** Inserta o sustituye el pago {@code id}. {@code citaId}, {@code centimos} y {@code fecha} admiten {@link #NULO}. */
+    void poner(long id, long citaId, long centimos, byte estado, byte metodo, long fecha, long version, byte[] referencia) {
+        bit(id); // antes de tocar nada: un ID fuera de rango no deja el pago a medias
+        int slot = porId.get(id);
+        if (slot == SIN_SLOT) {
+            slot = nuevoSlot();
+            porId.put(id, slot);
+            ids.putLong(slot * Long.BYTES, id);
+            citas.putLong(slot * Long.BYTES, NULO);
+            refLongitud.putInt(slot * Integer.BYTES, -1);
+            enlazar(slot, citaId);
+            tamano++;
+        } else {
+            sumar(slot, -1);
+            long citaAnterior = citas.getLong(slot * Long.BYTES);
+            if (citaAnterior != citaId) {
+                desenlazar(slot, citaAnterior);
+                enlazar(slot, citaId);
+            }
+        }
+        citas.putLong(slot * Long.BYTES, citaId);
+        montos.putLong(slot * Long.BYTES, centimos);
+        fechas.putLong(slot * Long.BYTES, fecha);
+        versiones.putLong(slot * Long.BYTES, version);
+        estados.put(slot, estado);
+        metodos.put(slot, metodo);
+        escribirReferencia(slot, referencia);
+        sumar(slot, 1);
+    }
+
+    boolean quitar(long id) {
+        int slot = porId.remove(id);
+        if (slot == SIN_SLOT) {
+            return false;
+        }
+        sumar(slot, -1);
+        desenlazar(slot, citas.getLong(slot * Long.BYTES));
+        int longitud = refLongitud.getInt(slot * Integer.BYTES);
+        if (longitud > 0) {
+            refRestos += longitud;
+        }
+        estados.put(slot, LIBRE);
+        if (numLibres == libres.length) {
+            libres = Arrays.copyOf(libres, numLibres << 1);
+        }
+        libres[numLibres++] = slot;
+        tamano--;
+        return true;
+    }
+
+    void vaciar() {
+        porId.clear();
+        porCita.clear();
+        alto = 0;
+        tamano = 0;
+        numLibres = 0;
+        refUsado = 0;
+        refRestos = 0;
+        Arrays.fill(cantidadPorEstado, 0);
+        Arrays.fill(centimosPorEstado, 0);
+        Arrays.fill(cantidadPorMetodo, 0);
+        Arrays.fill(centimosPorMetodo, 0);
+        for (BitSet ids : idsPorEstado) {
+            ids.clear();
+        }
+    }
+
+    int slot(long id) {
+        return porId.get(id);
+    }
+
+    int primeroDeCita(long citaId) {
+        return porCita.get(citaId);
+    }
+
+    int siguienteDeCita(int slot) {
+        return siguientes.getInt(slot * Integer.BYTES);
+    }
+
+    // Para recorrer todos los slots: 0 <= slot < alto(), saltando los que tienen estado LIBRE
+    int alto() {
+        return alto;
+    }
+
+    int tamano() {
+        return tamano;
+    }
+
+    long id(int slot) {
+        return ids.getLong(slot * Long.BYTES);
+    }
+
+    long citaId(int slot) {
+        return citas.getLong(slot * Long.BYTES);
+    }
+
+    long centimos(int slot) {
+        return montos.getLong(slot * Long.BYTES);
+    }
+
+    long fecha(int slot) {
+        return fechas.getLong(slot * Long.BYTES);
+    }
+
+    long version(int slot) {
+        return versiones.getLong(slot * Long.BYTES);
+    }
+
+    byte estado(int slot) {
+        return estados.get(slot);
+    }
+
+    byte metodo(int slot) {
+        return metodos.get(slot);
+    }
+
+    String referencia(int slot) {
+        int longitud = refLongitud.getInt(slot * Integer.BYTES);
+        if (longitud < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[longitud];
+        referencias.get(refInicio.getInt(slot * Integer.BYTES), bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    long cantidadPorEstado(byte codigo) {
+        return cantidadPorEstado[codigo];
+    }
+
+    long centimosPorEstado(byte codigo) {
+        return centimosPorEstado[codigo];
+    }
+
+    long cantidadPorMetodo(byte codigo) {
+        return cantidadPorMetodo[codigo];
+    }
+
+    long centimosPorMetodo(byte codigo) {
+        return centimosPorMetodo[codigo];
+    }
+
+    /** Menor ID mayor que {@code afterId} de un pago en el estado {@code codigo}; {@link #NULO} si no hay más. */
+    long siguientePorEstado(byte codigo, long afterId) {
+        if (afterId >= Integer.MAX_VALUE - 1) {
+            return NULO;
+        }
+        int siguiente = idsPorEstado[codigo].nextSetBit((int) Math.max(afterId + 1, 0));
+        return siguiente < 0 ? NULO : siguiente;
+    }
+
+    long bytesFueraDelHeap() {
+        return (long) capacidad * (5 * Long.BYTES + 3 * Integer.BYTES + 2) + referencias.capacity();
+    }
+
+    long bytesEnHeap() {
+        long bits = 0;
+        for (BitSet ids : idsPorEstado) {
+            bits += ids.size() / Byte.SIZE;
+        }
+        return porId.bytes() + porCita.bytes() + (long) libres.length * Integer.BYTES + bits;
+    }
+
+    private int nuevoSlot() {
+        if (numLibres > 0) {
+            return libres[--numLibres];
+        }
+        if (alto == capacidad) {
+            crecer();
+        }
+        return alto++;
+    }
+
+    // Añade (signo 1) o retira (-1) el slot de los agregados y del mapa de IDs de su estado
+    private void sumar(int slot, int signo) {
+        long centimos = montos.getLong(slot * Long.BYTES);
+        long importe = centimos == NULO ? 0 : signo * centimos;
+        byte estado = estados.get(slot);
+        byte metodo = metodos.get(slot);
+        idsPorEstado[estado].set(bit(ids.getLong(slot * Long.BYTES)), signo > 0);
+        cantidadPorEstado[estado] += signo;
+        centimosPorEstado[estado] += importe;
+        cantidadPorMetodo[metodo] += signo;
+        centimosPorMetodo[metodo] += importe;
+    }
+
+    private static int bit(long id) {
+        if (id < 0 || id >= Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("ID de pago fuera del rango del índice: " + id);
+        }
+        return (int) id;
+    }
+
+    private void enlazar(int slot, long citaId) {
+        if (citaId == NULO) {
+            siguientes.putInt(slot * Integer.BYTES, SIN_SLOT);
+            return;
+        }
+        int primero = porCita.get(citaId);
+        siguientes.putInt(slot * Integer.BYTES, primero);
+        porCita.put(citaId, slot);
+    }
+
+    private void desenlazar(int slot, long citaId) {
+        if (citaId == NULO) {
+            return;
+        }
+        int siguiente = siguientes.getInt(slot * Integer.BYTES);
+        int actual = porCita.get(citaId);
+        if (actual == slot) {
+            if (siguiente == SIN_SLOT) {
+                porCita.remove(citaId);
+            } else {
+                porCita.put(citaId, siguiente);
+            }
+            return;
+        }
+        // Las cadenas son cortas (pocos pagos por cita)
+        while (actual != SIN_SLOT) {
+            int despues = siguientes.getInt(actual * Integer.BYTES);
+            if (despues == slot) {
+                siguientes.putInt(actual * Integer.BYTES, siguiente);
+                return;
+            }
+            actual = despues;
+        }
+    }
+
+    private void escribirReferencia(int slot, byte[] referencia) {
+        int anterior = refLongitud.getInt(slot * Integer.BYTES);
+        if (referencia == null) {
+            if (anterior > 0) {
+                refRestos += anterior;
+            }
+            refLongitud.putInt(slot * Integer.BYTES, -1);
+            return;
+        }
+        if (anterior >= referencia.length) {
+            // Cabe en el hueco que ya tenía (el caso habitual: la referencia no cambia)
+            referencias.put(refInicio.getInt(slot * Integer.BYTES), referencia);
+            refRestos += anterior - referencia.length;
+            refLongitud.putInt(slot * Integer.BYTES, referencia.length);
+            return;
+        }
+        if (anterior > 0) {
+            refRestos += anterior;
+        }
+        if (refUsado + referencia.length > referencias.capacity()) {
+            compactarReferencias(referencia.length);
+        }
+        referencias.put(refUsado, referencia);
+        refInicio.putInt(slot * Integer.BYTES, refUsado);
+        refLongitud.putInt(slot * Integer.BYTES, referencia.length);
+        refUsado += referencia.length;
+    }
+
+    // Copia las referencias vivas a un área nueva; solo la agranda si tras compactar sigue sin caber
+    private void compactarReferencias(int necesario) {
+        int vivos = refUsado - refRestos;
+        int capacidadNueva = referencias.capacity();
+        while (capacidadNueva < (vivos + necesario) * 2L) {
+            capacidadNueva <<= 1;
+        }
+        ByteBuffer nuevas = reservar(capacidadNueva);
+        int usado = 0;
+        for (int slot = 0; slot < alto; slot++) {
+            int longitud = refLongitud.getInt(slot * Integer.BYTES);
+            if (estados.get(slot) == LIBRE || longitud <= 0) {
+                continue;
+            }
+            nuevas.put(usado, referencias, refInicio.getInt(slot * Integer.BYTES), longitud);
+            refInicio.putInt(slot * Integer.BYTES, usado);
+            usado += longitud;
+        }
+        referencias = nuevas;
+        refUsado = usado;
+        refRestos = 0;
+    }
+
+    private void crecer() {
+        int nueva = capacidad << 1;
+        ids = copiar(ids, nueva * Long.BYTES);
+        citas = copiar(citas, nueva * Long.BYTES);
+        montos = copiar(montos, nueva * Long.BYTES);
+        fechas = copiar(fechas, nueva * Long.BYTES);
+        versiones = copiar(versiones, nueva * Long.BYTES);
+        siguientes = copiar(siguientes, nueva * Integer.BYTES);
+        refInicio = copiar(refInicio, nueva * Integer.BYTES);
+        refLongitud = copiar(refLongitud, nueva * Integer.BYTES);
+        estados = copiar(estados, nueva);
+        metodos = copiar(metodos, nueva);
+        capacidad = nueva;
+    }
+
+    private static ByteBuffer copiar(ByteBuffer columna, int bytes) {
+        ByteBuffer nueva = reservar(bytes);
+        nueva.put(0, columna, 0, columna.capacity());
+        return nueva;
+    }
+
+    private static ByteBuffer reservar(int bytes) {
+        return ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+    }
+}
@@ -0,0 +1,12 @@
+package com.clinica.pagos.infrastructure.indice;
+
+/**
+ * El índice en memoria no puede responder: se está cargando o quedó desincronizado tras un evento que no pudo
+ * aplicar. Vuelve a estar disponible al terminar {@link IndicePagos#recargar()}.
+ */
+public class IndiceNoDisponibleException extends IllegalStateException {
+
+    public IndiceNoDisponibleException(String mensaje) {
+        super(mensaje);
+    }
+}
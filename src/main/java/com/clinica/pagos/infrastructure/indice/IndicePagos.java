@@ -0,0 +1,344 @@
+package com.clinica.pagos.infrastructure.indice;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import com.clinica.pagos.domain.dto.EventoPagoDTO;
+import com.clinica.pagos.domain.dto.PagoDTO;
+import com.clinica.pagos.domain.dto.ResumenPagoDTO;
+import com.clinica.pagos.domain.repository.IEventosPago;
+import com.clinica.pagos.domain.repository.IPago;
+import com.clinica.pagos.domain.repository.IResumenPagos;
+import com.clinica.pagos.domain.service.SolicitudInvalidaException;
+import com.clinica.pagos.infrastructure.entity.EstadoPago;
+import com.clinica.pagos.infrastructure.entity.MetodoPago;
+import com.clinica.pagos.infrastructure.eventos.DifusorEventosPago;
+import com.clinica.pagos.infrastructure.eventos.SuscriptorEventosPago;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Índice en memoria de todos los pagos para consultas de alta frecuencia (panel de caja):
+ * pagos por cita, por estado y totales por estado o método sin ir a la base de datos.
+ * <ul>
+ *   <li>Se carga al arrancar con un recorrido de la tabla y después se mantiene con el registro de eventos
+ *       ({@link DifusorEventosPago}), que recoge todas las escrituras de {@code PagoService} en orden de
+ *       confirmación, también las de otras instancias y las cargas masivas.</li>
+ *   <li>Va por detrás de la base de datos lo que tarda en llegar el evento (normalmente milisegundos;
+ *       como mucho {@code pagos.eventos.sondeo-ms}). No sustituye a las lecturas de {@code PagoService}.</li>
+ *   <li>Si un evento no se puede aplicar, el índice deja de responder ({@link IndiceNoDisponibleException})
+ *       hasta que se recarga con {@link #recargar()}.</li>
+ * </ul>
+ * Solo existe con {@code pagos.indice.habilitado=true}.
+ */
+@Component
+@ConditionalOnProperty(name = "pagos.indice.habilitado", havingValue = "true")
+public class IndicePagos implements SuscriptorEventosPago {
+
+    private static final Logger log = LoggerFactory.getLogger(IndicePagos.class);
+    private static final int ESCALA_MONTO = 2;
+
+    @Autowired
+    @Qualifier("pagoImp")
+    private IPago pagos;
+
+    @Autowired
+    private IEventosPago eventos;
+
+    @Autowired
+    private DifusorEventosPago difusor;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private final ColumnasPagos columnas;
+    private final StampedLock cerrojo = new StampedLock();
+    private volatile long cursor;
+    private volatile boolean listo;
+
+    public IndicePagos(@Value("${pagos.indice.capacidad-inicial:100000}") int capacidadInicial) {
+        this.columnas = new ColumnasPagos(capacidadInicial);
+    }
+
+    @Autowired(required = false)
+    public void registrarMetricas(MeterRegistry registry) {
+        Gauge.builder("pagos.indice.pagos", this, IndicePagos::tamano)
+                .description("Pagos en el índice en memoria")
+                .register(registry);
+        Gauge.builder("pagos.indice.memoria", this, indice -> indice.bytes(true))
+                .tag("zona", "fuera-del-heap")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("pagos.indice.memoria", this, indice -> indice.bytes(false))
+                .tag("zona", "heap")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("pagos.indice.disponible", this, indice -> indice.listo ? 1 : 0)
+                .register(registry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void cargarAlArrancar() {
+        recargar();
+    }
+
+    /**
+     * Vuelve a cargar el índice desde la tabla. Se aplican después los eventos posteriores a la última
+     * secuencia leída antes del recorrido; reaplicar un cambio ya incluido no altera el resultado.
+     * @return pagos cargados.
+     */
+    public int recargar() {
+        long inicio = System.nanoTime();
+        listo = false;
+        int cargados;
+        long stamp = cerrojo.writeLock();
+        try {
+            long desde = eventos.ultimaSecuencia();
+            columnas.vaciar();
+            pagos.streamAll(this::poner);
+            cursor = desde;
+            cargados = columnas.tamano();
+            listo = true;
+        } finally {
+            cerrojo.unlockWrite(stamp);
+        }
+        difusor.suscribir(this);
+        log.info("Índice de pagos cargado: {} pagos en {} ms ({} bytes fuera del heap)",
+                cargados, (System.nanoTime() - inicio) / 1_000_000, columnas.bytesFueraDelHeap());
+        return cargados;
+    }
+
+    public boolean isListo() {
+        return listo;
+    }
+
+    @Override
+    public long cursor() {
+        return cursor;
+    }
+
+    @Override
+    public boolean entregar(List<EventoPagoDTO> nuevos) {
+        // Se parsea fuera del cerrojo; solo la aplicación bloquea las lecturas
+        List<PagoDTO> estados = new ArrayList<>(nuevos.size());
+        try {
+            for (EventoPagoDTO evento : nuevos) {
+                estados.add(EventoPagoDTO.ELIMINADO.equals(evento.getTipo()) || evento.getPago() == null
+                        ? null
+                        : objectMapper.readValue(evento.getPago(), PagoDTO.class));
+            }
+        } catch (JsonProcessingException e) {
+            return desincronizar(e);
+        }
+
+        long stamp = cerrojo.writeLock();
+        try {
+            for (int i = 0; i < nuevos.size(); i++) {
+                EventoPagoDTO evento = nuevos.get(i);
+                // Tras una recarga pueden llegar lecturas hechas con el cursor anterior
+                if (evento.getSeq() <= cursor) {
+                    continue;
+                }
+                PagoDTO pago = estados.get(i);
+                if (pago != null) {
+                    poner(pago);
+                } else if (EventoPagoDTO.ELIMINADO.equals(evento.getTipo())) {
+                    columnas.quitar(evento.getPagoId());
+                }
+                cursor = evento.getSeq();
+            }
+            return true;
+        } catch (RuntimeException e) {
+            return desincronizar(e);
+        } finally {
+            cerrojo.unlockWrite(stamp);
+        }
+    }
+
+    /** Pagos de una cita, sin nombres de paciente ni médico. */
+    public List<PagoDTO> getByCitaId(long citaId) {
+        long stamp = cerrojo.readLock();
+        try {
+            comprobarListo();
+            List<PagoDTO> resultado = new ArrayList<>();
+            for (int slot = columnas.primeroDeCita(citaId); slot != ColumnasPagos.SIN_SLOT; slot = columnas.siguienteDeCita(slot)) {
+                resultado.add(leer(slot));
+            }
+            resultado.sort((a, b) -> Long.compare(a.getId(), b.getId()));
+            return resultado;
+        } finally {
+            cerrojo.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Copia en {@code destino} los IDs de los pagos de la cita sin reservar memoria.
+     * @return cuántos pagos tiene la cita (puede ser mayor que {@code destino.length}).
+     */
+    public int idsPorCita(long citaId, long[] destino) {
+        long stamp = cerrojo.readLock();
+        try {
+            comprobarListo();
+            int n = 0;
+            for (int slot = columnas.primeroDeCita(citaId); slot != ColumnasPagos.SIN_SLOT; slot = columnas.siguienteDeCita(slot)) {
+                if (n < destino.length) {
+                    destino[n] = columnas.id(slot);
+                }
+                n++;
+            }
+            return n;
+        } finally {
+            cerrojo.unlockRead(stamp);
+        }
+    }
+
+    /** Página de pagos en un estado, ordenada por ID (keyset como en {@code GET /pagos/estado/{estado}}). */
+    public List<PagoDTO> getByEstado(String estado, Long afterId, int limite) {
+        byte codigo = ColumnasPagos.codigo(EstadoPago.buscar(estado)
+                .orElseThrow(() -> new SolicitudInvalidaException("Estado de pago desconocido: " + estado)));
+        long stamp = cerrojo.readLock();
+        try {
+            comprobarListo();
+            // Desde el cursor en orden de ID hasta completar la página: no depende de cuántos pagos hay en el estado
+            List<PagoDTO> resultado = new ArrayList<>(Math.min(limite, 1024));
+            long id = afterId != null ? afterId : -1L;
+            while (resultado.size() < limite && (id = columnas.siguientePorEstado(codigo, id)) != ColumnasPagos.NULO) {
+                resultado.add(leer(columnas.slot(id)));
+            }
+            return resultado;
+        } finally {
+            cerrojo.unlockRead(stamp);
+        }
+    }
+
+    public long contar(EstadoPago estado) {
+        long stamp = cerrojo.readLock();
+        try {
+            comprobarListo();
+            return columnas.cantidadPorEstado(ColumnasPagos.codigo(estado));
+        } finally {
+            cerrojo.unlockRead(stamp);
+        }
+    }
+
+    /** Suma de montos de los pagos en {@code estado}, en céntimos. */
+    public long totalCentimos(EstadoPago estado) {
+        long stamp = cerrojo.readLock();
+        try {
+            comprobarListo();
+            return columnas.centimosPorEstado(ColumnasPagos.codigo(estado));
+        } finally {
+            cerrojo.unlockRead(stamp);
+        }
+    }
+
+    /** Cantidad y total de todos los pagos por estado o por método, con el formato de {@code GET /pagos/resumen}. */
+    public List<ResumenPagoDTO> resumir(String agrupacion) {
+        boolean porEstado = IResumenPagos.POR_ESTADO.equals(agrupacion);
+        if (!porEstado && !IResumenPagos.POR_METODO.equals(agrupacion)) {
+            throw new SolicitudInvalidaException("Agrupación no admitida por el índice: " + agrupacion
+                    + ". Admitidas: " + IResumenPagos.POR_ESTADO + ", " + IResumenPagos.POR_METODO);
+        }
+        int valores = porEstado ? EstadoPago.values().length : MetodoPago.values().length;
+        List<ResumenPagoDTO> resumen = new ArrayList<>(valores);
+        long stamp = cerrojo.readLock();
+        try {
+            comprobarListo();
+            for (byte codigo = 1; codigo <= valores; codigo++) {
+                long cantidad = porEstado ? columnas.cantidadPorEstado(codigo) : columnas.cantidadPorMetodo(codigo);
+                if (cantidad == 0) {
+                    continue;
+                }
+                long centimos = porEstado ? columnas.centimosPorEstado(codigo) : columnas.centimosPorMetodo(codigo);
+                String clave = porEstado ? ColumnasPagos.estadoDe(codigo).name() : ColumnasPagos.metodoDe(codigo).name();
+                resumen.add(new ResumenPagoDTO(clave, cantidad, BigDecimal.valueOf(centimos, ESCALA_MONTO)));
+            }
+            return resumen;
+        } finally {
+            cerrojo.unlockRead(stamp);
+        }
+    }
+
+    private void poner(PagoDTO pago) {
+        columnas.poner(pago.getId(),
+                pago.getCitaId() != null ? pago.getCitaId() : ColumnasPagos.NULO,
+                pago.getMonto() != null ? centimos(pago.getMonto()) : ColumnasPagos.NULO,
+                ColumnasPagos.codigo(pago.getEstado() != null ? EstadoPago.buscar(pago.getEstado()).orElse(null) : null),
+                ColumnasPagos.codigo(pago.getMetodoPago() != null ? MetodoPago.buscar(pago.getMetodoPago()).orElse(null) : null),
+                pago.getFechaPago() != null ? micros(pago.getFechaPago()) : ColumnasPagos.NULO,
+                pago.getVersion() != null ? pago.getVersion() : 0L,
+                pago.getReferencia() != null ? pago.getReferencia().getBytes(StandardCharsets.UTF_8) : null);
+    }
+
+    private PagoDTO leer(int slot) {
+        PagoDTO pago = new PagoDTO();
+        pago.setId(columnas.id(slot));
+        long citaId = columnas.citaId(slot);
+        pago.setCitaId(citaId != ColumnasPagos.NULO ? citaId : null);
+        long centimos = columnas.centimos(slot);
+        pago.setMonto(centimos != ColumnasPagos.NULO ? BigDecimal.valueOf(centimos, ESCALA_MONTO) : null);
+        EstadoPago estado = ColumnasPagos.estadoDe(columnas.estado(slot));
+        pago.setEstado(estado != null ? estado.name() : null);
+        MetodoPago metodo = ColumnasPagos.metodoDe(columnas.metodo(slot));
+        pago.setMetodoPago(metodo != null ? metodo.name() : null);
+        long fecha = columnas.fecha(slot);
+        pago.setFechaPago(fecha != ColumnasPagos.NULO ? fecha(fecha) : null);
+        pago.setVersion(columnas.version(slot));
+        pago.setReferencia(columnas.referencia(slot));
+        return pago;
+    }
+
+    // DECIMAL(38,2): un monto con más decimales no se puede representar en céntimos y desincroniza el índice
+    private static long centimos(BigDecimal monto) {
+        return monto.setScale(ESCALA_MONTO, RoundingMode.UNNECESSARY).unscaledValue().longValueExact();
+    }
+
+    private static long micros(LocalDateTime fecha) {
+        return fecha.toEpochSecond(ZoneOffset.UTC) * 1_000_000L + fecha.getNano() / 1_000;
+    }
+
+    private static LocalDateTime fecha(long micros) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(micros, 1_000_000L),
+                (int) Math.floorMod(micros, 1_000_000L) * 1_000, ZoneOffset.UTC);
+    }
+
+    private boolean desincronizar(Exception e) {
+        listo = false;
+        log.error("No se pudo aplicar un evento al índice de pagos (cursor {}); queda deshabilitado hasta recargarlo: {}",
+                cursor, e.getMessage());
+        return false;
+    }
+
+    private void comprobarListo() {
+        if (!listo) {
+            throw new IndiceNoDisponibleException("El índice de pagos no está disponible");
+        }
+    }
+
+    private int tamano() {
+        return columnas.tamano();
+    }
+
+    private long bytes(boolean fueraDelHeap) {
+        return fueraDelHeap ? columnas.bytesFueraDelHeap() : columnas.bytesEnHeap();
+    }
+}
@@ -0,0 +1,139 @@
+package com.clinica.pagos.infrastructure.indice;
+
+import java.util.Arrays;
+
+/**
+ * Mapa long → int de direccionamiento abierto (sondeo lineal) sobre dos arrays primitivos:
+ * ni las claves ni los valores se empaquetan, y buscar no reserva memoria.
+ * Al borrar se desplazan hacia atrás las claves siguientes, así que no quedan lápidas.
+ * No es seguro entre hilos; lo protege {@link IndicePagos}.
+ */
+final class MapaLongInt {
+
+    static final int AUSENTE = -1;
+
+    // Los IDs de pagos y citas son positivos; Long.MIN_VALUE marca una celda vacía
+    private static final long VACIA = Long.MIN_VALUE;
+    private static final float CARGA_MAXIMA = 0.6f;
+
+    private long[] claves;
+    private int[] valores;
+    private int mascara;
+    private int umbral;
+    private int tamano;
+
+    MapaLongInt(int capacidadInicial) {
+        int celdas = Integer.highestOneBit(Math.max(8, (int) (capacidadInicial / CARGA_MAXIMA)) - 1) << 1;
+        reservar(celdas);
+    }
+
+    int get(long clave) {
+        int i = celda(clave);
+        while (true) {
+            long actual = claves[i];
+            if (actual == clave) {
+                return valores[i];
+            }
+            if (actual == VACIA) {
+                return AUSENTE;
+            }
+            i = (i + 1) & mascara;
+        }
+    }
+
+    void put(long clave, int valor) {
+        if (clave == VACIA) {
+            throw new IllegalArgumentException("Clave no admitida: " + clave);
+        }
+        int i = celda(clave);
+        while (true) {
+            long actual = claves[i];
+            if (actual == clave) {
+                valores[i] = valor;
+                return;
+            }
+            if (actual == VACIA) {
+                claves[i] = clave;
+                valores[i] = valor;
+                if (++tamano > umbral) {
+                    redimensionar();
+                }
+                return;
+            }
+            i = (i + 1) & mascara;
+        }
+    }
+
+    /** @return el valor que tenía la clave, o {@link #AUSENTE}. */
+    int remove(long clave) {
+        int i = celda(clave);
+        while (true) {
+            long actual = claves[i];
+            if (actual == VACIA) {
+                return AUSENTE;
+            }
+            if (actual == clave) {
+                break;
+            }
+            i = (i + 1) & mascara;
+        }
+        int anterior = valores[i];
+        // Adelanta las claves cuya posición ideal queda en o antes del hueco
+        int j = i;
+        while (true) {
+            j = (j + 1) & mascara;
+            long siguiente = claves[j];
+            if (siguiente == VACIA) {
+                break;
+            }
+            int ideal = celda(siguiente);
+            boolean fueraDelTramo = i <= j ? (ideal <= i || ideal > j) : (ideal <= i && ideal > j);
+            if (fueraDelTramo) {
+                claves[i] = siguiente;
+                valores[i] = valores[j];
+                i = j;
+            }
+        }
+        claves[i] = VACIA;
+        tamano--;
+        return anterior;
+    }
+
+    int size() {
+        return tamano;
+    }
+
+    void clear() {
+        Arrays.fill(claves, VACIA);
+        tamano = 0;
+    }
+
+    long bytes() {
+        return (long) claves.length * (Long.BYTES + Integer.BYTES);
+    }
+
+    private int celda(long clave) {
+        long h = clave * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mascara;
+    }
+
+    private void reservar(int celdas) {
+        claves = new long[celdas];
+        valores = new int[celdas];
+        Arrays.fill(claves, VACIA);
+        mascara = celdas - 1;
+        umbral = (int) (celdas * CARGA_MAXIMA);
+    }
+
+    private void redimensionar() {
+        long[] clavesViejas = claves;
+        int[] valoresViejos = valores;
+        reservar(clavesViejas.length << 1);
+        tamano = 0;
+        for (int i = 0; i < clavesViejas.length; i++) {
+            if (clavesViejas[i] != VACIA) {
+                put(clavesViejas[i], valoresViejos[i]);
+            }
+        }
+    }
+}
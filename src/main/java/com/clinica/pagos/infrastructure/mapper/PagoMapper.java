@@ -5,6 +5,7 @@ import java.util.List;
 import org.mapstruct.InheritInverseConfiguration;
 import org.mapstruct.Mapper;
 import org.mapstruct.Mapping;
+import org.mapstruct.MappingTarget;
 
 import com.clinica.pagos.domain.dto.PagoDTO;
 import com.clinica.pagos.infrastructure.entity.Pago;
@@ -18,8 +19,16 @@ public interface PagoMapper {
 
     List<PagoDTO> toPagosDTO(List<Pago> pagos);
 
+    // La versión la gestiona Hibernate; un pago nuevo con versión no nula se trataría como existente
     @InheritInverseConfiguration
+    @Mapping(target = "version", ignore = true)
     Pago toPago(PagoDTO dto);
 
+    // Actualización en sitio de una entidad ya cargada (mismas reglas que toPago, sin tocar el ID)
+    @InheritInverseConfiguration
+    @Mapping(target = "id", ignore = true)
+    @Mapping(target = "version", ignore = true)
+    void actualizarPago(PagoDTO dto, @MappingTarget Pago pago);
+
     List<Pago> toPagos(List<PagoDTO> dtos);
 }
\ No newline at end of file
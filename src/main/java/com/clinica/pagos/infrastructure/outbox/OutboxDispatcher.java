@@ -0,0 +1,412 @@
+package com.clinica.pagos.infrastructure.outbox;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.clinica.pagos.infrastructure.client.NotificacionesFeignClient;
+import com.clinica.pagos.infrastructure.client.dto.EnvioNotificacionDTO;
+import com.clinica.pagos.infrastructure.client.dto.NotificacionDTO;
+import com.clinica.pagos.infrastructure.crud.NotificacionPendienteRepository;
+import com.clinica.pagos.infrastructure.entity.NotificacionPendiente;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import feign.FeignException;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Drena el outbox de notificaciones en segundo plano, por lotes.
+ * <ul>
+ *   <li>Cada lote toma hasta {@code notificaciones.outbox.lote} filas vencidas. Si no llega a llenarse,
+ *       se espera a que la fila más antigua cumpla {@code notificaciones.outbox.ventana-ms} para acumular más.</li>
+ *   <li>Las notificaciones del mismo tipo para el mismo cliente (p. ej. los pagos de un día marcados
+ *       COMPLETADO de una vez) se agrupan en un único mensaje. El grupo se guarda en las filas al reclamarlas
+ *       ({@code grupo}), así que un reintento reenvía exactamente las mismas filas con la misma clave.</li>
+ *   <li>El lote se envía con una sola llamada a {@code /notificaciones/enviar-lote}. Si el servicio no la
+ *       expone (404/405) se desactiva durante {@code notificaciones.outbox.reintento-lote-ms} y se envía
+ *       cada grupo por separado; lo mismo si rechaza el lote con un 4xx, para aislar la notificación culpable.</li>
+ *   <li>Los fallos se reprograman con backoff exponencial hasta agotar {@code notificaciones.outbox.max-intentos}.</li>
+ * </ul>
+ * Cada lote va en tres pasos para no retener bloqueos ni conexiones durante las llamadas HTTP: se reclaman las
+ * filas en una transacción corta (FOR UPDATE SKIP LOCKED, y su próximo intento pasa a dentro de
+ * {@code notificaciones.outbox.reserva} para que ninguna otra instancia las tome), se envían sin transacción y
+ * se registra el resultado en otra transacción corta. Si la instancia cae a mitad, las filas vuelven a estar
+ * vencidas al acabar la reserva y se reenvían con la misma clave de idempotencia.
+ * <p>
+ * La cola es la propia tabla: acotada por lote y por {@code notificaciones.outbox.max-lotes-por-ciclo},
+ * y su profundidad se publica como {@code notificaciones.outbox.pendientes}.
+ */
+@Component
+public class OutboxDispatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(OutboxDispatcher.class);
+    private static final String SEPARADOR_MENSAJES = "\n\n----------\n\n";
+
+    @Autowired
+    private NotificacionPendienteRepository repo;
+
+    @Autowired
+    private NotificacionesFeignClient notificacionesFeignClient;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private MeterRegistry registry;
+
+    @Value("${notificaciones.outbox.lote:200}")
+    private int lote;
+
+    @Value("${notificaciones.outbox.ventana-ms:2000}")
+    private long ventanaMs;
+
+    @Value("${notificaciones.outbox.max-lotes-por-ciclo:20}")
+    private int maxLotesPorCiclo;
+
+    @Value("${notificaciones.outbox.max-intentos:10}")
+    private int maxIntentos;
+
+    @Value("${notificaciones.outbox.backoff-inicial:5s}")
+    private Duration backoffInicial;
+
+    @Value("${notificaciones.outbox.backoff-maximo:30m}")
+    private Duration backoffMaximo;
+
+    @Value("${notificaciones.outbox.reintento-lote-ms:300000}")
+    private long reintentoLoteMs;
+
+    // Tiempo que las filas reclamadas quedan apartadas mientras se envían
+    @Value("${notificaciones.outbox.reserva:5m}")
+    private Duration reserva;
+
+    // Momento (epoch ms) hasta el cual no se vuelve a intentar el endpoint de lote
+    private volatile long loteDeshabilitadoHasta = 0L;
+
+    /** Profundidad de la cola (filas PENDIENTE, vencidas o no) como gauge {@code notificaciones.outbox.pendientes}. */
+    @Autowired(required = false)
+    public void registrarMetricas(MeterRegistry registry) {
+        Gauge.builder("notificaciones.outbox.pendientes", repo, r -> r.countByEstado(NotificacionPendiente.PENDIENTE))
+                .description("Notificaciones pendientes de envío en el outbox")
+                .register(registry);
+    }
+
+    // Grupos de un lote reclamado; lleno indica que puede haber más filas esperando
+    private record Reclamo(List<Grupo> grupos, boolean lleno) {
+    }
+
+    @Scheduled(fixedDelayString = "${notificaciones.outbox.intervalo-ms:1000}")
+    public void despachar() {
+        for (int i = 0; i < maxLotesPorCiclo; i++) {
+            Reclamo reclamo = transactionTemplate.execute(status -> reclamar());
+            if (reclamo == null) {
+                break;
+            }
+            // Sin transacción: las filas ya están apartadas por la reserva, no por un bloqueo
+            enviar(reclamo.grupos(), System.nanoTime() + reserva.toNanos() / 2);
+            transactionTemplate.executeWithoutResult(status -> registrar(reclamo.grupos()));
+            if (!reclamo.lleno()) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Reclama y agrupa un lote de filas vencidas; las ilegibles quedan fallidas.
+     * @return null si no hay lote que enviar todavía.
+     */
+    private Reclamo reclamar() {
+        LocalDateTime ahora = LocalDateTime.now();
+        List<NotificacionPendiente> pendientes = repo.findByEstadoAndProximoIntentoLessThanEqualOrderByIdAsc(
+                NotificacionPendiente.PENDIENTE, ahora, Limit.of(lote));
+        if (pendientes.isEmpty() || (pendientes.size() < lote && !ventanaCumplida(pendientes, ahora))) {
+            return null;
+        }
+
+        List<Grupo> grupos = agrupar(pendientes);
+        DistributionSummary.builder("notificaciones.outbox.lote")
+                .description("Filas del outbox por lote y mensajes resultantes tras agrupar por cliente")
+                .tag("medida", "filas").register(registry).record(pendientes.size());
+        DistributionSummary.builder("notificaciones.outbox.lote")
+                .tag("medida", "mensajes").register(registry).record(grupos.size());
+
+        LocalDateTime finReserva = ahora.plus(reserva);
+        grupos.forEach(grupo -> grupo.filas.forEach(fila -> fila.setProximoIntento(finReserva)));
+        return new Reclamo(grupos, pendientes.size() == lote);
+    }
+
+    // Envía en lote o, si no se puede, grupo a grupo hasta agotar media reserva; lo no enviado queda sin resolver
+    private void enviar(List<Grupo> grupos, long limiteNanos) {
+        if (grupos.isEmpty() || enviarLote(grupos)) {
+            return;
+        }
+        for (Grupo grupo : grupos) {
+            if (System.nanoTime() - limiteNanos > 0) {
+                log.warn("Se agotó el tiempo del lote del outbox; las notificaciones restantes se envían en el siguiente.");
+                return;
+            }
+            enviarIndividual(grupo);
+        }
+    }
+
+    /**
+     * Guarda el resultado de cada grupo. Las filas se leen primero de una vez: así el saveAll de las copias
+     * reclamadas no hace un SELECT por fila. Los grupos sin resolver vuelven a estar vencidos ya.
+     */
+    private void registrar(List<Grupo> grupos) {
+        List<NotificacionPendiente> filas = new ArrayList<>();
+        LocalDateTime ahora = LocalDateTime.now();
+        for (Grupo grupo : grupos) {
+            if (!grupo.resuelto) {
+                grupo.filas.forEach(fila -> fila.setProximoIntento(ahora));
+            }
+            filas.addAll(grupo.filas);
+        }
+        if (filas.isEmpty()) {
+            return;
+        }
+        repo.findAllById(filas.stream().map(NotificacionPendiente::getId).toList());
+        repo.saveAll(filas);
+    }
+
+    private boolean ventanaCumplida(List<NotificacionPendiente> pendientes, LocalDateTime ahora) {
+        LocalDateTime limite = ahora.minusNanos(ventanaMs * 1_000_000);
+        for (NotificacionPendiente pendiente : pendientes) {
+            if (!pendiente.getProximoIntento().isAfter(limite)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Agrupa las filas por (tipo, cliente, destinatario) y guarda el grupo en ellas. Las que ya tenían grupo lo
+     * conservan, y se completa con el resto de sus filas; si parte de ellas la tiene reclamada otra instancia, el
+     * grupo se deja para el siguiente lote. Las filas sin cliente se envían tal cual y las que no se pueden leer
+     * se marcan como fallidas definitivamente.
+     */
+    private List<Grupo> agrupar(List<NotificacionPendiente> pendientes) {
+        Map<String, Grupo> grupos = new LinkedHashMap<>();
+        Set<Long> reclamadas = new HashSet<>();
+        for (NotificacionPendiente pendiente : pendientes) {
+            reclamadas.add(pendiente.getId());
+            NotificacionDTO notificacion = leer(pendiente);
+            if (notificacion == null) {
+                continue;
+            }
+            String clave = pendiente.getGrupo() != null ? "grupo|" + pendiente.getGrupo()
+                    : notificacion.getClienteId() != null
+                    ? notificacion.getTipo() + "|" + notificacion.getClienteId() + "|" + notificacion.getEmailDestinatario()
+                    : "fila|" + pendiente.getId();
+            grupos.computeIfAbsent(clave, c -> new Grupo()).agregar(pendiente, notificacion);
+        }
+        for (Iterator<Grupo> it = grupos.values().iterator(); it.hasNext(); ) {
+            Grupo grupo = it.next();
+            Long id = grupo.filas.get(0).getGrupo();
+            if (id == null) {
+                // Filas ordenadas por id: la primera da nombre al grupo
+                if (grupo.filas.size() > 1) {
+                    Long primera = grupo.filas.get(0).getId();
+                    grupo.filas.forEach(fila -> fila.setGrupo(primera));
+                }
+                continue;
+            }
+            for (NotificacionPendiente fila : repo.findByGrupoAndEstado(id, NotificacionPendiente.PENDIENTE)) {
+                NotificacionDTO notificacion = reclamadas.add(fila.getId()) ? leer(fila) : null;
+                if (notificacion != null) {
+                    grupo.agregar(fila, notificacion);
+                }
+            }
+            if (repo.countByGrupoAndEstado(id, NotificacionPendiente.PENDIENTE) != grupo.filas.size()) {
+                it.remove();
+                continue;
+            }
+            grupo.ordenar();
+        }
+        return new ArrayList<>(grupos.values());
+    }
+
+    private NotificacionDTO leer(NotificacionPendiente pendiente) {
+        try {
+            return objectMapper.readValue(pendiente.getPayload(), NotificacionDTO.class);
+        } catch (Exception e) {
+            registrarFallo(pendiente, e.getMessage(), true);
+            return null;
+        }
+    }
+
+    /**
+     * @return true si el lote quedó resuelto (enviado o reprogramado); false si hay que enviar grupo a grupo.
+     */
+    private boolean enviarLote(List<Grupo> grupos) {
+        if (System.currentTimeMillis() < loteDeshabilitadoHasta) {
+            return false;
+        }
+        List<EnvioNotificacionDTO> envios = new ArrayList<>(grupos.size());
+        for (Grupo grupo : grupos) {
+            envios.add(new EnvioNotificacionDTO(grupo.claveIdempotencia(), grupo.notificacion()));
+        }
+        Timer.Sample muestra = Timer.start(registry);
+        try {
+            notificacionesFeignClient.enviarNotificaciones(envios);
+            grupos.forEach(Grupo::marcarEnviada);
+            muestra.stop(temporizador("lote", "ok"));
+            log.debug("Lote de {} notificaciones enviado.", envios.size());
+            return true;
+        } catch (FeignException.NotFound | FeignException.MethodNotAllowed e) {
+            muestra.stop(temporizador("lote", "no-soportado"));
+            log.warn("El servicio de notificaciones no admite envíos en lote ({}). Se enviarán una a una.", e.status());
+            loteDeshabilitadoHasta = System.currentTimeMillis() + reintentoLoteMs;
+            return false;
+        } catch (FeignException e) {
+            muestra.stop(temporizador("lote", "error"));
+            if (esDefinitivo(e)) {
+                log.warn("Lote de {} notificaciones rechazado ({}). Se reintentan una a una.", envios.size(), e.status());
+                return false;
+            }
+            String error = e.status() + " - " + e.getMessage();
+            grupos.forEach(grupo -> fallar(grupo, error, false));
+            return true;
+        }
+    }
+
+    private void enviarIndividual(Grupo grupo) {
+        Timer.Sample muestra = Timer.start(registry);
+        try {
+            notificacionesFeignClient.enviarNotificacion(grupo.claveIdempotencia(), grupo.notificacion());
+            grupo.marcarEnviada();
+            muestra.stop(temporizador("individual", "ok"));
+        } catch (FeignException e) {
+            muestra.stop(temporizador("individual", "error"));
+            fallar(grupo, e.status() + " - " + e.getMessage(), esDefinitivo(e));
+        } catch (Exception e) {
+            muestra.stop(temporizador("individual", "error"));
+            fallar(grupo, e.getMessage(), true);
+        }
+    }
+
+    private void fallar(Grupo grupo, String error, boolean definitivo) {
+        grupo.filas.forEach(fila -> registrarFallo(fila, error, definitivo));
+        grupo.resuelto = true;
+    }
+
+    private Timer temporizador(String modo, String outcome) {
+        return Timer.builder("notificaciones.outbox.envio")
+                .description("Latencia de cada envío del outbox al servicio de notificaciones")
+                .tag("modo", modo)
+                .tag("outcome", outcome)
+                .register(registry);
+    }
+
+    private void registrarFallo(NotificacionPendiente pendiente, String error, boolean definitivo) {
+        int intentos = pendiente.getIntentos() + 1;
+        pendiente.setIntentos(intentos);
+        pendiente.setUltimoError(error != null && error.length() > 255 ? error.substring(0, 255) : error);
+        if (definitivo || intentos >= maxIntentos) {
+            pendiente.setEstado(NotificacionPendiente.FALLIDA);
+            log.error("Se descarta la notificación {} ({}) tras {} intento(s): {}", pendiente.getId(), pendiente.getReferenciaServicio(), intentos, error);
+        } else {
+            pendiente.setProximoIntento(LocalDateTime.now().plus(backoff(intentos)));
+            log.warn("Falló el envío de la notificación {} (intento {}): {}", pendiente.getId(), intentos, error);
+        }
+    }
+
+    // backoffInicial * 2^(intentos-1), acotado por backoffMaximo
+    private Duration backoff(int intentos) {
+        Duration espera = backoffInicial.multipliedBy(1L << Math.min(intentos - 1, 20));
+        return espera.compareTo(backoffMaximo) > 0 ? backoffMaximo : espera;
+    }
+
+    // Los 4xx (salvo 408 y 429) no se resuelven reintentando
+    private static boolean esDefinitivo(FeignException e) {
+        int status = e.status();
+        return status >= 400 && status < 500 && status != 408 && status != 429;
+    }
+
+    /**
+     * Filas del outbox que se envían como una sola notificación. Con varias filas, el mensaje resultante
+     * concatena los ya construidos (no se vuelven a formatear) y la clave de idempotencia es la del grupo
+     * guardado en las filas, así que reenviar el grupo no duplica la notificación aunque se reclame en otro lote.
+     */
+    private static final class Grupo {
+
+        private final List<NotificacionPendiente> filas = new ArrayList<>(1);
+        private final List<NotificacionDTO> notificaciones = new ArrayList<>(1);
+        // Enviado o con el fallo registrado
+        private boolean resuelto;
+
+        void agregar(NotificacionPendiente fila, NotificacionDTO notificacion) {
+            filas.add(fila);
+            notificaciones.add(notificacion);
+        }
+
+        // Por id de fila, para que el mensaje de un grupo reenviado sea idéntico al del primer envío
+        void ordenar() {
+            List<Integer> orden = new ArrayList<>(filas.size());
+            for (int i = 0; i < filas.size(); i++) {
+                orden.add(i);
+            }
+            orden.sort(Comparator.comparing(i -> filas.get(i).getId()));
+            List<NotificacionPendiente> filasOrdenadas = orden.stream().map(filas::get).toList();
+            List<NotificacionDTO> notificacionesOrdenadas = orden.stream().map(notificaciones::get).toList();
+            filas.clear();
+            filas.addAll(filasOrdenadas);
+            notificaciones.clear();
+            notificaciones.addAll(notificacionesOrdenadas);
+        }
+
+        String claveIdempotencia() {
+            Long grupo = filas.get(0).getGrupo();
+            return grupo != null ? "agrupada:" + grupo : filas.get(0).getClaveIdempotencia();
+        }
+
+        NotificacionDTO notificacion() {
+            NotificacionDTO primera = notificaciones.get(0);
+            if (notificaciones.size() == 1) {
+                return primera;
+            }
+            StringJoiner mensaje = new StringJoiner(SEPARADOR_MENSAJES);
+            StringJoiner referencias = new StringJoiner(",");
+            for (NotificacionDTO notificacion : notificaciones) {
+                mensaje.add(notificacion.getMensaje());
+                referencias.add(notificacion.getReferenciaServicio());
+            }
+            NotificacionDTO agrupada = new NotificacionDTO(primera.getClienteId(), primera.getTipo(),
+                    primera.getAsunto() + " (" + notificaciones.size() + " pagos)", mensaje.toString(),
+                    primera.getCanal(), referencias.toString());
+            agrupada.setEmailDestinatario(primera.getEmailDestinatario());
+            return agrupada;
+        }
+
+        void marcarEnviada() {
+            LocalDateTime ahora = LocalDateTime.now();
+            for (NotificacionPendiente fila : filas) {
+                fila.setEstado(NotificacionPendiente.ENVIADA);
+                fila.setEnviadaEn(ahora);
+            }
+            resuelto = true;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.clinica.pagos.infrastructure.outbox;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.clinica.pagos.infrastructure.client.dto.NotificacionDTO;
+import com.clinica.pagos.infrastructure.crud.NotificacionPendienteRepository;
+import com.clinica.pagos.infrastructure.entity.NotificacionPendiente;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Punto de entrada al outbox de notificaciones.
+ * Debe llamarse dentro de la transacción que guarda el Pago: la notificación queda
+ * registrada si y solo si el cambio del pago se confirma.
+ */
+@Component
+public class OutboxNotificaciones {
+
+    @Autowired
+    private NotificacionPendienteRepository repo;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void registrar(NotificacionDTO notificacion) {
+        try {
+            repo.save(new NotificacionPendiente(
+                    notificacion.getReferenciaServicio(),
+                    notificacion.getTipo(),
+                    objectMapper.writeValueAsString(notificacion)));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("No se pudo serializar la notificación " + notificacion.getTipo(), e);
+        }
+    }
+}
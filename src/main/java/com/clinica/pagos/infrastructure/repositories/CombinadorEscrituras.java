@@ -0,0 +1,228 @@
+package com.clinica.pagos.infrastructure.repositories;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Agrupa escrituras concurrentes en transacciones compartidas (micro-lotes): cada llamador encola su escritura y
+ * espera; unos pocos hilos propios toman lo acumulado (hasta {@code maxLote}, esperando como mucho {@code ventana}
+ * desde la primera) y lo ejecutan con {@link Procesador#procesarLote} en una sola transacción y conexión.
+ * <p>
+ * Si el lote falla dentro de su transacción (un conflicto de versión, una clave duplicada...) y esta se deshace, el
+ * procesador lo indica con {@link LoteRevertidoException} y se repite cada escritura por separado con
+ * {@link Procesador#procesar}, de modo que cada llamador recibe su propio resultado o su propia excepción, igual
+ * que sin combinar. Cualquier otro fallo (en el COMMIT, al deshacer, después de confirmar) deja el resultado en
+ * duda: repetir podría duplicar las altas, así que todos los llamadores del lote reciben esa excepción.
+ * El número de hilos es el máximo de conexiones que ocupan las escrituras a la vez.
+ */
+public final class CombinadorEscrituras<E, R> implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(CombinadorEscrituras.class);
+
+    public interface Procesador<E, R> {
+
+        /**
+         * Ejecuta todo el lote en una transacción; un resultado por elemento, en el mismo orden.
+         * @throws LoteRevertidoException si falló antes de confirmar y la transacción se deshizo entera.
+         */
+        List<R> procesarLote(List<E> lote);
+
+        /** Ejecuta un elemento en su propia transacción (lotes de uno y repetición tras un lote fallido). */
+        R procesar(E elemento);
+    }
+
+    /**
+     * El lote falló dentro de su transacción y esta se deshizo: no se confirmó nada y cada escritura puede repetirse.
+     * Se lanza desde dentro de la transacción para que un fallo al deshacerla llegue como otra excepción.
+     */
+    public static final class LoteRevertidoException extends RuntimeException {
+
+        public LoteRevertidoException(RuntimeException causa) {
+            super(causa.getMessage(), causa);
+        }
+    }
+
+    private static final class Solicitud<E, R> {
+        final E elemento;
+        final long encolada = System.nanoTime();
+        final CompletableFuture<R> resultado = new CompletableFuture<>();
+
+        Solicitud(E elemento) {
+            this.elemento = elemento;
+        }
+    }
+
+    private final Procesador<E, R> procesador;
+    private final int maxLote;
+    private final long ventanaNanos;
+    private final BlockingQueue<Solicitud<E, R>> cola = new LinkedBlockingQueue<>();
+    private final List<Thread> hilos = new ArrayList<>();
+    private volatile boolean abierto = true;
+
+    private final DistributionSummary tamanoLote;
+    private final Timer espera;
+    private final Timer transaccion;
+    private final Counter individuales;
+
+    public CombinadorEscrituras(String nombre, Procesador<E, R> procesador, int hilos, int maxLote, Duration ventana,
+                                MeterRegistry registry) {
+        this.procesador = procesador;
+        this.maxLote = maxLote;
+        this.ventanaNanos = ventana.toNanos();
+        this.tamanoLote = DistributionSummary.builder("pagos.combinador.lote")
+                .description("Escrituras por transacción")
+                .tag("combinador", nombre)
+                .publishPercentiles(0.5, 0.99)
+                .register(registry);
+        this.espera = Timer.builder("pagos.combinador.espera")
+                .description("Tiempo en cola hasta que empieza la transacción del lote")
+                .tag("combinador", nombre)
+                .register(registry);
+        this.transaccion = Timer.builder("pagos.combinador.transaccion")
+                .tag("combinador", nombre)
+                .register(registry);
+        this.individuales = Counter.builder("pagos.combinador.individuales")
+                .description("Escrituras repetidas por separado tras fallar su lote")
+                .tag("combinador", nombre)
+                .register(registry);
+        Gauge.builder("pagos.combinador.cola", cola, BlockingQueue::size)
+                .tag("combinador", nombre)
+                .register(registry);
+        for (int i = 0; i < hilos; i++) {
+            this.hilos.add(Thread.ofPlatform().name("combinador-" + nombre + "-" + i).daemon(true).start(this::trabajar));
+        }
+    }
+
+    /** Encola la escritura y espera su resultado; propaga la misma excepción que {@link Procesador#procesar}. */
+    public R ejecutar(E elemento) {
+        if (!abierto) {
+            throw new IllegalStateException("El combinador de escrituras está cerrado");
+        }
+        Solicitud<E, R> solicitud = new Solicitud<>(elemento);
+        cola.add(solicitud);
+        // close() pudo vaciar la cola justo antes del add: si sigue ahí, ya no la recogerá nadie
+        if (!abierto && cola.remove(solicitud)) {
+            throw new IllegalStateException("El combinador de escrituras está cerrado");
+        }
+        try {
+            return solicitud.resultado.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException causa) {
+                throw causa;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() {
+        abierto = false;
+        for (Thread hilo : hilos) {
+            try {
+                hilo.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        // Solicitudes encoladas mientras terminaban los hilos (o todas, si se interrumpió la espera)
+        Solicitud<E, R> pendiente;
+        while ((pendiente = cola.poll()) != null) {
+            pendiente.resultado.completeExceptionally(new IllegalStateException("El combinador de escrituras está cerrado"));
+        }
+    }
+
+    private void trabajar() {
+        List<Solicitud<E, R>> lote = new ArrayList<>(maxLote);
+        while (abierto || !cola.isEmpty()) {
+            try {
+                Solicitud<E, R> primera = cola.poll(100, TimeUnit.MILLISECONDS);
+                if (primera == null) {
+                    continue;
+                }
+                lote.add(primera);
+                cola.drainTo(lote, maxLote - 1);
+                long limite = primera.encolada + ventanaNanos;
+                while (lote.size() < maxLote) {
+                    long resto = limite - System.nanoTime();
+                    Solicitud<E, R> siguiente = resto > 0 ? cola.poll(resto, TimeUnit.NANOSECONDS) : null;
+                    if (siguiente == null) {
+                        break;
+                    }
+                    lote.add(siguiente);
+                    cola.drainTo(lote, maxLote - lote.size());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                if (!lote.isEmpty()) {
+                    ejecutarLote(lote);
+                    lote.clear();
+                }
+            }
+        }
+    }
+
+    private void ejecutarLote(List<Solicitud<E, R>> lote) {
+        long ahora = System.nanoTime();
+        for (Solicitud<E, R> solicitud : lote) {
+            espera.record(ahora - solicitud.encolada, TimeUnit.NANOSECONDS);
+        }
+        tamanoLote.record(lote.size());
+        if (lote.size() == 1) {
+            ejecutarSola(lote.get(0));
+            return;
+        }
+
+        List<E> elementos = new ArrayList<>(lote.size());
+        for (Solicitud<E, R> solicitud : lote) {
+            elementos.add(solicitud.elemento);
+        }
+        List<R> resultados;
+        try {
+            resultados = transaccion.recordCallable(() -> procesador.procesarLote(elementos));
+        } catch (LoteRevertidoException e) {
+            log.debug("Lote de {} escrituras revertido; se repiten por separado: {}", lote.size(), e.getMessage());
+            individuales.increment(lote.size());
+            lote.forEach(this::ejecutarSola);
+            return;
+        } catch (Exception e) {
+            log.warn("Lote de {} escrituras con resultado incierto; falla para todos sin repetirse: {}", lote.size(), e.getMessage());
+            lote.forEach(solicitud -> solicitud.resultado.completeExceptionally(e));
+            return;
+        } catch (Error e) {
+            lote.forEach(solicitud -> solicitud.resultado.completeExceptionally(e));
+            throw e;
+        }
+        for (int i = 0; i < lote.size(); i++) {
+            lote.get(i).resultado.complete(resultados.get(i));
+        }
+    }
+
+    private void ejecutarSola(Solicitud<E, R> solicitud) {
+        try {
+            solicitud.resultado.complete(procesador.procesar(solicitud.elemento));
+        } catch (RuntimeException | Error e) {
+            solicitud.resultado.completeExceptionally(e);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.clinica.pagos.infrastructure.repositories;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.clinica.pagos.domain.dto.EventoPagoDTO;
+import com.clinica.pagos.domain.dto.PagoDTO;
+import com.clinica.pagos.domain.repository.IEventosPago;
+import com.clinica.pagos.infrastructure.eventos.EventosPagoRegistrados;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Tabla {@code pagos_eventos}. La secuencia sale de la fila bloqueada de {@code pagos_eventos_secuencia}:
+ * el bloqueo se mantiene hasta el commit, así que los seq se confirman en orden y un lector que
+ * avanza por {@code seq > ?} nunca se salta un evento que aún no era visible. El precio es que todas las
+ * transacciones que publican eventos se serializan en esa fila desde que la bloquean hasta su commit; por eso se
+ * toma al final de la transacción, y las escrituras por lotes (carga masiva, combinador) la comparten.
+ * Al confirmarse se publica {@link EventosPagoRegistrados} para despertar a los suscriptores.
+ */
+@Repository
+public class EventosPagoImp implements IEventosPago {
+
+    private static final String INSERT =
+            "INSERT INTO pagos_eventos (seq, tipo, pago_id, estado_anterior, estado, pago, creado_en) VALUES (?, ?, ?, ?, ?, ?, ?)";
+
+    // Tramos de seq por DELETE al purgar, para no bloquear muchas filas a la vez
+    private static final int LOTE_PURGA = 10_000;
+
+    private static final String SELECT =
+            "SELECT seq, tipo, pago_id, estado_anterior, estado, pago, creado_en FROM pagos_eventos WHERE seq > ? ORDER BY seq LIMIT ?";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private ApplicationEventPublisher publicador;
+
+    @Override
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void registrar(String tipo, String estadoAnterior, PagoDTO pago) {
+        insertar(List.of(evento(tipo, estadoAnterior, pago)));
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void registrarTodos(String tipo, List<PagoDTO> pagos) {
+        if (pagos.isEmpty()) {
+            return;
+        }
+        List<EventoPagoDTO> eventos = new ArrayList<>(pagos.size());
+        for (PagoDTO pago : pagos) {
+            eventos.add(evento(tipo, null, pago));
+        }
+        insertar(eventos);
+    }
+
+    @Override
+    public List<EventoPagoDTO> leer(long despuesDe, int limite) {
+        return jdbcTemplate.query(SELECT, (rs, i) -> new EventoPagoDTO(
+                rs.getLong(1), rs.getString(2), rs.getLong(3), rs.getString(4), rs.getString(5), rs.getString(6),
+                rs.getTimestamp(7).toLocalDateTime()), despuesDe, limite);
+    }
+
+    @Override
+    public long ultimaSecuencia() {
+        Long ultimo = jdbcTemplate.queryForObject("SELECT ultimo FROM pagos_eventos_secuencia WHERE id = 1", Long.class);
+        return ultimo != null ? ultimo : 0L;
+    }
+
+    /**
+     * Borra por tramos de seq desde el más antiguo mientras todo el tramo sea anterior a {@code antesDe}
+     * (creado_en crece con seq), de modo que cada DELETE recorre un rango acotado de la clave primaria.
+     */
+    @Override
+    public int purgar(LocalDateTime antesDe) {
+        Timestamp limite = Timestamp.valueOf(antesDe);
+        int total = 0;
+        while (true) {
+            Long primero = jdbcTemplate.queryForObject("SELECT MIN(seq) FROM pagos_eventos", Long.class);
+            if (primero == null) {
+                return total;
+            }
+            int borrados = jdbcTemplate.update("DELETE FROM pagos_eventos WHERE seq < ? AND creado_en < ?",
+                    primero + LOTE_PURGA, limite);
+            total += borrados;
+            if (borrados < LOTE_PURGA) {
+                return total;
+            }
+        }
+    }
+
+    private void insertar(List<EventoPagoDTO> eventos) {
+        Long ultimo = jdbcTemplate.queryForObject("SELECT ultimo FROM pagos_eventos_secuencia WHERE id = 1 FOR UPDATE", Long.class);
+        long seq = ultimo != null ? ultimo : 0L;
+        for (EventoPagoDTO evento : eventos) {
+            evento.setSeq(++seq);
+        }
+        jdbcTemplate.update("UPDATE pagos_eventos_secuencia SET ultimo = ? WHERE id = 1", seq);
+        jdbcTemplate.batchUpdate(INSERT, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                EventoPagoDTO evento = eventos.get(i);
+                ps.setLong(1, evento.getSeq());
+                ps.setString(2, evento.getTipo());
+                ps.setObject(3, evento.getPagoId(), Types.BIGINT);
+                ps.setString(4, evento.getEstadoAnterior());
+                ps.setString(5, evento.getEstado());
+                ps.setString(6, evento.getPago());
+                ps.setTimestamp(7, Timestamp.valueOf(evento.getCreadoEn()));
+            }
+
+            @Override
+            public int getBatchSize() {
+                return eventos.size();
+            }
+        });
+        publicador.publishEvent(new EventosPagoRegistrados(seq));
+    }
+
+    private EventoPagoDTO evento(String tipo, String estadoAnterior, PagoDTO pago) {
+        try {
+            return new EventoPagoDTO(0L, tipo, pago.getId(), estadoAnterior, pago.getEstado(),
+                    objectMapper.writeValueAsString(pago), LocalDateTime.now());
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("No se pudo serializar el pago " + pago.getId() + " para el registro de eventos", e);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.clinica.pagos.infrastructure.repositories;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.clinica.pagos.domain.dto.PagoDTO;
+import com.clinica.pagos.domain.dto.RespuestaIdempotenteDTO;
+import com.clinica.pagos.domain.repository.IIdempotencia;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Tabla {@code pagos_idempotencia}. Guarda la respuesta completa (PagoDTO enriquecido en JSON) para
+ * poder repetirla sin volver a leer el pago ni consultar el servicio de citas.
+ */
+@Repository
+public class IdempotenciaImp implements IIdempotencia {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Override
+    public Optional<RespuestaIdempotenteDTO> buscar(String clave) {
+        List<RespuestaIdempotenteDTO> filas = jdbcTemplate.query(
+                "SELECT huella, respuesta FROM pagos_idempotencia WHERE clave = ?",
+                (rs, i) -> new RespuestaIdempotenteDTO(rs.getString(1), leer(rs.getString(2))),
+                clave);
+        return filas.stream().findFirst();
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void registrar(String clave, String huella, PagoDTO respuesta) {
+        try {
+            jdbcTemplate.update(
+                    "INSERT INTO pagos_idempotencia (clave, huella, pago_id, respuesta, creada_en) VALUES (?, ?, ?, ?, ?)",
+                    clave, huella, respuesta.getId(), objectMapper.writeValueAsString(respuesta),
+                    Timestamp.valueOf(LocalDateTime.now()));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("No se pudo serializar la respuesta para la clave " + clave, e);
+        }
+    }
+
+    @Override
+    public int purgar(LocalDateTime antesDe) {
+        return jdbcTemplate.update("DELETE FROM pagos_idempotencia WHERE creada_en < ?", Timestamp.valueOf(antesDe));
+    }
+
+    private PagoDTO leer(String json) {
+        try {
+            return objectMapper.readValue(json, PagoDTO.class);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Respuesta idempotente ilegible", e);
+        }
+    }
+}
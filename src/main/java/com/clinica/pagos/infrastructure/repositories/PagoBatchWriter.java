@@ -0,0 +1,94 @@
+package com.clinica.pagos.infrastructure.repositories;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.List;
+
+import org.hibernate.SessionFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.IncorrectResultSizeDataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.clinica.pagos.infrastructure.entity.Pago;
+
+import jakarta.persistence.EntityManagerFactory;
+
+/**
+ * Inserta pagos con batching JDBC real.
+ * Hibernate no agrupa inserts con {@code GenerationType.IDENTITY}; aquí se envían todos en un
+ * único executeBatch (MySQL lo reescribe como un INSERT multi-fila con
+ * {@code rewriteBatchedStatements=true}) y se recuperan los IDs generados en orden.
+ * Participa en la transacción JPA en curso.
+ * <p>
+ * Como Hibernate no ve estas inserciones, al confirmarse se vacía la región de consultas por estado
+ * de la caché de segundo nivel (perfil prod); la región de entidades no se ve afectada por filas nuevas.
+ */
+@Component
+public class PagoBatchWriter {
+
+    private static final String INSERT =
+            "INSERT INTO pagos (cita_id, monto, metodo_pago, fecha_pago, estado, referencia) VALUES (?, ?, ?, ?, ?, ?)";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private EntityManagerFactory emf;
+
+    /**
+     * Inserta los pagos y les asigna el ID generado.
+     */
+    public void insertar(List<Pago> pagos) {
+        if (pagos.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.execute((ConnectionCallback<Void>) con -> {
+            try (PreparedStatement ps = con.prepareStatement(INSERT, Statement.RETURN_GENERATED_KEYS)) {
+                for (Pago pago : pagos) {
+                    ps.setObject(1, pago.getCitaId(), Types.BIGINT);
+                    ps.setBigDecimal(2, pago.getMonto());
+                    ps.setString(3, pago.getMetodoPago() != null ? String.valueOf(pago.getMetodoPago().getCodigo()) : null);
+                    ps.setTimestamp(4, pago.getFechaPago() != null ? Timestamp.valueOf(pago.getFechaPago()) : null);
+                    ps.setString(5, pago.getEstado() != null ? String.valueOf(pago.getEstado().getCodigo()) : null);
+                    ps.setString(6, pago.getReferencia());
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+                int i = 0;
+                try (ResultSet claves = ps.getGeneratedKeys()) {
+                    while (claves.next() && i < pagos.size()) {
+                        Pago pago = pagos.get(i++);
+                        pago.setId(claves.getLong(1));
+                        pago.setVersion(0L); // DEFAULT de la columna
+                    }
+                }
+                if (i != pagos.size()) {
+                    throw new IncorrectResultSizeDataAccessException("IDs generados en la inserción por lotes", pagos.size(), i);
+                }
+            }
+            return null;
+        });
+        invalidarConsultas();
+    }
+
+    private void invalidarConsultas() {
+        org.hibernate.Cache cache = emf.unwrap(SessionFactory.class).getCache();
+        cache.evictQueryRegion(Pago.REGION_CONSULTAS_POR_ESTADO);
+        // De nuevo tras el commit: una consulta concurrente pudo cachear el resultado anterior mientras tanto
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    cache.evictQueryRegion(Pago.REGION_CONSULTAS_POR_ESTADO);
+                }
+            });
+        }
+    }
+}
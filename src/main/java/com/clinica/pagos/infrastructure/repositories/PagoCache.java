@@ -0,0 +1,295 @@
+package com.clinica.pagos.infrastructure.repositories;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.clinica.pagos.domain.dto.ActualizacionPagoDTO;
+import com.clinica.pagos.domain.dto.PagoDTO;
+import com.clinica.pagos.domain.repository.IPago;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/**
+ * Caché de lectura delante de {@link PagoImp} para las consultas más repetidas:
+ * pagos por ID y lista de IDs por cita. El resto de operaciones pasan directamente.
+ * <ul>
+ *   <li>Guarda los pagos tal como salen de la base de datos; el enriquecimiento con la cita lo resuelve
+ *       {@code CitaCache}, también en memoria, así que un acierto aquí no toca MySQL ni el servicio de citas.</li>
+ *   <li>Cada escritura invalida exactamente el pago y las citas afectadas, en el momento y otra vez tras el
+ *       commit, para que una lectura concurrente no deje en caché la versión anterior. Los pagos leídos (por ID,
+ *       lista de una cita, IDs que faltan en una página) solo se guardan si no hubo ninguna invalidación desde que
+ *       empezó la lectura. La consulta nunca va dentro de la función de carga de Caffeine: se ejecutaría con el
+ *       monitor del bin del mapa tomado y fijaría el hilo virtual a su portador mientras espera una conexión.</li>
+ *   <li>La invalidación es local a esta instancia. Con varias réplicas, una escritura hecha en otra (o directamente
+ *       en la base de datos) se ve aquí como mucho {@code pagos.cache.ttl} después, así que el TTL debe ser corto.</li>
+ *   <li>Siempre entrega copias: los llamadores modifican los DTO al enriquecerlos.</li>
+ * </ul>
+ */
+@Component
+@Primary
+public class PagoCache implements IPago {
+
+    private final IPago delegado;
+    private final Cache<Long, PagoDTO> porId;
+    private final Cache<Long, List<Long>> porCita;
+    // Aumenta antes de cada invalidación; una lectura solo se guarda si no cambió mientras tanto
+    private final AtomicLong invalidaciones = new AtomicLong();
+
+    @Autowired
+    public PagoCache(@Qualifier("pagoImp") IPago delegado,
+                     @Value("${pagos.cache.max-size:10000}") long maxSize,
+                     @Value("${pagos.cache.ttl:60s}") Duration ttl) {
+        this.delegado = delegado;
+        this.porId = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        this.porCita = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+    }
+
+    /** Publica las estadísticas como métricas {@code cache.*} con cache=pagos y cache=pagos-por-cita. */
+    @Autowired(required = false)
+    public void registrarMetricas(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, porId, "pagos");
+        CaffeineCacheMetrics.monitor(registry, porCita, "pagos-por-cita");
+    }
+
+    public CacheStats estadisticasPorId() {
+        return porId.stats();
+    }
+
+    public CacheStats estadisticasPorCita() {
+        return porCita.stats();
+    }
+
+    @Override
+    public Optional<PagoDTO> getById(Long id) {
+        PagoDTO pago = porId.getIfPresent(id);
+        if (pago == null) {
+            // Los IDs inexistentes no se cachean
+            long generacion = invalidaciones.get();
+            pago = delegado.getById(id).orElse(null);
+            if (pago != null) {
+                guardar(List.of(pago), generacion);
+            }
+        }
+        return Optional.ofNullable(pago).map(PagoDTO::copia);
+    }
+
+    @Override
+    public List<PagoDTO> getByIds(Collection<Long> ids) {
+        return resolver(List.copyOf(ids));
+    }
+
+    @Override
+    public List<PagoDTO> getByCitaId(Long citaId) {
+        return pagosDeCita(citaId, null, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public List<PagoDTO> getPageByCitaId(Long citaId, Long afterId, int limit) {
+        return pagosDeCita(citaId, afterId, limit);
+    }
+
+    @Override
+    public PagoDTO save(PagoDTO dto) {
+        PagoDTO guardado = delegado.save(dto);
+        invalidar(null, guardado.getCitaId());
+        return guardado;
+    }
+
+    @Override
+    public List<PagoDTO> saveAll(List<PagoDTO> dtos) {
+        List<PagoDTO> guardados = delegado.saveAll(dtos);
+        guardados.stream().map(PagoDTO::getCitaId).filter(Objects::nonNull).distinct()
+                .forEach(citaId -> invalidar(null, citaId));
+        return guardados;
+    }
+
+    @Override
+    public ActualizacionPagoDTO update(Long id, PagoDTO dto) {
+        ActualizacionPagoDTO actualizacion = delegado.update(id, dto);
+        if (actualizacion != null) {
+            // La cita puede haber cambiado: se invalidan la anterior y la nueva
+            invalidar(id, actualizacion.getPagoAnterior().getCitaId());
+            invalidar(null, actualizacion.getPago().getCitaId());
+        }
+        return actualizacion;
+    }
+
+    @Override
+    public List<ActualizacionPagoDTO> updateAll(List<Long> ids, List<PagoDTO> dtos) {
+        List<ActualizacionPagoDTO> actualizaciones = delegado.updateAll(ids, dtos);
+        for (ActualizacionPagoDTO actualizacion : actualizaciones) {
+            if (actualizacion != null) {
+                invalidar(actualizacion.getPago().getId(), actualizacion.getPagoAnterior().getCitaId());
+                invalidar(null, actualizacion.getPago().getCitaId());
+            }
+        }
+        return actualizaciones;
+    }
+
+    @Override
+    public boolean cambiarEstado(Long id, String esperado, String nuevo) {
+        boolean aplicado = delegado.cambiarEstado(id, esperado, nuevo);
+        if (aplicado) {
+            // El UPDATE no devuelve la cita: se toma del pago en caché o, si no está, de la base de datos
+            PagoDTO cacheado = porId.getIfPresent(id);
+            Long citaId = cacheado != null ? cacheado.getCitaId() : delegado.getById(id).map(PagoDTO::getCitaId).orElse(null);
+            invalidar(id, citaId);
+        }
+        return aplicado;
+    }
+
+    @Override
+    public Optional<PagoDTO> delete(Long id) {
+        Optional<PagoDTO> eliminado = delegado.delete(id);
+        eliminado.ifPresent(pago -> invalidar(id, pago.getCitaId()));
+        return eliminado;
+    }
+
+    @Override
+    public List<PagoDTO> getPage(Long afterId, int limit) {
+        return delegado.getPage(afterId, limit);
+    }
+
+    @Override
+    public List<PagoDTO> getPageByEstado(String estado, Long afterId, int limit) {
+        return delegado.getPageByEstado(estado, afterId, limit);
+    }
+
+    // Las proyecciones no pasan por la caché: existen precisamente para leer menos columnas
+    @Override
+    public List<PagoDTO> getPage(Long afterId, int limit, Set<String> campos) {
+        return delegado.getPage(afterId, limit, campos);
+    }
+
+    @Override
+    public List<PagoDTO> getPageByCitaId(Long citaId, Long afterId, int limit, Set<String> campos) {
+        return delegado.getPageByCitaId(citaId, afterId, limit, campos);
+    }
+
+    @Override
+    public List<PagoDTO> getPageByEstado(String estado, Long afterId, int limit, Set<String> campos) {
+        return delegado.getPageByEstado(estado, afterId, limit, campos);
+    }
+
+    @Override
+    public void streamAll(Consumer<PagoDTO> consumer) {
+        delegado.streamAll(consumer);
+    }
+
+    @Override
+    public void streamRango(Long afterId, Long hastaId, Consumer<PagoDTO> consumer) {
+        delegado.streamRango(afterId, hastaId, consumer);
+    }
+
+    @Override
+    public Optional<Long> getMinId() {
+        return delegado.getMinId();
+    }
+
+    @Override
+    public Optional<Long> getMaxId() {
+        return delegado.getMaxId();
+    }
+
+    // Si esta llamada cargó la lista de la cita, la página sale de los pagos recién leídos, sin otra consulta
+    private List<PagoDTO> pagosDeCita(Long citaId, Long afterId, int limit) {
+        long cursor = afterId != null ? afterId : 0L;
+        List<PagoDTO> cargados = new ArrayList<>();
+        List<Long> ids = porCita.get(citaId, k -> cargar(k, cargados));
+        if (!cargados.isEmpty()) {
+            return cargados.stream().filter(pago -> pago.getId() > cursor).limit(limit).map(PagoDTO::copia).toList();
+        }
+        return resolver(ids.stream().filter(id -> id > cursor).limit(limit).toList());
+    }
+
+    // IDs de los pagos de una cita, ordenados; los pagos leídos quedan también en la caché por ID
+    private List<Long> cargar(Long citaId, List<PagoDTO> cargados) {
+        long generacion = invalidaciones.get();
+        List<PagoDTO> pagos = new ArrayList<>(delegado.getByCitaId(citaId));
+        pagos.sort(Comparator.comparing(PagoDTO::getId));
+        guardar(pagos, generacion);
+        cargados.addAll(pagos);
+        return pagos.stream().map(PagoDTO::getId).toList();
+    }
+
+    // Pagos de ids en el mismo orden: los que están en caché y el resto con una sola consulta.
+    // Un pago eliminado entre medias simplemente no aparece
+    private List<PagoDTO> resolver(List<Long> ids) {
+        Map<Long, PagoDTO> encontrados = new HashMap<>(porId.getAllPresent(ids));
+        if (encontrados.size() < ids.size()) {
+            List<Long> faltan = ids.stream().filter(id -> !encontrados.containsKey(id)).toList();
+            long generacion = invalidaciones.get();
+            List<PagoDTO> leidos = delegado.getByIds(faltan);
+            guardar(leidos, generacion);
+            leidos.forEach(pago -> encontrados.put(pago.getId(), pago));
+        }
+        List<PagoDTO> pagos = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            PagoDTO pago = encontrados.get(id);
+            if (pago != null) {
+                pagos.add(pago.copia());
+            }
+        }
+        return pagos;
+    }
+
+    // Guarda pagos leídos fuera de la función de carga de su clave. La comprobación va dentro del cómputo de la
+    // clave: una invalidación posterior al incremento espera a que termine y borra lo que se haya guardado
+    private void guardar(List<PagoDTO> pagos, long generacion) {
+        for (PagoDTO pago : pagos) {
+            porId.asMap().computeIfAbsent(pago.getId(), id -> invalidaciones.get() == generacion ? pago.copia() : null);
+        }
+    }
+
+    private void invalidar(Long id, Long citaId) {
+        invalidarAhora(id, citaId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    invalidarAhora(id, citaId);
+                }
+            });
+        }
+    }
+
+    private void invalidarAhora(Long id, Long citaId) {
+        invalidaciones.incrementAndGet();
+        if (id != null) {
+            porId.invalidate(id);
+        }
+        if (citaId != null) {
+            porCita.invalidate(citaId);
+        }
+    }
+}
@@ -1,36 +1,73 @@
 package com.clinica.pagos.infrastructure.repositories;
 
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Limit;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import com.clinica.pagos.domain.dto.ActualizacionPagoDTO;
 import com.clinica.pagos.domain.dto.PagoDTO;
 import com.clinica.pagos.domain.repository.IPago;
 import com.clinica.pagos.infrastructure.crud.PagoRepository;
+import com.clinica.pagos.infrastructure.entity.EstadoPago;
+import com.clinica.pagos.infrastructure.entity.MetodoPago;
 import com.clinica.pagos.infrastructure.entity.Pago;
 import com.clinica.pagos.infrastructure.mapper.PagoMapper;
 
+import jakarta.persistence.CacheRetrieveMode;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.TypedQuery;
+
 @Repository
 public class PagoImp implements IPago {
 
+    // Campos de PagoDTO que se pueden proyectar; coinciden con los atributos de la entidad Pago
+    private static final Set<String> COLUMNAS = Set.of(
+            "id", "citaId", "monto", "metodoPago", "fechaPago", "estado", "referencia", "version");
+
+    // Las escrituras leen de la base de datos, no de la caché de segundo nivel: con varias instancias la copia en
+    // caché puede tener una versión anterior y daría un 409 falso hasta que expirase
+    private static final String MODO_LECTURA_CACHE = "jakarta.persistence.cache.retrieveMode";
+
     @Autowired
     private PagoRepository repo;
 
     @Autowired
     private PagoMapper mapper;
 
-    @Override
-    public List<PagoDTO> getAll() {
-        return mapper.toPagosDTO(repo.findAll());
-    }
+    @Autowired
+    private PagoBatchWriter batchWriter;
+
+    @PersistenceContext
+    private EntityManager em;
 
     @Override
     public Optional<PagoDTO> getById(Long id) {
         return repo.findById(id).map(mapper::toPagoDTO);
     }
 
+    @Override
+    public List<PagoDTO> getByIds(Collection<Long> ids) {
+        return ids.isEmpty() ? new ArrayList<>() : mapper.toPagosDTO(repo.findAllById(ids));
+    }
+
     @Override
     public PagoDTO save(PagoDTO dto) {
         Pago ent = mapper.toPago(dto);
@@ -38,21 +75,85 @@ public class PagoImp implements IPago {
     }
 
     @Override
-    public PagoDTO update(Long id, PagoDTO dto) {
-        return repo.findById(id).map(existingEntity -> {
-            Pago ent = mapper.toPago(dto);
-            ent.setId(id);
-            return mapper.toPagoDTO(repo.save(ent));
+    @Transactional
+    public List<PagoDTO> saveAll(List<PagoDTO> dtos) {
+        List<Pago> pagos = mapper.toPagos(dtos);
+        batchWriter.insertar(pagos);
+        return mapper.toPagosDTO(pagos);
+    }
+
+    @Override
+    @Transactional
+    public ActualizacionPagoDTO update(Long id, PagoDTO dto) {
+        return leerParaEscribir(id).map(ent -> {
+            if (dto.getVersion() != null && !dto.getVersion().equals(ent.getVersion())) {
+                throw new ObjectOptimisticLockingFailureException(Pago.class, id);
+            }
+            PagoDTO anterior = mapper.toPagoDTO(ent);
+            // Se modifica la entidad gestionada: el UPDATE sale del dirty checking (... WHERE id = ? AND version = ?)
+            mapper.actualizarPago(dto, ent);
+            em.flush();
+            return new ActualizacionPagoDTO(mapper.toPagoDTO(ent), anterior, anterior.getEstado(), true);
         }).orElse(null);
     }
 
     @Override
-    public boolean delete(Long id) {
-        if (repo.existsById(id)) {
-            repo.deleteById(id);
-            return true;
+    @Transactional
+    public List<ActualizacionPagoDTO> updateAll(List<Long> ids, List<PagoDTO> dtos) {
+        if (new HashSet<>(ids).size() != ids.size()) {
+            throw new IllegalArgumentException("IDs de pago repetidos en la actualización por lotes");
         }
-        return false;
+        Map<Long, Pago> entidades = new HashMap<>();
+        List<Pago> leidas = em.createQuery("select p from Pago p where p.id in :ids", Pago.class)
+                .setParameter("ids", ids)
+                .setHint(MODO_LECTURA_CACHE, CacheRetrieveMode.BYPASS)
+                .getResultList();
+        for (Pago ent : leidas) {
+            entidades.put(ent.getId(), ent);
+        }
+        Pago[] actualizadas = new Pago[ids.size()];
+        PagoDTO[] anteriores = new PagoDTO[ids.size()];
+        for (int i = 0; i < ids.size(); i++) {
+            Pago ent = entidades.get(ids.get(i));
+            if (ent == null) {
+                continue;
+            }
+            PagoDTO dto = dtos.get(i);
+            if (dto.getVersion() != null && !dto.getVersion().equals(ent.getVersion())) {
+                throw new ObjectOptimisticLockingFailureException(Pago.class, ent.getId());
+            }
+            anteriores[i] = mapper.toPagoDTO(ent);
+            mapper.actualizarPago(dto, ent);
+            actualizadas[i] = ent;
+        }
+        // Un solo flush: con hibernate.jdbc.batch_size los UPDATE ... WHERE id = ? AND version = ? van en un lote
+        em.flush();
+        List<ActualizacionPagoDTO> resultados = new ArrayList<>(ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            resultados.add(actualizadas[i] != null
+                    ? new ActualizacionPagoDTO(mapper.toPagoDTO(actualizadas[i]), anteriores[i], anteriores[i].getEstado(), true)
+                    : null);
+        }
+        return resultados;
+    }
+
+    @Override
+    @Transactional
+    public boolean cambiarEstado(Long id, String esperado, String nuevo) {
+        EstadoPago estadoEsperado = EstadoPago.buscar(esperado)
+                .orElseThrow(() -> new IllegalArgumentException("Estado de pago desconocido: " + esperado));
+        EstadoPago estadoNuevo = EstadoPago.buscar(nuevo)
+                .orElseThrow(() -> new IllegalArgumentException("Estado de pago desconocido: " + nuevo));
+        return repo.cambiarEstado(id, estadoEsperado, estadoNuevo) == 1;
+    }
+
+    @Override
+    @Transactional
+    public Optional<PagoDTO> delete(Long id) {
+        return leerParaEscribir(id).map(ent -> {
+            repo.delete(ent);
+            return mapper.toPagoDTO(ent);
+        });
     }
 
     @Override
@@ -61,7 +162,126 @@ public class PagoImp implements IPago {
     }
 
     @Override
-    public List<PagoDTO> getByEstado(String estado) {
-        return mapper.toPagosDTO(repo.findByEstado(estado));
+    public List<PagoDTO> getPage(Long afterId, int limit) {
+        return mapper.toPagosDTO(repo.findByIdGreaterThanOrderByIdAsc(cursor(afterId), Limit.of(limit)));
+    }
+
+    @Override
+    public List<PagoDTO> getPageByCitaId(Long citaId, Long afterId, int limit) {
+        return mapper.toPagosDTO(repo.findByCitaIdAndIdGreaterThanOrderByIdAsc(citaId, cursor(afterId), Limit.of(limit)));
+    }
+
+    @Override
+    public List<PagoDTO> getPageByEstado(String estado, Long afterId, int limit) {
+        return EstadoPago.buscar(estado)
+                .map(e -> mapper.toPagosDTO(repo.findByEstadoAndIdGreaterThanOrderByIdAsc(e, cursor(afterId), Limit.of(limit))))
+                .orElseGet(List::of);
+    }
+
+    @Override
+    public List<PagoDTO> getPage(Long afterId, int limit, Set<String> campos) {
+        return proyectar(campos, null, null, afterId, limit);
+    }
+
+    @Override
+    public List<PagoDTO> getPageByCitaId(Long citaId, Long afterId, int limit, Set<String> campos) {
+        return proyectar(campos, "citaId", citaId, afterId, limit);
+    }
+
+    @Override
+    public List<PagoDTO> getPageByEstado(String estado, Long afterId, int limit, Set<String> campos) {
+        return EstadoPago.buscar(estado)
+                .map(e -> proyectar(campos, "estado", e, afterId, limit))
+                .orElseGet(List::of);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void streamAll(Consumer<PagoDTO> consumer) {
+        try (Stream<Pago> pagos = repo.streamAll()) {
+            recorrer(pagos, consumer);
+        }
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void streamRango(Long afterId, Long hastaId, Consumer<PagoDTO> consumer) {
+        try (Stream<Pago> pagos = repo.streamRango(afterId, hastaId)) {
+            recorrer(pagos, consumer);
+        }
+    }
+
+    @Override
+    public Optional<Long> getMinId() {
+        return Optional.ofNullable(repo.findMinId());
+    }
+
+    @Override
+    public Optional<Long> getMaxId() {
+        return Optional.ofNullable(repo.findMaxId());
+    }
+
+    private void recorrer(Stream<Pago> pagos, Consumer<PagoDTO> consumer) {
+        pagos.forEach(pago -> {
+            consumer.accept(mapper.toPagoDTO(pago));
+            // Se desvincula cada entidad para que el contexto de persistencia no crezca con el recorrido
+            em.detach(pago);
+        });
+    }
+
+    /**
+     * Página por cursor que selecciona solo las columnas pedidas (SELECT p.monto, p.estado ... en lugar de la
+     * entidad completa): no se cargan las demás columnas ni se crean entidades gestionadas.
+     */
+    private List<PagoDTO> proyectar(Set<String> campos, String filtro, Object valor, Long afterId, int limit) {
+        // Los nombres se validan contra COLUMNAS antes de concatenarlos en el JPQL
+        StringJoiner select = new StringJoiner(", ", "select ", " from Pago p where p.id > :after");
+        for (String campo : campos) {
+            if (!COLUMNAS.contains(campo)) {
+                throw new IllegalArgumentException("Campo de pago desconocido: " + campo);
+            }
+            select.add("p." + campo);
+        }
+        String jpql = select + (filtro != null ? " and p." + filtro + " = :valor" : "") + " order by p.id";
+        TypedQuery<Tuple> query = em.createQuery(jpql, Tuple.class)
+                .setParameter("after", cursor(afterId))
+                .setMaxResults(limit);
+        if (filtro != null) {
+            query.setParameter("valor", valor);
+        }
+
+        List<Tuple> filas = query.getResultList();
+        List<PagoDTO> pagos = new ArrayList<>(filas.size());
+        for (Tuple fila : filas) {
+            PagoDTO dto = new PagoDTO();
+            int i = 0;
+            for (String campo : campos) {
+                asignar(dto, campo, fila.get(i++));
+            }
+            pagos.add(dto);
+        }
+        return pagos;
+    }
+
+    private static void asignar(PagoDTO dto, String campo, Object valor) {
+        switch (campo) {
+            case "id" -> dto.setId((Long) valor);
+            case "citaId" -> dto.setCitaId((Long) valor);
+            case "monto" -> dto.setMonto((BigDecimal) valor);
+            case "metodoPago" -> dto.setMetodoPago(valor != null ? ((MetodoPago) valor).name() : null);
+            case "fechaPago" -> dto.setFechaPago((LocalDateTime) valor);
+            case "estado" -> dto.setEstado(valor != null ? ((EstadoPago) valor).name() : null);
+            case "referencia" -> dto.setReferencia((String) valor);
+            case "version" -> dto.setVersion((Long) valor);
+            default -> throw new IllegalArgumentException("Campo de pago desconocido: " + campo);
+        }
+    }
+
+    private Optional<Pago> leerParaEscribir(Long id) {
+        return Optional.ofNullable(em.find(Pago.class, id, Map.<String, Object>of(MODO_LECTURA_CACHE, CacheRetrieveMode.BYPASS)));
+    }
+
+    private static Long cursor(Long afterId) {
+        return afterId != null ? afterId : 0L;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,210 @@
+package com.clinica.pagos.infrastructure.repositories;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.clinica.pagos.domain.dto.PagoDTO;
+import com.clinica.pagos.domain.dto.ResumenPagoDTO;
+import com.clinica.pagos.domain.repository.IResumenPagos;
+import com.clinica.pagos.domain.service.SolicitudInvalidaException;
+import com.clinica.pagos.infrastructure.entity.EstadoPago;
+import com.clinica.pagos.infrastructure.entity.MetodoPago;
+
+/**
+ * Tabla {@code pagos_resumen_diario}: una fila por (día, estado, método) con cantidad y total.
+ * Cada alta, cambio o baja de un pago se traduce en deltas que se aplican con un upsert
+ * ({@code ON DUPLICATE KEY UPDATE}), así que los informes leen como mucho unas pocas filas por día
+ * en lugar de recorrer {@code pagos}.
+ */
+@Repository
+public class ResumenPagosImp implements IResumenPagos {
+
+    // Día al que se imputan los pagos sin fecha (DATE de MySQL no admite años anteriores a 1000)
+    static final LocalDate SIN_FECHA = LocalDate.of(1000, 1, 1);
+    static final String SIN_CODIGO = "-";
+
+    private static final String UPSERT =
+            "INSERT INTO pagos_resumen_diario (dia, estado, metodo_pago, cantidad, total) VALUES (?, ?, ?, ?, ?) "
+            + "ON DUPLICATE KEY UPDATE cantidad = cantidad + VALUES(cantidad), total = total + VALUES(total)";
+
+    private static final String RECALCULAR =
+            "INSERT INTO pagos_resumen_diario (dia, estado, metodo_pago, cantidad, total) "
+            + "SELECT COALESCE(DATE(fecha_pago), '1000-01-01'), COALESCE(estado, '-'), COALESCE(metodo_pago, '-'), "
+            + "COUNT(*), COALESCE(SUM(monto), 0) FROM pagos GROUP BY 1, 2, 3";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Override
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void aplicar(PagoDTO anterior, PagoDTO actual) {
+        Map<Clave, Delta> deltas = new TreeMap<>();
+        acumular(deltas, anterior, -1);
+        acumular(deltas, actual, 1);
+        escribir(deltas);
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void agregar(List<PagoDTO> nuevos) {
+        Map<Clave, Delta> deltas = new TreeMap<>();
+        for (PagoDTO pago : nuevos) {
+            acumular(deltas, pago, 1);
+        }
+        escribir(deltas);
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void aplicarTodos(List<PagoDTO> anteriores, List<PagoDTO> actuales) {
+        if (anteriores.size() != actuales.size()) {
+            throw new IllegalArgumentException("anteriores y actuales deben tener el mismo tamaño: "
+                    + anteriores.size() + " y " + actuales.size());
+        }
+        Map<Clave, Delta> deltas = new TreeMap<>();
+        for (int i = 0; i < anteriores.size(); i++) {
+            acumular(deltas, anteriores.get(i), -1);
+            acumular(deltas, actuales.get(i), 1);
+        }
+        escribir(deltas);
+    }
+
+    @Override
+    public List<ResumenPagoDTO> resumir(String agrupacion, LocalDate desde, LocalDate hasta) {
+        switch (agrupacion) {
+            case POR_ESTADO:
+                return consultar("estado", desde, hasta, (codigo, cantidad, total) -> new ResumenPagoDTO(
+                        SIN_CODIGO.equals(codigo) ? "SIN_ESTADO" : EstadoPago.desdeCodigo(codigo.charAt(0)).name(), cantidad, total));
+            case POR_METODO:
+                return consultar("metodo_pago", desde, hasta, (codigo, cantidad, total) -> new ResumenPagoDTO(
+                        SIN_CODIGO.equals(codigo) ? "SIN_METODO" : MetodoPago.desdeCodigo(codigo.charAt(0)).name(), cantidad, total));
+            case POR_DIA:
+                return consultar("dia", desde, hasta, (dia, cantidad, total) -> new ResumenPagoDTO(clave(dia), cantidad, total));
+            case POR_MES:
+                // Se agrupa en memoria a partir de los días: como mucho ~31 filas por mes
+                Map<String, ResumenPagoDTO> meses = new TreeMap<>();
+                for (ResumenPagoDTO dia : resumir(POR_DIA, desde, hasta)) {
+                    String mes = dia.getClave().length() == 10 ? dia.getClave().substring(0, 7) : dia.getClave();
+                    ResumenPagoDTO acumulado = meses.computeIfAbsent(mes, m -> new ResumenPagoDTO(m, 0, BigDecimal.ZERO));
+                    acumulado.setCantidad(acumulado.getCantidad() + dia.getCantidad());
+                    acumulado.setTotal(acumulado.getTotal().add(dia.getTotal()));
+                }
+                return new ArrayList<>(meses.values());
+            default:
+                throw new SolicitudInvalidaException("Agrupación desconocida: " + agrupacion
+                        + " (use " + POR_ESTADO + ", " + POR_METODO + ", " + POR_DIA + " o " + POR_MES + ")");
+        }
+    }
+
+    @Override
+    @Transactional
+    public int reconstruir() {
+        jdbcTemplate.update("DELETE FROM pagos_resumen_diario");
+        return jdbcTemplate.update(RECALCULAR);
+    }
+
+    private List<ResumenPagoDTO> consultar(String columna, LocalDate desde, LocalDate hasta, Fila fila) {
+        // columna proviene de la lista fija de resumir(), nunca de la petición
+        StringBuilder sql = new StringBuilder("SELECT ").append(columna)
+                .append(", SUM(cantidad), SUM(total) FROM pagos_resumen_diario WHERE 1 = 1");
+        List<Object> parametros = new ArrayList<>(2);
+        if (desde != null) {
+            sql.append(" AND dia >= ?");
+            parametros.add(desde);
+        }
+        if (hasta != null) {
+            sql.append(" AND dia <= ?");
+            parametros.add(hasta);
+        }
+        sql.append(" GROUP BY ").append(columna).append(" HAVING SUM(cantidad) <> 0 ORDER BY ").append(columna);
+        return jdbcTemplate.query(sql.toString(),
+                (rs, i) -> fila.crear(rs.getString(1), rs.getLong(2), rs.getBigDecimal(3)),
+                parametros.toArray());
+    }
+
+    private static void acumular(Map<Clave, Delta> deltas, PagoDTO pago, int signo) {
+        if (pago == null) {
+            return;
+        }
+        Clave clave = new Clave(
+                pago.getFechaPago() != null ? pago.getFechaPago().toLocalDate() : SIN_FECHA,
+                EstadoPago.buscar(pago.getEstado()).map(e -> String.valueOf(e.getCodigo())).orElse(SIN_CODIGO),
+                MetodoPago.buscar(pago.getMetodoPago()).map(m -> String.valueOf(m.getCodigo())).orElse(SIN_CODIGO));
+        Delta delta = deltas.computeIfAbsent(clave, c -> new Delta());
+        delta.cantidad += signo;
+        if (pago.getMonto() != null) {
+            delta.total = signo > 0 ? delta.total.add(pago.getMonto()) : delta.total.subtract(pago.getMonto());
+        }
+    }
+
+    // Las claves llegan ordenadas (TreeMap): transacciones concurrentes bloquean las filas en el mismo orden
+    private void escribir(Map<Clave, Delta> deltas) {
+        List<Map.Entry<Clave, Delta>> cambios = new ArrayList<>(deltas.size());
+        for (Map.Entry<Clave, Delta> e : deltas.entrySet()) {
+            // Un cambio que no afecta al agregado (p. ej. solo la referencia) se anula aquí
+            if (e.getValue().cantidad != 0 || e.getValue().total.signum() != 0) {
+                cambios.add(e);
+            }
+        }
+        if (cambios.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(UPSERT, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                Clave clave = cambios.get(i).getKey();
+                Delta delta = cambios.get(i).getValue();
+                // LocalDate y no java.sql.Date, que usa el calendario juliano antes de 1582 y desplaza días como SIN_FECHA
+                ps.setObject(1, clave.dia());
+                ps.setString(2, clave.estado());
+                ps.setString(3, clave.metodo());
+                ps.setLong(4, delta.cantidad);
+                ps.setBigDecimal(5, delta.total);
+            }
+
+            @Override
+            public int getBatchSize() {
+                return cambios.size();
+            }
+        });
+    }
+
+    private static String clave(String dia) {
+        LocalDate fecha = LocalDate.parse(dia);
+        return fecha.equals(SIN_FECHA) ? "SIN_FECHA" : fecha.toString();
+    }
+
+    @FunctionalInterface
+    private interface Fila {
+        ResumenPagoDTO crear(String clave, long cantidad, BigDecimal total);
+    }
+
+    private record Clave(LocalDate dia, String estado, String metodo) implements Comparable<Clave> {
+        @Override
+        public int compareTo(Clave otra) {
+            int c = dia.compareTo(otra.dia);
+            if (c == 0) {
+                c = estado.compareTo(otra.estado);
+            }
+            return c != 0 ? c : metodo.compareTo(otra.metodo);
+        }
+    }
+
+    private static final class Delta {
+        long cantidad;
+        BigDecimal total = BigDecimal.ZERO;
+    }
+}
@@ -0,0 +1,12 @@
+-- Esquema que generaba Hibernate (ddl-auto=update) antes de usar migraciones versionadas.
+-- En bases existentes Flyway toma esta versión como línea base y no la ejecuta.
+CREATE TABLE IF NOT EXISTS pagos (
+    id BIGINT NOT NULL AUTO_INCREMENT,
+    cita_id BIGINT,
+    estado VARCHAR(255),
+    fecha_pago DATETIME(6),
+    metodo_pago VARCHAR(255),
+    monto DECIMAL(38,2),
+    referencia VARCHAR(255),
+    PRIMARY KEY (id)
+);
@@ -0,0 +1,16 @@
+-- Outbox de notificaciones. IF NOT EXISTS: puede haberla creado ya ddl-auto=update.
+CREATE TABLE IF NOT EXISTS notificaciones_pendientes (
+    id BIGINT NOT NULL AUTO_INCREMENT,
+    referencia_servicio VARCHAR(255),
+    tipo VARCHAR(255),
+    payload TEXT,
+    estado VARCHAR(255),
+    intentos INTEGER NOT NULL,
+    proximo_intento DATETIME(6),
+    creada_en DATETIME(6),
+    enviada_en DATETIME(6),
+    ultimo_error VARCHAR(255),
+    PRIMARY KEY (id)
+);
+
+CREATE INDEX idx_notif_pendientes_estado_proximo ON notificaciones_pendientes (estado, proximo_intento);
@@ -0,0 +1,53 @@
+-- estado y metodo_pago pasan a códigos de un carácter (ver EstadoPago / MetodoPago).
+-- Se aceptan los nombres en cualquier combinación de mayúsculas y con espacios alrededor, y los
+-- códigos ya convertidos. Cualquier otro valor detiene la migración ANTES de tocar la tabla:
+-- sin esta comprobación, un servidor sin modo estricto truncaría el valor a su primer carácter
+-- en el ALTER (p. ej. 'CANCELADO' pasaría a 'C', COMPLETADO) sin dar error.
+-- Corregir las filas que indica el mensaje y volver a ejecutar es seguro.
+DROP PROCEDURE IF EXISTS comprobar_codigos_pagos;
+
+DELIMITER //
+CREATE PROCEDURE comprobar_codigos_pagos()
+BEGIN
+    DECLARE estados INT;
+    DECLARE metodos INT;
+    DECLARE mensaje VARCHAR(255);
+
+    SELECT COUNT(*) INTO estados FROM pagos
+        WHERE estado IS NOT NULL
+          AND UPPER(TRIM(estado)) NOT IN ('PENDIENTE', 'COMPLETADO', 'ANULADO', 'P', 'C', 'A');
+    SELECT COUNT(*) INTO metodos FROM pagos
+        WHERE metodo_pago IS NOT NULL
+          AND UPPER(TRIM(metodo_pago)) NOT IN ('EFECTIVO', 'TARJETA', 'TRANSFERENCIA', 'E', 'T', 'R');
+
+    IF estados > 0 OR metodos > 0 THEN
+        SET mensaje = CONCAT('pagos con estado desconocido: ', estados,
+                             ', con metodo_pago desconocido: ', metodos,
+                             '. Corregirlos antes de migrar a códigos de un carácter');
+        SIGNAL SQLSTATE '45000' SET MESSAGE_TEXT = mensaje;
+    END IF;
+END //
+DELIMITER ;
+
+CALL comprobar_codigos_pagos();
+DROP PROCEDURE comprobar_codigos_pagos;
+
+UPDATE pagos SET estado = CASE UPPER(TRIM(estado))
+    WHEN 'PENDIENTE' THEN 'P'
+    WHEN 'COMPLETADO' THEN 'C'
+    WHEN 'ANULADO' THEN 'A'
+    ELSE UPPER(TRIM(estado)) END
+WHERE estado IS NOT NULL;
+
+UPDATE pagos SET metodo_pago = CASE UPPER(TRIM(metodo_pago))
+    WHEN 'EFECTIVO' THEN 'E'
+    WHEN 'TARJETA' THEN 'T'
+    WHEN 'TRANSFERENCIA' THEN 'R'
+    ELSE UPPER(TRIM(metodo_pago)) END
+WHERE metodo_pago IS NOT NULL;
+
+ALTER TABLE pagos MODIFY estado CHAR(1), MODIFY metodo_pago CHAR(1);
+
+CREATE INDEX idx_pagos_cita_id ON pagos (cita_id);
+CREATE INDEX idx_pagos_estado_fecha ON pagos (estado, fecha_pago);
+CREATE INDEX idx_pagos_referencia ON pagos (referencia);
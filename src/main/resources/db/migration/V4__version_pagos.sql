@@ -0,0 +1,3 @@
+-- Columna de versión para el bloqueo optimista de Pago (@Version).
+-- Las filas existentes y las insertadas por lotes (PagoBatchWriter) parten de 0.
+ALTER TABLE pagos ADD COLUMN version BIGINT NOT NULL DEFAULT 0;
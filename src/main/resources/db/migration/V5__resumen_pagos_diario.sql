@@ -0,0 +1,17 @@
+-- Agregados de pagos por día, estado y método, mantenidos de forma incremental por PagoService.
+-- Los pagos sin fecha se agregan en el día 1000-01-01 y los estados/métodos nulos con el código '-'.
+CREATE TABLE pagos_resumen_diario (
+    dia DATE NOT NULL,
+    estado CHAR(1) NOT NULL,
+    metodo_pago CHAR(1) NOT NULL,
+    cantidad BIGINT NOT NULL,
+    total DECIMAL(38,2) NOT NULL,
+    PRIMARY KEY (dia, estado, metodo_pago)
+);
+
+-- Backfill inicial con los pagos existentes
+INSERT INTO pagos_resumen_diario (dia, estado, metodo_pago, cantidad, total)
+SELECT COALESCE(DATE(fecha_pago), '1000-01-01'), COALESCE(estado, '-'), COALESCE(metodo_pago, '-'),
+       COUNT(*), COALESCE(SUM(monto), 0)
+FROM pagos
+GROUP BY 1, 2, 3;
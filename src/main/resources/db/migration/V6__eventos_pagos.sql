@@ -0,0 +1,22 @@
+-- Registro de eventos de pagos (solo inserciones). seq es la posición del evento en el registro:
+-- estrictamente creciente y asignada en orden de commit (ver pagos_eventos_secuencia).
+CREATE TABLE pagos_eventos (
+    seq BIGINT NOT NULL,
+    tipo VARCHAR(20) NOT NULL,
+    pago_id BIGINT NOT NULL,
+    estado_anterior VARCHAR(20),
+    estado VARCHAR(20),
+    pago TEXT,
+    creado_en DATETIME(6) NOT NULL,
+    PRIMARY KEY (seq)
+);
+
+-- Contador de seq. Se bloquea (SELECT ... FOR UPDATE) al final de cada transacción que publica eventos,
+-- de modo que una transacción no puede confirmar un seq menor después de que otra haya confirmado uno mayor.
+CREATE TABLE pagos_eventos_secuencia (
+    id TINYINT NOT NULL,
+    ultimo BIGINT NOT NULL,
+    PRIMARY KEY (id)
+);
+
+INSERT INTO pagos_eventos_secuencia (id, ultimo) VALUES (1, 0);
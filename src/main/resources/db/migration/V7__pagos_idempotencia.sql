@@ -0,0 +1,12 @@
+-- Respuestas de POST /pagos por Idempotency-Key. La clave primaria impide que dos peticiones con la
+-- misma clave creen dos pagos, aunque lleguen a instancias distintas.
+CREATE TABLE pagos_idempotencia (
+    clave VARCHAR(255) NOT NULL,
+    huella CHAR(64) NOT NULL,
+    pago_id BIGINT NOT NULL,
+    respuesta TEXT NOT NULL,
+    creada_en DATETIME(6) NOT NULL,
+    PRIMARY KEY (clave)
+);
+
+CREATE INDEX idx_pagos_idempotencia_creada ON pagos_idempotencia (creada_en);
@@ -0,0 +1,5 @@
+-- Grupo de envío de cada notificación del outbox (id de la primera fila del grupo), fijado la primera vez que
+-- se agrupa: los reintentos reenvían las mismas filas con la misma clave de idempotencia.
+ALTER TABLE notificaciones_pendientes ADD COLUMN grupo BIGINT NULL;
+
+CREATE INDEX idx_notif_pendientes_grupo ON notificaciones_pendientes (grupo);
@@ -0,0 +1,4 @@
+-- Paginación por cursor de los pagos de un estado (WHERE estado = ? AND id > ? ORDER BY id LIMIT n).
+-- idx_pagos_estado_fecha no sirve para ese orden: MySQL ordenaba todas las filas del estado en cada página y
+-- la exportación por estado, que recorre todas las páginas, era cuadrática.
+CREATE INDEX idx_pagos_estado_id ON pagos (estado, id);
@@ -0,0 +1,296 @@
+package com.clinica.pagos.benchmark;
+
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.clinica.pagos.PagosApplication;
+
+/**
+ * Arnés de carga de {@code PagoController} sin dependencias externas: levanta los servicios de citas y
+ * notificaciones simulados ({@link ServicioStub}, con latencia, jitter y tasa de error configurables),
+ * arranca la aplicación completa sobre H2 en memoria (modo MySQL, esquema {@code carga/esquema-h2.sql})
+ * con {@code --pagos} pagos precargados y lanza {@code --clientes} clientes concurrentes que ejecutan
+ * una mezcla de operaciones durante {@code --duracion} segundos.
+ * <p>
+ * Muestra por operación peticiones, throughput, errores y p50/p90/p99/p99.9/máximo; las primeras
+ * {@code --calentamiento} segundos no se contabilizan. Los agregados de resumen parten vacíos (los pagos
+ * precargados se insertan directamente en la tabla), lo que no afecta a las operaciones medidas.
+ * <pre>
+ * mvn -Pcarga test -Dcarga.args="--pagos=100000 --clientes=200 --duracion=60 \
+ *     --mezcla=crear:10,actualizar:10,leer:40,listar:40 --latencia-citas=50 --jitter-citas=30 --error-citas=0.01"
+ * </pre>
+ * Cualquier otro {@code --propiedad=valor} de Spring se pasa a la aplicación (p. ej. {@code --spring.threads.virtual.enabled=true}).
+ * <p>
+ * Con {@code --bd=mysql} usa un MySQL local en lugar de H2 ({@code --bd-url}, por defecto la base {@code pagos_carga},
+ * con las migraciones de Flyway); la precarga solo completa los pagos que falten hasta {@code --pagos}.
+ */
+public class ArnesCarga {
+
+    // Histograma de latencias con resolución de 0,1 ms hasta 60 s
+    private static final int CUBETAS = 600_000;
+    private static final int LOTE_INSERCION = 5_000;
+    private static final String[] ESTADOS = { "PENDIENTE", "COMPLETADO", "ANULADO" };
+    private static final String[] METODOS = { "EFECTIVO", "TARJETA", "TRANSFERENCIA" };
+
+    public static void main(String[] args) throws Exception {
+        ejecutar(args);
+    }
+
+    /**
+     * Ejecuta el arnés completo e imprime los resultados.
+     * @return la medición de cada operación de la mezcla.
+     */
+    static Map<String, Medicion> ejecutar(String[] args) throws Exception {
+        Map<String, String> opciones = new HashMap<>();
+        for (String arg : args) {
+            int igual = arg.indexOf('=');
+            if (arg.startsWith("--") && igual > 2) {
+                opciones.put(arg.substring(2, igual), arg.substring(igual + 1));
+            }
+        }
+
+        int pagos = Integer.parseInt(opciones.getOrDefault("pagos", "10000"));
+        long citas = Long.parseLong(opciones.getOrDefault("citas", String.valueOf(Math.max(1, pagos / 2))));
+        int clientes = Integer.parseInt(opciones.getOrDefault("clientes", "50"));
+        Duration duracion = Duration.ofSeconds(Long.parseLong(opciones.getOrDefault("duracion", "30")));
+        Duration calentamiento = Duration.ofSeconds(Long.parseLong(opciones.getOrDefault("calentamiento", "5")));
+        Map<String, Integer> mezcla = mezcla(opciones.getOrDefault("mezcla", "crear:10,actualizar:10,leer:40,listar:40"));
+        ServicioStub.Perfil perfilCitas = perfil(opciones, "citas");
+        ServicioStub.Perfil perfilNotificaciones = perfil(opciones, "notif");
+
+        try (ServicioStub stubCitas = ServicioStub.citas(perfilCitas, citas);
+             ServicioStub stubNotificaciones = ServicioStub.notificaciones(perfilNotificaciones)) {
+
+            List<String> argumentosSpring = new ArrayList<>();
+            argumentosSpring.add("--server.port=0");
+            if ("mysql".equals(opciones.get("bd"))) {
+                argumentosSpring.add("--spring.datasource.url=" + opciones.getOrDefault("bd-url",
+                        "jdbc:mysql://localhost:3306/pagos_carga?createDatabaseIfNotExist=true&rewriteBatchedStatements=true"));
+            } else {
+                // Una base por ejecución: CargaConcurrenteBenchmark arranca la aplicación varias veces en la misma JVM
+                argumentosSpring.add("--spring.datasource.url=jdbc:h2:mem:carga-" + UUID.randomUUID()
+                        + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1");
+                argumentosSpring.add("--spring.datasource.driver-class-name=org.h2.Driver");
+                argumentosSpring.add("--spring.datasource.username=sa");
+                argumentosSpring.add("--spring.datasource.password=");
+                argumentosSpring.add("--spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect");
+                argumentosSpring.add("--spring.jpa.show-sql=false");
+                // El esquema de H2 no coincide tipo a tipo con el de MySQL (TEXT, CHAR), así que no se valida
+                argumentosSpring.add("--spring.jpa.hibernate.ddl-auto=none");
+                argumentosSpring.add("--spring.flyway.enabled=false");
+                argumentosSpring.add("--spring.sql.init.mode=always");
+                argumentosSpring.add("--spring.sql.init.schema-locations=classpath:carga/esquema-h2.sql");
+            }
+            argumentosSpring.add("--citas.service.url=" + stubCitas.url());
+            argumentosSpring.add("--notificaciones.service.url=" + stubNotificaciones.url());
+            argumentosSpring.add("--logging.level.root=WARN");
+            // Las propiedades de Spring que se pasen al arnés tienen prioridad sobre las anteriores
+            for (String arg : args) {
+                String clave = arg.startsWith("--") && arg.indexOf('=') > 2 ? arg.substring(2, arg.indexOf('=')) : "";
+                if (clave.contains(".")) {
+                    argumentosSpring.add(arg);
+                }
+            }
+
+            try (ConfigurableApplicationContext ctx = SpringApplication.run(PagosApplication.class, argumentosSpring.toArray(String[]::new))) {
+                precargar(ctx.getBean(JdbcTemplate.class), pagos, citas);
+                String base = "http://localhost:" + ctx.getEnvironment().getProperty("local.server.port") + "/pagos";
+
+                System.out.printf("pagos=%d citas=%d clientes=%d duración=%ds mezcla=%s%n", pagos, citas, clientes, duracion.toSeconds(), mezcla);
+                System.out.printf("citas: %s  notificaciones: %s%n", perfilCitas, perfilNotificaciones);
+                Map<String, Medicion> mediciones = ejecutar(base, pagos, citas, clientes, calentamiento, duracion, mezcla);
+
+                System.out.printf("%n%-12s %10s %10s %8s %9s %9s %9s %9s %9s%n",
+                        "operación", "peticiones", "req/s", "errores", "p50 (ms)", "p90 (ms)", "p99 (ms)", "p99.9", "máx (ms)");
+                mediciones.forEach((operacion, m) -> m.imprimir(operacion, duracion));
+                System.out.printf("%nstub citas: %d peticiones, %d errores; stub notificaciones: %d peticiones, %d errores%n",
+                        stubCitas.peticiones(), stubCitas.errores(), stubNotificaciones.peticiones(), stubNotificaciones.errores());
+                return mediciones;
+            }
+        }
+    }
+
+    private static ServicioStub.Perfil perfil(Map<String, String> opciones, String servicio) {
+        return new ServicioStub.Perfil(
+                Long.parseLong(opciones.getOrDefault("latencia-" + servicio, "20")),
+                Long.parseLong(opciones.getOrDefault("jitter-" + servicio, "10")),
+                Double.parseDouble(opciones.getOrDefault("error-" + servicio, "0")));
+    }
+
+    private static Map<String, Integer> mezcla(String texto) {
+        Map<String, Integer> mezcla = new LinkedHashMap<>();
+        for (String parte : texto.split(",")) {
+            String[] peso = parte.split(":");
+            String operacion = peso[0].trim();
+            if (!List.of("crear", "actualizar", "leer", "listar", "estado").contains(operacion)) {
+                throw new IllegalArgumentException("Operación desconocida en --mezcla: " + operacion);
+            }
+            mezcla.put(operacion, Integer.parseInt(peso[1].trim()));
+        }
+        return mezcla;
+    }
+
+    // Inserta directamente en la tabla para no depender del servicio de citas ni tardar en el arranque
+    private static void precargar(JdbcTemplate jdbc, int pagos, long citas) {
+        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+        LocalDateTime inicio = LocalDateTime.now().minusYears(1);
+        List<Object[]> lote = new ArrayList<>(LOTE_INSERCION);
+        Long existentes = jdbc.queryForObject("SELECT COUNT(*) FROM pagos", Long.class);
+        for (int i = (int) Math.min(pagos, existentes) + 1; i <= pagos; i++) {
+            lote.add(new Object[] { 1 + (i * 7919L) % citas, "PCA".charAt(rnd.nextInt(3)) + "",
+                    Timestamp.valueOf(inicio.plusMinutes(rnd.nextLong(365L * 24 * 60))), "ETR".charAt(rnd.nextInt(3)) + "",
+                    BigDecimal.valueOf(rnd.nextLong(1_000, 500_000), 2), "CARGA-" + i });
+            if (lote.size() == LOTE_INSERCION || i == pagos) {
+                jdbc.batchUpdate("INSERT INTO pagos (cita_id, estado, fecha_pago, metodo_pago, monto, referencia, version) "
+                        + "VALUES (?, ?, ?, ?, ?, ?, 0)", lote);
+                lote.clear();
+            }
+        }
+    }
+
+    private static Map<String, Medicion> ejecutar(String base, int pagos, long citas, int clientes, Duration calentamiento,
+            Duration duracion, Map<String, Integer> mezcla) throws InterruptedException {
+        HttpClient http = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(10))
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+        Map<String, Medicion> mediciones = new LinkedHashMap<>();
+        mezcla.keySet().forEach(operacion -> mediciones.put(operacion, new Medicion()));
+        String[] ruleta = mezcla.entrySet().stream()
+                .flatMap(e -> Collections.nCopies(e.getValue(), e.getKey()).stream())
+                .toArray(String[]::new);
+        AtomicLong ultimoId = new AtomicLong(pagos);
+
+        long inicioMedicion = System.nanoTime() + calentamiento.toNanos();
+        long fin = inicioMedicion + duracion.toNanos();
+        List<Thread> hilos = new ArrayList<>(clientes);
+        for (int c = 0; c < clientes; c++) {
+            hilos.add(Thread.ofVirtual().start(() -> {
+                ThreadLocalRandom rnd = ThreadLocalRandom.current();
+                while (System.nanoTime() < fin) {
+                    String operacion = ruleta[rnd.nextInt(ruleta.length)];
+                    HttpRequest peticion = peticion(base, operacion, rnd, ultimoId.get(), citas);
+                    long inicio = System.nanoTime();
+                    boolean error;
+                    try {
+                        HttpResponse<Void> r = http.send(peticion, HttpResponse.BodyHandlers.discarding());
+                        error = r.statusCode() >= 400;
+                    } catch (Exception e) {
+                        error = true;
+                    }
+                    long finPeticion = System.nanoTime();
+                    if (inicio >= inicioMedicion && finPeticion <= fin) {
+                        mediciones.get(operacion).registrar(finPeticion - inicio, error);
+                    }
+                    if ("crear".equals(operacion) && !error) {
+                        ultimoId.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        for (Thread hilo : hilos) {
+            hilo.join();
+        }
+        return mediciones;
+    }
+
+    private static HttpRequest peticion(String base, String operacion, ThreadLocalRandom rnd, long ultimoId, long citas) {
+        Duration timeout = Duration.ofSeconds(CUBETAS / 10_000);
+        return switch (operacion) {
+            case "crear" -> HttpRequest.newBuilder(URI.create(base)).timeout(timeout)
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(cuerpo(rnd, citas))).build();
+            case "actualizar" -> HttpRequest.newBuilder(URI.create(base + "/" + rnd.nextLong(1, ultimoId + 1))).timeout(timeout)
+                    .header("Content-Type", "application/json")
+                    .PUT(HttpRequest.BodyPublishers.ofString(cuerpo(rnd, citas))).build();
+            case "leer" -> HttpRequest.newBuilder(URI.create(base + "/" + rnd.nextLong(1, ultimoId + 1))).timeout(timeout)
+                    .GET().build();
+            // Primera página de un estado: la consulta típica de un panel, siempre con los mismos parámetros
+            case "estado" -> HttpRequest.newBuilder(URI.create(base + "/estado/" + ESTADOS[rnd.nextInt(ESTADOS.length)] + "?limit=100"))
+                    .timeout(timeout).GET().build();
+            default -> HttpRequest.newBuilder(URI.create(base + "?limit=100&after=" + rnd.nextLong(0, ultimoId))).timeout(timeout)
+                    .GET().build();
+        };
+    }
+
+    private static String cuerpo(ThreadLocalRandom rnd, long citas) {
+        return "{\"citaId\":" + rnd.nextLong(1, citas + 1)
+                + ",\"monto\":" + BigDecimal.valueOf(rnd.nextLong(1_000, 500_000), 2)
+                + ",\"metodoPago\":\"" + METODOS[rnd.nextInt(METODOS.length)] + "\""
+                + ",\"estado\":\"" + ESTADOS[rnd.nextInt(ESTADOS.length)] + "\""
+                + ",\"referencia\":\"CARGA-" + rnd.nextLong(Long.MAX_VALUE) + "\"}";
+    }
+
+    static final class Medicion {
+
+        private final AtomicLongArray histograma = new AtomicLongArray(CUBETAS + 1);
+        private final AtomicLong errores = new AtomicLong();
+        private final AtomicLong maximoNanos = new AtomicLong();
+
+        void registrar(long nanos, boolean error) {
+            histograma.incrementAndGet((int) Math.min(nanos / 100_000, CUBETAS));
+            maximoNanos.accumulateAndGet(nanos, Math::max);
+            if (error) {
+                errores.incrementAndGet();
+            }
+        }
+
+        void imprimir(String operacion, Duration duracion) {
+            long total = total();
+            System.out.printf("%-12s %10d %10.1f %8d %9.1f %9.1f %9.1f %9.1f %9.1f%n", operacion, total,
+                    total / (double) duracion.toSeconds(), errores.get(),
+                    percentil(total, 0.50), percentil(total, 0.90), percentil(total, 0.99), percentil(total, 0.999),
+                    maximoNanos.get() / 1_000_000.0);
+        }
+
+        long errores() {
+            return errores.get();
+        }
+
+        long total() {
+            long total = 0;
+            for (int i = 0; i <= CUBETAS; i++) {
+                total += histograma.get(i);
+            }
+            return total;
+        }
+
+        /** Percentil en ms (p entre 0 y 1). */
+        double percentil(double p) {
+            return percentil(total(), p);
+        }
+
+        private double percentil(long total, double p) {
+            long objetivo = (long) Math.ceil(total * p);
+            long acumulado = 0;
+            for (int i = 0; i <= CUBETAS; i++) {
+                acumulado += histograma.get(i);
+                if (acumulado >= objetivo && objetivo > 0) {
+                    return i / 10.0;
+                }
+            }
+            return CUBETAS / 10.0;
+        }
+    }
+}
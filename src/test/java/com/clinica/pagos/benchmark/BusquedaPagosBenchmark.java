@@ -0,0 +1,153 @@
+package com.clinica.pagos.benchmark;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Latencia de las búsquedas de pagos frente al tamaño de la tabla, antes y después de los
+ * índices de la migración V3 (cita_id, (estado, fecha_pago), referencia).
+ * <p>
+ * Trabaja sobre una tabla auxiliar {@code pagos_bench} con el mismo esquema que {@code pagos};
+ * no modifica datos reales. No es un test: se ejecuta a mano contra un MySQL local.
+ * <pre>
+ * java -cp target/test-classes:target/classes:&lt;classpath&gt; com.clinica.pagos.benchmark.BusquedaPagosBenchmark \
+ *     jdbc:mysql://localhost:3306/pagos_db root 1234jS 10000,100000,1000000
+ * </pre>
+ */
+public class BusquedaPagosBenchmark {
+
+    private static final int CONSULTAS = 500;
+    private static final int LOTE_INSERCION = 5_000;
+    private static final String[] ESTADOS = { "P", "C", "C", "C", "A" };
+    private static final String[] METODOS = { "E", "T", "R" };
+
+    public static void main(String[] args) throws SQLException {
+        String url = args.length > 0 ? args[0] : "jdbc:mysql://localhost:3306/pagos_db";
+        Properties props = new Properties();
+        props.setProperty("user", args.length > 1 ? args[1] : "root");
+        props.setProperty("password", args.length > 2 ? args[2] : "1234jS");
+        props.setProperty("rewriteBatchedStatements", "true");
+        int[] tamanios = Arrays.stream((args.length > 3 ? args[3] : "10000,100000,1000000").split(","))
+                .mapToInt(Integer::parseInt).toArray();
+
+        try (Connection con = DriverManager.getConnection(url, props)) {
+            System.out.printf("%-10s %-22s %14s %14s %14s %14s%n",
+                    "filas", "consulta", "p50 sin (µs)", "p99 sin (µs)", "p50 con (µs)", "p99 con (µs)");
+            for (int filas : tamanios) {
+                recrearTabla(con);
+                poblar(con, filas);
+                long[][] sinIndices = medir(con, filas);
+                crearIndices(con);
+                long[][] conIndices = medir(con, filas);
+                String[] nombres = { "por cita_id", "por estado reciente", "por referencia" };
+                for (int i = 0; i < nombres.length; i++) {
+                    System.out.printf("%-10d %-22s %14d %14d %14d %14d%n", filas, nombres[i],
+                            percentil(sinIndices[i], 50), percentil(sinIndices[i], 99),
+                            percentil(conIndices[i], 50), percentil(conIndices[i], 99));
+                }
+            }
+            try (Statement st = con.createStatement()) {
+                st.execute("DROP TABLE IF EXISTS pagos_bench");
+            }
+        }
+    }
+
+    private static void recrearTabla(Connection con) throws SQLException {
+        try (Statement st = con.createStatement()) {
+            st.execute("DROP TABLE IF EXISTS pagos_bench");
+            st.execute("CREATE TABLE pagos_bench ("
+                    + "id BIGINT NOT NULL AUTO_INCREMENT, cita_id BIGINT, estado CHAR(1), fecha_pago DATETIME(6), "
+                    + "metodo_pago CHAR(1), monto DECIMAL(38,2), referencia VARCHAR(255), PRIMARY KEY (id))");
+        }
+    }
+
+    private static void poblar(Connection con, int filas) throws SQLException {
+        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+        LocalDateTime inicio = LocalDateTime.now().minusYears(2);
+        con.setAutoCommit(false);
+        try (PreparedStatement ps = con.prepareStatement(
+                "INSERT INTO pagos_bench (cita_id, estado, fecha_pago, metodo_pago, monto, referencia) VALUES (?, ?, ?, ?, ?, ?)")) {
+            for (int i = 1; i <= filas; i++) {
+                ps.setLong(1, citaId(i, filas));
+                ps.setString(2, ESTADOS[rnd.nextInt(ESTADOS.length)]);
+                ps.setTimestamp(3, Timestamp.valueOf(inicio.plusMinutes(rnd.nextLong(2L * 365 * 24 * 60))));
+                ps.setString(4, METODOS[rnd.nextInt(METODOS.length)]);
+                ps.setBigDecimal(5, BigDecimal.valueOf(rnd.nextLong(1_000, 500_000), 2));
+                ps.setString(6, "REF-" + i);
+                ps.addBatch();
+                if (i % LOTE_INSERCION == 0) {
+                    ps.executeBatch();
+                    con.commit();
+                }
+            }
+            ps.executeBatch();
+            con.commit();
+        } finally {
+            con.setAutoCommit(true);
+        }
+        try (Statement st = con.createStatement()) {
+            st.execute("ANALYZE TABLE pagos_bench");
+        }
+    }
+
+    private static void crearIndices(Connection con) throws SQLException {
+        try (Statement st = con.createStatement()) {
+            st.execute("CREATE INDEX idx_bench_cita_id ON pagos_bench (cita_id)");
+            st.execute("CREATE INDEX idx_bench_estado_fecha ON pagos_bench (estado, fecha_pago)");
+            st.execute("CREATE INDEX idx_bench_referencia ON pagos_bench (referencia)");
+            st.execute("ANALYZE TABLE pagos_bench");
+        }
+    }
+
+    // Devuelve las latencias (µs) de cada tipo de consulta
+    private static long[][] medir(Connection con, int filas) throws SQLException {
+        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+        long[][] latencias = new long[3][CONSULTAS];
+        try (PreparedStatement porCita = con.prepareStatement("SELECT * FROM pagos_bench WHERE cita_id = ?");
+             PreparedStatement porEstado = con.prepareStatement(
+                     "SELECT * FROM pagos_bench WHERE estado = ? ORDER BY fecha_pago DESC LIMIT 100");
+             PreparedStatement porReferencia = con.prepareStatement("SELECT * FROM pagos_bench WHERE referencia = ?")) {
+            for (int i = 0; i < CONSULTAS; i++) {
+                int fila = rnd.nextInt(1, filas + 1);
+                porCita.setLong(1, citaId(fila, filas));
+                latencias[0][i] = ejecutar(porCita);
+                porEstado.setString(1, ESTADOS[rnd.nextInt(ESTADOS.length)]);
+                latencias[1][i] = ejecutar(porEstado);
+                porReferencia.setString(1, "REF-" + fila);
+                latencias[2][i] = ejecutar(porReferencia);
+            }
+        }
+        return latencias;
+    }
+
+    private static long ejecutar(PreparedStatement ps) throws SQLException {
+        long inicio = System.nanoTime();
+        try (ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                rs.getLong(1);
+            }
+        }
+        return (System.nanoTime() - inicio) / 1_000;
+    }
+
+    // Unas dos filas por cita, como en producción
+    private static long citaId(int fila, int filas) {
+        return 1 + (fila * 7919L) % Math.max(1, filas / 2);
+    }
+
+    private static long percentil(long[] valores, int p) {
+        long[] ordenados = valores.clone();
+        Arrays.sort(ordenados);
+        return ordenados[Math.min(ordenados.length - 1, ordenados.length * p / 100)];
+    }
+}
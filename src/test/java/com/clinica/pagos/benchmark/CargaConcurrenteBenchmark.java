@@ -0,0 +1,84 @@
+package com.clinica.pagos.benchmark;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Comparación del modo de hilos de plataforma con el de hilos virtuales ({@code spring.threads.virtual.enabled})
+ * con 1.000, 5.000 y 10.000 clientes concurrentes. Cada combinación es una ejecución completa de {@link ArnesCarga}:
+ * servicios de citas y notificaciones simulados ({@link ServicioStub}), aplicación sobre H2 y carga durante
+ * {@code --duracion} segundos. Al final muestra, por modo y nivel, las respuestas correctas por segundo, p50 y p99
+ * (de todas las respuestas, errores incluidos) y los errores.
+ * <p>
+ * Por defecto simula una ralentización del servicio de citas: {@code GET /pagos/{id}} con la caché de citas
+ * desactivada, así que cada petición espera la latencia del stub (100 ± 20 ms), y un pool de conexiones de Feign
+ * que no limita la concurrencia saliente. Cualquier opción del arnés o propiedad de Spring sustituye a estas.
+ * <pre>
+ * mvn -Pcarga test -Dcarga.clase=com.clinica.pagos.benchmark.CargaConcurrenteBenchmark \
+ *     -Dcarga.args="--niveles=1000,5000,10000 --duracion=60"
+ * </pre>
+ * Resultados con las opciones por defecto (60 s medidos tras 30 s de calentamiento) en 1 vCPU, 5 GB y JDK 21:
+ * <pre>
+ * hilos        clientes    ok/s  p50 (ms)  p99 (ms)  errores
+ * plataforma       1000    75.7   11172.1   17649.6        0
+ * plataforma       5000    18.0    2965.9   58329.2        0
+ * plataforma      10000     7.9   10006.3   11784.3     5299
+ * virtuales        1000    78.1   15095.6   15567.8        0
+ * virtuales        5000   103.3   16592.3   35813.2      244
+ * virtuales       10000   739.0    3968.5   15644.9    34508
+ * </pre>
+ * Con un solo núcleo para el generador, los stubs, la aplicación y H2 el límite es la CPU (unas 75-105 respuestas
+ * por segundo), no los hilos: con 1.000 clientes los dos modos rinden igual. Con 5.000 los 200 hilos de Tomcat
+ * dejan miles de conexiones esperando y el modo de plataforma cae a 18 ok/s con un p99 de casi un minuto, mientras
+ * que el virtual sigue en el límite de CPU. Con 10.000 ambos superan las 8.192 conexiones de Tomcat y los errores
+ * son conexiones rechazadas. La fila virtual de 10.000 no es comparable: el stub de citas recibió solo 4.466
+ * llamadas porque, con la CPU saturada, Caffeine retrasa el desalojo de {@code max-size=0} y sirve citas desde la
+ * caché. Para medir el techo real (clientes / latencia del stub) hay que repetirlo en una máquina con varios núcleos.
+ */
+public class CargaConcurrenteBenchmark {
+
+    private static final Map<String, String> POR_DEFECTO = Map.ofEntries(
+            Map.entry("mezcla", "leer:100"),
+            Map.entry("duracion", "60"),
+            Map.entry("calentamiento", "30"),
+            Map.entry("latencia-citas", "100"),
+            Map.entry("jitter-citas", "20"),
+            Map.entry("citas.cache.max-size", "0"),
+            Map.entry("spring.cloud.openfeign.httpclient.max-connections", "20000"),
+            Map.entry("spring.cloud.openfeign.httpclient.max-connections-per-route", "20000"),
+            // Sin plazo ni circuito que corten la espera: se mide cuánto tarda, no cuánto se degrada
+            Map.entry("spring.cloud.openfeign.client.config.citas-service.read-timeout", "60000"),
+            Map.entry("citas.circuit-breaker.llamada-lenta", "60s"));
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> opciones = new LinkedHashMap<>();
+        POR_DEFECTO.forEach(opciones::put);
+        for (String arg : args) {
+            int igual = arg.indexOf('=');
+            if (arg.startsWith("--") && igual > 2) {
+                opciones.put(arg.substring(2, igual), arg.substring(igual + 1));
+            }
+        }
+        String[] niveles = opciones.getOrDefault("niveles", "1000,5000,10000").split(",");
+        long segundos = Long.parseLong(opciones.get("duracion"));
+
+        List<String> filas = new ArrayList<>();
+        for (boolean virtuales : new boolean[] { false, true }) {
+            for (String nivel : niveles) {
+                List<String> argumentos = new ArrayList<>();
+                opciones.forEach((clave, valor) -> argumentos.add("--" + clave + "=" + valor));
+                argumentos.add("--clientes=" + nivel.trim());
+                argumentos.add("--spring.threads.virtual.enabled=" + virtuales);
+                Map<String, ArnesCarga.Medicion> mediciones = ArnesCarga.ejecutar(argumentos.toArray(String[]::new));
+                mediciones.forEach((operacion, m) -> filas.add(String.format("%-11s %9s %-11s %10.1f %9.1f %9.1f %8d",
+                        virtuales ? "virtuales" : "plataforma", nivel.trim(), operacion,
+                        (m.total() - m.errores()) / (double) segundos, m.percentil(0.50), m.percentil(0.99), m.errores())));
+            }
+        }
+
+        System.out.printf("%n%-11s %9s %-11s %10s %9s %9s %8s%n", "hilos", "clientes", "operación", "ok/s", "p50 (ms)", "p99 (ms)", "errores");
+        filas.forEach(System.out::println);
+    }
+}
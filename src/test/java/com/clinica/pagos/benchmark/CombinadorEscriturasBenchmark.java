@@ -0,0 +1,73 @@
+package com.clinica.pagos.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Throughput de escritura (POST y PUT /pagos) con y sin el combinador de escrituras ({@code pagos.combinador.*})
+ * para varios tamaños del pool de Hikari. Para cada tamaño ejecuta {@link ArnesCarga} dos veces contra el mismo
+ * MySQL local, con muchos más clientes que conexiones, y compara peticiones por segundo, p99 y errores.
+ * <p>
+ * Con el combinador habilitado sus hilos se ajustan al pool (una conexión libre para lecturas y citas).
+ * Los argumentos se pasan tal cual al arnés:
+ * <pre>
+ * java -cp target/test-classes:target/classes:&lt;classpath&gt; com.clinica.pagos.benchmark.CombinadorEscriturasBenchmark \
+ *     --pools=4,8,16 --clientes=400 --duracion=60
+ * </pre>
+ */
+public class CombinadorEscriturasBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        List<String> comunes = new ArrayList<>(List.of("--bd=mysql", "--mezcla=crear:60,actualizar:40", "--clientes=400",
+                "--latencia-citas=5", "--jitter-citas=2"));
+        String pools = "4,8,16";
+        long segundos = 30;
+        for (String arg : args) {
+            if (arg.startsWith("--pools=")) {
+                pools = arg.substring("--pools=".length());
+            } else {
+                comunes.add(arg); // los argumentos explícitos tienen prioridad
+                if (arg.startsWith("--duracion=")) {
+                    segundos = Long.parseLong(arg.substring("--duracion=".length()));
+                }
+            }
+        }
+
+        Map<String, double[]> filas = new LinkedHashMap<>();
+        for (String texto : pools.split(",")) {
+            int pool = Integer.parseInt(texto.trim());
+            List<String> base = new ArrayList<>(comunes);
+            base.add("--spring.datasource.hikari.maximum-pool-size=" + pool);
+            base.add("--pagos.combinador.habilitado=false");
+            System.out.printf("=== Pool %d, sin combinador ===%n", pool);
+            Map<String, ArnesCarga.Medicion> sin = ArnesCarga.ejecutar(base.toArray(String[]::new));
+
+            List<String> combinado = new ArrayList<>(comunes);
+            combinado.add("--spring.datasource.hikari.maximum-pool-size=" + pool);
+            combinado.add("--pagos.combinador.habilitado=true");
+            combinado.add("--pagos.combinador.hilos=" + Math.max(1, pool - 1));
+            System.out.printf("%n=== Pool %d, con combinador ===%n", pool);
+            Map<String, ArnesCarga.Medicion> con = ArnesCarga.ejecutar(combinado.toArray(String[]::new));
+
+            for (String operacion : sin.keySet()) {
+                ArnesCarga.Medicion a = sin.get(operacion);
+                ArnesCarga.Medicion b = con.get(operacion);
+                filas.put(pool + " " + operacion, new double[] {
+                        a.total() / (double) segundos, b.total() / (double) segundos,
+                        a.percentil(0.99), b.percentil(0.99), a.errores(), b.errores() });
+            }
+            System.out.println();
+        }
+
+        System.out.printf("%n%-6s %-12s %12s %12s %8s %12s %12s %8s %8s%n", "pool", "operación",
+                "req/s sin", "req/s con", "Δ", "p99 sin", "p99 con", "err sin", "err con");
+        filas.forEach((clave, f) -> {
+            String[] partes = clave.split(" ");
+            System.out.printf("%-6s %-12s %12.1f %12.1f %7.1f%% %12.1f %12.1f %8d %8d%n", partes[0], partes[1],
+                    f[0], f[1], f[0] > 0 ? (f[1] - f[0]) * 100 / f[0] : 0, f[2], f[3], (long) f[4], (long) f[5]);
+        });
+    }
+}
@@ -0,0 +1,72 @@
+package com.clinica.pagos.benchmark;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.clinica.pagos.domain.dto.PagoDTO;
+import com.clinica.pagos.infrastructure.client.dto.CitaDTO;
+import com.clinica.pagos.infrastructure.entity.EstadoPago;
+import com.clinica.pagos.infrastructure.entity.MetodoPago;
+import com.clinica.pagos.infrastructure.entity.Pago;
+
+/**
+ * Datos sintéticos compartidos por los benchmarks.
+ */
+final class DatosBenchmark {
+
+    private static final LocalDateTime FECHA = LocalDateTime.of(2025, 3, 14, 10, 30, 15);
+
+    private DatosBenchmark() {}
+
+    static Pago pago(long id) {
+        Pago pago = new Pago(id / 2 + 1, BigDecimal.valueOf(1_000 + id % 90_000, 2), MetodoPago.values()[(int) (id % 3)],
+                FECHA.plusMinutes(id), EstadoPago.values()[(int) (id % 3)], "REF-" + id);
+        pago.setId(id);
+        return pago;
+    }
+
+    static List<Pago> pagos(int cantidad) {
+        List<Pago> pagos = new ArrayList<>(cantidad);
+        for (long id = 1; id <= cantidad; id++) {
+            pagos.add(pago(id));
+        }
+        return pagos;
+    }
+
+    static PagoDTO pagoDTO(long id, long citaId) {
+        PagoDTO dto = new PagoDTO();
+        dto.setId(id);
+        dto.setCitaId(citaId);
+        dto.setMonto(BigDecimal.valueOf(1_000 + id % 90_000, 2));
+        dto.setMetodoPago("TARJETA");
+        dto.setFechaPago(FECHA.plusMinutes(id));
+        dto.setEstado("COMPLETADO");
+        dto.setReferencia("REF-" + id);
+        return dto;
+    }
+
+    static List<PagoDTO> pagosDTO(int cantidad) {
+        List<PagoDTO> pagos = new ArrayList<>(cantidad);
+        for (long id = 1; id <= cantidad; id++) {
+            PagoDTO dto = pagoDTO(id, id / 2 + 1);
+            dto.setNombrePaciente("Paciente " + id);
+            dto.setNombreMedico("Médico " + id % 50);
+            pagos.add(dto);
+        }
+        return pagos;
+    }
+
+    static CitaDTO cita(long id) {
+        CitaDTO cita = new CitaDTO();
+        cita.setId(id);
+        cita.setPacienteId(id * 10);
+        cita.setMedicoId(id % 50);
+        cita.setFechaHora(FECHA);
+        cita.setNombrePaciente("Paciente " + id);
+        cita.setNombreMedico("Médico " + id % 50);
+        cita.setEmailPaciente("paciente" + id + "@example.com");
+        return cita;
+    }
+}
@@ -0,0 +1,133 @@
+package com.clinica.pagos.benchmark;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.clinica.pagos.domain.dto.PagoDTO;
+import com.clinica.pagos.domain.repository.IPago;
+import com.clinica.pagos.domain.service.PagoService;
+import com.clinica.pagos.infrastructure.client.CitaBatchLoader;
+import com.clinica.pagos.infrastructure.client.CitaCache;
+import com.clinica.pagos.infrastructure.client.CitaClient;
+import com.clinica.pagos.infrastructure.client.dto.CitaDTO;
+
+/**
+ * Enriquecimiento de pagos ({@code PagoService.enriquecerPago} / {@code enriquecerPagos}) contra un
+ * CitaClient en proceso con latencia configurable. {@code citasDistintas} controla la tasa de
+ * aciertos de CitaCache: con pocas citas casi todo sale de caché, con muchas casi nada.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EnriquecimientoBenchmark {
+
+    @Param({ "0", "2" })
+    long latenciaMs;
+
+    @Param({ "100", "1000000" })
+    long citasDistintas;
+
+    private PagoService svc;
+    private ExecutorService executor;
+
+    @Setup(Level.Trial)
+    public void preparar() {
+        CitaClient citaClient = new CitaClient() {
+            @Override
+            public CitaDTO getCitaById(Long id) {
+                esperar();
+                return DatosBenchmark.cita(id);
+            }
+
+            @Override
+            public List<CitaDTO> getCitasByIds(List<Long> ids) {
+                esperar();
+                List<CitaDTO> citas = new ArrayList<>(ids.size());
+                ids.forEach(id -> citas.add(DatosBenchmark.cita(id)));
+                return citas;
+            }
+        };
+
+        IPago repo = mock(IPago.class);
+        when(repo.getById(anyLong())).thenAnswer(inv -> Optional.of(DatosBenchmark.pagoDTO(inv.getArgument(0), citaAleatoria())));
+        when(repo.getPage(any(), anyInt())).thenAnswer(inv -> {
+            int limite = inv.getArgument(1);
+            List<PagoDTO> pagos = new ArrayList<>(limite);
+            for (long id = 1; id <= limite; id++) {
+                pagos.add(DatosBenchmark.pagoDTO(id, citaAleatoria()));
+            }
+            return pagos;
+        });
+
+        executor = Executors.newFixedThreadPool(8);
+        CitaCache citaCache = new CitaCache(citaClient, 10_000, Duration.ofMinutes(5), Duration.ofSeconds(30));
+        CitaBatchLoader loader = new CitaBatchLoader(8);
+        ReflectionTestUtils.setField(loader, "citaClient", citaClient);
+        ReflectionTestUtils.setField(loader, "citaCache", citaCache);
+        ReflectionTestUtils.setField(loader, "citasExecutor", executor);
+        ReflectionTestUtils.setField(loader, "batchSize", 200);
+        ReflectionTestUtils.setField(loader, "reintentoBatchMs", 300_000L);
+        ReflectionTestUtils.setField(loader, "plazoMs", 3_000L);
+
+        svc = new PagoService();
+        ReflectionTestUtils.setField(svc, "repo", repo);
+        ReflectionTestUtils.setField(svc, "citaCache", citaCache);
+        ReflectionTestUtils.setField(svc, "citaBatchLoader", loader);
+    }
+
+    @TearDown(Level.Trial)
+    public void cerrar() {
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public Optional<PagoDTO> enriquecerPago() {
+        return svc.obtenerPorId(1L);
+    }
+
+    @Benchmark
+    public List<PagoDTO> enriquecerPagina100() {
+        return svc.obtenerPagina(null, 100);
+    }
+
+    private long citaAleatoria() {
+        return ThreadLocalRandom.current().nextLong(1, citasDistintas + 1);
+    }
+
+    private void esperar() {
+        if (latenciaMs > 0) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(latenciaMs));
+        }
+    }
+}
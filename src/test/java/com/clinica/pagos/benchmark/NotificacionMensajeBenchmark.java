@@ -0,0 +1,71 @@
+package com.clinica.pagos.benchmark;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.clinica.pagos.domain.dto.PagoDTO;
+import com.clinica.pagos.domain.service.NotificacionPagoBuilder;
+import com.clinica.pagos.infrastructure.client.dto.CitaDTO;
+import com.clinica.pagos.infrastructure.client.dto.NotificacionDTO;
+
+/**
+ * Construcción del mensaje de notificación de un pago: plantillas compiladas de {@link NotificacionPagoBuilder}
+ * frente a la implementación anterior (String.format con BigDecimal y concatenación de la referencia).
+ * Con {@code mvn -Pjmh test} el profiler de GC da los bytes asignados por operación de cada variante.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NotificacionMensajeBenchmark {
+
+    private static final String MENSAJE_COMPLETADO =
+            "Estimado(a) %s,\n\nSu pago de %.2f USD para la cita con el Dr. %s ha sido completado exitosamente.\n\nReferencia de pago: %s";
+
+    private final NotificacionPagoBuilder builder = new NotificacionPagoBuilder();
+    private final PagoDTO pago = DatosBenchmark.pagoDTO(42, 7);
+    private final CitaDTO cita = DatosBenchmark.cita(7);
+
+    @Setup
+    public void comprobarEquivalencia() {
+        String plantilla = builder.construir(pago, "COMPLETADO", cita).getMensaje();
+        String formato = String.format(Locale.ROOT, MENSAJE_COMPLETADO, cita.getNombrePaciente(), pago.getMonto(), cita.getNombreMedico(), pago.getReferencia());
+        if (!plantilla.equals(formato)) {
+            throw new IllegalStateException("La plantilla no reproduce el mensaje anterior:\n" + plantilla + "\n---\n" + formato);
+        }
+    }
+
+    @Benchmark
+    public NotificacionDTO completado() {
+        return builder.construir(pago, "COMPLETADO", cita);
+    }
+
+    @Benchmark
+    public NotificacionDTO anulado() {
+        return builder.construir(pago, "ANULADO", cita);
+    }
+
+    // Lo que hacía construir() para COMPLETADO antes de las plantillas
+    @Benchmark
+    public NotificacionDTO completadoStringFormat() {
+        String mensaje = String.format(MENSAJE_COMPLETADO,
+                cita != null ? cita.getNombrePaciente() : "Paciente", pago.getMonto(), cita != null ? cita.getNombreMedico() : "Médico", pago.getReferencia());
+        NotificacionDTO notificacion = new NotificacionDTO(cita.getPacienteId(), "PAGO_COMPLETADO",
+                "Confirmación de Pago Completado para su Cita", mensaje, "EMAIL", "PagoService:" + pago.getId());
+        notificacion.setEmailDestinatario(cita.getEmailPaciente());
+        return notificacion;
+    }
+}
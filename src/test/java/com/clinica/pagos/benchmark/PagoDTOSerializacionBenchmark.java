@@ -0,0 +1,78 @@
+package com.clinica.pagos.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.clinica.pagos.domain.dto.PagoDTO;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+
+/**
+ * Serialización de listados de PagoDTO en JSON, CBOR y Smile, con la misma configuración de fechas que usa
+ * Spring Boot. El tamaño de cada codificación se muestra al preparar el estado.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PagoDTOSerializacionBenchmark {
+
+    @Param({ "100", "10000" })
+    int tamanio;
+
+    private final ObjectMapper objectMapper = JsonMapper.builder()
+            .addModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .build();
+    private final ObjectMapper cbor = CBORMapper.builder()
+            .addModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .build();
+    private final ObjectMapper smile = SmileMapper.builder()
+            .addModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .build();
+    private List<PagoDTO> pagos;
+
+    @Setup
+    public void preparar() throws JsonProcessingException {
+        pagos = DatosBenchmark.pagosDTO(tamanio);
+        System.out.printf("%n%d pagos: JSON %d bytes, CBOR %d bytes, Smile %d bytes%n", tamanio,
+                objectMapper.writeValueAsBytes(pagos).length, cbor.writeValueAsBytes(pagos).length,
+                smile.writeValueAsBytes(pagos).length);
+    }
+
+    @Benchmark
+    public byte[] serializarListado() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(pagos);
+    }
+
+    @Benchmark
+    public byte[] serializarListadoCbor() throws JsonProcessingException {
+        return cbor.writeValueAsBytes(pagos);
+    }
+
+    @Benchmark
+    public byte[] serializarListadoSmile() throws JsonProcessingException {
+        return smile.writeValueAsBytes(pagos);
+    }
+}
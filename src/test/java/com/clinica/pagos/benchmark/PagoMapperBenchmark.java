@@ -0,0 +1,49 @@
+package com.clinica.pagos.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.mapstruct.factory.Mappers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.clinica.pagos.domain.dto.PagoDTO;
+import com.clinica.pagos.infrastructure.entity.Pago;
+import com.clinica.pagos.infrastructure.mapper.PagoMapper;
+
+/**
+ * Coste de {@link PagoMapper#toPagosDTO} sobre listados grandes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PagoMapperBenchmark {
+
+    @Param({ "1000", "100000" })
+    int tamanio;
+
+    private final PagoMapper mapper = Mappers.getMapper(PagoMapper.class);
+    private List<Pago> pagos;
+
+    @Setup
+    public void preparar() {
+        pagos = DatosBenchmark.pagos(tamanio);
+    }
+
+    @Benchmark
+    public List<PagoDTO> toPagosDTO() {
+        return mapper.toPagosDTO(pagos);
+    }
+}
@@ -0,0 +1,49 @@
+package com.clinica.pagos.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Diferencia de latencia entre la configuración por defecto y el perfil {@code prod} (caché de segundo nivel
+ * y de consultas, sin log de SQL, caché de sentencias y pool de Hikari ajustado). Ejecuta {@link ArnesCarga}
+ * dos veces contra el mismo MySQL local, una con cada configuración, y compara p50/p99 por operación.
+ * <p>
+ * La mezcla por defecto es de lectura (leer, primera página por estado, listar) con algo de escritura, para
+ * que la invalidación de la caché también cuente. Los argumentos se pasan tal cual al arnés:
+ * <pre>
+ * java -cp target/test-classes:target/classes:&lt;classpath&gt; com.clinica.pagos.benchmark.PerfilProdBenchmark \
+ *     --pagos=200000 --clientes=100 --duracion=60
+ * </pre>
+ */
+public class PerfilProdBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        List<String> comunes = new ArrayList<>(List.of("--bd=mysql", "--mezcla=crear:5,actualizar:5,leer:40,estado:30,listar:20"));
+        comunes.addAll(Arrays.asList(args)); // los argumentos explícitos tienen prioridad
+
+        System.out.println("=== Perfil por defecto ===");
+        Map<String, ArnesCarga.Medicion> base = ArnesCarga.ejecutar(comunes.toArray(String[]::new));
+
+        List<String> prod = new ArrayList<>(comunes);
+        prod.add("--spring.profiles.active=prod");
+        System.out.println("\n=== Perfil prod ===");
+        Map<String, ArnesCarga.Medicion> optimizado = ArnesCarga.ejecutar(prod.toArray(String[]::new));
+
+        System.out.printf("%n%-12s %14s %14s %10s %14s %14s %10s%n",
+                "operación", "p50 base (ms)", "p50 prod (ms)", "Δ p50", "p99 base (ms)", "p99 prod (ms)", "Δ p99");
+        base.forEach((operacion, medicion) -> {
+            ArnesCarga.Medicion otra = optimizado.get(operacion);
+            double p50 = medicion.percentil(0.50);
+            double p99 = medicion.percentil(0.99);
+            System.out.printf("%-12s %14.1f %14.1f %9.1f%% %14.1f %14.1f %9.1f%%%n", operacion,
+                    p50, otra.percentil(0.50), delta(p50, otra.percentil(0.50)),
+                    p99, otra.percentil(0.99), delta(p99, otra.percentil(0.99)));
+        });
+    }
+
+    private static double delta(double antes, double despues) {
+        return antes > 0 ? (despues - antes) * 100 / antes : 0;
+    }
+}
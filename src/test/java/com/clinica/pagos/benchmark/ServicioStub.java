@@ -0,0 +1,153 @@
+package com.clinica.pagos.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Servidor HTTP en proceso que simula el servicio de citas o el de notificaciones para el arnés de carga.
+ * Cada petición espera {@code latenciaMs ± jitterMs} (uniforme) y falla con 503 con probabilidad
+ * {@code tasaError}. Atiende cada petición en un hilo virtual, así que la latencia simulada no limita
+ * la concurrencia del propio stub.
+ * <ul>
+ *   <li>Citas: {@code GET /citas/{id}} y {@code GET /citas?ids=..}. Existen las citas 1..{@code citas};
+ *       el resto responde 404 (o no aparece en el lote).</li>
+ *   <li>Notificaciones: {@code POST /notificaciones/enviar}, descarta el cuerpo y responde 200.</li>
+ * </ul>
+ */
+final class ServicioStub implements AutoCloseable {
+
+    /** Comportamiento simulado de un servicio. */
+    record Perfil(long latenciaMs, long jitterMs, double tasaError) {}
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Perfil perfil;
+    private final AtomicLong peticiones = new AtomicLong();
+    private final AtomicLong errores = new AtomicLong();
+
+    private ServicioStub(Perfil perfil) throws IOException {
+        this.perfil = perfil;
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        this.server.setExecutor(executor);
+    }
+
+    static ServicioStub citas(Perfil perfil, long citas) throws IOException {
+        ServicioStub stub = new ServicioStub(perfil);
+        stub.server.createContext("/citas", intercambio -> stub.atender(intercambio, () -> responderCitas(intercambio, citas)));
+        stub.server.start();
+        return stub;
+    }
+
+    static ServicioStub notificaciones(Perfil perfil) throws IOException {
+        ServicioStub stub = new ServicioStub(perfil);
+        stub.server.createContext("/notificaciones", intercambio -> stub.atender(intercambio, () -> {
+            try (InputStream cuerpo = intercambio.getRequestBody()) {
+                cuerpo.transferTo(OutputStream.nullOutputStream());
+            }
+            intercambio.sendResponseHeaders(200, -1);
+        }));
+        stub.server.start();
+        return stub;
+    }
+
+    String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    long peticiones() {
+        return peticiones.get();
+    }
+
+    long errores() {
+        return errores.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private interface Respuesta {
+        void enviar() throws IOException;
+    }
+
+    private void atender(HttpExchange intercambio, Respuesta respuesta) throws IOException {
+        peticiones.incrementAndGet();
+        try (intercambio) {
+            ThreadLocalRandom rnd = ThreadLocalRandom.current();
+            long espera = perfil.latenciaMs() + (perfil.jitterMs() > 0 ? rnd.nextLong(-perfil.jitterMs(), perfil.jitterMs() + 1) : 0);
+            if (espera > 0) {
+                Thread.sleep(espera);
+            }
+            if (rnd.nextDouble() < perfil.tasaError()) {
+                errores.incrementAndGet();
+                intercambio.sendResponseHeaders(503, -1);
+                return;
+            }
+            respuesta.enviar();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void responderCitas(HttpExchange intercambio, long citas) throws IOException {
+        URI uri = intercambio.getRequestURI();
+        String ruta = uri.getPath();
+        if (ruta.startsWith("/citas/")) {
+            long id = Long.parseLong(ruta.substring("/citas/".length()));
+            if (id < 1 || id > citas) {
+                intercambio.sendResponseHeaders(404, -1);
+                return;
+            }
+            enviarJson(intercambio, cita(id));
+            return;
+        }
+        // GET /citas?ids=1&ids=2 (Feign) o ?ids=1,2 (WebClient)
+        List<String> encontradas = new ArrayList<>();
+        String consulta = uri.getRawQuery();
+        if (consulta != null) {
+            for (String parametro : consulta.split("&")) {
+                if (!parametro.startsWith("ids=")) {
+                    continue;
+                }
+                for (String valor : parametro.substring(4).split("%2C|,")) {
+                    long id = Long.parseLong(valor);
+                    if (id >= 1 && id <= citas) {
+                        encontradas.add(cita(id));
+                    }
+                }
+            }
+        }
+        enviarJson(intercambio, "[" + String.join(",", encontradas) + "]");
+    }
+
+    private static String cita(long id) {
+        return "{\"id\":" + id + ",\"pacienteId\":" + (id % 5_000 + 1) + ",\"medicoId\":" + (id % 40 + 1)
+                + ",\"fechaHora\":\"2025-03-14T10:30:00\",\"motivo\":\"Consulta\",\"estado\":\"PROGRAMADA\""
+                + ",\"nombrePaciente\":\"Paciente " + id + "\",\"nombreMedico\":\"Médico " + (id % 40 + 1) + "\""
+                + ",\"especialidadMedico\":\"Medicina general\",\"emailPaciente\":\"paciente" + id + "@example.com\"}";
+    }
+
+    private static void enviarJson(HttpExchange intercambio, String json) throws IOException {
+        byte[] cuerpo = json.getBytes(StandardCharsets.UTF_8);
+        intercambio.getResponseHeaders().set("Content-Type", "application/json");
+        intercambio.sendResponseHeaders(200, cuerpo.length);
+        try (OutputStream out = intercambio.getResponseBody()) {
+            out.write(cuerpo);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.clinica.pagos.domain.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.clinica.pagos.domain.dto.PagoDTO;
+import com.clinica.pagos.infrastructure.client.dto.CitaDTO;
+
+class PlantillaNotificacionTest {
+
+    @Test
+    void lasVariablesSeSustituyenYSinCitaSeUsanLosNombresGenericos() {
+        PlantillaNotificacion plantilla = PlantillaNotificacion.compilar(
+                "Hola {paciente}, pago {pagoId} de la cita {citaId} con {medico}: {monto} ({metodo}, {referencia})");
+        CitaDTO cita = new CitaDTO();
+        cita.setNombrePaciente("Ana Pérez");
+        cita.setNombreMedico("Dr. Ruiz");
+
+        assertThat(renderizar(plantilla, pago("125.50"), cita))
+                .isEqualTo("Hola Ana Pérez, pago 7 de la cita 3 con Dr. Ruiz: 125.50 (TARJETA, REF-7)");
+        assertThat(renderizar(plantilla, pago("125.50"), null))
+                .isEqualTo("Hola Paciente, pago 7 de la cita 3 con Médico: 125.50 (TARJETA, REF-7)");
+    }
+
+    @Test
+    void lasLlavesDoblesSonLiterales() {
+        PlantillaNotificacion plantilla = PlantillaNotificacion.compilar("{{pagoId}} = {pagoId}, }} y {{}}");
+
+        assertThat(renderizar(plantilla, pago("1.00"), null)).isEqualTo("{pagoId} = 7, } y {}");
+        assertThat(PlantillaNotificacion.compilar("{{literal}}").constante()).isEqualTo("{literal}");
+        assertThat(PlantillaNotificacion.compilar("").constante()).isEmpty();
+        assertThat(plantilla.constante()).isNull();
+    }
+
+    @Test
+    void unaLlaveSinCerrarOUnaVariableDesconocidaNoCompilan() {
+        assertThatThrownBy(() -> PlantillaNotificacion.compilar("Pago {monto"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("sin cerrar");
+        assertThatThrownBy(() -> PlantillaNotificacion.compilar("Hola {nombre}"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("{nombre}");
+        assertThatThrownBy(() -> PlantillaNotificacion.compilar("Hola {}"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void elMontoCoincideConFormatoDosDecimales() {
+        for (String monto : List.of("0", "0.00", "0.005", "0.004", "-0.005", "-0.004", "-0.001", "1.005", "2.675",
+                "-125.50", "-0.01", "12.3", "12.345", "12.3449", "7", "1E+3", "123456789.999",
+                "9999999999999.99", "9999999999999.995", "10000000000000", "10000000000000.005",
+                "-10000000000000.00", "123456789012345678.126")) {
+            assertThat(anadirMonto(new BigDecimal(monto))).as(monto).isEqualTo(formato(new BigDecimal(monto)));
+        }
+    }
+
+    @Test
+    void elMontoCoincideConFormatoDosDecimalesEnMontosAleatorios() {
+        Random rnd = new Random(11);
+        for (int i = 0; i < 20_000; i++) {
+            // Escala 0 a 4 y hasta 16 cifras: cubre el camino por double y el de toPlainString
+            BigDecimal monto = BigDecimal.valueOf(rnd.nextLong() % 10_000_000_000_000_000L, rnd.nextInt(5));
+            assertThat(anadirMonto(monto)).as(monto.toPlainString()).isEqualTo(formato(monto));
+        }
+    }
+
+    @Test
+    void unMontoNuloSeEscribeComoNull() {
+        assertThat(anadirMonto(null)).isEqualTo("null");
+    }
+
+    private static String renderizar(PlantillaNotificacion plantilla, PagoDTO pago, CitaDTO cita) {
+        StringBuilder destino = new StringBuilder();
+        plantilla.renderizar(destino, pago, cita);
+        return destino.toString();
+    }
+
+    private static String anadirMonto(BigDecimal monto) {
+        StringBuilder destino = new StringBuilder();
+        PlantillaNotificacion.anadirMonto(destino, monto);
+        return destino.toString();
+    }
+
+    private static String formato(BigDecimal monto) {
+        return String.format(Locale.ROOT, "%.2f", monto);
+    }
+
+    private static PagoDTO pago(String monto) {
+        PagoDTO pago = new PagoDTO();
+        pago.setId(7L);
+        pago.setCitaId(3L);
+        pago.setMonto(new BigDecimal(monto));
+        pago.setMetodoPago("TARJETA");
+        pago.setReferencia("REF-7");
+        return pago;
+    }
+}
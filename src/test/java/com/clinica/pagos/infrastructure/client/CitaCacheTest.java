@@ -0,0 +1,66 @@
+package com.clinica.pagos.infrastructure.client;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+import com.clinica.pagos.infrastructure.client.dto.CitaDTO;
+
+class CitaCacheTest {
+
+    private final CitaClient citaClient = mock(CitaClient.class);
+    private final CitaCache cache = new CitaCache(citaClient, 100, Duration.ofMinutes(5), Duration.ofSeconds(30));
+
+    @Test
+    void fallosConcurrentesSobreElMismoIdCompartenUnaLlamada() throws Exception {
+        CountDownLatch llamada = new CountDownLatch(1);
+        CountDownLatch liberar = new CountDownLatch(1);
+        CitaDTO cita = new CitaDTO();
+        when(citaClient.getCitaById(4L)).thenAnswer(inv -> {
+            llamada.countDown();
+            liberar.await();
+            return cita;
+        });
+
+        try (ExecutorService hilos = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<Optional<CitaDTO>>> resultados = new ArrayList<>();
+            resultados.add(hilos.submit(() -> cache.buscar(4L)));
+            llamada.await();
+            for (int i = 0; i < 20; i++) {
+                resultados.add(hilos.submit(() -> cache.buscar(4L)));
+            }
+            liberar.countDown();
+            for (Future<Optional<CitaDTO>> resultado : resultados) {
+                assertThat(resultado.get()).containsSame(cita);
+            }
+        }
+
+        verify(citaClient, times(1)).getCitaById(4L);
+        assertThat(cache.buscar(4L)).containsSame(cita);
+        verify(citaClient, times(1)).getCitaById(4L);
+    }
+
+    @Test
+    void unErrorDeComunicacionNoSeCachea() {
+        CitaDTO cita = new CitaDTO();
+        when(citaClient.getCitaById(9L)).thenThrow(new CitasNoDisponiblesException("circuito abierto", null)).thenReturn(cita);
+
+        assertThatThrownBy(() -> cache.buscar(9L)).isInstanceOf(CitasNoDisponiblesException.class);
+        assertThat(cache.buscar(9L)).containsSame(cita);
+        assertThat(cache.tamanio()).isEqualTo(1);
+    }
+}
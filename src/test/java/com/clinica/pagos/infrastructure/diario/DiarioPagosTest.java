@@ -0,0 +1,160 @@
+package com.clinica.pagos.infrastructure.diario;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class DiarioPagosTest {
+
+    // Registros de 8 bytes: cabecera de segmento de 16 y cada registro ocupa 16 + 8
+    private static final int CABECERA_SEGMENTO = 16;
+    private static final int REGISTRO = 24;
+
+    @TempDir
+    Path directorio;
+
+    @Test
+    void reabrirDevuelveLosRegistrosDurablesEnOrden() throws Exception {
+        try (DiarioPagos diario = abrir(4096)) {
+            anadirDurables(diario, "pago-001", "pago-002", "pago-003");
+        }
+        try (DiarioPagos diario = abrir(4096)) {
+            assertThat(textos(diario.leerPendientes(10))).containsExactly("pago-001", "pago-002", "pago-003");
+            assertThat(diario.getUltimo()).isEqualTo(3);
+        }
+    }
+
+    @Test
+    void registroAMediasMarcaElFinalYSeSobrescribe() throws Exception {
+        try (DiarioPagos diario = abrir(4096)) {
+            anadirDurables(diario, "pago-001", "pago-002", "pago-003");
+        }
+        // Caída con el tercer registro sin su cabecera completa: la longitud llegó, el seq no
+        escribir(segmento(1), CABECERA_SEGMENTO + 2 * REGISTRO + 8, ByteBuffer.allocate(Long.BYTES).putLong(0, 0));
+
+        try (DiarioPagos diario = abrir(4096)) {
+            assertThat(textos(diario.leerPendientes(10))).containsExactly("pago-001", "pago-002");
+            assertThat(anadirDurables(diario, "pago-00X")).isEqualTo(3);
+        }
+        try (DiarioPagos diario = abrir(4096)) {
+            assertThat(textos(diario.leerPendientes(10))).containsExactly("pago-001", "pago-002", "pago-00X");
+        }
+    }
+
+    @Test
+    void crcIncorrectoDescartaElRegistroYLosPosteriores() throws Exception {
+        try (DiarioPagos diario = abrir(4096)) {
+            anadirDurables(diario, "pago-001", "pago-002", "pago-003");
+        }
+        // Un byte de los datos del segundo registro no llegó a disco
+        escribir(segmento(1), CABECERA_SEGMENTO + REGISTRO + 16, ByteBuffer.wrap(new byte[] { '#' }));
+
+        try (DiarioPagos diario = abrir(4096)) {
+            assertThat(textos(diario.leerPendientes(10))).containsExactly("pago-001");
+            assertThat(diario.getUltimo()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    void cursorPorDelanteDelDiarioSeAjustaAlUltimoRegistro() throws Exception {
+        try (DiarioPagos diario = abrir(4096)) {
+            anadirDurables(diario, "pago-001", "pago-002");
+        }
+        escribir(directorio.resolve("procesado"), 0, ByteBuffer.allocate(Long.BYTES).putLong(0, 10));
+
+        try (DiarioPagos diario = abrir(4096)) {
+            assertThat(diario.getProcesado()).isEqualTo(2);
+            assertThat(diario.getPendientes()).isZero();
+            assertThat(diario.leerPendientes(10)).isEmpty();
+            assertThat(anadirDurables(diario, "pago-003")).isEqualTo(3);
+            assertThat(textos(diario.leerPendientes(10))).containsExactly("pago-003");
+        }
+    }
+
+    @Test
+    void loConfirmadoNoSeVuelveALeerTrasReabrir() throws Exception {
+        try (DiarioPagos diario = abrir(4096)) {
+            anadirDurables(diario, "pago-001", "pago-002", "pago-003");
+            List<DiarioPagos.Entrada> leidas = diario.leerPendientes(2);
+            diario.confirmarProcesado(leidas.get(1));
+        }
+        try (DiarioPagos diario = abrir(4096)) {
+            assertThat(diario.getProcesado()).isEqualTo(2);
+            assertThat(textos(diario.leerPendientes(10))).containsExactly("pago-003");
+        }
+    }
+
+    @Test
+    void recuperaRegistrosRepartidosEnVariosSegmentos() throws Exception {
+        // Caben 3 registros por segmento: 7 registros ocupan 3 segmentos
+        int bytesSegmento = CABECERA_SEGMENTO + 3 * REGISTRO + Integer.BYTES;
+        try (DiarioPagos diario = abrir(bytesSegmento)) {
+            for (int i = 1; i <= 7; i++) {
+                anadirDurables(diario, String.format("pago-%03d", i));
+            }
+        }
+        try (Stream<Path> archivos = Files.list(directorio)) {
+            assertThat(archivos.filter(ruta -> ruta.getFileName().toString().matches("diario-\\d{16}\\.log"))).hasSize(3);
+        }
+        try (DiarioPagos diario = abrir(bytesSegmento)) {
+            assertThat(textos(diario.leerPendientes(10)))
+                    .containsExactly("pago-001", "pago-002", "pago-003", "pago-004", "pago-005", "pago-006", "pago-007");
+        }
+    }
+
+    @Test
+    void segmentoFueraDeSecuenciaSeDescarta() throws Exception {
+        int bytesSegmento = CABECERA_SEGMENTO + 3 * REGISTRO + Integer.BYTES;
+        try (DiarioPagos diario = abrir(bytesSegmento)) {
+            for (int i = 1; i <= 5; i++) {
+                anadirDurables(diario, String.format("pago-%03d", i));
+            }
+        }
+        // El primer segmento termina a medias: el segundo (seq 4 en adelante) ya no es consecutivo
+        escribir(segmento(1), CABECERA_SEGMENTO + 2 * REGISTRO + 4, ByteBuffer.allocate(Integer.BYTES).putInt(0, 0));
+
+        try (DiarioPagos diario = abrir(bytesSegmento)) {
+            assertThat(textos(diario.leerPendientes(10))).containsExactly("pago-001", "pago-002");
+        }
+        assertThat(Files.exists(segmento(4).resolveSibling(segmento(4).getFileName() + ".descartado"))).isTrue();
+    }
+
+    private DiarioPagos abrir(int bytesSegmento) throws IOException {
+        return new DiarioPagos(directorio, bytesSegmento, 0);
+    }
+
+    private static long anadirDurables(DiarioPagos diario, String... textos) throws InterruptedException {
+        long seq = 0;
+        for (String texto : textos) {
+            seq = diario.anadir(texto.getBytes(StandardCharsets.UTF_8));
+        }
+        assertThat(diario.esperarDurable(seq, 5_000)).isTrue();
+        return seq;
+    }
+
+    private static List<String> textos(List<DiarioPagos.Entrada> entradas) {
+        return entradas.stream().map(entrada -> new String(entrada.getDatos(), StandardCharsets.UTF_8)).toList();
+    }
+
+    private Path segmento(long primerSeq) {
+        return directorio.resolve(String.format("diario-%016d.log", primerSeq));
+    }
+
+    private static void escribir(Path archivo, long posicion, ByteBuffer bytes) throws IOException {
+        try (FileChannel canal = FileChannel.open(archivo, StandardOpenOption.WRITE)) {
+            canal.write(bytes, posicion);
+            canal.force(false);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.clinica.pagos.infrastructure.exportacion;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.clinica.pagos.domain.dto.PagoDTO;
+
+class EscritorColumnarTest {
+
+    private static final String[] ESTADOS = { "PENDIENTE", "COMPLETADO", "ANULADO", null };
+    private static final String[] METODOS = { "EFECTIVO", "TARJETA", "TRANSFERENCIA", null };
+    private static final String[] TEXTOS = { "REF-001", "Pago señal — cita nº 4", "患者の支払い", "tarjeta 💳", "", null };
+
+    @TempDir
+    Path directorio;
+
+    @Test
+    void variosGruposFusionadosSeLeenIgualQueSeEscribieron() throws IOException {
+        Random rnd = new Random(23);
+        List<PagoDTO> escritos = new ArrayList<>();
+        List<Path> partes = new ArrayList<>();
+        List<EscritorColumnar.GrupoColumnar> grupos = new ArrayList<>();
+        long id = 0;
+        // El último grupo va vacío: un tramo exportado sin pagos
+        int[] filasPorGrupo = { 1, 700, 3_000, 0 };
+        for (int g = 0; g < filasPorGrupo.length; g++) {
+            List<PagoDTO> grupo = new ArrayList<>();
+            for (int f = 0; f < filasPorGrupo[g]; f++) {
+                id += 1 + rnd.nextInt(rnd.nextInt(10) == 0 ? 1_000_000 : 3);
+                grupo.add(aleatorio(id, rnd));
+            }
+            Path parte = directorio.resolve("parte-" + g + ".pcol");
+            // Buffer pequeño: cada bloque comprimido se vacía al archivo varias veces
+            EscritorColumnar.GrupoColumnar escrito = escribir(parte, grupo, 256);
+            // Los tamaños llegan a fusionar desde el checkpoint, como en la exportación real
+            grupos.add(EscritorColumnar.GrupoColumnar.decodificar(escrito.codificar()));
+            partes.add(parte);
+            escritos.addAll(grupo);
+        }
+
+        Path archivo = directorio.resolve("pagos.pcol");
+        EscritorColumnar.fusionar(archivo, partes, grupos);
+
+        List<PagoDTO> leidos = leer(archivo);
+        assertThat(leidos).hasSize(escritos.size());
+        for (int i = 0; i < escritos.size(); i++) {
+            assertThat(leidos.get(i)).as("fila %d", i).usingRecursiveComparison().isEqualTo(escritos.get(i));
+        }
+    }
+
+    @Test
+    void unPagoConTodoNuloSalvoElIdSeConserva() throws IOException {
+        PagoDTO vacio = new PagoDTO();
+        vacio.setId(42L);
+        Path parte = directorio.resolve("parte.pcol");
+        Path archivo = directorio.resolve("pagos.pcol");
+
+        EscritorColumnar.fusionar(archivo, List.of(parte), List.of(escribir(parte, List.of(vacio), 4096)));
+
+        assertThat(leer(archivo)).singleElement().usingRecursiveComparison().isEqualTo(vacio);
+    }
+
+    @Test
+    void unArchivoQueNoEsColumnarSeRechaza() throws IOException {
+        Path archivo = directorio.resolve("otro.pcol");
+        Files.writeString(archivo, "id,monto\n1,10.00\n", StandardCharsets.UTF_8);
+
+        assertThatThrownBy(() -> leer(archivo)).isInstanceOf(IOException.class);
+    }
+
+    private static EscritorColumnar.GrupoColumnar escribir(Path parte, List<PagoDTO> pagos, int bytesBuffer) throws IOException {
+        EscritorColumnar escritor = new EscritorColumnar(parte, bytesBuffer);
+        try (escritor) {
+            pagos.forEach(escritor::escribir);
+        }
+        return escritor.getGrupo();
+    }
+
+    private static List<PagoDTO> leer(Path archivo) throws IOException {
+        List<PagoDTO> leidos = new ArrayList<>();
+        LectorColumnar.leer(archivo, leidos::add);
+        return leidos;
+    }
+
+    // Nulos en todas las columnas que los admiten, montos negativos y fechas anteriores a 1970
+    private static PagoDTO aleatorio(long id, Random rnd) {
+        PagoDTO pago = new PagoDTO();
+        pago.setId(id);
+        pago.setCitaId(rnd.nextInt(8) == 0 ? null : (long) rnd.nextInt(50_000));
+        pago.setMonto(rnd.nextInt(8) == 0 ? null : BigDecimal.valueOf(rnd.nextLong() % 100_000_000_000L, 2));
+        pago.setMetodoPago(METODOS[rnd.nextInt(METODOS.length)]);
+        pago.setFechaPago(rnd.nextInt(8) == 0 ? null
+                : LocalDateTime.of(1960 + rnd.nextInt(80), 1 + rnd.nextInt(12), 1 + rnd.nextInt(28),
+                        rnd.nextInt(24), rnd.nextInt(60), rnd.nextInt(60), rnd.nextInt(1_000_000) * 1_000));
+        pago.setEstado(ESTADOS[rnd.nextInt(ESTADOS.length)]);
+        pago.setReferencia(TEXTOS[rnd.nextInt(TEXTOS.length)]);
+        pago.setVersion(rnd.nextInt(8) == 0 ? null : (long) rnd.nextInt(20));
+        pago.setNombrePaciente(TEXTOS[rnd.nextInt(TEXTOS.length)]);
+        pago.setNombreMedico(TEXTOS[rnd.nextInt(TEXTOS.length)]);
+        return pago;
+    }
+}
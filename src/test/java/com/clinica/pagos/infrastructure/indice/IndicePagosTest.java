@@ -0,0 +1,199 @@
+package com.clinica.pagos.infrastructure.indice;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.clinica.pagos.domain.dto.EventoPagoDTO;
+import com.clinica.pagos.domain.dto.PagoDTO;
+import com.clinica.pagos.domain.repository.IEventosPago;
+import com.clinica.pagos.domain.repository.IPago;
+import com.clinica.pagos.domain.service.SolicitudInvalidaException;
+import com.clinica.pagos.infrastructure.entity.EstadoPago;
+import com.clinica.pagos.infrastructure.eventos.DifusorEventosPago;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class IndicePagosTest {
+
+    private static final String[] ESTADOS = { "PENDIENTE", "COMPLETADO", "ANULADO" };
+
+    private final IPago pagos = mock(IPago.class);
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    // Lo que devuelve el recorrido de la tabla al cargar
+    private final Map<Long, PagoDTO> tabla = new TreeMap<>();
+    // Capacidad pequeña para que las pruebas también hagan crecer las columnas
+    private final IndicePagos indice = new IndicePagos(16);
+    private long seq;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void preparar() {
+        doAnswer(inv -> {
+            tabla.values().forEach(pago -> ((Consumer<PagoDTO>) inv.getArgument(0)).accept(pago.copia()));
+            return null;
+        }).when(pagos).streamAll(any());
+        IEventosPago eventos = mock(IEventosPago.class);
+        when(eventos.ultimaSecuencia()).thenAnswer(inv -> seq);
+
+        ReflectionTestUtils.setField(indice, "pagos", pagos);
+        ReflectionTestUtils.setField(indice, "eventos", eventos);
+        ReflectionTestUtils.setField(indice, "difusor", mock(DifusorEventosPago.class));
+        ReflectionTestUtils.setField(indice, "objectMapper", objectMapper);
+    }
+
+    @Test
+    void lasPaginasPorEstadoRecorrenTodosLosPagosEnOrdenDeId() {
+        for (long id = 1; id <= 250; id++) {
+            tabla.put(id, pago(id, ESTADOS[(int) (id % 3)]));
+        }
+        indice.recargar();
+
+        List<Long> pendientes = recorrer("PENDIENTE", 7);
+
+        assertThat(pendientes).hasSize(83).isSorted().doesNotHaveDuplicates().allMatch(id -> id % 3 == 0);
+    }
+
+    @Test
+    void unCambioDeEstadoMueveElPagoDePaginaYUnaBajaLoQuita() {
+        for (long id = 1; id <= 10; id++) {
+            tabla.put(id, pago(id, "PENDIENTE"));
+        }
+        indice.recargar();
+        List<PagoDTO> primera = indice.getByEstado("PENDIENTE", null, 4);
+        assertThat(primera).extracting(PagoDTO::getId).containsExactly(1L, 2L, 3L, 4L);
+
+        // Entre una página y la siguiente: se cobra el 5, se anula el 2 y se borra el 6
+        assertThat(indice.entregar(List.of(
+                evento(EventoPagoDTO.ESTADO_CAMBIADO, pago(5L, "COMPLETADO")),
+                evento(EventoPagoDTO.ESTADO_CAMBIADO, pago(2L, "ANULADO")),
+                baja(6L)))).isTrue();
+
+        assertThat(indice.getByEstado("PENDIENTE", 4L, 4)).extracting(PagoDTO::getId).containsExactly(7L, 8L, 9L, 10L);
+        assertThat(indice.getByEstado("COMPLETADO", null, 4)).extracting(PagoDTO::getId).containsExactly(5L);
+        assertThat(indice.getByEstado("ANULADO", null, 4)).extracting(PagoDTO::getId).containsExactly(2L);
+        assertThat(indice.contar(EstadoPago.PENDIENTE)).isEqualTo(7);
+    }
+
+    @Test
+    void unCursorPasadoElUltimoIdDevuelveUnaPaginaVacia() {
+        tabla.put(3L, pago(3L, "PENDIENTE"));
+        indice.recargar();
+
+        assertThat(indice.getByEstado("PENDIENTE", 3L, 10)).isEmpty();
+        assertThat(indice.getByEstado("PENDIENTE", Long.MAX_VALUE, 10)).isEmpty();
+        assertThat(indice.getByEstado("PENDIENTE", -50L, 10)).extracting(PagoDTO::getId).containsExactly(3L);
+    }
+
+    @Test
+    void unEstadoOAgrupacionDesconocidosSonUnErrorDelCliente() {
+        indice.recargar();
+
+        assertThatThrownBy(() -> indice.getByEstado("PAGADO", null, 10)).isInstanceOf(SolicitudInvalidaException.class);
+        assertThatThrownBy(() -> indice.resumir("dia")).isInstanceOf(SolicitudInvalidaException.class);
+    }
+
+    @Test
+    void altasCambiosYBajasAleatoriosCoincidenConLaTabla() {
+        Random rnd = new Random(7);
+        for (long id = 1; id <= 100; id++) {
+            tabla.put(id, pago(id, ESTADOS[rnd.nextInt(3)]));
+        }
+        indice.recargar();
+
+        long siguienteId = 101;
+        for (int i = 0; i < 3_000; i++) {
+            int operacion = rnd.nextInt(10);
+            EventoPagoDTO evento;
+            if (operacion < 3 || tabla.isEmpty()) {
+                PagoDTO nuevo = pago(siguienteId++, ESTADOS[rnd.nextInt(3)]);
+                tabla.put(nuevo.getId(), nuevo);
+                evento = evento(EventoPagoDTO.CREADO, nuevo);
+            } else if (operacion < 8) {
+                PagoDTO cambiado = pago(elegir(rnd), ESTADOS[rnd.nextInt(3)]);
+                tabla.put(cambiado.getId(), cambiado);
+                evento = evento(EventoPagoDTO.ESTADO_CAMBIADO, cambiado);
+            } else {
+                long id = elegir(rnd);
+                tabla.remove(id);
+                evento = baja(id);
+            }
+            assertThat(indice.entregar(List.of(evento))).isTrue();
+        }
+
+        for (String estado : ESTADOS) {
+            List<Long> esperados = tabla.values().stream().filter(pago -> estado.equals(pago.getEstado())).map(PagoDTO::getId).toList();
+            assertThat(recorrer(estado, 1 + rnd.nextInt(50))).as(estado).isEqualTo(esperados);
+        }
+    }
+
+    @Test
+    void unIdFueraDeRangoDeshabilitaElIndiceHastaRecargarlo() {
+        tabla.put(1L, pago(1L, "PENDIENTE"));
+        indice.recargar();
+
+        assertThat(indice.entregar(List.of(evento(EventoPagoDTO.CREADO, pago((long) Integer.MAX_VALUE, "PENDIENTE"))))).isFalse();
+        assertThatThrownBy(() -> indice.getByEstado("PENDIENTE", null, 10)).isInstanceOf(IndiceNoDisponibleException.class);
+
+        indice.recargar();
+        assertThat(indice.getByEstado("PENDIENTE", null, 10)).extracting(PagoDTO::getId).containsExactly(1L);
+    }
+
+    // Recorre un estado página a página siguiendo el último ID, como un cliente del endpoint
+    private List<Long> recorrer(String estado, int limite) {
+        List<Long> ids = new ArrayList<>();
+        Long afterId = null;
+        List<PagoDTO> pagina;
+        do {
+            pagina = indice.getByEstado(estado, afterId, limite);
+            assertThat(pagina.size()).isLessThanOrEqualTo(limite);
+            pagina.forEach(pago -> ids.add(pago.getId()));
+            afterId = pagina.isEmpty() ? afterId : pagina.get(pagina.size() - 1).getId();
+        } while (pagina.size() == limite);
+        return ids;
+    }
+
+    private EventoPagoDTO evento(String tipo, PagoDTO pago) {
+        try {
+            return new EventoPagoDTO(++seq, tipo, pago.getId(), null, pago.getEstado(), objectMapper.writeValueAsString(pago), null);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private EventoPagoDTO baja(long id) {
+        return new EventoPagoDTO(++seq, EventoPagoDTO.ELIMINADO, id, null, null, null, null);
+    }
+
+    private long elegir(Random rnd) {
+        List<Long> ids = new ArrayList<>(tabla.keySet());
+        return ids.get(rnd.nextInt(ids.size()));
+    }
+
+    private static PagoDTO pago(Long id, String estado) {
+        PagoDTO pago = new PagoDTO();
+        pago.setId(id);
+        pago.setCitaId(id % 40);
+        pago.setEstado(estado);
+        pago.setMetodoPago("TARJETA");
+        pago.setMonto(new BigDecimal("25.00"));
+        pago.setReferencia("REF-" + id);
+        pago.setVersion(0L);
+        return pago;
+    }
+}
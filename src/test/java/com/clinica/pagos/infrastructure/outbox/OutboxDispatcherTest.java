@@ -0,0 +1,230 @@
+package com.clinica.pagos.infrastructure.outbox;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Limit;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.clinica.pagos.infrastructure.client.NotificacionesFeignClient;
+import com.clinica.pagos.infrastructure.client.dto.EnvioNotificacionDTO;
+import com.clinica.pagos.infrastructure.client.dto.NotificacionDTO;
+import com.clinica.pagos.infrastructure.crud.NotificacionPendienteRepository;
+import com.clinica.pagos.infrastructure.entity.NotificacionPendiente;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import feign.FeignException;
+import feign.Request;
+import feign.Response;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class OutboxDispatcherTest {
+
+    private static final Duration RESERVA = Duration.ofMinutes(5);
+
+    private final NotificacionPendienteRepository repo = mock(NotificacionPendienteRepository.class);
+    private final NotificacionesFeignClient cliente = mock(NotificacionesFeignClient.class);
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    private final OutboxDispatcher dispatcher = new OutboxDispatcher();
+    private final List<NotificacionPendiente> tabla = new ArrayList<>();
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void preparar() {
+        TransactionTemplate transacciones = mock(TransactionTemplate.class);
+        when(transacciones.execute(any())).thenAnswer(inv -> ((TransactionCallback<Object>) inv.getArgument(0)).doInTransaction(null));
+        doAnswer(inv -> {
+            ((Consumer<TransactionStatus>) inv.getArgument(0)).accept(null);
+            return null;
+        }).when(transacciones).executeWithoutResult(any());
+
+        // La "tabla": filas PENDIENTE vencidas en orden de id, y los grupos sobre ellas
+        when(repo.findByEstadoAndProximoIntentoLessThanEqualOrderByIdAsc(eq(NotificacionPendiente.PENDIENTE), any(), any(Limit.class)))
+                .thenAnswer(inv -> tabla.stream()
+                        .filter(fila -> NotificacionPendiente.PENDIENTE.equals(fila.getEstado()))
+                        .filter(fila -> !fila.getProximoIntento().isAfter(inv.getArgument(1)))
+                        .toList());
+        when(repo.findByGrupoAndEstado(any(), anyString()))
+                .thenAnswer(inv -> tabla.stream()
+                        .filter(fila -> inv.getArgument(0).equals(fila.getGrupo()) && inv.getArgument(1).equals(fila.getEstado()))
+                        .toList());
+        when(repo.countByGrupoAndEstado(any(), anyString()))
+                .thenAnswer(inv -> tabla.stream()
+                        .filter(fila -> inv.getArgument(0).equals(fila.getGrupo()) && inv.getArgument(1).equals(fila.getEstado()))
+                        .count());
+
+        ReflectionTestUtils.setField(dispatcher, "repo", repo);
+        ReflectionTestUtils.setField(dispatcher, "notificacionesFeignClient", cliente);
+        ReflectionTestUtils.setField(dispatcher, "objectMapper", objectMapper);
+        ReflectionTestUtils.setField(dispatcher, "transactionTemplate", transacciones);
+        ReflectionTestUtils.setField(dispatcher, "registry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(dispatcher, "lote", 200);
+        ReflectionTestUtils.setField(dispatcher, "ventanaMs", 0L);
+        ReflectionTestUtils.setField(dispatcher, "maxLotesPorCiclo", 20);
+        ReflectionTestUtils.setField(dispatcher, "maxIntentos", 3);
+        ReflectionTestUtils.setField(dispatcher, "backoffInicial", Duration.ZERO);
+        ReflectionTestUtils.setField(dispatcher, "backoffMaximo", Duration.ZERO);
+        ReflectionTestUtils.setField(dispatcher, "reintentoLoteMs", 300_000L);
+        ReflectionTestUtils.setField(dispatcher, "reserva", RESERVA);
+    }
+
+    @Test
+    void lasFilasQuedanReservadasMientrasSeEnvian() throws Exception {
+        NotificacionPendiente fila = fila(1L, 10L, "PAGO-1");
+        List<LocalDateTime> proximoDuranteEnvio = new ArrayList<>();
+        doAnswer(inv -> proximoDuranteEnvio.add(fila.getProximoIntento())).when(cliente).enviarNotificaciones(anyList());
+
+        LocalDateTime antes = LocalDateTime.now();
+        dispatcher.despachar();
+
+        // Otra instancia no la ve vencida hasta que acabe la reserva
+        assertThat(proximoDuranteEnvio).singleElement().satisfies(proximo -> assertThat(proximo).isAfterOrEqualTo(antes.plus(RESERVA)));
+        assertThat(fila.getEstado()).isEqualTo(NotificacionPendiente.ENVIADA);
+        verify(repo).saveAll(List.of(fila));
+    }
+
+    @Test
+    void unGrupoReintentadoSeReenviaConLasMismasFilasYLaMismaClave() throws Exception {
+        fila(1L, 10L, "PAGO-1");
+        fila(2L, 10L, "PAGO-2");
+        List<List<EnvioNotificacionDTO>> envios = new ArrayList<>();
+        doAnswer(inv -> {
+            envios.add(List.copyOf(inv.getArgument(0)));
+            throw error(503);
+        }).doAnswer(inv -> envios.add(List.copyOf(inv.getArgument(0))))
+                .when(cliente).enviarNotificaciones(anyList());
+
+        dispatcher.despachar();
+        assertThat(tabla).allSatisfy(fila -> {
+            assertThat(fila.getEstado()).isEqualTo(NotificacionPendiente.PENDIENTE);
+            assertThat(fila.getGrupo()).isEqualTo(1L);
+            assertThat(fila.getIntentos()).isEqualTo(1);
+        });
+
+        // Llega una fila nueva del mismo cliente: no entra en el grupo ya enviado
+        fila(3L, 10L, "PAGO-3");
+        dispatcher.despachar();
+
+        assertThat(envios).hasSize(2);
+        EnvioNotificacionDTO primero = envios.get(0).get(0);
+        EnvioNotificacionDTO reintento = envios.get(1).stream()
+                .filter(envio -> envio.getClaveIdempotencia().equals(primero.getClaveIdempotencia()))
+                .findFirst().orElseThrow();
+        assertThat(primero.getClaveIdempotencia()).isEqualTo("agrupada:1");
+        assertThat(reintento.getNotificacion().getReferenciaServicio()).isEqualTo("PAGO-1,PAGO-2");
+        assertThat(reintento.getNotificacion().getMensaje()).isEqualTo(primero.getNotificacion().getMensaje());
+        assertThat(envios.get(1)).extracting(EnvioNotificacionDTO::getClaveIdempotencia)
+                .containsExactlyInAnyOrder("agrupada:1", tabla.get(2).getClaveIdempotencia());
+        assertThat(tabla).allSatisfy(fila -> assertThat(fila.getEstado()).isEqualTo(NotificacionPendiente.ENVIADA));
+    }
+
+    @Test
+    void unGrupoConFilasReclamadasPorOtraInstanciaEsperaAlSiguienteLote() {
+        NotificacionPendiente libre = fila(1L, 10L, "PAGO-1");
+        NotificacionPendiente reclamada = fila(2L, 10L, "PAGO-2");
+        libre.setGrupo(1L);
+        reclamada.setGrupo(1L);
+        // La otra instancia la tiene bloqueada: SKIP LOCKED no la devuelve, pero sigue contando
+        when(repo.findByGrupoAndEstado(1L, NotificacionPendiente.PENDIENTE)).thenReturn(List.of(libre));
+        reclamada.setProximoIntento(LocalDateTime.now().plus(RESERVA));
+
+        dispatcher.despachar();
+
+        verify(cliente, never()).enviarNotificaciones(anyList());
+        verify(cliente, never()).enviarNotificacion(anyString(), any());
+        assertThat(libre.getEstado()).isEqualTo(NotificacionPendiente.PENDIENTE);
+        assertThat(libre.getIntentos()).isZero();
+    }
+
+    @Test
+    void unRechazoDelLoteSeAislaEnviandoUnoAUno() throws Exception {
+        NotificacionPendiente valida = fila(1L, 10L, "PAGO-1");
+        NotificacionPendiente invalida = fila(2L, 20L, "PAGO-2");
+        doThrow(error(400)).when(cliente).enviarNotificaciones(anyList());
+        doThrow(error(422)).when(cliente).enviarNotificacion(eq(invalida.getClaveIdempotencia()), any());
+
+        dispatcher.despachar();
+
+        verify(cliente).enviarNotificacion(eq(valida.getClaveIdempotencia()), any());
+        assertThat(valida.getEstado()).isEqualTo(NotificacionPendiente.ENVIADA);
+        assertThat(invalida.getEstado()).isEqualTo(NotificacionPendiente.FALLIDA);
+        assertThat(invalida.getIntentos()).isEqualTo(1);
+    }
+
+    @Test
+    void losErroresTransitoriosSeReintentanHastaMaxIntentos() throws Exception {
+        NotificacionPendiente fila = fila(1L, 10L, "PAGO-1");
+        doThrow(error(503)).when(cliente).enviarNotificaciones(anyList());
+
+        for (int i = 1; i <= 3; i++) {
+            dispatcher.despachar();
+            assertThat(fila.getIntentos()).isEqualTo(i);
+        }
+        assertThat(fila.getEstado()).isEqualTo(NotificacionPendiente.FALLIDA);
+        assertThat(fila.getUltimoError()).startsWith("503");
+
+        dispatcher.despachar();
+        assertThat(fila.getIntentos()).isEqualTo(3);
+    }
+
+    @Test
+    void unaFilaIlegibleFallaSinBloquearAlResto() throws Exception {
+        NotificacionPendiente ilegible = fila(1L, 10L, "PAGO-1");
+        ilegible.setPayload("{no es json");
+        NotificacionPendiente valida = fila(2L, 20L, "PAGO-2");
+
+        dispatcher.despachar();
+
+        assertThat(ilegible.getEstado()).isEqualTo(NotificacionPendiente.FALLIDA);
+        assertThat(valida.getEstado()).isEqualTo(NotificacionPendiente.ENVIADA);
+    }
+
+    private NotificacionPendiente fila(Long id, Long clienteId, String referencia) {
+        NotificacionDTO notificacion = new NotificacionDTO(clienteId, "PAGO_COMPLETADO", "Pago recibido",
+                "Se registró el pago " + referencia, "EMAIL", referencia);
+        notificacion.setEmailDestinatario("cliente" + clienteId + "@clinica.test");
+        try {
+            NotificacionPendiente fila = new NotificacionPendiente(referencia, "PAGO_COMPLETADO", objectMapper.writeValueAsString(notificacion));
+            fila.setId(id);
+            fila.setProximoIntento(LocalDateTime.now().minusSeconds(1));
+            tabla.add(fila);
+            return fila;
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static FeignException error(int status) {
+        Request peticion = Request.create(Request.HttpMethod.POST, "/notificaciones/enviar-lote", Map.of(), null,
+                StandardCharsets.UTF_8, null);
+        Response respuesta = Response.builder()
+                .status(status)
+                .reason("error " + status)
+                .request(peticion)
+                .headers(Map.of())
+                .build();
+        return FeignException.errorStatus("NotificacionesFeignClient#enviar", respuesta);
+    }
+}
@@ -0,0 +1,146 @@
+package com.clinica.pagos.infrastructure.repositories;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.TransactionSystemException;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class CombinadorEscriturasTest {
+
+    // Ventana larga: el lote se cierra al llegar a LOTE escrituras, no por tiempo
+    private static final int LOTE = 4;
+    private static final Duration VENTANA = Duration.ofSeconds(5);
+
+    private final ExecutorService llamadores = Executors.newFixedThreadPool(LOTE);
+    private final List<List<Integer>> lotes = new CopyOnWriteArrayList<>();
+    private final List<Integer> individuales = new CopyOnWriteArrayList<>();
+    private CombinadorEscrituras<Integer, String> combinador;
+
+    @AfterEach
+    void cerrar() {
+        if (combinador != null) {
+            combinador.close();
+        }
+        llamadores.shutdownNow();
+    }
+
+    @Test
+    void escriturasConcurrentesCompartenUnLoteYCadaUnaRecibeSuResultado() {
+        combinador = combinador(new Procesador(null, null));
+
+        List<CompletableFuture<String>> resultados = ejecutarALaVez(1, 2, 3, 4);
+
+        assertThat(resultados).extracting(CompletableFuture::join).containsExactly("r1", "r2", "r3", "r4");
+        assertThat(lotes).hasSize(1);
+        assertThat(lotes.get(0)).containsExactlyInAnyOrder(1, 2, 3, 4);
+        assertThat(individuales).isEmpty();
+    }
+
+    @Test
+    void loteRevertidoSeRepiteUnoAUnoConElResultadoDeCadaLlamador() {
+        // El 3 tiene una clave duplicada: hace fallar el lote y luego solo su propia escritura
+        RuntimeException duplicada = new DataIntegrityViolationException("clave duplicada");
+        combinador = combinador(new Procesador(new CombinadorEscrituras.LoteRevertidoException(duplicada), 3));
+
+        List<CompletableFuture<String>> resultados = ejecutarALaVez(1, 2, 3, 4);
+
+        assertThat(resultados.get(0).join()).isEqualTo("r1");
+        assertThat(resultados.get(1).join()).isEqualTo("r2");
+        assertThatThrownBy(resultados.get(2)::join).hasCauseInstanceOf(DataIntegrityViolationException.class);
+        assertThat(resultados.get(3).join()).isEqualTo("r4");
+        assertThat(individuales).containsExactlyInAnyOrder(1, 2, 3, 4);
+    }
+
+    @Test
+    void falloConResultadoInciertoNoSeRepiteYLlegaATodos() {
+        // Falló el COMMIT: el lote pudo confirmarse, repetir las altas podría duplicarlas
+        combinador = combinador(new Procesador(new TransactionSystemException("commit interrumpido"), null));
+
+        List<CompletableFuture<String>> resultados = ejecutarALaVez(1, 2, 3, 4);
+
+        for (CompletableFuture<String> resultado : resultados) {
+            assertThatThrownBy(resultado::join)
+                    .isInstanceOf(CompletionException.class)
+                    .hasCauseInstanceOf(TransactionSystemException.class);
+        }
+        assertThat(individuales).isEmpty();
+    }
+
+    @Test
+    void unaEscrituraSolaNoUsaElLote() {
+        combinador = new CombinadorEscrituras<>("prueba", new Procesador(null, null), 1, LOTE, Duration.ofMillis(10),
+                new SimpleMeterRegistry());
+
+        assertThat(combinador.ejecutar(7)).isEqualTo("r7");
+        assertThat(lotes).isEmpty();
+        assertThat(individuales).containsExactly(7);
+    }
+
+    @Test
+    void cerradoRechazaNuevasEscrituras() {
+        combinador = combinador(new Procesador(null, null));
+        combinador.close();
+
+        assertThatThrownBy(() -> combinador.ejecutar(1)).isInstanceOf(IllegalStateException.class);
+    }
+
+    private CombinadorEscrituras<Integer, String> combinador(Procesador procesador) {
+        return new CombinadorEscrituras<>("prueba", procesador, 1, LOTE, VENTANA, new SimpleMeterRegistry());
+    }
+
+    private List<CompletableFuture<String>> ejecutarALaVez(Integer... elementos) {
+        List<CompletableFuture<String>> resultados = new ArrayList<>();
+        for (Integer elemento : elementos) {
+            resultados.add(CompletableFuture.supplyAsync(() -> combinador.ejecutar(elemento), llamadores));
+        }
+        CompletableFuture.allOf(resultados.toArray(CompletableFuture[]::new))
+                .exceptionally(e -> null)
+                .orTimeout(10, TimeUnit.SECONDS)
+                .join();
+        return resultados;
+    }
+
+    // Devuelve "r" + elemento; el lote falla con falloLote y la escritura individual de fallido con su causa
+    private final class Procesador implements CombinadorEscrituras.Procesador<Integer, String> {
+        private final RuntimeException falloLote;
+        private final Integer fallido;
+
+        Procesador(RuntimeException falloLote, Integer fallido) {
+            this.falloLote = falloLote;
+            this.fallido = fallido;
+        }
+
+        @Override
+        public List<String> procesarLote(List<Integer> lote) {
+            lotes.add(List.copyOf(lote));
+            if (falloLote != null) {
+                throw falloLote;
+            }
+            return lote.stream().map(elemento -> "r" + elemento).toList();
+        }
+
+        @Override
+        public String procesar(Integer elemento) {
+            individuales.add(elemento);
+            if (elemento.equals(fallido)) {
+                throw (RuntimeException) falloLote.getCause();
+            }
+            return "r" + elemento;
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package com.clinica.pagos.infrastructure.repositories;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.clinica.pagos.domain.dto.ActualizacionPagoDTO;
+import com.clinica.pagos.domain.dto.PagoDTO;
+import com.clinica.pagos.domain.repository.IPago;
+import com.github.benmanes.caffeine.cache.Cache;
+
+class PagoCacheTest {
+
+    private final IPago delegado = mock(IPago.class);
+    // Lo confirmado en la base de datos: lo único que ven las lecturas
+    private final Map<Long, PagoDTO> confirmados = new ConcurrentHashMap<>();
+    // La siguiente lectura por ID se queda esperando a liberarLectura con la versión ya leída
+    private final AtomicBoolean lecturaLenta = new AtomicBoolean();
+    private final CountDownLatch lecturaEnCurso = new CountDownLatch(1);
+    private final CountDownLatch liberarLectura = new CountDownLatch(1);
+    private PagoCache cache;
+
+    @BeforeEach
+    void preparar() {
+        when(delegado.getById(anyLong())).thenAnswer(inv -> {
+            Optional<PagoDTO> leido = Optional.ofNullable(confirmados.get(inv.<Long>getArgument(0))).map(PagoDTO::copia);
+            if (lecturaLenta.getAndSet(false)) {
+                lecturaEnCurso.countDown();
+                liberarLectura.await(5, TimeUnit.SECONDS);
+            }
+            return leido;
+        });
+        when(delegado.getByIds(anyCollection())).thenAnswer(inv -> inv.<Collection<Long>>getArgument(0).stream()
+                .map(confirmados::get)
+                .filter(Objects::nonNull)
+                .map(PagoDTO::copia)
+                .collect(Collectors.toCollection(ArrayList::new)));
+        when(delegado.getByCitaId(anyLong())).thenAnswer(inv -> confirmados.values().stream()
+                .filter(pago -> inv.getArgument(0).equals(pago.getCitaId()))
+                .map(PagoDTO::copia)
+                .toList());
+        when(delegado.update(anyLong(), any())).thenAnswer(inv -> {
+            PagoDTO anterior = confirmados.get(inv.<Long>getArgument(0));
+            PagoDTO nuevo = inv.<PagoDTO>getArgument(1).copia();
+            nuevo.setId(anterior.getId());
+            confirmar(nuevo);
+            return new ActualizacionPagoDTO(nuevo.copia(), anterior.copia(), anterior.getEstado(), true);
+        });
+        when(delegado.cambiarEstado(anyLong(), anyString(), anyString())).thenAnswer(inv -> {
+            PagoDTO pago = confirmados.get(inv.<Long>getArgument(0)).copia();
+            pago.setEstado(inv.getArgument(2));
+            confirmar(pago);
+            return true;
+        });
+        when(delegado.delete(anyLong())).thenAnswer(inv -> Optional.ofNullable(confirmados.remove(inv.<Long>getArgument(0))));
+        cache = new PagoCache(delegado, 1_000, Duration.ofMinutes(10));
+    }
+
+    @AfterEach
+    void limpiar() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void unAciertoNoVuelveALeerYEntregaCopias() {
+        confirmar(pago(1L, 10L, "PENDIENTE"));
+
+        cache.getById(1L).orElseThrow().setNombrePaciente("modificado por el llamador");
+
+        assertThat(cache.getById(1L).orElseThrow().getNombrePaciente()).isNull();
+        verify(delegado, times(1)).getById(1L);
+    }
+
+    @Test
+    void actualizarInvalidaElPagoYLasDosCitas() {
+        confirmar(pago(1L, 10L, "PENDIENTE"));
+        confirmar(pago(2L, 20L, "PENDIENTE"));
+        cache.getById(1L);
+        assertThat(cache.getByCitaId(10L)).hasSize(1);
+        assertThat(cache.getByCitaId(20L)).hasSize(1);
+
+        cache.update(1L, pago(1L, 20L, "COMPLETADO"));
+
+        assertThat(cache.getById(1L).orElseThrow().getEstado()).isEqualTo("COMPLETADO");
+        assertThat(cache.getByCitaId(10L)).isEmpty();
+        assertThat(cache.getByCitaId(20L)).extracting(PagoDTO::getId).containsExactly(1L, 2L);
+    }
+
+    @Test
+    void cambiarEstadoInvalidaLaListaDeLaCitaAunqueElPagoNoEsteEnCache() {
+        confirmar(pago(1L, 10L, "PENDIENTE"));
+        assertThat(cache.getByCitaId(10L)).extracting(PagoDTO::getEstado).containsExactly("PENDIENTE");
+
+        cache.cambiarEstado(1L, "PENDIENTE", "COMPLETADO");
+
+        assertThat(cache.getByCitaId(10L)).extracting(PagoDTO::getEstado).containsExactly("COMPLETADO");
+        assertThat(cache.getPageByCitaId(10L, null, 10)).extracting(PagoDTO::getEstado).containsExactly("COMPLETADO");
+        verify(delegado, times(2)).getByCitaId(10L);
+    }
+
+    @Test
+    void eliminarQuitaElPagoDeLaCacheYDeSuCita() {
+        confirmar(pago(1L, 10L, "PENDIENTE"));
+        confirmar(pago(2L, 10L, "PENDIENTE"));
+        cache.getByCitaId(10L);
+        cache.getById(1L);
+
+        cache.delete(1L);
+
+        assertThat(cache.getById(1L)).isEmpty();
+        assertThat(cache.getByCitaId(10L)).extracting(PagoDTO::getId).containsExactly(2L);
+    }
+
+    @Test
+    void unaLecturaLentaNoDejaEnCacheLaVersionAnteriorAUnaEscritura() throws Exception {
+        confirmar(pago(1L, 10L, "PENDIENTE"));
+        lecturaLenta.set(true);
+
+        // La lectura obtiene PENDIENTE y, antes de que lo guarde en caché, se confirma COMPLETADO
+        CompletableFuture<Optional<PagoDTO>> lectura = CompletableFuture.supplyAsync(() -> cache.getById(1L));
+        assertThat(lecturaEnCurso.await(5, TimeUnit.SECONDS)).isTrue();
+        CompletableFuture<Void> escritura = CompletableFuture.runAsync(() -> cache.cambiarEstado(1L, "PENDIENTE", "COMPLETADO"));
+        // La invalidación no espera a la lectura en curso: esta ve que hubo una invalidación y no guarda lo leído
+        escritura.get(5, TimeUnit.SECONDS);
+        liberarLectura.countDown();
+
+        assertThat(lectura.get(5, TimeUnit.SECONDS).orElseThrow().getEstado()).isEqualTo("PENDIENTE");
+        assertThat(cache.getById(1L).orElseThrow().getEstado()).isEqualTo("COMPLETADO");
+    }
+
+    @Test
+    void unaLecturaDuranteLaTransaccionSeDescartaAlConfirmar() {
+        confirmar(pago(1L, 10L, "PENDIENTE"));
+        TransactionSynchronizationManager.initSynchronization();
+        // Dentro de la transacción la escritura aún no es visible para otras conexiones
+        doAnswer(inv -> {
+            PagoDTO anterior = confirmados.get(1L);
+            PagoDTO nuevo = inv.<PagoDTO>getArgument(1).copia();
+            return new ActualizacionPagoDTO(nuevo, anterior.copia(), anterior.getEstado(), true);
+        }).when(delegado).update(anyLong(), any());
+
+        cache.update(1L, pago(1L, 10L, "COMPLETADO"));
+        assertThat(cache.getById(1L).orElseThrow().getEstado()).isEqualTo("PENDIENTE");
+        assertThat(cache.getByCitaId(10L)).extracting(PagoDTO::getEstado).containsExactly("PENDIENTE");
+
+        confirmar(pago(1L, 10L, "COMPLETADO"));
+        List<TransactionSynchronization> sincronizaciones = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        sincronizaciones.forEach(s -> s.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+
+        assertThat(cache.getById(1L).orElseThrow().getEstado()).isEqualTo("COMPLETADO");
+        assertThat(cache.getByCitaId(10L)).extracting(PagoDTO::getEstado).containsExactly("COMPLETADO");
+    }
+
+    @Test
+    void unaPaginaDeUnaCitaFriaSaleDeUnaSolaConsultaYCalientaLaCachePorId() {
+        confirmar(pago(1L, 10L, "PENDIENTE"));
+        confirmar(pago(2L, 10L, "PENDIENTE"));
+        confirmar(pago(3L, 10L, "PENDIENTE"));
+
+        assertThat(cache.getPageByCitaId(10L, null, 2)).extracting(PagoDTO::getId).containsExactly(1L, 2L);
+        assertThat(cache.getPageByCitaId(10L, 2L, 2)).extracting(PagoDTO::getId).containsExactly(3L);
+        cache.getById(3L);
+
+        verify(delegado, times(1)).getByCitaId(10L);
+        verify(delegado, never()).getById(anyLong());
+        verify(delegado, never()).getByIds(anyCollection());
+    }
+
+    @Test
+    void losPagosQueFaltanEnCacheSeLeenConUnaSolaConsulta() {
+        confirmar(pago(1L, 10L, "PENDIENTE"));
+        confirmar(pago(2L, 10L, "PENDIENTE"));
+        confirmar(pago(3L, 10L, "PENDIENTE"));
+        cache.getByCitaId(10L);
+        porId().invalidate(1L);
+        porId().invalidate(3L);
+
+        assertThat(cache.getPageByCitaId(10L, null, 10)).extracting(PagoDTO::getId).containsExactly(1L, 2L, 3L);
+        assertThat(cache.getPageByCitaId(10L, null, 10)).extracting(PagoDTO::getId).containsExactly(1L, 2L, 3L);
+
+        verify(delegado, times(1)).getByIds(List.of(1L, 3L));
+        verify(delegado, never()).getById(anyLong());
+    }
+
+    @Test
+    void unaLecturaEnBloqueNoSeGuardaSiHuboUnaEscrituraMientrasTanto() {
+        confirmar(pago(1L, 10L, "PENDIENTE"));
+        cache.getByCitaId(10L);
+        porId().invalidate(1L);
+        // La consulta lee PENDIENTE y, antes de que vuelva, otra petición confirma COMPLETADO
+        doAnswer(inv -> {
+            List<PagoDTO> leidos = List.of(confirmados.get(1L).copia());
+            cache.cambiarEstado(1L, "PENDIENTE", "COMPLETADO");
+            return leidos;
+        }).when(delegado).getByIds(anyCollection());
+
+        assertThat(cache.getByIds(List.of(1L))).extracting(PagoDTO::getEstado).containsExactly("PENDIENTE");
+        assertThat(cache.getById(1L).orElseThrow().getEstado()).isEqualTo("COMPLETADO");
+    }
+
+    @SuppressWarnings("unchecked")
+    private Cache<Long, PagoDTO> porId() {
+        return (Cache<Long, PagoDTO>) ReflectionTestUtils.getField(cache, "porId");
+    }
+
+    private void confirmar(PagoDTO pago) {
+        confirmados.put(pago.getId(), pago.copia());
+    }
+
+    private static PagoDTO pago(Long id, Long citaId, String estado) {
+        PagoDTO pago = new PagoDTO();
+        pago.setId(id);
+        pago.setCitaId(citaId);
+        pago.setEstado(estado);
+        pago.setMetodoPago("TARJETA");
+        pago.setMonto(new BigDecimal("25.00"));
+        return pago;
+    }
+}
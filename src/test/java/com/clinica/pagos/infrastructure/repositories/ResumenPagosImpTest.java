@@ -0,0 +1,233 @@
+package com.clinica.pagos.infrastructure.repositories;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.clinica.pagos.domain.dto.PagoDTO;
+import com.clinica.pagos.domain.dto.ResumenPagoDTO;
+import com.clinica.pagos.domain.repository.IResumenPagos;
+import com.clinica.pagos.infrastructure.entity.EstadoPago;
+import com.clinica.pagos.infrastructure.entity.MetodoPago;
+
+/**
+ * Agregados incrementales frente al recálculo desde {@code pagos}, sobre H2 en modo MySQL
+ * (admite el mismo {@code ON DUPLICATE KEY UPDATE}).
+ */
+class ResumenPagosImpTest {
+
+    private static final String[] ESTADOS = { "PENDIENTE", "COMPLETADO", "ANULADO", null };
+    private static final String[] METODOS = { "EFECTIVO", "TARJETA", "TRANSFERENCIA", null };
+
+    private SingleConnectionDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private final ResumenPagosImp resumen = new ResumenPagosImp();
+    // Estado actual de cada pago, como lo vería la tabla pagos
+    private final Map<Long, PagoDTO> pagos = new HashMap<>();
+
+    @BeforeEach
+    void crearTablas() {
+        dataSource = new SingleConnectionDataSource(
+                "jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE", true);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE pagos (id BIGINT PRIMARY KEY, estado CHAR(1), metodo_pago CHAR(1), "
+                + "fecha_pago DATETIME(6), monto DECIMAL(38,2))");
+        jdbcTemplate.execute("CREATE TABLE pagos_resumen_diario (dia DATE NOT NULL, estado CHAR(1) NOT NULL, "
+                + "metodo_pago CHAR(1) NOT NULL, cantidad BIGINT NOT NULL, total DECIMAL(38,2) NOT NULL, "
+                + "PRIMARY KEY (dia, estado, metodo_pago))");
+        ReflectionTestUtils.setField(resumen, "jdbcTemplate", jdbcTemplate);
+    }
+
+    @AfterEach
+    void cerrar() {
+        dataSource.destroy();
+    }
+
+    @Test
+    void unCambioDeEstadoMueveElPagoDeFila() {
+        crear(pago(1L, "PENDIENTE", "TARJETA", "2024-03-01T10:00", "50.00"));
+        actualizar(pago(1L, "COMPLETADO", "TARJETA", "2024-03-01T10:00", "50.00"));
+
+        assertThat(resumen.resumir(IResumenPagos.POR_ESTADO, null, null))
+                .singleElement()
+                .satisfies(fila -> {
+                    assertThat(fila.getClave()).isEqualTo("COMPLETADO");
+                    assertThat(fila.getCantidad()).isEqualTo(1);
+                    assertThat(fila.getTotal()).isEqualByComparingTo("50.00");
+                });
+    }
+
+    @Test
+    void unCambioDeFechaYMontoMueveCantidadYTotalDeDia() {
+        crear(pago(1L, "COMPLETADO", "EFECTIVO", "2024-03-01T23:59", "10.00"));
+        crear(pago(2L, "COMPLETADO", "EFECTIVO", "2024-03-01T08:00", "5.00"));
+        actualizar(pago(1L, "COMPLETADO", "EFECTIVO", "2024-03-02T00:01", "12.50"));
+
+        List<ResumenPagoDTO> dias = resumen.resumir(IResumenPagos.POR_DIA, null, null);
+        assertThat(dias).extracting(ResumenPagoDTO::getClave).containsExactly("2024-03-01", "2024-03-02");
+        assertThat(dias.get(0).getTotal()).isEqualByComparingTo("5.00");
+        assertThat(dias.get(1).getTotal()).isEqualByComparingTo("12.50");
+        assertThat(dias).extracting(ResumenPagoDTO::getCantidad).containsExactly(1L, 1L);
+    }
+
+    @Test
+    void unaBajaDejaElDiaFueraDelInforme() {
+        crear(pago(1L, "ANULADO", "TARJETA", "2024-03-01T10:00", "20.00"));
+        eliminar(1L);
+
+        assertThat(resumen.resumir(IResumenPagos.POR_DIA, null, null)).isEmpty();
+        assertThat(resumen.resumir(IResumenPagos.POR_ESTADO, null, null)).isEmpty();
+    }
+
+    @Test
+    void losPagosSinFechaEstadoNiMetodoTienenSuPropiaClave() {
+        crear(pago(1L, null, null, null, null));
+
+        assertThat(resumen.resumir(IResumenPagos.POR_DIA, null, null)).extracting(ResumenPagoDTO::getClave).containsExactly("SIN_FECHA");
+        assertThat(resumen.resumir(IResumenPagos.POR_ESTADO, null, null)).extracting(ResumenPagoDTO::getClave).containsExactly("SIN_ESTADO");
+        assertThat(resumen.resumir(IResumenPagos.POR_METODO, null, null)).extracting(ResumenPagoDTO::getClave).containsExactly("SIN_METODO");
+    }
+
+    @Test
+    void unLoteDeAltasEquivaleAAltasSueltas() {
+        List<PagoDTO> lote = new ArrayList<>();
+        for (long id = 1; id <= 20; id++) {
+            PagoDTO pago = pago(id, ESTADOS[(int) (id % 3)], METODOS[(int) (id % 3)], "2024-03-0" + (1 + id % 5) + "T12:00", id + ".25");
+            lote.add(pago);
+            guardarEnPagos(pago);
+        }
+        resumen.agregar(lote);
+
+        assertThat(filasResumen()).isEqualTo(filasRecalculadas());
+    }
+
+    @Test
+    void unLoteMixtoDeAltasYCambiosEquivaleAlRecalculo() {
+        crear(pago(1L, "PENDIENTE", "TARJETA", "2024-03-01T10:00", "10.00"));
+        crear(pago(2L, "PENDIENTE", "EFECTIVO", "2024-03-02T10:00", "20.00"));
+        List<PagoDTO> anteriores = new ArrayList<>();
+        List<PagoDTO> actuales = new ArrayList<>();
+        for (PagoDTO pago : List.of(
+                pago(1L, "COMPLETADO", "TARJETA", "2024-03-01T10:00", "10.00"),
+                pago(2L, "PENDIENTE", "EFECTIVO", "2024-03-03T10:00", "25.00"),
+                pago(3L, "PENDIENTE", "TARJETA", "2024-03-01T11:00", "5.00"))) {
+            PagoDTO anterior = pagos.put(pago.getId(), pago);
+            anteriores.add(anterior != null ? anterior.copia() : null);
+            actuales.add(pago.copia());
+            guardarEnPagos(pago);
+        }
+
+        resumen.aplicarTodos(anteriores, actuales);
+
+        assertThat(filasResumen()).isEqualTo(filasRecalculadas());
+    }
+
+    @Test
+    void altasCambiosYBajasAleatoriosCoincidenConElRecalculo() {
+        Random rnd = new Random(42);
+        long siguienteId = 1;
+        for (int i = 0; i < 2_000; i++) {
+            int operacion = pagos.isEmpty() ? 0 : rnd.nextInt(10);
+            if (operacion < 4) {
+                crear(aleatorio(siguienteId++, rnd));
+            } else if (operacion < 8) {
+                actualizar(aleatorio(elegir(rnd), rnd));
+            } else {
+                eliminar(elegir(rnd));
+            }
+        }
+
+        assertThat(filasResumen()).isEqualTo(filasRecalculadas());
+        long cantidad = resumen.resumir(IResumenPagos.POR_ESTADO, null, null).stream().mapToLong(ResumenPagoDTO::getCantidad).sum();
+        assertThat(cantidad).isEqualTo(pagos.size());
+    }
+
+    @Test
+    void elInformeFiltraPorRangoDeDias() {
+        crear(pago(1L, "COMPLETADO", "TARJETA", "2024-02-28T10:00", "1.00"));
+        crear(pago(2L, "COMPLETADO", "TARJETA", "2024-03-01T10:00", "2.00"));
+        crear(pago(3L, "COMPLETADO", "TARJETA", "2024-03-05T10:00", "4.00"));
+
+        List<ResumenPagoDTO> marzo = resumen.resumir(IResumenPagos.POR_ESTADO, LocalDate.of(2024, 3, 1), LocalDate.of(2024, 3, 31));
+        assertThat(marzo).singleElement().satisfies(fila -> assertThat(fila.getTotal()).isEqualByComparingTo("6.00"));
+        assertThat(resumen.resumir(IResumenPagos.POR_MES, null, null)).extracting(ResumenPagoDTO::getClave)
+                .containsExactly("2024-02", "2024-03");
+    }
+
+    private void crear(PagoDTO pago) {
+        guardarEnPagos(pago);
+        resumen.aplicar(null, pago.copia());
+        pagos.put(pago.getId(), pago);
+    }
+
+    private void actualizar(PagoDTO pago) {
+        PagoDTO anterior = pagos.put(pago.getId(), pago);
+        guardarEnPagos(pago);
+        resumen.aplicar(anterior.copia(), pago.copia());
+    }
+
+    private void eliminar(Long id) {
+        PagoDTO anterior = pagos.remove(id);
+        jdbcTemplate.update("DELETE FROM pagos WHERE id = ?", id);
+        resumen.aplicar(anterior.copia(), null);
+    }
+
+    private void guardarEnPagos(PagoDTO pago) {
+        jdbcTemplate.update("MERGE INTO pagos (id, estado, metodo_pago, fecha_pago, monto) KEY (id) VALUES (?, ?, ?, ?, ?)",
+                pago.getId(),
+                EstadoPago.buscar(pago.getEstado()).map(e -> String.valueOf(e.getCodigo())).orElse(null),
+                MetodoPago.buscar(pago.getMetodoPago()).map(m -> String.valueOf(m.getCodigo())).orElse(null),
+                pago.getFechaPago() != null ? Timestamp.valueOf(pago.getFechaPago()) : null,
+                pago.getMonto());
+    }
+
+    // Filas con pagos: las que quedan a cero tras bajas o cambios no cuentan
+    private List<String> filasResumen() {
+        return jdbcTemplate.queryForList(
+                "SELECT CONCAT(dia, '|', estado, '|', metodo_pago, '|', cantidad, '|', total) FROM pagos_resumen_diario "
+                        + "WHERE cantidad <> 0 ORDER BY dia, estado, metodo_pago", String.class);
+    }
+
+    private List<String> filasRecalculadas() {
+        resumen.reconstruir();
+        return filasResumen();
+    }
+
+    private Long elegir(Random rnd) {
+        List<Long> ids = new ArrayList<>(pagos.keySet());
+        ids.sort(null);
+        return ids.get(rnd.nextInt(ids.size()));
+    }
+
+    private static PagoDTO aleatorio(long id, Random rnd) {
+        String fecha = rnd.nextInt(20) == 0 ? null : "2024-03-" + String.format("%02d", 1 + rnd.nextInt(5)) + "T" + String.format("%02d", rnd.nextInt(24)) + ":30";
+        String monto = rnd.nextInt(20) == 0 ? null : rnd.nextInt(100_000) / 100 + "." + String.format("%02d", rnd.nextInt(100));
+        return pago(id, ESTADOS[rnd.nextInt(ESTADOS.length)], METODOS[rnd.nextInt(METODOS.length)], fecha, monto);
+    }
+
+    private static PagoDTO pago(Long id, String estado, String metodo, String fecha, String monto) {
+        PagoDTO pago = new PagoDTO();
+        pago.setId(id);
+        pago.setEstado(estado);
+        pago.setMetodoPago(metodo);
+        pago.setFechaPago(fecha != null ? LocalDateTime.parse(fecha) : null);
+        pago.setMonto(monto != null ? new BigDecimal(monto) : null);
+        return pago;
+    }
+}
@@ -0,0 +1,76 @@
+-- Esquema de las migraciones V1..V9 ya aplicadas, para H2 en modo MySQL (arnés de carga).
+-- Las migraciones reales usan sintaxis que H2 no admite (ALTER ... MODIFY múltiple, backfills);
+-- al añadir una migración hay que reflejar aquí el esquema resultante.
+CREATE TABLE pagos (
+    id BIGINT NOT NULL AUTO_INCREMENT,
+    cita_id BIGINT,
+    estado CHAR(1),
+    fecha_pago DATETIME(6),
+    metodo_pago CHAR(1),
+    monto DECIMAL(38,2),
+    referencia VARCHAR(255),
+    version BIGINT NOT NULL DEFAULT 0,
+    PRIMARY KEY (id)
+);
+
+CREATE INDEX idx_pagos_cita_id ON pagos (cita_id);
+CREATE INDEX idx_pagos_estado_fecha ON pagos (estado, fecha_pago);
+CREATE INDEX idx_pagos_referencia ON pagos (referencia);
+CREATE INDEX idx_pagos_estado_id ON pagos (estado, id);
+
+CREATE TABLE notificaciones_pendientes (
+    id BIGINT NOT NULL AUTO_INCREMENT,
+    referencia_servicio VARCHAR(255),
+    tipo VARCHAR(255),
+    payload TEXT,
+    estado VARCHAR(255),
+    intentos INTEGER NOT NULL,
+    proximo_intento DATETIME(6),
+    creada_en DATETIME(6),
+    enviada_en DATETIME(6),
+    ultimo_error VARCHAR(255),
+    grupo BIGINT NULL,
+    PRIMARY KEY (id)
+);
+
+CREATE INDEX idx_notif_pendientes_estado_proximo ON notificaciones_pendientes (estado, proximo_intento);
+CREATE INDEX idx_notif_pendientes_grupo ON notificaciones_pendientes (grupo);
+
+CREATE TABLE pagos_resumen_diario (
+    dia DATE NOT NULL,
+    estado CHAR(1) NOT NULL,
+    metodo_pago CHAR(1) NOT NULL,
+    cantidad BIGINT NOT NULL,
+    total DECIMAL(38,2) NOT NULL,
+    PRIMARY KEY (dia, estado, metodo_pago)
+);
+
+CREATE TABLE pagos_eventos (
+    seq BIGINT NOT NULL,
+    tipo VARCHAR(20) NOT NULL,
+    pago_id BIGINT NOT NULL,
+    estado_anterior VARCHAR(20),
+    estado VARCHAR(20),
+    pago TEXT,
+    creado_en DATETIME(6) NOT NULL,
+    PRIMARY KEY (seq)
+);
+
+CREATE TABLE pagos_eventos_secuencia (
+    id TINYINT NOT NULL,
+    ultimo BIGINT NOT NULL,
+    PRIMARY KEY (id)
+);
+
+INSERT INTO pagos_eventos_secuencia (id, ultimo) VALUES (1, 0);
+
+CREATE TABLE pagos_idempotencia (
+    clave VARCHAR(255) NOT NULL,
+    huella CHAR(64) NOT NULL,
+    pago_id BIGINT NOT NULL,
+    respuesta TEXT NOT NULL,
+    creada_en DATETIME(6) NOT NULL,
+    PRIMARY KEY (clave)
+);
+
+CREATE INDEX idx_pagos_idempotencia_creada ON pagos_idempotencia (creada_en);